@@ -0,0 +1,109 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Converts many R objects (typically the data.frames of a list returned from R) to Tables concurrently.
+ * The columns of the data.frames are the units of work: they are sorted by size, largest first, and taken one at a
+ * time by each worker on the common ForkJoinPool, so a large data.frame is spread over all cores instead of
+ * keeping one of them busy while the others are idle, and the small columns fill in the gaps at the end.
+ * Other objects (matrices, vectors) are converted as a whole by one worker.
+ * The batch is reported to the {@link ConversionMonitor} as one conversion, the work done on the worker threads is
+ * part of it.
+ */
+final class BatchConverter {
+
+  private BatchConverter() {
+    // Utility class
+  }
+
+  static List<Table> createTables(List<? extends SEXP> sexps) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.createTables")) {
+      int n = sexps.size();
+      Table[] tables = new Table[n];
+      Column[][] columns = new Column[n][];
+      List<Task> tasks = new ArrayList<>();
+      long totalRows = 0;
+      int totalCols = 0;
+      for (int i = 0; i < n; i++) {
+        SEXP sexp = sexps.get(i);
+        if (sexp instanceof ListVector) {
+          ListVector df = (ListVector) sexp;
+          int numRows = df.length() == 0 ? 0 : df.getElementAsSEXP(0).length();
+          columns[i] = new Column[df.length()];
+          for (int col = 0; col < df.length(); col++) {
+            int length = df.getElementAsSEXP(col).length();
+            if (length != numRows) {
+              throw new IllegalArgumentException("Column " + col + " of data.frame " + i + " has " + length
+                  + " values but there are " + numRows + " rows");
+            }
+            tasks.add(new Task(i, col, length));
+          }
+          totalRows += numRows;
+          totalCols += df.length();
+        } else {
+          tasks.add(new Task(i, -1, sexp.length()));
+        }
+      }
+      tasks.sort(Comparator.comparingLong((Task task) -> task.size).reversed());
+
+      AtomicInteger next = new AtomicInteger();
+      int workers = Math.min(tasks.size(), ForkJoinPool.getCommonPoolParallelism() + 1);
+      IntStream.range(0, workers).parallel().forEach(worker -> {
+        ConversionMonitor.Probe nested = ConversionMonitor.within(probe);
+        try {
+          int idx;
+          while ((idx = next.getAndIncrement()) < tasks.size()) {
+            Task task = tasks.get(idx);
+            SEXP sexp = sexps.get(task.index);
+            if (task.column < 0) {
+              tables[task.index] = Table.create(sexp);
+            } else {
+              Vector vec = (Vector) ((ListVector) sexp).getElementAsSEXP(task.column);
+              columns[task.index][task.column] = ColumnEncoder.fromVector(vec, false);
+            }
+          }
+        } finally {
+          nested.close();
+        }
+      });
+
+      for (int i = 0; i < n; i++) {
+        if (columns[i] != null) {
+          ListVector df = (ListVector) sexps.get(i);
+          int numRows = columns[i].length == 0 ? 0 : columns[i][0].size();
+          tables[i] = new Table(RDataTransformer.toHeaderList(df), RDataTransformer.toTypeList(df),
+              Arrays.asList(columns[i]), numRows);
+        } else {
+          totalRows += tables[i].getRowSize();
+          totalCols += tables[i].getHeaderSize();
+        }
+      }
+      probe.end((int) Math.min(Integer.MAX_VALUE, totalRows), totalCols);
+      return Arrays.asList(tables);
+    }
+  }
+
+  private static final class Task {
+    final int index;
+    // the column of the data.frame or -1 to convert the whole object
+    final int column;
+    final long size;
+
+    Task(int index, int column, long size) {
+      this.index = index;
+      this.column = column;
+      this.size = size;
+    }
+  }
+}
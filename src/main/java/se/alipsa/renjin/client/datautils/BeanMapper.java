@@ -0,0 +1,434 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.IntArrayVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.LogicalArrayVector;
+import org.renjin.sexp.StringVector;
+import org.renjin.sexp.Vector;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps the rows of a Table to objects of a class and objects back to the columns of a data.frame, matching the
+ * column names to the properties of the class. A property is a public getter (getX or isX) and/or setter (setX)
+ * or else a non static, non transient field. The method handles accessing the properties are looked up once per
+ * class and cached, so no reflection is done per row or cell. Primitive int and double properties are read from
+ * and written to int and double columns without boxing.
+ */
+final class BeanMapper<T> {
+
+  private static final ClassValue<BeanMapper<?>> MAPPERS = new ClassValue<BeanMapper<?>>() {
+    @Override
+    protected BeanMapper<?> computeValue(Class<?> type) {
+      return new BeanMapper<>(type);
+    }
+  };
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final Class<T> type;
+  // () -> Object, null if the class has no accessible no argument constructor
+  private final MethodHandle constructor;
+  private final Map<String, Property> properties;
+
+  @SuppressWarnings("unchecked")
+  static <T> BeanMapper<T> of(Class<T> type) {
+    return (BeanMapper<T>) MAPPERS.get(type);
+  }
+
+  private BeanMapper(Class<T> type) {
+    this.type = type;
+    MethodHandles.Lookup lookup;
+    try {
+      lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+    } catch (IllegalAccessException e) {
+      // a class in a module not open to us, only the public members can be used
+      lookup = MethodHandles.publicLookup();
+    }
+    this.constructor = constructor(lookup, type);
+    this.properties = Collections.unmodifiableMap(properties(lookup, type));
+  }
+
+  Class<T> getType() {
+    return type;
+  }
+
+  /**
+   * @return the properties by name, in the declaration order of their fields followed by the accessor only
+   * properties in name order
+   */
+  Map<String, Property> getProperties() {
+    return properties;
+  }
+
+  /**
+   * @param table the table to map
+   * @return an object for each row of the table with the properties matching a column name set,
+   * columns without a matching property are ignored
+   */
+  List<T> toBeans(Table table) {
+    if (constructor == null) {
+      throw new IllegalArgumentException(type.getName() + " does not have an accessible no argument constructor");
+    }
+    List<ColumnSetter> setters = new ArrayList<>();
+    for (int col = 0; col < table.getHeaderSize(); col++) {
+      Property property = find(table.getHeaderList().get(col));
+      if (property != null && property.setter != null) {
+        setters.add(new ColumnSetter(table.column(col), property));
+      }
+    }
+    int numRows = table.getRowSize();
+    List<T> beans = new ArrayList<>(numRows);
+    try {
+      for (int row = 0; row < numRows; row++) {
+        Object bean = (Object) constructor.invokeExact();
+        for (ColumnSetter setter : setters) {
+          setter.set(bean, row);
+        }
+        beans.add(type.cast(bean));
+      }
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new DataTransformationRuntimeException("Failed to create a " + type.getName(), t);
+    }
+    return beans;
+  }
+
+  /**
+   * @param beans the objects to convert
+   * @return a data.frame with a column for each readable property and a row for each object
+   */
+  ListVector toDataframe(List<? extends T> beans) {
+    int numRows = beans.size();
+    ListVector.NamedBuilder dfBuilder = new ListVector.NamedBuilder();
+    try {
+      for (Property property : properties.values()) {
+        if (property.getter != null) {
+          dfBuilder.add(property.name, property.column(beans, numRows));
+        }
+      }
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new DataTransformationRuntimeException("Failed to read the properties of a " + type.getName(), t);
+    }
+    return RDataTransformer.dataframe(dfBuilder, numRows);
+  }
+
+  private Property find(String columnName) {
+    Property property = properties.get(columnName);
+    if (property == null) {
+      for (Property candidate : properties.values()) {
+        if (candidate.name.equalsIgnoreCase(columnName)) {
+          return candidate;
+        }
+      }
+    }
+    return property;
+  }
+
+  private static MethodHandle constructor(MethodHandles.Lookup lookup, Class<?> type) {
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      return null;
+    }
+    try {
+      return lookup.findConstructor(type, MethodType.methodType(void.class))
+          .asType(MethodType.methodType(Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  private static Map<String, Property> properties(MethodHandles.Lookup lookup, Class<?> type) {
+    Map<String, Field> fields = new LinkedHashMap<>();
+    List<Class<?>> hierarchy = new ArrayList<>();
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      hierarchy.add(0, c);
+    }
+    for (Class<?> c : hierarchy) {
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+          fields.put(field.getName(), field);
+        }
+      }
+    }
+    Map<String, Method> getters = new TreeMap<>();
+    Map<String, Method> setters = new TreeMap<>();
+    for (Method method : type.getMethods()) {
+      if (Modifier.isStatic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+        continue;
+      }
+      String name = method.getName();
+      if (method.getParameterCount() == 0) {
+        if (name.startsWith("get") && name.length() > 3 && method.getReturnType() != void.class) {
+          getters.put(decapitalize(name.substring(3)), method);
+        } else if (name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class) {
+          getters.put(decapitalize(name.substring(2)), method);
+        }
+      } else if (method.getParameterCount() == 1 && name.startsWith("set") && name.length() > 3) {
+        setters.put(decapitalize(name.substring(3)), method);
+      }
+    }
+    List<String> names = new ArrayList<>(fields.keySet());
+    for (String name : getters.keySet()) {
+      if (!fields.containsKey(name)) {
+        names.add(name);
+      }
+    }
+    Map<String, Property> properties = new LinkedHashMap<>();
+    for (String name : names) {
+      Property property = property(lookup, name, fields.get(name), getters.get(name), setters.get(name));
+      if (property != null) {
+        properties.put(name, property);
+      }
+    }
+    return properties;
+  }
+
+  private static Property property(MethodHandles.Lookup lookup, String name, Field field, Method getter,
+                                   Method setter) {
+    Class<?> propertyType = getter != null ? getter.getReturnType() : field.getType();
+    if (setter != null && setter.getParameterTypes()[0] != propertyType) {
+      setter = null;
+    }
+    MethodHandle read = null;
+    MethodHandle write = null;
+    try {
+      if (getter != null) {
+        read = lookup.unreflect(getter);
+      } else if (field != null) {
+        read = lookup.unreflectGetter(field);
+      }
+    } catch (IllegalAccessException e) {
+      // not readable
+    }
+    try {
+      if (setter != null) {
+        write = lookup.unreflect(setter);
+      } else if (field != null && field.getType() == propertyType && !Modifier.isFinal(field.getModifiers())) {
+        write = lookup.unreflectSetter(field);
+      }
+    } catch (IllegalAccessException e) {
+      // not writable
+    }
+    if (read == null && write == null) {
+      return null;
+    }
+    return new Property(name, propertyType, read, write);
+  }
+
+  private static String decapitalize(String name) {
+    if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+      // e.g. getURL is the property URL
+      return name;
+    }
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
+
+  /**
+   * @return the value converted to the type, the wrapper type for primitives
+   */
+  static Object convert(Object value, Class<?> type) {
+    if (value == null || type.isInstance(value)) {
+      return value;
+    }
+    if (type == String.class) {
+      return String.valueOf(value);
+    }
+    if (type == int.class || type == Integer.class) {
+      return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(String.valueOf(value));
+    }
+    if (type == double.class || type == Double.class) {
+      return value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf(String.valueOf(value));
+    }
+    if (type == long.class || type == Long.class) {
+      return value instanceof Number ? ((Number) value).longValue() : Long.valueOf(String.valueOf(value));
+    }
+    if (type == float.class || type == Float.class) {
+      return value instanceof Number ? ((Number) value).floatValue() : Float.valueOf(String.valueOf(value));
+    }
+    if (type == short.class || type == Short.class) {
+      return value instanceof Number ? ((Number) value).shortValue() : Short.valueOf(String.valueOf(value));
+    }
+    if (type == byte.class || type == Byte.class) {
+      return value instanceof Number ? ((Number) value).byteValue() : Byte.valueOf(String.valueOf(value));
+    }
+    if (type == boolean.class || type == Boolean.class) {
+      return ValueConverter.asBoolean(value);
+    }
+    if (type == BigDecimal.class) {
+      return value instanceof Number ? BigDecimal.valueOf(((Number) value).doubleValue())
+          : new BigDecimal(String.valueOf(value));
+    }
+    if (type == LocalDate.class) {
+      return value instanceof Number ? LocalDate.ofEpochDay(((Number) value).longValue())
+          : LocalDate.parse(String.valueOf(value));
+    }
+    if (type.isEnum()) {
+      return enumValue(type, String.valueOf(value));
+    }
+    throw new DataTransformationRuntimeException("Cannot convert " + value + " (" + value.getClass().getName()
+        + ") to " + type.getName());
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Object enumValue(Class<?> type, String name) {
+    return Enum.valueOf((Class<? extends Enum>) type, name);
+  }
+
+  /**
+   * A property of the class with handles adapted to (Object)Object and (Object, Object)void so they can be invoked
+   * exactly, and (Object)int / (Object)double and (Object, int)void / (Object, double)void for int and double
+   * properties.
+   */
+  static final class Property {
+    final String name;
+    final Class<?> type;
+    final MethodHandle getter;
+    final MethodHandle setter;
+    final MethodHandle primitiveGetter;
+    final MethodHandle primitiveSetter;
+
+    Property(String name, Class<?> type, MethodHandle getter, MethodHandle setter) {
+      this.name = name;
+      this.type = type;
+      this.getter = getter == null ? null : getter.asType(GETTER_TYPE);
+      this.setter = setter == null ? null : setter.asType(SETTER_TYPE);
+      boolean primitive = type == int.class || type == double.class;
+      this.primitiveGetter = primitive && getter != null
+          ? getter.asType(MethodType.methodType(type, Object.class)) : null;
+      this.primitiveSetter = primitive && setter != null
+          ? setter.asType(MethodType.methodType(void.class, Object.class, type)) : null;
+    }
+
+    /**
+     * @return the R vector of this property of the beans
+     */
+    Vector column(List<?> beans, int numRows) throws Throwable {
+      if (type == int.class) {
+        IntArrayVector.Builder builder = new IntArrayVector.Builder(0, numRows);
+        for (Object bean : beans) {
+          builder.add((int) primitiveGetter.invokeExact(bean));
+        }
+        return builder.build();
+      }
+      if (type == double.class) {
+        DoubleArrayVector.Builder builder = new DoubleArrayVector.Builder(0, numRows);
+        for (Object bean : beans) {
+          builder.add((double) primitiveGetter.invokeExact(bean));
+        }
+        return builder.build();
+      }
+      DataType dataType = dataType(type);
+      Vector.Builder<?> builder;
+      switch (dataType) {
+        case INTEGER:
+          builder = new IntArrayVector.Builder(0, numRows);
+          break;
+        case DOUBLE:
+          builder = new DoubleArrayVector.Builder(0, numRows);
+          break;
+        case DATE:
+          builder = new DoubleArrayVector.Builder(0, numRows);
+          builder.setAttribute("class", StringVector.valueOf("Date"));
+          break;
+        case BOOLEAN:
+          builder = new LogicalArrayVector.Builder(0, numRows);
+          break;
+        default:
+          builder = new StringVector.Builder(0, numRows);
+      }
+      for (Object bean : beans) {
+        Object value = (Object) getter.invokeExact(bean);
+        if (value == null) {
+          builder.addNA();
+        } else if (dataType == DataType.INTEGER) {
+          ((IntArrayVector.Builder) builder).add(((Number) value).intValue());
+        } else if (dataType == DataType.DOUBLE) {
+          ((DoubleArrayVector.Builder) builder).add(((Number) value).doubleValue());
+        } else if (dataType == DataType.DATE) {
+          ((DoubleArrayVector.Builder) builder).add(((LocalDate) value).toEpochDay());
+        } else if (dataType == DataType.BOOLEAN) {
+          ((LogicalArrayVector.Builder) builder).add((boolean) (Boolean) value);
+        } else {
+          ((StringVector.Builder) builder).add(value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+        }
+      }
+      return builder.build();
+    }
+
+    /**
+     * @return the type of the data.frame column for a property of the type
+     */
+    static DataType dataType(Class<?> type) {
+      if (type == int.class || type == Integer.class || type == short.class || type == Short.class
+          || type == byte.class || type == Byte.class) {
+        return DataType.INTEGER;
+      }
+      if (type.isPrimitive() && type != boolean.class && type != char.class || Number.class.isAssignableFrom(type)) {
+        return DataType.DOUBLE;
+      }
+      if (type == boolean.class || type == Boolean.class) {
+        return DataType.BOOLEAN;
+      }
+      if (type == LocalDate.class) {
+        return DataType.DATE;
+      }
+      return DataType.STRING;
+    }
+  }
+
+  /**
+   * Sets a property from a column of the table.
+   */
+  private static final class ColumnSetter {
+    private final Column column;
+    private final Property property;
+    private final Class<?> type;
+
+    ColumnSetter(Column column, Property property) {
+      this.column = column;
+      this.property = property;
+      this.type = property.type;
+    }
+
+    void set(Object bean, int row) throws Throwable {
+      if (type == int.class && column instanceof IntColumn) {
+        IntColumn ints = (IntColumn) column;
+        if (!ints.isNull(row)) {
+          property.primitiveSetter.invokeExact(bean, ints.getInt(row));
+        }
+        return;
+      }
+      if (type == double.class && column instanceof DoubleColumn) {
+        DoubleColumn doubles = (DoubleColumn) column;
+        if (!doubles.isNull(row)) {
+          property.primitiveSetter.invokeExact(bean, doubles.getDouble(row));
+        }
+        return;
+      }
+      Object value = convert(column.get(row), type);
+      // a null (NA) leaves a primitive property at its default value
+      if (value != null || !type.isPrimitive()) {
+        property.setter.invokeExact(bean, value);
+      }
+    }
+  }
+}
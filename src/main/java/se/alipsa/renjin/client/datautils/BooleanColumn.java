@@ -0,0 +1,48 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * A column of logical values packed into two bits per row.
+ */
+final class BooleanColumn extends Column {
+
+  static final int NA = 0;
+  static final int FALSE = 1;
+  static final int TRUE = 2;
+
+  private final PackedInts values;
+
+  /**
+   * @param values the values where each value is one of {@link #NA}, {@link #FALSE} or {@link #TRUE}
+   */
+  BooleanColumn(PackedInts values) {
+    this.values = values;
+  }
+
+  @Override
+  int size() {
+    return values.size();
+  }
+
+  @Override
+  Object get(int row) {
+    checkIndex(row);
+    switch (values.get(row)) {
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      default:
+        return null;
+    }
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.BIT_PACKED;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    return 16 + values.estimatedByteSize();
+  }
+}
@@ -0,0 +1,157 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A growable byte array used to format output (e.g. delimited text) without creating intermediate Strings.
+ * Not thread safe, each formatting thread uses its own sink.
+ */
+final class ByteSink {
+
+  private static final byte[] MIN_INT = "-2147483648".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+  private static final byte[] MIN_LONG = "-9223372036854775808".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+  /** The largest magnitude where all integral doubles are exact and can be written as a long */
+  private static final double MAX_EXACT_INTEGRAL = 1e15;
+
+  private byte[] buf;
+  private int size;
+  private NumberFormatter formatter;
+
+  ByteSink(int initialCapacity) {
+    buf = new byte[Math.max(16, initialCapacity)];
+  }
+
+  void write(int b) {
+    ensureCapacity(1);
+    buf[size++] = (byte) b;
+  }
+
+  void write(byte[] src) {
+    write(src, 0, src.length);
+  }
+
+  void write(byte[] src, int offset, int length) {
+    ensureCapacity(length);
+    System.arraycopy(src, offset, buf, size, length);
+    size += length;
+  }
+
+  /**
+   * @param s a String consisting of ascii characters only
+   */
+  void writeAscii(String s) {
+    ensureCapacity(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      buf[size++] = (byte) s.charAt(i);
+    }
+  }
+
+  void writeUtf8(String s) {
+    ensureCapacity(s.length() * 3);
+    size = Utf8StringColumn.encode(s, buf, size);
+  }
+
+  void writeInt(int value) {
+    if (value == Integer.MIN_VALUE) {
+      write(MIN_INT);
+      return;
+    }
+    writeLong(value);
+  }
+
+  void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      write(MIN_LONG);
+      return;
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buf[size++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    int pos = size + digits;
+    do {
+      buf[--pos] = (byte) ('0' + (value % 10));
+      value /= 10;
+    } while (value > 0);
+    size += digits;
+  }
+
+  /**
+   * Write an int left padded with zeros to the number of digits specified.
+   */
+  void writePadded(int value, int digits) {
+    ensureCapacity(digits);
+    for (int pos = size + digits - 1; pos >= size; pos--) {
+      buf[pos] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    size += digits;
+  }
+
+  /**
+   * Write a double that is neither NaN nor infinite, integral values are written without decimals.
+   */
+  void writeFiniteDouble(double value) {
+    if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT_INTEGRAL && (value != 0 || 1 / value > 0)) {
+      writeLong((long) value);
+    } else {
+      if (formatter == null) {
+        formatter = new NumberFormatter(NumberFormatter.Style.JAVA);
+      }
+      formatter.format(value);
+      write(formatter.buffer(), 0, formatter.length());
+    }
+  }
+
+  /**
+   * Write a date as yyyy-MM-dd.
+   */
+  void writeDate(LocalDate date) {
+    int year = date.getYear();
+    if (year < 0 || year > 9999) {
+      writeAscii(date.toString());
+      return;
+    }
+    writePadded(year, 4);
+    write('-');
+    writePadded(date.getMonthValue(), 2);
+    write('-');
+    writePadded(date.getDayOfMonth(), 2);
+  }
+
+  int size() {
+    return size;
+  }
+
+  void reset() {
+    size = 0;
+  }
+
+  void writeTo(OutputStream out) throws IOException {
+    out.write(buf, 0, size);
+  }
+
+  ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, size);
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(buf, size);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+    }
+  }
+}
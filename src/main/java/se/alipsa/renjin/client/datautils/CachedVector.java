@@ -0,0 +1,62 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.RawVector;
+import org.renjin.sexp.StringVector;
+import org.renjin.sexp.Vector;
+
+import java.util.function.Supplier;
+
+/**
+ * Holds the R vector of a Table column once it has been built. Since the data of a Table is immutable, the vector
+ * can be reused by every call to {@link Table#asDataframe(boolean...)} and shared with derived tables having the
+ * same column (see {@link Table#withColumn(String, DataType, java.util.List)}).
+ */
+final class CachedVector {
+
+  private final Supplier<Vector> factory;
+  private volatile Vector vector;
+
+  CachedVector(Supplier<Vector> factory) {
+    this.factory = factory;
+  }
+
+  Vector get() {
+    Vector result = vector;
+    if (result == null) {
+      synchronized (this) {
+        result = vector;
+        if (result == null) {
+          result = factory.get();
+          vector = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  boolean isBuilt() {
+    return vector != null;
+  }
+
+  /**
+   * @return a rough estimate of the heap used by the vector, 0 if it has not been built yet
+   */
+  long estimatedByteSize() {
+    Vector result = vector;
+    if (result == null) {
+      return 0;
+    }
+    long bytesPerElement;
+    if (result instanceof StringVector) {
+      bytesPerElement = 48;
+    } else if (result instanceof DoubleVector) {
+      bytesPerElement = 8;
+    } else if (result instanceof RawVector) {
+      bytesPerElement = 1;
+    } else {
+      bytesPerElement = 4;
+    }
+    return 32 + result.length() * bytesPerElement;
+  }
+}
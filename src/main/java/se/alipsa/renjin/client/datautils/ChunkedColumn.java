@@ -0,0 +1,93 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A column made up of consecutive chunks, each a column of its own. Used for tables with rows appended
+ * (see {@link Table#withRowsAppended(List)}) so that the existing column storage is shared rather than copied,
+ * and for tables read in batches (see {@link ResultSetReader}) where each batch is encoded on its own.
+ */
+final class ChunkedColumn extends Column {
+
+  private final Column[] chunks;
+  // the (exclusive) end row of each chunk
+  private final int[] chunkEnds;
+
+  private ChunkedColumn(Column[] chunks) {
+    this.chunks = chunks;
+    chunkEnds = new int[chunks.length];
+    int end = 0;
+    for (int i = 0; i < chunks.length; i++) {
+      end += chunks[i].size();
+      chunkEnds[i] = end;
+    }
+  }
+
+  /**
+   * @return a column with the rows of head followed by the rows of tail
+   */
+  static Column concat(Column head, Column tail) {
+    return of(Arrays.asList(head, tail));
+  }
+
+  /**
+   * @param columns the columns to concatenate, in order
+   * @return a column with the rows of all the columns
+   */
+  static Column of(List<Column> columns) {
+    List<Column> chunks = new ArrayList<>(columns.size());
+    for (Column column : columns) {
+      if (column instanceof ChunkedColumn) {
+        chunks.addAll(Arrays.asList(((ChunkedColumn) column).chunks));
+      } else if (column.size() > 0) {
+        chunks.add(column);
+      }
+    }
+    if (chunks.size() == 1) {
+      return chunks.get(0);
+    }
+    return new ChunkedColumn(chunks.toArray(new Column[0]));
+  }
+
+  @Override
+  int size() {
+    return chunkEnds.length == 0 ? 0 : chunkEnds[chunkEnds.length - 1];
+  }
+
+  @Override
+  Object get(int row) {
+    checkIndex(row);
+    int chunk = findChunk(chunkEnds, row);
+    return chunks[chunk].get(chunk == 0 ? row : row - chunkEnds[chunk - 1]);
+  }
+
+  Column[] chunks() {
+    return chunks;
+  }
+
+  /**
+   * @param ends the exclusive end index of each chunk
+   * @param index the index to look up
+   * @return the chunk containing the index
+   */
+  static int findChunk(int[] ends, int index) {
+    int idx = Arrays.binarySearch(ends, index);
+    return idx >= 0 ? idx + 1 : -idx - 1;
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.CHUNKED;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    long size = 16L + 4L * chunkEnds.length;
+    for (Column chunk : chunks) {
+      size += chunk.estimatedByteSize();
+    }
+    return size;
+  }
+}
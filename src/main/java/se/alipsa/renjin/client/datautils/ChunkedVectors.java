@@ -0,0 +1,226 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.StringVector;
+import org.renjin.sexp.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * R vectors made up of consecutive vectors of the same type so that the vector of a column with appended rows
+ * can reuse the already built vector of the existing rows and only the appended rows need to be converted.
+ * The attributes (e.g. class Date) are taken from the first vector.
+ */
+final class ChunkedVectors {
+
+  private ChunkedVectors() {
+    // Utility class
+  }
+
+  /**
+   * @return a vector with the elements of head followed by the elements of tail or null if vectors of that type
+   * cannot be concatenated
+   */
+  static Vector concat(Vector head, Vector tail) {
+    List<Vector> parts = new ArrayList<>();
+    for (Vector vector : new Vector[]{head, tail}) {
+      if (vector instanceof Chunked) {
+        parts.addAll(Arrays.asList(((Chunked) vector).parts()));
+      } else if (vector.length() > 0 || parts.isEmpty()) {
+        parts.add(vector);
+      }
+    }
+    if (parts.size() == 1) {
+      return parts.get(0);
+    }
+    Vector[] partArray = parts.toArray(new Vector[0]);
+    int[] ends = new int[partArray.length];
+    int end = 0;
+    for (int i = 0; i < partArray.length; i++) {
+      end += partArray[i].length();
+      ends[i] = end;
+    }
+    AttributeMap attributes = head.getAttributes();
+    if (head instanceof DoubleVector && tail instanceof DoubleVector) {
+      return new ChunkedDoubleVector(partArray, ends, attributes);
+    }
+    if (head instanceof IntVector && tail instanceof IntVector) {
+      return new ChunkedIntVector(partArray, ends, attributes);
+    }
+    if (head instanceof LogicalVector && tail instanceof LogicalVector) {
+      return new ChunkedLogicalVector(partArray, ends, attributes);
+    }
+    if (head instanceof StringVector && tail instanceof StringVector) {
+      return new ChunkedStringVector(partArray, ends, attributes);
+    }
+    return null;
+  }
+
+  private static boolean allConstantAccessTime(Vector[] parts) {
+    for (Vector part : parts) {
+      if (!part.isConstantAccessTime()) {
+        return false;
+      }
+    }
+    // finding the part is a binary search, for a few parts that is as good as constant
+    return parts.length <= 16;
+  }
+
+  private interface Chunked {
+    Vector[] parts();
+  }
+
+  private static final class ChunkedDoubleVector extends DoubleVector implements Chunked {
+    private final Vector[] parts;
+    private final int[] ends;
+
+    private ChunkedDoubleVector(Vector[] parts, int[] ends, AttributeMap attributes) {
+      super(attributes);
+      this.parts = parts;
+      this.ends = ends;
+    }
+
+    @Override
+    public Vector[] parts() {
+      return parts;
+    }
+
+    @Override
+    protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+      return new ChunkedDoubleVector(parts, ends, attributes);
+    }
+
+    @Override
+    public double getElementAsDouble(int index) {
+      int part = ChunkedColumn.findChunk(ends, index);
+      return parts[part].getElementAsDouble(part == 0 ? index : index - ends[part - 1]);
+    }
+
+    @Override
+    public int length() {
+      return ends[ends.length - 1];
+    }
+
+    @Override
+    public boolean isConstantAccessTime() {
+      return allConstantAccessTime(parts);
+    }
+  }
+
+  private static final class ChunkedIntVector extends IntVector implements Chunked {
+    private final Vector[] parts;
+    private final int[] ends;
+
+    private ChunkedIntVector(Vector[] parts, int[] ends, AttributeMap attributes) {
+      super(attributes);
+      this.parts = parts;
+      this.ends = ends;
+    }
+
+    @Override
+    public Vector[] parts() {
+      return parts;
+    }
+
+    @Override
+    protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+      return new ChunkedIntVector(parts, ends, attributes);
+    }
+
+    @Override
+    public int getElementAsInt(int index) {
+      int part = ChunkedColumn.findChunk(ends, index);
+      return parts[part].getElementAsInt(part == 0 ? index : index - ends[part - 1]);
+    }
+
+    @Override
+    public int length() {
+      return ends[ends.length - 1];
+    }
+
+    @Override
+    public boolean isConstantAccessTime() {
+      return allConstantAccessTime(parts);
+    }
+  }
+
+  private static final class ChunkedLogicalVector extends LogicalVector implements Chunked {
+    private final Vector[] parts;
+    private final int[] ends;
+
+    private ChunkedLogicalVector(Vector[] parts, int[] ends, AttributeMap attributes) {
+      super(attributes);
+      this.parts = parts;
+      this.ends = ends;
+    }
+
+    @Override
+    public Vector[] parts() {
+      return parts;
+    }
+
+    @Override
+    protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+      return new ChunkedLogicalVector(parts, ends, attributes);
+    }
+
+    @Override
+    public int getElementAsRawLogical(int index) {
+      int part = ChunkedColumn.findChunk(ends, index);
+      return parts[part].getElementAsRawLogical(part == 0 ? index : index - ends[part - 1]);
+    }
+
+    @Override
+    public int length() {
+      return ends[ends.length - 1];
+    }
+
+    @Override
+    public boolean isConstantAccessTime() {
+      return allConstantAccessTime(parts);
+    }
+  }
+
+  private static final class ChunkedStringVector extends StringVector implements Chunked {
+    private final Vector[] parts;
+    private final int[] ends;
+
+    private ChunkedStringVector(Vector[] parts, int[] ends, AttributeMap attributes) {
+      super(attributes);
+      this.parts = parts;
+      this.ends = ends;
+    }
+
+    @Override
+    public Vector[] parts() {
+      return parts;
+    }
+
+    @Override
+    protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+      return new ChunkedStringVector(parts, ends, attributes);
+    }
+
+    @Override
+    public String getElementAsString(int index) {
+      int part = ChunkedColumn.findChunk(ends, index);
+      return parts[part].getElementAsString(part == 0 ? index : index - ends[part - 1]);
+    }
+
+    @Override
+    public int length() {
+      return ends[ends.length - 1];
+    }
+
+    @Override
+    public boolean isConstantAccessTime() {
+      return allConstantAccessTime(parts);
+    }
+  }
+}
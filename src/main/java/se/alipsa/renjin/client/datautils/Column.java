@@ -0,0 +1,84 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.Arrays;
+
+/**
+ * The storage of the values of one column in a {@link Table}.
+ * A Column is immutable once created, implementations are created by the {@link ColumnEncoder}.
+ */
+abstract class Column {
+
+  abstract int size();
+
+  /**
+   * @param row the row index
+   * @return the value at the row, null if the value is NA (except for doubles from R where NA is a NaN)
+   */
+  abstract Object get(int row);
+
+  abstract ColumnEncoding getEncoding();
+
+  /**
+   * @return a rough estimate of the heap used by the column
+   */
+  abstract long estimatedByteSize();
+
+  /**
+   * @param value the value to look for
+   * @param fromRow the row index to start looking from
+   * @return the index of the first row at or after fromRow with a value equal to the value specified or -1 if none
+   */
+  int indexOf(Object value, int fromRow) {
+    return indexOf(value, fromRow, size());
+  }
+
+  /**
+   * @param value the value to look for
+   * @param fromRow the row index to start looking from
+   * @param toRow the row index (exclusive) to stop looking at
+   * @return the index of the first row in the range with a value equal to the value specified or -1 if none
+   */
+  int indexOf(Object value, int fromRow, int toRow) {
+    for (int i = Math.max(fromRow, 0); i < Math.min(toRow, size()); i++) {
+      if (value.equals(get(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param prefix the prefix to look for
+   * @return the indexes of the rows with a String value starting with the prefix specified
+   */
+  int[] rowsStartingWith(String prefix) {
+    return rowsStartingWith(prefix, 0, size());
+  }
+
+  /**
+   * @param prefix the prefix to look for
+   * @param fromRow the row index to start looking from
+   * @param toRow the row index (exclusive) to stop looking at
+   * @return the indexes of the rows in the range with a String value starting with the prefix specified
+   */
+  int[] rowsStartingWith(String prefix, int fromRow, int toRow) {
+    int[] rows = new int[16];
+    int count = 0;
+    for (int i = fromRow; i < toRow; i++) {
+      Object val = get(i);
+      if (val instanceof String && ((String) val).startsWith(prefix)) {
+        if (count == rows.length) {
+          rows = Arrays.copyOf(rows, count * 2);
+        }
+        rows[count++] = i;
+      }
+    }
+    return Arrays.copyOf(rows, count);
+  }
+
+  void checkIndex(int row) {
+    if (row < 0 || row >= size()) {
+      throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size());
+    }
+  }
+}
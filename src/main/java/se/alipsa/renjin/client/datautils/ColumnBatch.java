@@ -0,0 +1,207 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A batch of rows converted to column form, Integer and Double columns are unboxed into primitive arrays.
+ * Batches are created independently (e.g. by different threads) and then concatenated into the columns of a Table
+ * giving the same result as {@link ColumnEncoder#fromObjects(Object[])} on all the values of each column.
+ */
+final class ColumnBatch {
+
+  private final int size;
+  private final Part[] parts;
+
+  private ColumnBatch(int size, Part[] parts) {
+    this.size = size;
+    this.parts = parts;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @param rows the rows, each an array with a value per column
+   * @param size the number of rows to use from the rows array
+   * @param numCols the number of columns
+   * @return the batch
+   */
+  static ColumnBatch fromRows(Object[][] rows, int size, int numCols) {
+    Part[] parts = new Part[numCols];
+    for (int col = 0; col < numCols; col++) {
+      Object[] values = new Object[size];
+      for (int row = 0; row < size; row++) {
+        values[row] = rows[row][col];
+      }
+      parts[col] = new Part(values);
+    }
+    return new ColumnBatch(size, parts);
+  }
+
+  /**
+   * Concatenate the batches (in order) and encode each column, the columns are processed in parallel.
+   */
+  static List<Column> concat(List<ColumnBatch> batches, int numCols) {
+    int rowCount = 0;
+    for (ColumnBatch batch : batches) {
+      rowCount += batch.size;
+    }
+    int numRows = rowCount;
+    Column[] columns = new Column[numCols];
+    IntStream.range(0, numCols).parallel().forEach(col -> columns[col] = concat(batches, col, numRows));
+    return Arrays.asList(columns);
+  }
+
+  private static Column concat(List<ColumnBatch> batches, int col, int numRows) {
+    Class<?> type = null;
+    for (ColumnBatch batch : batches) {
+      Class<?> partType = batch.parts[col].type;
+      if (partType == null) {
+        continue;
+      }
+      if (type == null) {
+        type = partType;
+      } else if (type != partType) {
+        type = Object.class;
+        break;
+      }
+    }
+    BitSet nulls = null;
+    int offset = 0;
+    if (type == Integer.class) {
+      int[] values = new int[numRows];
+      for (ColumnBatch batch : batches) {
+        Part part = batch.parts[col];
+        if (part.ints != null) {
+          System.arraycopy(part.ints, 0, values, offset, batch.size);
+        } else {
+          Arrays.fill(values, offset, offset + batch.size, IntVector.NA);
+        }
+        nulls = addNulls(nulls, part.nulls, offset);
+        offset += batch.size;
+      }
+      return ColumnEncoder.ints(values, nulls);
+    }
+    if (type == Double.class) {
+      double[] values = new double[numRows];
+      for (ColumnBatch batch : batches) {
+        Part part = batch.parts[col];
+        if (part.doubles != null) {
+          System.arraycopy(part.doubles, 0, values, offset, batch.size);
+        } else {
+          Arrays.fill(values, offset, offset + batch.size, DoubleVector.NA);
+        }
+        nulls = addNulls(nulls, part.nulls, offset);
+        offset += batch.size;
+      }
+      return ColumnEncoder.doubles(values, nulls);
+    }
+    Object[] values = new Object[numRows];
+    for (ColumnBatch batch : batches) {
+      batch.parts[col].copyTo(values, offset);
+      offset += batch.size;
+    }
+    return ColumnEncoder.fromObjects(values);
+  }
+
+  private static BitSet addNulls(BitSet target, BitSet partNulls, int offset) {
+    if (partNulls == null) {
+      return target;
+    }
+    BitSet result = target == null ? new BitSet() : target;
+    for (int i = partNulls.nextSetBit(0); i >= 0; i = partNulls.nextSetBit(i + 1)) {
+      result.set(offset + i);
+    }
+    return result;
+  }
+
+  /**
+   * The values of one column in the batch.
+   */
+  private static final class Part {
+    /** The class of all non null values, Object.class if mixed and null if all values are null */
+    private Class<?> type;
+    private int[] ints;
+    private double[] doubles;
+    private Object[] objects;
+    private BitSet nulls;
+
+    private Part(Object[] values) {
+      for (Object val : values) {
+        if (val == null) {
+          continue;
+        }
+        if (type == null) {
+          type = val.getClass();
+        } else if (type != val.getClass()) {
+          type = Object.class;
+          break;
+        }
+      }
+      if (type == Integer.class) {
+        ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+          if (values[i] == null) {
+            ints[i] = IntVector.NA;
+            setNull(i);
+          } else {
+            ints[i] = (Integer) values[i];
+          }
+        }
+      } else if (type == Double.class) {
+        doubles = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+          if (values[i] == null) {
+            doubles[i] = DoubleVector.NA;
+            setNull(i);
+          } else {
+            doubles[i] = (Double) values[i];
+          }
+        }
+      } else {
+        objects = values;
+        for (int i = 0; i < values.length; i++) {
+          if (values[i] == null) {
+            setNull(i);
+          }
+        }
+      }
+      if (type == null) {
+        // all values are null
+        objects = null;
+      }
+    }
+
+    private void setNull(int i) {
+      if (nulls == null) {
+        nulls = new BitSet();
+      }
+      nulls.set(i);
+    }
+
+    private void copyTo(Object[] dest, int offset) {
+      if (objects != null) {
+        System.arraycopy(objects, 0, dest, offset, objects.length);
+      } else if (ints != null) {
+        for (int i = 0; i < ints.length; i++) {
+          dest[offset + i] = isNull(i) ? null : ints[i];
+        }
+      } else if (doubles != null) {
+        for (int i = 0; i < doubles.length; i++) {
+          dest[offset + i] = isNull(i) ? null : doubles[i];
+        }
+      }
+    }
+
+    private boolean isNull(int i) {
+      return nulls != null && nulls.get(i);
+    }
+  }
+}
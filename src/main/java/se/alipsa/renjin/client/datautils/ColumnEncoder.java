@@ -0,0 +1,397 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.primitives.Types;
+import org.renjin.sexp.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the {@link Column} storage for the data of a Table, choosing the encoding from a sample of the values:
+ * <ul>
+ *   <li>logical values are bit packed</li>
+ *   <li>numeric columns with long runs of equal values (e.g. sorted or repetitive data) are run length encoded</li>
+ *   <li>string columns with few distinct values are dictionary encoded (as are factors),
+ *   other string columns are stored in a UTF-8 string heap</li>
+ *   <li>everything else is stored plain, primitives in primitive arrays</li>
+ * </ul>
+ */
+final class ColumnEncoder {
+
+  /** Columns smaller than this are always stored plain. */
+  static final int MIN_ROWS_TO_ENCODE = 64;
+
+  private static final int SAMPLE_BLOCKS = 16;
+  private static final int SAMPLE_BLOCK_SIZE = 64;
+  private static final int SAMPLE_SIZE = SAMPLE_BLOCKS * SAMPLE_BLOCK_SIZE;
+
+  /** The average run length in the sample needed to use run length encoding. */
+  private static final int MIN_AVERAGE_RUN_LENGTH = 8;
+
+  /** Dictionary encoding is used when at most 1 in this many sampled values is distinct. */
+  private static final int MIN_VALUES_PER_DISTINCT = 8;
+
+  private ColumnEncoder() {
+    // Utility class
+  }
+
+  /**
+   * @param vec the R vector to create the column from
+   * @param contentAsStrings if true, the values are stored as their String representation
+   * @return the column holding the values of the vector
+   */
+  static Column fromVector(Vector vec, boolean contentAsStrings) {
+    return fromVector(vec, contentAsStrings, 0, vec.length());
+  }
+
+  /**
+   * @param vec the R vector to create the column from
+   * @param contentAsStrings if true, the values are stored as their String representation
+   * @param start the index of the first element to include
+   * @param end the index after the last element to include
+   * @return the column holding the elements start to end of the vector
+   */
+  static Column fromVector(Vector vec, boolean contentAsStrings, int start, int end) {
+    int n = end - start;
+    if (Types.isFactor(vec)) {
+      return factor(vec, contentAsStrings, start, end);
+    }
+    if (contentAsStrings) {
+      Utf8StringColumn formatted = NumberFormatter.formatColumn(vec, start, end);
+      if (formatted != null) {
+        return strings(formatted);
+      }
+      String[] values = new String[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = vec.getElementAsString(start + i);
+      }
+      return strings(values);
+    }
+    if (vec instanceof LogicalVector) {
+      PackedInts values = new PackedInts(n, 2);
+      for (int i = 0; i < n; i++) {
+        int val = vec.getElementAsRawLogical(start + i);
+        values.set(i, IntVector.isNA(val) ? BooleanColumn.NA : val == 0 ? BooleanColumn.FALSE : BooleanColumn.TRUE);
+      }
+      return new BooleanColumn(values);
+    }
+    if (vec instanceof DoubleVector) {
+      double[] values = new double[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = vec.getElementAsDouble(start + i);
+      }
+      return doubles(values, null);
+    }
+    if (vec instanceof IntVector) {
+      int[] values = new int[n];
+      BitSet nulls = null;
+      for (int i = 0; i < n; i++) {
+        values[i] = vec.getElementAsInt(start + i);
+        if (IntVector.isNA(values[i])) {
+          nulls = setBit(nulls, i);
+        }
+      }
+      return ints(values, nulls);
+    }
+    if (vec instanceof StringVector) {
+      String[] values = new String[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = vec.getElementAsString(start + i);
+      }
+      return strings(values);
+    }
+    Object[] values = new Object[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = vec.getElementAsObject(start + i);
+    }
+    return fromObjects(values);
+  }
+
+  /**
+   * Create a column from java objects. If all (non null) values are of the same type and that type
+   * is Boolean, Integer, Double, String or LocalDate the values are stored in a specialized column, otherwise the
+   * objects are stored as is.
+   *
+   * @param values the values of the column, the array is used as is (not copied) when stored as is
+   * @return the column holding the values
+   */
+  static Column fromObjects(Object[] values) {
+    Class<?> type = null;
+    for (Object val : values) {
+      if (val == null) {
+        continue;
+      }
+      if (type == null) {
+        type = val.getClass();
+      } else if (type != val.getClass()) {
+        return new ObjectColumn(values);
+      }
+    }
+    int n = values.length;
+    if (type == Boolean.class) {
+      PackedInts packed = new PackedInts(n, 2);
+      for (int i = 0; i < n; i++) {
+        Object val = values[i];
+        packed.set(i, val == null ? BooleanColumn.NA : (Boolean) val ? BooleanColumn.TRUE : BooleanColumn.FALSE);
+      }
+      return new BooleanColumn(packed);
+    }
+    if (type == Integer.class || type == Double.class) {
+      BitSet nulls = null;
+      for (int i = 0; i < n; i++) {
+        if (values[i] == null) {
+          nulls = setBit(nulls, i);
+        }
+      }
+      if (type == Integer.class) {
+        int[] ints = new int[n];
+        for (int i = 0; i < n; i++) {
+          ints[i] = values[i] == null ? IntVector.NA : (Integer) values[i];
+        }
+        return ints(ints, nulls);
+      }
+      double[] doubles = new double[n];
+      for (int i = 0; i < n; i++) {
+        doubles[i] = values[i] == null ? DoubleVector.NA : (Double) values[i];
+      }
+      return doubles(doubles, nulls);
+    }
+    if (type == String.class) {
+      return strings(values);
+    }
+    if (type == LocalDate.class) {
+      int[] epochDays = new int[n];
+      BitSet nulls = new BitSet();
+      for (int i = 0; i < n; i++) {
+        if (values[i] == null) {
+          nulls.set(i);
+        } else {
+          epochDays[i] = (int) ((LocalDate) values[i]).toEpochDay();
+        }
+      }
+      return new DateColumn(epochDays, nulls);
+    }
+    return new ObjectColumn(values);
+  }
+
+  /**
+   * @param values the doubles, the array is used as is (not copied) when stored plain
+   * @param nulls the rows that are null, null if there are none
+   * @return a run length encoded or a plain column
+   */
+  static Column doubles(double[] values, BitSet nulls) {
+    int n = values.length;
+    RowComparator same = (a, b) -> Double.doubleToRawLongBits(values[a]) == Double.doubleToRawLongBits(values[b])
+        && isSet(nulls, a) == isSet(nulls, b);
+    if (prefersRunLength(n, same)) {
+      int runs = countRuns(n, same);
+      if ((long) runs * MIN_AVERAGE_RUN_LENGTH <= 2L * n) {
+        int[] runEnds = new int[runs];
+        double[] runValues = new double[runs];
+        BitSet runNulls = null;
+        int run = 0;
+        for (int i = 0; i < n; i++) {
+          if (i == n - 1 || !same.same(i, i + 1)) {
+            runEnds[run] = i + 1;
+            runValues[run] = values[i];
+            if (isSet(nulls, i)) {
+              runNulls = setBit(runNulls, run);
+            }
+            run++;
+          }
+        }
+        return new RunLengthColumn(runEnds, new DoubleColumn(runValues, runNulls));
+      }
+    }
+    return new DoubleColumn(values, nulls);
+  }
+
+  /**
+   * @param values the ints, the array is used as is (not copied) when stored plain
+   * @param nulls the rows that are NA, null if there are none
+   * @return a run length encoded or a plain column
+   */
+  static Column ints(int[] values, BitSet nulls) {
+    int n = values.length;
+    RowComparator same = (a, b) -> values[a] == values[b] && isSet(nulls, a) == isSet(nulls, b);
+    if (prefersRunLength(n, same)) {
+      int runs = countRuns(n, same);
+      if ((long) runs * MIN_AVERAGE_RUN_LENGTH <= 2L * n) {
+        int[] runEnds = new int[runs];
+        int[] runValues = new int[runs];
+        BitSet runNulls = null;
+        int run = 0;
+        for (int i = 0; i < n; i++) {
+          if (i == n - 1 || !same.same(i, i + 1)) {
+            runEnds[run] = i + 1;
+            runValues[run] = values[i];
+            if (isSet(nulls, i)) {
+              runNulls = setBit(runNulls, run);
+            }
+            run++;
+          }
+        }
+        return new RunLengthColumn(runEnds, new IntColumn(runValues, runNulls));
+      }
+    }
+    return new IntColumn(values, nulls);
+  }
+
+  /**
+   * @param values the strings (as Objects so that both String[] and Object[] can be passed)
+   * @return a dictionary encoded or a string heap column
+   */
+  static Column strings(Object[] values) {
+    int n = values.length;
+    if (!prefersDictionary(values)) {
+      return stringHeap(values);
+    }
+    Map<Object, Integer> codeMap = new HashMap<>();
+    List<Object> dictionary = new ArrayList<>();
+    int maxDictionarySize = n / MIN_VALUES_PER_DISTINCT * 2;
+    int[] codes = new int[n];
+    for (int i = 0; i < n; i++) {
+      Object val = values[i];
+      if (val == null) {
+        continue;
+      }
+      Integer code = codeMap.get(val);
+      if (code == null) {
+        if (dictionary.size() >= maxDictionarySize) {
+          // the sample was not representative, too many distinct values for a dictionary to pay off
+          return stringHeap(values);
+        }
+        dictionary.add(val);
+        code = dictionary.size();
+        codeMap.put(val, code);
+      }
+      codes[i] = code;
+    }
+    PackedInts packed = new PackedInts(n, PackedInts.bitsRequired(dictionary.size()));
+    for (int i = 0; i < n; i++) {
+      packed.set(i, codes[i]);
+    }
+    return new DictionaryColumn(dictionary.toArray(), packed);
+  }
+
+  /**
+   * @param heap a string column already in a string heap
+   * @return a dictionary encoded column if there are few distinct values, otherwise the heap column as is
+   */
+  static Column strings(Utf8StringColumn heap) {
+    int n = heap.size();
+    if (n < MIN_ROWS_TO_ENCODE) {
+      return heap;
+    }
+    int sampled = Math.min(n, SAMPLE_SIZE);
+    Object[] sample = new Object[sampled];
+    for (int i = 0; i < sampled; i++) {
+      sample[i] = heap.get((int) ((long) i * n / sampled));
+    }
+    if (!prefersDictionary(sample)) {
+      return heap;
+    }
+    Object[] values = new Object[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = heap.get(i);
+    }
+    Column column = strings(values);
+    return column instanceof DictionaryColumn ? column : heap;
+  }
+
+  private static Column stringHeap(Object[] values) {
+    Column column = Utf8StringColumn.create(values);
+    return column == null ? new ObjectColumn(values) : column;
+  }
+
+  private static Column factor(Vector vec, boolean contentAsStrings, int start, int end) {
+    AttributeMap attributes = vec.getAttributes();
+    Map<Symbol, SEXP> attrMap = attributes.toMap();
+    Symbol s = attrMap.keySet().stream().filter(p -> "levels".equals(p.getPrintName())).findAny().orElse(null);
+    Vector levels = (Vector) attrMap.get(s);
+    Object[] dictionary = new Object[levels.length()];
+    for (int i = 0; i < dictionary.length; i++) {
+      dictionary[i] = contentAsStrings ? levels.getElementAsString(i) : levels.getElementAsObject(i);
+    }
+    int n = end - start;
+    // factor codes are 1 based so they can be used as dictionary codes as is
+    PackedInts codes = new PackedInts(n, PackedInts.bitsRequired(dictionary.length));
+    for (int i = 0; i < n; i++) {
+      int code = vec.getElementAsInt(start + i);
+      codes.set(i, IntVector.isNA(code) ? 0 : code);
+    }
+    return new DictionaryColumn(dictionary, codes);
+  }
+
+  private static boolean prefersRunLength(int n, RowComparator same) {
+    if (n < MIN_ROWS_TO_ENCODE) {
+      return false;
+    }
+    int sampled = 0;
+    int runs = 0;
+    if (n <= SAMPLE_SIZE) {
+      sampled = n;
+      runs = countRuns(n, same);
+    } else {
+      // sample contiguous blocks spread out over the column since runs only show up in consecutive rows
+      for (int block = 0; block < SAMPLE_BLOCKS; block++) {
+        int start = (int) ((long) (n - SAMPLE_BLOCK_SIZE) * block / (SAMPLE_BLOCKS - 1));
+        runs++;
+        for (int i = start + 1; i < start + SAMPLE_BLOCK_SIZE; i++) {
+          if (!same.same(i - 1, i)) {
+            runs++;
+          }
+        }
+        sampled += SAMPLE_BLOCK_SIZE;
+      }
+    }
+    return sampled >= (long) runs * MIN_AVERAGE_RUN_LENGTH;
+  }
+
+  private static int countRuns(int n, RowComparator same) {
+    if (n == 0) {
+      return 0;
+    }
+    int runs = 1;
+    for (int i = 1; i < n; i++) {
+      if (!same.same(i - 1, i)) {
+        runs++;
+      }
+    }
+    return runs;
+  }
+
+  private static boolean prefersDictionary(Object[] values) {
+    int n = values.length;
+    if (n < MIN_ROWS_TO_ENCODE) {
+      return false;
+    }
+    int sampled = Math.min(n, SAMPLE_SIZE);
+    Set<Object> distinct = new HashSet<>();
+    for (int i = 0; i < sampled; i++) {
+      distinct.add(values[(int) ((long) i * n / sampled)]);
+    }
+    return (long) distinct.size() * MIN_VALUES_PER_DISTINCT <= sampled;
+  }
+
+  private static boolean isSet(BitSet bits, int index) {
+    return bits != null && bits.get(index);
+  }
+
+  private static BitSet setBit(BitSet bits, int index) {
+    BitSet result = bits == null ? new BitSet() : bits;
+    result.set(index);
+    return result;
+  }
+
+  @FunctionalInterface
+  private interface RowComparator {
+    boolean same(int a, int b);
+  }
+}
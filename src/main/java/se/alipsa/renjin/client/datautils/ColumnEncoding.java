@@ -0,0 +1,25 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * The way the values of a column are stored in a {@link Table}.
+ * The encoding is chosen automatically when the Table is created, based on a sample of the values,
+ * and is transparent when accessing the data (see {@link Table#getColumnEncoding(int)}).
+ */
+public enum ColumnEncoding {
+  /** Each value is stored as is, primitive values in primitive arrays. */
+  PLAIN,
+  /** Each distinct value is stored once and each cell is a bit packed reference to it. */
+  DICTIONARY,
+  /** Consecutive equal values are stored once together with the row where the run ends. */
+  RUN_LENGTH,
+  /**
+   * Strings stored as UTF-8 bytes in one contiguous buffer, a String is only created when a value is read.
+   */
+  STRING_HEAP,
+  /** Logical values stored as two bits per value (true, false or NA). */
+  BIT_PACKED,
+  /** Consecutive chunks of rows each stored in its own encoding, e.g. after rows have been appended. */
+  CHUNKED,
+  /** A row of another Table read as a column, see {@link Table#asTransposed()}. */
+  TRANSPOSED
+}
@@ -0,0 +1,717 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * An expression over the numeric, logical and date columns of a Table used to derive a new column with
+ * {@link Table#withColumn(String, ColumnExpression)} without a round trip through R, e.g.
+ * <pre>
+ * Table withRatio = table.withColumn("ratio", col("revenue").divide(col("cost")));
+ * Table withFlag = table.withColumn("late", col("delivered").minus(col("ordered")).gt(lit(30)));
+ * Table withDue = table.withColumn("due", col("ordered").plus(lit(30)));
+ * </pre>
+ * Types follow R: integer arithmetic gives integers (NA on overflow) except for division which gives doubles,
+ * comparisons and logical operators give logicals, a date plus or minus a number is a date and the difference of
+ * two dates is the number of days as a double. NA propagates through arithmetic and comparisons, and
+ * <code>and</code> / <code>or</code> use three valued logic (FALSE and NA is FALSE, TRUE or NA is TRUE).
+ * <p>
+ * The expression is evaluated a column at a time over the primitive storage of the Table, in parallel over
+ * chunks of rows.
+ * </p>
+ */
+public abstract class ColumnExpression {
+
+  /** The number of rows evaluated at a time, small enough for the intermediate arrays to stay in cache. */
+  static final int CHUNK_SIZE = 8192;
+
+  ColumnExpression() {
+    // only the nested implementations
+  }
+
+  /**
+   * @param name the name of a numeric, logical or date column
+   * @return the values of the column
+   */
+  public static ColumnExpression col(String name) {
+    return new ColumnRef(name);
+  }
+
+  public static ColumnExpression lit(int value) {
+    return new Literal(value, DataType.INTEGER, false);
+  }
+
+  public static ColumnExpression lit(double value) {
+    return new Literal(value, DataType.DOUBLE, false);
+  }
+
+  public static ColumnExpression lit(boolean value) {
+    return new Literal(value ? 1 : 0, DataType.BOOLEAN, false);
+  }
+
+  public static ColumnExpression lit(LocalDate value) {
+    return new Literal(value.toEpochDay(), DataType.DATE, false);
+  }
+
+  /**
+   * @param type the type of the NA, INTEGER, DOUBLE, BOOLEAN or DATE
+   * @return an NA value, e.g. for one of the branches of {@link #ifElse(ColumnExpression, ColumnExpression)}
+   */
+  public static ColumnExpression na(DataType type) {
+    return new Literal(0, checkType(type, "NA"), true);
+  }
+
+  public ColumnExpression plus(ColumnExpression other) {
+    return new Arithmetic(Op.PLUS, this, other);
+  }
+
+  public ColumnExpression minus(ColumnExpression other) {
+    return new Arithmetic(Op.MINUS, this, other);
+  }
+
+  public ColumnExpression times(ColumnExpression other) {
+    return new Arithmetic(Op.TIMES, this, other);
+  }
+
+  public ColumnExpression divide(ColumnExpression other) {
+    return new Arithmetic(Op.DIVIDE, this, other);
+  }
+
+  public ColumnExpression eq(ColumnExpression other) {
+    return new Comparison(Op.EQ, this, other);
+  }
+
+  public ColumnExpression ne(ColumnExpression other) {
+    return new Comparison(Op.NE, this, other);
+  }
+
+  public ColumnExpression lt(ColumnExpression other) {
+    return new Comparison(Op.LT, this, other);
+  }
+
+  public ColumnExpression le(ColumnExpression other) {
+    return new Comparison(Op.LE, this, other);
+  }
+
+  public ColumnExpression gt(ColumnExpression other) {
+    return new Comparison(Op.GT, this, other);
+  }
+
+  public ColumnExpression ge(ColumnExpression other) {
+    return new Comparison(Op.GE, this, other);
+  }
+
+  public ColumnExpression and(ColumnExpression other) {
+    return new Logical(Op.AND, this, other);
+  }
+
+  public ColumnExpression or(ColumnExpression other) {
+    return new Logical(Op.OR, this, other);
+  }
+
+  public ColumnExpression not() {
+    return new Logical(Op.NOT, this, null);
+  }
+
+  /**
+   * @return TRUE where this is NA, never NA itself
+   */
+  public ColumnExpression isNA() {
+    return new IsNA(this);
+  }
+
+  /**
+   * @param then the value where this (logical) expression is TRUE
+   * @param otherwise the value where this expression is FALSE
+   * @return then or otherwise depending on this expression, NA where this is NA
+   */
+  public ColumnExpression ifElse(ColumnExpression then, ColumnExpression otherwise) {
+    return new IfElse(this, then, otherwise);
+  }
+
+  /**
+   * @param table the table the expression is evaluated on
+   * @return the type of the values of the expression
+   * @throws IllegalArgumentException if a column does not exist or the types of an operation do not match
+   */
+  public abstract DataType getType(Table table);
+
+  /**
+   * Resolve the columns and types of the expression for the table, done once per evaluation rather than for each
+   * chunk of rows.
+   *
+   * @param table the table the expression is evaluated on
+   * @return the evaluator of chunks of rows of the table
+   */
+  abstract Evaluator bind(Table table);
+
+  /**
+   * @param table the table to evaluate the expression on
+   * @return the column of the values of the expression for each row of the table
+   */
+  Column evaluate(Table table) {
+    DataType type = getType(table);
+    Evaluator evaluator = bind(table);
+    int numRows = table.getRowSize();
+    double[] values = new double[numRows];
+    boolean[] na = new boolean[numRows];
+    int chunks = (numRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    IntStream.range(0, chunks).parallel().forEach(chunk -> {
+      int start = chunk * CHUNK_SIZE;
+      int end = Math.min(start + CHUNK_SIZE, numRows);
+      Values result = evaluator.eval(start, end);
+      System.arraycopy(result.values, 0, values, start, end - start);
+      System.arraycopy(result.na, 0, na, start, end - start);
+    });
+    BitSet nulls = null;
+    for (int row = 0; row < numRows; row++) {
+      if (na[row]) {
+        if (nulls == null) {
+          nulls = new BitSet(numRows);
+        }
+        nulls.set(row);
+        // as in the columns created from R vectors and objects
+        values[row] = DoubleVector.NA;
+      }
+    }
+    switch (type) {
+      case DOUBLE:
+        return ColumnEncoder.doubles(values, nulls);
+      case INTEGER: {
+        int[] ints = new int[numRows];
+        for (int row = 0; row < numRows; row++) {
+          ints[row] = na[row] ? IntVector.NA : (int) values[row];
+        }
+        return ColumnEncoder.ints(ints, nulls);
+      }
+      case DATE: {
+        int[] epochDays = new int[numRows];
+        for (int row = 0; row < numRows; row++) {
+          epochDays[row] = na[row] ? 0 : (int) Math.floor(values[row]);
+        }
+        return new DateColumn(epochDays, nulls);
+      }
+      default: {
+        PackedInts booleans = new PackedInts(numRows, 2);
+        for (int row = 0; row < numRows; row++) {
+          booleans.set(row, na[row] ? BooleanColumn.NA : values[row] != 0 ? BooleanColumn.TRUE : BooleanColumn.FALSE);
+        }
+        return new BooleanColumn(booleans);
+      }
+    }
+  }
+
+  private static DataType checkType(DataType type, String what) {
+    switch (type) {
+      case INTEGER:
+      case DOUBLE:
+      case BOOLEAN:
+      case DATE:
+        return type;
+      case BYTE:
+        return DataType.INTEGER;
+      default:
+        throw new IllegalArgumentException(what + " is " + type + ", only numeric, logical and date values can be "
+            + "used in an expression");
+    }
+  }
+
+  private static boolean isNumeric(DataType type) {
+    return type == DataType.INTEGER || type == DataType.DOUBLE || type == DataType.BOOLEAN;
+  }
+
+  /**
+   * The values of some rows as doubles, integers, booleans (1 or 0) and dates (epoch days) are all represented
+   * exactly, and a flag for each row that is NA.
+   */
+  static final class Values {
+    final double[] values;
+    final boolean[] na;
+
+    Values(int size) {
+      values = new double[size];
+      na = new boolean[size];
+    }
+  }
+
+  /**
+   * Evaluates an expression bound to a table.
+   */
+  @FunctionalInterface
+  interface Evaluator {
+    /**
+     * Evaluate the rows start to end, the values of the NA rows are undefined.
+     */
+    Values eval(int start, int end);
+  }
+
+  private enum Op {
+    PLUS("+"), MINUS("-"), TIMES("*"), DIVIDE("/"),
+    EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">="),
+    AND("&"), OR("|"), NOT("!");
+
+    private final String symbol;
+
+    Op(String symbol) {
+      this.symbol = symbol;
+    }
+  }
+
+  private static final class ColumnRef extends ColumnExpression {
+    private final String name;
+
+    ColumnRef(String name) {
+      this.name = name;
+    }
+
+    private int index(Table table) {
+      int idx = table.getHeaderList().indexOf(name);
+      if (idx == -1) {
+        throw new IllegalArgumentException("There is no column named " + name + ", columns are "
+            + table.getHeaderList());
+      }
+      return idx;
+    }
+
+    @Override
+    public DataType getType(Table table) {
+      return checkType(table.getColumnType(index(table)), "The column " + name);
+    }
+
+    @Override
+    Evaluator bind(Table table) {
+      Column column = table.column(index(table));
+      return (start, end) -> eval(column, start, end);
+    }
+
+    private Values eval(Column column, int start, int end) {
+      Values result = new Values(end - start);
+      double[] values = result.values;
+      boolean[] na = result.na;
+      if (column instanceof DoubleColumn) {
+        DoubleColumn doubles = (DoubleColumn) column;
+        System.arraycopy(doubles.values(), start, values, 0, end - start);
+        setNulls(doubles.nulls(), start, end, na);
+      } else if (column instanceof IntColumn) {
+        IntColumn ints = (IntColumn) column;
+        int[] source = ints.values();
+        for (int row = start; row < end; row++) {
+          values[row - start] = source[row];
+        }
+        setNulls(ints.nulls(), start, end, na);
+      } else if (column instanceof DateColumn) {
+        DateColumn dates = (DateColumn) column;
+        for (int row = start; row < end; row++) {
+          na[row - start] = dates.isNull(row);
+          values[row - start] = dates.getEpochDay(row);
+        }
+      } else {
+        for (int row = start; row < end; row++) {
+          Object value = column.get(row);
+          if (value == null) {
+            na[row - start] = true;
+          } else {
+            values[row - start] = asDouble(value);
+          }
+        }
+      }
+      return result;
+    }
+
+    private static void setNulls(BitSet nulls, int start, int end, boolean[] na) {
+      if (nulls == null) {
+        return;
+      }
+      for (int row = nulls.nextSetBit(start); row >= 0 && row < end; row = nulls.nextSetBit(row + 1)) {
+        na[row - start] = true;
+      }
+    }
+
+    private double asDouble(Object value) {
+      if (value instanceof Number) {
+        return ((Number) value).doubleValue();
+      }
+      if (value instanceof LocalDate) {
+        return ((LocalDate) value).toEpochDay();
+      }
+      if (value instanceof Boolean) {
+        return (Boolean) value ? 1 : 0;
+      }
+      try {
+        return Double.parseDouble(String.valueOf(value));
+      } catch (NumberFormatException e) {
+        throw new DataTransformationRuntimeException("The value " + value + " in the column " + name
+            + " is not a number", e);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static final class Literal extends ColumnExpression {
+    private final double value;
+    private final DataType type;
+    private final boolean na;
+
+    Literal(double value, DataType type, boolean na) {
+      this.value = value;
+      this.type = type;
+      this.na = na;
+    }
+
+    @Override
+    public DataType getType(Table table) {
+      return type;
+    }
+
+    @Override
+    Evaluator bind(Table table) {
+      return this::eval;
+    }
+
+    private Values eval(int start, int end) {
+      Values result = new Values(end - start);
+      if (na) {
+        Arrays.fill(result.na, true);
+      } else {
+        Arrays.fill(result.values, value);
+      }
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      if (na) {
+        return "NA";
+      }
+      switch (type) {
+        case INTEGER:
+          return String.valueOf((int) value);
+        case BOOLEAN:
+          return value != 0 ? "TRUE" : "FALSE";
+        case DATE:
+          return LocalDate.ofEpochDay((long) value).toString();
+        default:
+          return String.valueOf(value);
+      }
+    }
+  }
+
+  private static final class Arithmetic extends ColumnExpression {
+    private final Op op;
+    private final ColumnExpression left;
+    private final ColumnExpression right;
+
+    Arithmetic(Op op, ColumnExpression left, ColumnExpression right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public DataType getType(Table table) {
+      DataType l = left.getType(table);
+      DataType r = right.getType(table);
+      if (l == DataType.DATE || r == DataType.DATE) {
+        if (op == Op.PLUS && (l == DataType.DATE) != (r == DataType.DATE)) {
+          return DataType.DATE;
+        }
+        if (op == Op.MINUS && l == DataType.DATE) {
+          return r == DataType.DATE ? DataType.DOUBLE : DataType.DATE;
+        }
+        throw new IllegalArgumentException("Cannot evaluate " + this + " with the types " + l + " and " + r);
+      }
+      if (op != Op.DIVIDE && l != DataType.DOUBLE && r != DataType.DOUBLE) {
+        return DataType.INTEGER;
+      }
+      return DataType.DOUBLE;
+    }
+
+    @Override
+    Evaluator bind(Table table) {
+      boolean integer = getType(table) == DataType.INTEGER;
+      Evaluator l = left.bind(table);
+      Evaluator r = right.bind(table);
+      return (start, end) -> eval(integer, l.eval(start, end), r.eval(start, end), end - start);
+    }
+
+    private Values eval(boolean integer, Values a, Values b, int n) {
+      double[] x = a.values;
+      double[] y = b.values;
+      double[] values = a.values;
+      boolean[] na = a.na;
+      switch (op) {
+        case PLUS:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] + y[i];
+          }
+          break;
+        case MINUS:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] - y[i];
+          }
+          break;
+        case TIMES:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] * y[i];
+          }
+          break;
+        default:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] / y[i];
+          }
+      }
+      for (int i = 0; i < n; i++) {
+        na[i] |= b.na[i];
+      }
+      if (integer) {
+        // as in R, an integer overflow gives NA (Integer.MIN_VALUE is the integer NA in R)
+        for (int i = 0; i < n; i++) {
+          if (values[i] > Integer.MAX_VALUE || values[i] <= Integer.MIN_VALUE) {
+            na[i] = true;
+          }
+        }
+      }
+      return a;
+    }
+
+    @Override
+    public String toString() {
+      return "(" + left + " " + op.symbol + " " + right + ")";
+    }
+  }
+
+  private static final class Comparison extends ColumnExpression {
+    private final Op op;
+    private final ColumnExpression left;
+    private final ColumnExpression right;
+
+    Comparison(Op op, ColumnExpression left, ColumnExpression right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public DataType getType(Table table) {
+      DataType l = left.getType(table);
+      DataType r = right.getType(table);
+      if ((l == DataType.DATE) != (r == DataType.DATE)) {
+        throw new IllegalArgumentException("Cannot evaluate " + this + " with the types " + l + " and " + r);
+      }
+      return DataType.BOOLEAN;
+    }
+
+    @Override
+    Evaluator bind(Table table) {
+      Evaluator l = left.bind(table);
+      Evaluator r = right.bind(table);
+      return (start, end) -> eval(l.eval(start, end), r.eval(start, end), end - start);
+    }
+
+    private Values eval(Values a, Values b, int n) {
+      double[] x = a.values;
+      double[] y = b.values;
+      double[] values = a.values;
+      for (int i = 0; i < n; i++) {
+        // as in R, comparing with NaN gives NA
+        a.na[i] |= b.na[i] || Double.isNaN(x[i]) || Double.isNaN(y[i]);
+      }
+      switch (op) {
+        case EQ:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] == y[i] ? 1 : 0;
+          }
+          break;
+        case NE:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] != y[i] ? 1 : 0;
+          }
+          break;
+        case LT:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] < y[i] ? 1 : 0;
+          }
+          break;
+        case LE:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] <= y[i] ? 1 : 0;
+          }
+          break;
+        case GT:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] > y[i] ? 1 : 0;
+          }
+          break;
+        default:
+          for (int i = 0; i < n; i++) {
+            values[i] = x[i] >= y[i] ? 1 : 0;
+          }
+      }
+      return a;
+    }
+
+    @Override
+    public String toString() {
+      return "(" + left + " " + op.symbol + " " + right + ")";
+    }
+  }
+
+  private static final class Logical extends ColumnExpression {
+    private final Op op;
+    private final ColumnExpression left;
+    private final ColumnExpression right;
+
+    Logical(Op op, ColumnExpression left, ColumnExpression right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    public DataType getType(Table table) {
+      DataType l = left.getType(table);
+      DataType r = right == null ? DataType.BOOLEAN : right.getType(table);
+      if (!isNumeric(l) || !isNumeric(r)) {
+        throw new IllegalArgumentException("Cannot evaluate " + this + " with the types " + l + " and " + r);
+      }
+      return DataType.BOOLEAN;
+    }
+
+    @Override
+    Evaluator bind(Table table) {
+      Evaluator l = left.bind(table);
+      Evaluator r = right == null ? null : right.bind(table);
+      return (start, end) -> eval(l.eval(start, end), r, start, end);
+    }
+
+    private Values eval(Values a, Evaluator r, int start, int end) {
+      double[] x = a.values;
+      boolean[] xNa = a.na;
+      int n = end - start;
+      if (op == Op.NOT) {
+        for (int i = 0; i < n; i++) {
+          x[i] = x[i] == 0 ? 1 : 0;
+        }
+        return a;
+      }
+      Values b = r.eval(start, end);
+      double[] y = b.values;
+      boolean[] yNa = b.na;
+      // the result is known without the NA side if the other side is FALSE (and) or TRUE (or)
+      double decisive = op == Op.AND ? 0 : 1;
+      for (int i = 0; i < n; i++) {
+        boolean p = x[i] != 0;
+        boolean q = y[i] != 0;
+        if ((!xNa[i] && p == (decisive != 0)) || (!yNa[i] && q == (decisive != 0))) {
+          x[i] = decisive;
+          xNa[i] = false;
+        } else if (xNa[i] || yNa[i]) {
+          xNa[i] = true;
+        } else {
+          x[i] = 1 - decisive;
+        }
+      }
+      return a;
+    }
+
+    @Override
+    public String toString() {
+      return right == null ? op.symbol + left : "(" + left + " " + op.symbol + " " + right + ")";
+    }
+  }
+
+  private static final class IsNA extends ColumnExpression {
+    private final ColumnExpression expression;
+
+    IsNA(ColumnExpression expression) {
+      this.expression = expression;
+    }
+
+    @Override
+    public DataType getType(Table table) {
+      expression.getType(table);
+      return DataType.BOOLEAN;
+    }
+
+    @Override
+    Evaluator bind(Table table) {
+      Evaluator e = expression.bind(table);
+      return (start, end) -> isNA(e.eval(start, end));
+    }
+
+    private static Values isNA(Values a) {
+      for (int i = 0; i < a.na.length; i++) {
+        a.values[i] = a.na[i] ? 1 : 0;
+        a.na[i] = false;
+      }
+      return a;
+    }
+
+    @Override
+    public String toString() {
+      return "is.na(" + expression + ")";
+    }
+  }
+
+  private static final class IfElse extends ColumnExpression {
+    private final ColumnExpression condition;
+    private final ColumnExpression then;
+    private final ColumnExpression otherwise;
+
+    IfElse(ColumnExpression condition, ColumnExpression then, ColumnExpression otherwise) {
+      this.condition = condition;
+      this.then = then;
+      this.otherwise = otherwise;
+    }
+
+    @Override
+    public DataType getType(Table table) {
+      DataType c = condition.getType(table);
+      DataType t = then.getType(table);
+      DataType o = otherwise.getType(table);
+      if (!isNumeric(c)) {
+        throw new IllegalArgumentException("The condition of " + this + " is " + c);
+      }
+      if (t == o) {
+        return t;
+      }
+      if (isNumeric(t) && isNumeric(o)) {
+        return t == DataType.DOUBLE || o == DataType.DOUBLE ? DataType.DOUBLE : DataType.INTEGER;
+      }
+      throw new IllegalArgumentException("Cannot evaluate " + this + " with the types " + t + " and " + o);
+    }
+
+    @Override
+    Evaluator bind(Table table) {
+      Evaluator c = condition.bind(table);
+      Evaluator t = then.bind(table);
+      Evaluator o = otherwise.bind(table);
+      return (start, end) -> eval(c.eval(start, end), t.eval(start, end), o.eval(start, end));
+    }
+
+    private static Values eval(Values c, Values t, Values o) {
+      for (int i = 0; i < c.na.length; i++) {
+        if (!c.na[i]) {
+          boolean useThen = c.values[i] != 0;
+          c.values[i] = useThen ? t.values[i] : o.values[i];
+          c.na[i] = useThen ? t.na[i] : o.na[i];
+        }
+      }
+      return c;
+    }
+
+    @Override
+    public String toString() {
+      return "ifelse(" + condition + ", " + then + ", " + otherwise + ")";
+    }
+  }
+}
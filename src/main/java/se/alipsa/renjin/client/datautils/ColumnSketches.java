@@ -0,0 +1,199 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link HyperLogLog} distinct count and a {@link QuantileSketch} (of the numeric values) for each column of
+ * a Table, e.g. for data profiling without converting the data to R. The sketches of a Table are computed in
+ * parallel over chunks of rows (see {@link Table#sketches()}), the sketches of several Tables with the same columns
+ * can be merged and a {@link ResultSetReader} can update sketches while it reads, so that they can be read before
+ * the whole ResultSet is read. This class is thread safe.
+ */
+public final class ColumnSketches {
+
+  private static final int CHUNK_SIZE = ZoneMap.CHUNK_SIZE;
+
+  private HyperLogLog[] distinct = new HyperLogLog[0];
+  private QuantileSketch[] quantiles = new QuantileSketch[0];
+
+  /**
+   * Create empty sketches, the number of columns is set by the first update or merge.
+   */
+  public ColumnSketches() {
+    // Empty
+  }
+
+  private ColumnSketches(int numCols) {
+    ensureColumns(numCols);
+  }
+
+  static ColumnSketches of(Table table) {
+    int numCols = table.columnCount();
+    ColumnSketches sketches = new ColumnSketches(numCols);
+    int chunks = (table.getRowSize() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    for (int col = 0; col < numCols; col++) {
+      Column column = table.column(col);
+      ColumnSketches columnSketches = IntStream.range(0, chunks).parallel()
+          .mapToObj(chunk -> sketchChunk(column, chunk * CHUNK_SIZE,
+              Math.min(column.size(), (chunk + 1) * CHUNK_SIZE)))
+          .reduce(ColumnSketches::mergeColumn)
+          .orElseGet(() -> new ColumnSketches(1));
+      sketches.distinct[col] = columnSketches.distinct[0];
+      sketches.quantiles[col] = columnSketches.quantiles[0];
+    }
+    return sketches;
+  }
+
+  /**
+   * @return one column sketches of the rows start to end of the column
+   */
+  private static ColumnSketches sketchChunk(Column column, int start, int end) {
+    ColumnSketches sketches = new ColumnSketches(1);
+    HyperLogLog hll = sketches.distinct[0];
+    QuantileSketch quantile = sketches.quantiles[0];
+    if (column instanceof DoubleColumn) {
+      DoubleColumn col = (DoubleColumn) column;
+      for (int row = start; row < end; row++) {
+        double value = col.getDouble(row);
+        // NA is a NaN, NaN is not counted as a distinct value either
+        if (!col.isNull(row) && !Double.isNaN(value)) {
+          hll.addHash(Fingerprint.hashDouble(value));
+          quantile.add(value);
+        }
+      }
+    } else if (column instanceof IntColumn) {
+      IntColumn col = (IntColumn) column;
+      for (int row = start; row < end; row++) {
+        if (!col.isNull(row)) {
+          hll.addHash(Fingerprint.hashInt(col.getInt(row)));
+          quantile.add(col.getInt(row));
+        }
+      }
+    } else {
+      for (int row = start; row < end; row++) {
+        sketches.addValue(0, column.get(row));
+      }
+    }
+    return sketches;
+  }
+
+  private static ColumnSketches mergeColumn(ColumnSketches a, ColumnSketches b) {
+    a.distinct[0].merge(b.distinct[0]);
+    a.quantiles[0].merge(b.quantiles[0]);
+    return a;
+  }
+
+  private void addValue(int col, Object value) {
+    if (value == null || value instanceof Double && Double.isNaN((Double) value)) {
+      return;
+    }
+    distinct[col].add(value);
+    if (value instanceof Number) {
+      quantiles[col].add(((Number) value).doubleValue());
+    }
+  }
+
+  /**
+   * Add rows of values to the sketches.
+   *
+   * @param rows the rows, each an array with a value per column
+   * @param size the number of rows to use from the rows array
+   */
+  public void update(Object[][] rows, int size) {
+    if (size == 0) {
+      return;
+    }
+    // sketch the rows without holding the lock and then merge
+    ColumnSketches batch = new ColumnSketches(rows[0].length);
+    for (int row = 0; row < size; row++) {
+      Object[] values = rows[row];
+      for (int col = 0; col < values.length; col++) {
+        batch.addValue(col, values[col]);
+      }
+    }
+    add(batch.distinct, batch.quantiles);
+  }
+
+  /**
+   * Add all the values of the other sketches to these sketches (column by column).
+   *
+   * @param other the sketches to add
+   * @return these sketches
+   */
+  public ColumnSketches merge(ColumnSketches other) {
+    HyperLogLog[] otherDistinct;
+    QuantileSketch[] otherQuantiles;
+    synchronized (other) {
+      // copy so that the lock of other is not held while merging (and merging with itself works)
+      otherDistinct = new HyperLogLog[other.distinct.length];
+      otherQuantiles = new QuantileSketch[other.quantiles.length];
+      for (int col = 0; col < otherDistinct.length; col++) {
+        otherDistinct[col] = other.distinct[col].copy();
+        otherQuantiles[col] = other.quantiles[col].copy();
+      }
+    }
+    add(otherDistinct, otherQuantiles);
+    return this;
+  }
+
+  private synchronized void add(HyperLogLog[] otherDistinct, QuantileSketch[] otherQuantiles) {
+    ensureColumns(otherDistinct.length);
+    for (int col = 0; col < otherDistinct.length; col++) {
+      distinct[col].merge(otherDistinct[col]);
+      quantiles[col].merge(otherQuantiles[col]);
+    }
+  }
+
+  public synchronized int getColumnCount() {
+    return distinct.length;
+  }
+
+  /**
+   * @param column the column index
+   * @return a copy of the distinct count sketch of the column
+   */
+  public synchronized HyperLogLog getDistinctSketch(int column) {
+    return distinct[column].copy();
+  }
+
+  /**
+   * @param column the column index
+   * @return a copy of the quantile sketch of the column
+   */
+  public synchronized QuantileSketch getQuantileSketch(int column) {
+    return quantiles[column].copy();
+  }
+
+  /**
+   * @param column the column index
+   * @return the approximate number of distinct (non NA) values in the column
+   */
+  public synchronized long distinctCount(int column) {
+    return distinct[column].estimate();
+  }
+
+  /**
+   * @param column the column index
+   * @param fraction the quantile to get, 0 is the min, 0.5 the median and 1 the max
+   * @return the approximate value at the quantile of the numeric values in the column, NaN if there are none
+   */
+  public synchronized double quantile(int column, double fraction) {
+    return quantiles[column].quantile(fraction);
+  }
+
+  private void ensureColumns(int numCols) {
+    int current = distinct.length;
+    if (numCols <= current) {
+      return;
+    }
+    HyperLogLog[] newDistinct = Arrays.copyOf(distinct, numCols);
+    QuantileSketch[] newQuantiles = Arrays.copyOf(quantiles, numCols);
+    for (int col = current; col < numCols; col++) {
+      newDistinct[col] = new HyperLogLog();
+      newQuantiles[col] = new QuantileSketch();
+    }
+    distinct = newDistinct;
+    quantiles = newQuantiles;
+  }
+}
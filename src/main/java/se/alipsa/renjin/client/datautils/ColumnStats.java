@@ -0,0 +1,48 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * Statistics of the values of a column (or a chunk of rows of a column), see {@link Table#getColumnStats(int)}.
+ * NA values (null, and NaN for doubles) are counted but not part of min and max. Min and max are only available
+ * when all other values are of the same Comparable class (e.g. all Integers or all Strings).
+ */
+public final class ColumnStats {
+
+  private final int rowCount;
+  private final int naCount;
+  private final Object min;
+  private final Object max;
+
+  ColumnStats(int rowCount, int naCount, Object min, Object max) {
+    this.rowCount = rowCount;
+    this.naCount = naCount;
+    this.min = min;
+    this.max = max;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public int getNaCount() {
+    return naCount;
+  }
+
+  /**
+   * @return the smallest value or null if all values are NA or the values cannot be compared
+   */
+  public Object getMin() {
+    return min;
+  }
+
+  /**
+   * @return the largest value or null if all values are NA or the values cannot be compared
+   */
+  public Object getMax() {
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return "ColumnStats{rowCount=" + rowCount + ", naCount=" + naCount + ", min=" + min + ", max=" + max + "}";
+  }
+}
@@ -0,0 +1,43 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * A comparison of a numeric value to a constant, see {@link Table#getRowMask(int, CompareOp, double)}.
+ */
+public enum CompareOp {
+  EQ("=="),
+  NE("!="),
+  LT("<"),
+  LE("<="),
+  GT(">"),
+  GE(">=");
+
+  private final String symbol;
+
+  CompareOp(String symbol) {
+    this.symbol = symbol;
+  }
+
+  /**
+   * @return true if the comparison of a to b holds, false if either is NaN
+   */
+  boolean test(double a, double b) {
+    switch (this) {
+      case EQ:
+        return a == b;
+      case NE:
+        return a < b || a > b;
+      case LT:
+        return a < b;
+      case LE:
+        return a <= b;
+      case GT:
+        return a > b;
+      default:
+        return a >= b;
+    }
+  }
+
+  public String getSymbol() {
+    return symbol;
+  }
+}
@@ -0,0 +1,34 @@
+package se.alipsa.renjin.client.datautils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event emitted for each conversion, enable it in a recording with e.g.
+ * <code>jcmd &lt;pid&gt; JFR.start settings=profile +se.alipsa.renjin.client.datautils.Conversion#enabled=true</code>
+ * or by enabling the event in a custom .jfc file.
+ */
+@Name("se.alipsa.renjin.client.datautils.Conversion")
+@Label("Renjin Data Conversion")
+@Category({"Renjin", "Data Conversion"})
+@Description("Conversion between R data and Java Tables or row lists")
+@StackTrace(false)
+class ConversionEvent extends jdk.jfr.Event {
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Rows")
+  int rows;
+
+  @Label("Columns")
+  int columns;
+
+  @Label("Allocated")
+  @DataAmount
+  long bytesAllocated;
+}
@@ -0,0 +1,15 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * A listener that gets notified each time a conversion between R data and Java (a Table or a List of rows)
+ * has completed. Register it using {@link ConversionMonitor#setListener(ConversionListener)}.
+ * The listener is called on the thread doing the conversion, so it should return quickly.
+ */
+@FunctionalInterface
+public interface ConversionListener {
+
+  /**
+   * @param metrics the measurements of the conversion that just completed
+   */
+  void conversionCompleted(ConversionMetrics metrics);
+}
@@ -0,0 +1,58 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * The measurements of one conversion e.g. a Table created from a data.frame, see {@link ConversionListener}.
+ */
+public class ConversionMetrics {
+
+  private final String operation;
+  private final int rows;
+  private final int columns;
+  private final long elapsedNanos;
+  private final long bytesAllocated;
+
+  public ConversionMetrics(String operation, int rows, int columns, long elapsedNanos, long bytesAllocated) {
+    this.operation = operation;
+    this.rows = rows;
+    this.columns = columns;
+    this.elapsedNanos = elapsedNanos;
+    this.bytesAllocated = bytesAllocated;
+  }
+
+  /**
+   * @return the name of the conversion e.g. "Table.createTable" or "RDataTransformer.toDataframe"
+   */
+  public String getOperation() {
+    return operation;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * @return the number of bytes allocated by the converting thread during the conversion
+   * or -1 if the JVM does not support measuring thread allocation
+   */
+  public long getBytesAllocated() {
+    return bytesAllocated;
+  }
+
+  public double getRowsPerSecond() {
+    return elapsedNanos == 0 ? 0 : rows * 1_000_000_000.0 / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return operation + ": " + rows + " rows, " + columns + " columns in " + elapsedNanos / 1_000_000.0 + " ms"
+        + (bytesAllocated < 0 ? "" : ", " + bytesAllocated + " bytes allocated");
+  }
+}
@@ -0,0 +1,151 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import jdk.jfr.EventType;
+
+/**
+ * Instrumentation of the conversions done by {@link Table} and {@link RDataTransformer}.
+ * Each conversion emits a {@link ConversionEvent} to the JDK Flight Recorder (when the event is enabled
+ * in a recording) and calls the registered {@link ConversionListener} (if any), e.g.
+ * <pre>
+ * ConversionMonitor.setListener(m -&gt; meterRegistry.timer(m.getOperation()).record(m.getElapsedNanos(), NANOSECONDS));
+ * </pre>
+ * When there is no listener and the event is not enabled the overhead is a field read and a flag check
+ * per conversion, nothing is allocated.
+ * A conversion done as part of another one on the same thread (e.g. the Table(ListVector) constructor called by
+ * Table.createTable) is not reported separately, it is included in the outer conversion. Conversions that spread
+ * their work over other threads mark it as part of them with {@link #within(Probe)}.
+ */
+public final class ConversionMonitor {
+
+  private static volatile ConversionListener listener;
+
+  private static final EventType EVENT_TYPE = EventType.getEventType(ConversionEvent.class);
+  // the outermost conversion in progress on the thread, only set while monitoring
+  private static final ThreadLocal<Probe> ACTIVE = new ThreadLocal<>();
+
+  private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = allocationBean();
+
+  private ConversionMonitor() {
+    // Utility class
+  }
+
+  /**
+   * @param conversionListener the listener to notify after each conversion, null to remove the current one
+   */
+  public static void setListener(ConversionListener conversionListener) {
+    listener = conversionListener;
+  }
+
+  public static ConversionListener getListener() {
+    return listener;
+  }
+
+  static Probe start(String operation) {
+    ConversionListener currentListener = listener;
+    if (currentListener == null && !EVENT_TYPE.isEnabled()) {
+      return Probe.NOOP;
+    }
+    if (ACTIVE.get() != null) {
+      // nested in another conversion which reports it
+      return Probe.NOOP;
+    }
+    Probe probe = new Probe(operation, currentListener, new ConversionEvent());
+    ACTIVE.set(probe);
+    return probe;
+  }
+
+  /**
+   * Mark the conversion of the probe as in progress on the current thread too, e.g. a worker thread doing part of
+   * it, so that the conversions done on the thread are not reported separately. Close the returned probe when the
+   * thread is done with its part.
+   *
+   * @param outer the probe of the conversion started on another thread
+   * @return the probe to close
+   */
+  static Probe within(Probe outer) {
+    if (outer.event == null || ACTIVE.get() != null) {
+      return Probe.NOOP;
+    }
+    ACTIVE.set(outer);
+    // closing the outer probe on this thread only clears this thread
+    return outer;
+  }
+
+  private static long allocatedBytes() {
+    return ALLOCATION_BEAN == null ? -1 : ALLOCATION_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static com.sun.management.ThreadMXBean allocationBean() {
+    try {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+          return sunBean;
+        }
+      }
+    } catch (RuntimeException | LinkageError e) {
+      // jdk.management is not available, we just skip measuring allocations
+    }
+    return null;
+  }
+
+  /**
+   * Measures one conversion, created at the start of it by {@link #start(String)}
+   * and completed by calling {@link #end(int, int)}. Closing the probe ends the conversion on the thread also
+   * when it failed before reaching {@link #end(int, int)}, use it in a try-with-resources block.
+   */
+  static final class Probe implements AutoCloseable {
+
+    static final Probe NOOP = new Probe(null, null, null);
+
+    private final String operation;
+    private final ConversionListener listener;
+    private final ConversionEvent event;
+    private final long startNanos;
+    private final long startBytes;
+
+    private Probe(String operation, ConversionListener listener, ConversionEvent event) {
+      this.operation = operation;
+      this.listener = listener;
+      this.event = event;
+      if (event == null) {
+        startNanos = 0;
+        startBytes = 0;
+      } else {
+        startBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+        event.begin();
+      }
+    }
+
+    void end(int rows, int columns) {
+      if (event == null) {
+        return;
+      }
+      long elapsed = System.nanoTime() - startNanos;
+      long bytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = operation;
+        event.rows = rows;
+        event.columns = columns;
+        event.bytesAllocated = bytes;
+        event.commit();
+      }
+      if (listener != null) {
+        listener.conversionCompleted(new ConversionMetrics(operation, rows, columns, elapsed, bytes));
+      }
+    }
+
+    @Override
+    public void close() {
+      if (event != null && ACTIVE.get() == this) {
+        ACTIVE.remove();
+      }
+    }
+  }
+}
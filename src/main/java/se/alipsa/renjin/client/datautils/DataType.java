@@ -15,7 +15,9 @@ public enum DataType {
   DOUBLE("double", DoubleVector.VECTOR_TYPE),
   STRING("character", StringVector.VECTOR_TYPE),
   BYTE("raw", RawVector.VECTOR_TYPE),
-  UNKNOWN("character", StringVector.VECTOR_TYPE);
+  UNKNOWN("character", StringVector.VECTOR_TYPE),
+  /** A Date (number of days since 1970-01-01) which is a double vector with the class "Date" in R */
+  DATE("double", DoubleVector.VECTOR_TYPE);
 
   private final String rtypeName;
   private final Vector.Type vectorType;
@@ -69,6 +71,28 @@ public enum DataType {
     }
   }
 
+  /**
+   * @return the java.sql.Types constant used when writing this type to a database
+   */
+  public int getSqlType() {
+    switch (this) {
+      case INTEGER:
+        return Types.INTEGER;
+      case BOOLEAN:
+        return Types.BOOLEAN;
+      case DOUBLE:
+        return Types.DOUBLE;
+      case STRING:
+        return Types.VARCHAR;
+      case BYTE:
+        return Types.TINYINT;
+      case DATE:
+        return Types.DATE;
+      default:
+        return Types.OTHER;
+    }
+  }
+
   public String getRtypeName() {
     return rtypeName;
   }
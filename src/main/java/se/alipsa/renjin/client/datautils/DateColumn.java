@@ -0,0 +1,53 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+
+/**
+ * A column of dates stored as epoch days in a primitive array, the values are returned as LocalDate.
+ */
+final class DateColumn extends Column {
+
+  private final int[] epochDays;
+  private final BitSet nulls;
+
+  /**
+   * @param epochDays the dates as days since 1970-01-01
+   * @param nulls the rows that are NA or null if there are none
+   */
+  DateColumn(int[] epochDays, BitSet nulls) {
+    this.epochDays = epochDays;
+    this.nulls = nulls;
+  }
+
+  @Override
+  int size() {
+    return epochDays.length;
+  }
+
+  @Override
+  Object get(int row) {
+    if (nulls != null && nulls.get(row)) {
+      return null;
+    }
+    return LocalDate.ofEpochDay(epochDays[row]);
+  }
+
+  boolean isNull(int row) {
+    return nulls != null && nulls.get(row);
+  }
+
+  int getEpochDay(int row) {
+    return epochDays[row];
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.PLAIN;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    return 16 + epochDays.length * 4L + (nulls == null ? 0 : nulls.size() / 8);
+  }
+}
@@ -0,0 +1,915 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads delimited text (csv, tsv etc.) in UTF-8 into a Table.
+ * The file is memory mapped and split at line boundaries into segments that are parsed in parallel
+ * straight into typed columns, i.e. numbers are parsed from the bytes without creating Strings
+ * and text is copied as is into a UTF-8 string heap.
+ * <p>
+ * Unless the column types are given, they are inferred from the first lines of the file in the same way as
+ * {@link Table#withInferredTypes(List, List)}. If a value further down in the file does not fit the inferred type,
+ * the column is widened (integer to double, anything else to string) and the file is parsed again.
+ * Given column types are not widened, a value that does not fit its column type is an error.
+ * </p>
+ * Quoted values may contain delimiters and escaped quotes (""). Since a segment boundary cannot be found reliably
+ * if quoted values also span lines, such files must be read with {@link #quotedNewlines(boolean)} set to true
+ * which parses the file in one segment.
+ * <pre>
+ * Table table = DelimitedTextReader.csv().read(Paths.get("data.csv"));
+ * </pre>
+ */
+public class DelimitedTextReader {
+
+  private static final int SAMPLE_LINES = 1000;
+  private static final long MIN_SEGMENT_SIZE = 1 << 20;
+  private static final long MAX_SEGMENT_SIZE = 1 << 30;
+  private static final int SCAN_WINDOW = 1 << 16;
+
+  private byte delimiter;
+  private byte quote = '"';
+  private boolean header = true;
+  private boolean quotedNewlines = false;
+  private List<DataType> columnTypes;
+  private int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+
+  public DelimitedTextReader(char delimiter) {
+    this.delimiter = asciiByte(delimiter);
+  }
+
+  /**
+   * @return a reader of comma separated values with a header line
+   */
+  public static DelimitedTextReader csv() {
+    return new DelimitedTextReader(',');
+  }
+
+  /**
+   * @return a reader of tab separated values with a header line
+   */
+  public static DelimitedTextReader tsv() {
+    return new DelimitedTextReader('\t');
+  }
+
+  public DelimitedTextReader quote(char quoteChar) {
+    this.quote = asciiByte(quoteChar);
+    return this;
+  }
+
+  /**
+   * @param hasHeader whether the first line contains the column names, if not the columns are named V1, V2 etc.
+   * @return this reader
+   */
+  public DelimitedTextReader header(boolean hasHeader) {
+    this.header = hasHeader;
+    return this;
+  }
+
+  /**
+   * @param allowed whether quoted values may contain line breaks, if true the file is parsed by one thread
+   * @return this reader
+   */
+  public DelimitedTextReader quotedNewlines(boolean allowed) {
+    this.quotedNewlines = allowed;
+    return this;
+  }
+
+  /**
+   * @param types the type of each column, null to infer the types from the data. Reading fails with a
+   *              DataTransformationRuntimeException if a value cannot be parsed as the type of its column.
+   * @return this reader
+   */
+  public DelimitedTextReader columnTypes(List<DataType> types) {
+    this.columnTypes = types == null ? null : new ArrayList<>(types);
+    return this;
+  }
+
+  /**
+   * @param numSegments the max number of segments the file is split into and parsed in parallel
+   * @return this reader
+   */
+  public DelimitedTextReader parallelism(int numSegments) {
+    if (numSegments < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1 but was " + numSegments);
+    }
+    this.parallelism = numSegments;
+    return this;
+  }
+
+  public Table read(Path file) throws IOException {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("DelimitedTextReader.read");
+         FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long dataStart = 0;
+      List<String> headerList = null;
+      if (header) {
+        long headerEnd = nextLineStart(channel, 0, size);
+        headerList = parseHeader(map(channel, 0, headerEnd));
+        dataStart = headerEnd;
+      }
+      List<DataType> types = columnTypes;
+      if (headerList == null && types != null) {
+        headerList = defaultNames(types.size());
+      } else if (types == null) {
+        List<List<String>> sample = sampleLines(channel, dataStart, size, headerList == null ? -1 : headerList.size());
+        if (headerList == null) {
+          headerList = defaultNames(sample.isEmpty() ? 0 : sample.get(0).size());
+        }
+        types = inferTypes(sample, headerList.size());
+      }
+      if (types.size() != headerList.size()) {
+        throw new IllegalArgumentException("There are " + types.size() + " column types but "
+            + headerList.size() + " columns in " + file);
+      }
+      Table table = parse(channel, headerList, types, split(channel, dataStart, size));
+      probe.end(table.getRowSize(), table.getHeaderSize());
+      return table;
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private Table parse(FileChannel channel, List<String> headerList, List<DataType> dataTypes, List<long[]> segments) {
+    List<DataType> types = new ArrayList<>(dataTypes);
+    while (true) {
+      List<DataType> parseTypes = types;
+      List<ColumnChunk[]> parsed = segments.parallelStream()
+          .map(segment -> {
+            ColumnChunk[] chunks = chunks(parseTypes);
+            parseLines(map(channel, segment[0], segment[1]), chunks, Integer.MAX_VALUE);
+            return chunks;
+          })
+          .collect(Collectors.toList());
+      if (columnTypes != null) {
+        checkParsed(headerList, types, parsed);
+        return merge(headerList, types, parsed);
+      }
+      boolean widened = false;
+      for (int col = 0; col < types.size(); col++) {
+        for (ColumnChunk[] chunks : parsed) {
+          if (chunks[col].failed) {
+            types.set(col, types.get(col) == DataType.INTEGER ? DataType.DOUBLE : DataType.STRING);
+            widened = true;
+            break;
+          }
+        }
+      }
+      if (!widened) {
+        return merge(headerList, types, parsed);
+      }
+    }
+  }
+
+  /**
+   * Throw for the first value that could not be parsed as the given type of its column.
+   */
+  private static void checkParsed(List<String> headerList, List<DataType> types, List<ColumnChunk[]> parsed) {
+    int offset = 0;
+    for (ColumnChunk[] chunks : parsed) {
+      int col = -1;
+      for (int i = 0; i < chunks.length; i++) {
+        if (chunks[i].failedRow >= 0 && (col < 0 || chunks[i].failedRow < chunks[col].failedRow)) {
+          col = i;
+        }
+      }
+      if (col >= 0) {
+        throw new DataTransformationRuntimeException("The value " + chunks[col].failedValue + " in row "
+            + (offset + chunks[col].failedRow) + " of the column " + headerList.get(col) + " is not a valid "
+            + types.get(col).name());
+      }
+      offset += chunks.length == 0 ? 0 : chunks[0].size;
+    }
+  }
+
+  private static Table merge(List<String> headerList, List<DataType> types, List<ColumnChunk[]> parsed) {
+    int rowCount = 0;
+    for (ColumnChunk[] chunks : parsed) {
+      rowCount += chunks.length == 0 ? 0 : chunks[0].size;
+    }
+    int numRows = rowCount;
+    List<Column> columns = Arrays.asList(new Column[types.size()]);
+    IntStream.range(0, types.size()).parallel().forEach(col -> {
+      List<ColumnChunk> columnChunks = new ArrayList<>(parsed.size());
+      for (ColumnChunk[] chunks : parsed) {
+        columnChunks.add(chunks[col]);
+      }
+      columns.set(col, columnChunks.get(0).merge(columnChunks, numRows));
+    });
+    List<DataType> columnTypes = new ArrayList<>(types);
+    columnTypes.replaceAll(t -> t == DataType.UNKNOWN ? DataType.STRING : t);
+    return new Table(new ArrayList<>(headerList), columnTypes, new ArrayList<>(columns), numRows);
+  }
+
+  private static ColumnChunk[] chunks(List<DataType> types) {
+    ColumnChunk[] chunks = new ColumnChunk[types.size()];
+    for (int i = 0; i < chunks.length; i++) {
+      switch (types.get(i)) {
+        case INTEGER: chunks[i] = new IntChunk(); break;
+        case DOUBLE: chunks[i] = new DoubleChunk(); break;
+        case BOOLEAN: chunks[i] = new BooleanChunk(); break;
+        case DATE: chunks[i] = new DateChunk(); break;
+        default: chunks[i] = new StringChunk();
+      }
+    }
+    return chunks;
+  }
+
+  /**
+   * Parse the lines in the buffer into the chunks, one per column.
+   * Missing values at the end of a line are NA and values beyond the number of columns are ignored.
+   *
+   * @return the number of lines parsed
+   */
+  private int parseLines(ByteBuffer buf, ColumnChunk[] chunks, int maxLines) {
+    int pos = 0;
+    int limit = buf.limit();
+    int lines = 0;
+    byte[] field = new byte[256];
+    while (pos < limit && lines < maxLines) {
+      byte b = buf.get(pos);
+      if (b == '\n' || b == '\r') {
+        // skip empty lines
+        pos++;
+        continue;
+      }
+      int col = 0;
+      boolean endOfLine = false;
+      while (!endOfLine) {
+        int len = 0;
+        boolean quoted = pos < limit && buf.get(pos) == quote;
+        if (quoted) {
+          pos++;
+          while (pos < limit) {
+            byte c = buf.get(pos++);
+            if (c == quote) {
+              if (pos < limit && buf.get(pos) == quote) {
+                pos++;
+              } else {
+                break;
+              }
+            }
+            if (len == field.length) {
+              field = Arrays.copyOf(field, len * 2);
+            }
+            field[len++] = c;
+          }
+        }
+        // for a quoted value this skips whatever follows the closing quote
+        while (pos < limit) {
+          byte c = buf.get(pos);
+          if (c == delimiter || c == '\n' || c == '\r') {
+            break;
+          }
+          if (!quoted) {
+            if (len == field.length) {
+              field = Arrays.copyOf(field, len * 2);
+            }
+            field[len++] = c;
+          }
+          pos++;
+        }
+        if (col < chunks.length) {
+          chunks[col].append(field, len, quoted);
+        }
+        col++;
+        if (pos < limit && buf.get(pos) == delimiter) {
+          pos++;
+        } else {
+          if (pos < limit && buf.get(pos) == '\r') {
+            pos++;
+          }
+          if (pos < limit && buf.get(pos) == '\n') {
+            pos++;
+          }
+          endOfLine = true;
+        }
+      }
+      for (; col < chunks.length; col++) {
+        chunks[col].appendNA();
+      }
+      lines++;
+    }
+    return lines;
+  }
+
+  private List<String> parseHeader(ByteBuffer buf) {
+    List<List<String>> lines = parseStrings(buf, 1, -1);
+    List<String> names = lines.isEmpty() ? new ArrayList<>() : lines.get(0);
+    names.replaceAll(name -> name == null ? "NA" : name);
+    return names;
+  }
+
+  private static List<String> defaultNames(int numCols) {
+    List<String> names = new ArrayList<>(numCols);
+    for (int i = 1; i <= numCols; i++) {
+      names.add("V" + i);
+    }
+    return names;
+  }
+
+  private List<List<String>> sampleLines(FileChannel channel, long start, long size, int numCols) {
+    long end = start;
+    int lines = 0;
+    while (end < size && lines < SAMPLE_LINES) {
+      end = nextLineStart(channel, end, size);
+      lines++;
+    }
+    return parseStrings(map(channel, start, end), SAMPLE_LINES, numCols);
+  }
+
+  private List<List<String>> parseStrings(ByteBuffer buf, int maxLines, int numCols) {
+    int cols = numCols;
+    if (cols < 0) {
+      // count the fields of the first line
+      cols = 1;
+      boolean inQuotes = false;
+      for (int pos = 0; pos < buf.limit(); pos++) {
+        byte c = buf.get(pos);
+        if (c == quote) {
+          inQuotes = !inQuotes;
+        } else if (!inQuotes && c == delimiter) {
+          cols++;
+        } else if (!inQuotes && (c == '\n' || c == '\r')) {
+          if (pos > 0) {
+            break;
+          }
+        }
+      }
+    }
+    StringChunk[] chunks = new StringChunk[cols];
+    for (int i = 0; i < cols; i++) {
+      chunks[i] = new StringChunk();
+    }
+    int numLines = parseLines(buf, chunks, maxLines);
+    Utf8StringColumn[] columns = new Utf8StringColumn[cols];
+    for (int i = 0; i < cols; i++) {
+      columns[i] = chunks[i].toColumn();
+    }
+    List<List<String>> lines = new ArrayList<>(numLines);
+    for (int row = 0; row < numLines; row++) {
+      List<String> line = new ArrayList<>(cols);
+      for (Utf8StringColumn column : columns) {
+        line.add((String) column.get(row));
+      }
+      lines.add(line);
+    }
+    return lines;
+  }
+
+  private static List<DataType> inferTypes(List<List<String>> sample, int numCols) {
+    List<DataType> types = new ArrayList<>(numCols);
+    for (int col = 0; col < numCols; col++) {
+      Object[] values = new Object[sample.size()];
+      for (int row = 0; row < values.length; row++) {
+        values[row] = sample.get(row).get(col);
+      }
+      DataType type = TypeInference.sampleType(values);
+      types.add(type == DataType.UNKNOWN ? DataType.STRING : type);
+    }
+    return types;
+  }
+
+  /**
+   * Split the data into segments of whole lines.
+   *
+   * @return a list of [start, end) positions in the file
+   */
+  private List<long[]> split(FileChannel channel, long start, long size) {
+    long length = size - start;
+    int numSegments = 1;
+    if (!quotedNewlines) {
+      numSegments = (int) Math.max(1, Math.min(parallelism, length / MIN_SEGMENT_SIZE));
+    }
+    numSegments = (int) Math.max(numSegments, (length + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+    List<long[]> segments = new ArrayList<>(numSegments);
+    long segmentStart = start;
+    for (int i = 1; i <= numSegments && segmentStart < size; i++) {
+      long segmentEnd = i == numSegments ? size : nextLineStart(channel, start + length * i / numSegments, size);
+      if (segmentEnd > segmentStart) {
+        segments.add(new long[]{segmentStart, segmentEnd});
+        segmentStart = segmentEnd;
+      }
+    }
+    if (segments.isEmpty()) {
+      segments.add(new long[]{start, start});
+    }
+    if (quotedNewlines && segments.size() > 1) {
+      throw new IllegalArgumentException("Files larger than " + MAX_SEGMENT_SIZE
+          + " bytes can not be read with quoted newlines");
+    }
+    return segments;
+  }
+
+  /**
+   * @return the position after the first line break at or after pos, or size if there is none
+   */
+  private static long nextLineStart(FileChannel channel, long pos, long size) {
+    ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+    long offset = pos;
+    try {
+      while (offset < size) {
+        window.clear();
+        int read = channel.read(window, offset);
+        if (read <= 0) {
+          break;
+        }
+        for (int i = 0; i < read; i++) {
+          if (window.get(i) == '\n') {
+            return offset + i + 1;
+          }
+        }
+        offset += read;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return size;
+  }
+
+  private static ByteBuffer map(FileChannel channel, long start, long end) {
+    try {
+      return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static byte asciiByte(char c) {
+    if (c > 127 || c == '\n' || c == '\r') {
+      throw new IllegalArgumentException("Delimiters and quotes must be ascii characters other than line breaks");
+    }
+    return (byte) c;
+  }
+
+  private static boolean isNA(byte[] field, int len, boolean quoted) {
+    return len == 0 || (!quoted && len == 2 && field[0] == 'N' && field[1] == 'A');
+  }
+
+  private static boolean equalsAny(byte[] field, int len, String... candidates) {
+    for (String candidate : candidates) {
+      if (candidate.length() == len) {
+        int i = 0;
+        while (i < len && field[i] == candidate.charAt(i)) {
+          i++;
+        }
+        if (i == len) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The values of one column in one segment.
+   */
+  private abstract static class ColumnChunk {
+    int size;
+    boolean failed;
+    // the index and text of the first value that could not be parsed, -1 if there is none
+    int failedRow = -1;
+    String failedValue;
+
+    final void append(byte[] field, int len, boolean quoted) {
+      ensureCapacity();
+      if (!parse(field, len, quoted)) {
+        if (!failed) {
+          failed = true;
+          failedRow = size;
+          failedValue = new String(field, 0, len, StandardCharsets.UTF_8);
+        }
+        setNA();
+      }
+      size++;
+    }
+
+    final void appendNA() {
+      ensureCapacity();
+      setNA();
+      size++;
+    }
+
+    /**
+     * Set the value at index size, return false if it cannot be parsed.
+     */
+    abstract boolean parse(byte[] field, int len, boolean quoted);
+
+    abstract void setNA();
+
+    abstract void ensureCapacity();
+
+    abstract Column merge(List<ColumnChunk> chunks, int rowCount);
+
+    static BitSet mergeNulls(List<? extends ColumnChunk> chunks, List<BitSet> nulls) {
+      BitSet merged = null;
+      int offset = 0;
+      for (int i = 0; i < chunks.size(); i++) {
+        BitSet bits = nulls.get(i);
+        for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+          if (merged == null) {
+            merged = new BitSet();
+          }
+          merged.set(offset + bit);
+        }
+        offset += chunks.get(i).size;
+      }
+      return merged;
+    }
+  }
+
+  private static final class IntChunk extends ColumnChunk {
+    private int[] values = new int[1024];
+    private final BitSet nulls = new BitSet();
+
+    @Override
+    boolean parse(byte[] field, int len, boolean quoted) {
+      if (isNA(field, len, quoted)) {
+        setNA();
+        return true;
+      }
+      int pos = 0;
+      boolean negative = false;
+      if (field[0] == '-' || field[0] == '+') {
+        negative = field[0] == '-';
+        pos++;
+      }
+      if (pos == len || len - pos > 10) {
+        return false;
+      }
+      long value = 0;
+      for (; pos < len; pos++) {
+        int digit = field[pos] - '0';
+        if (digit < 0 || digit > 9) {
+          return false;
+        }
+        value = value * 10 + digit;
+      }
+      // Integer.MIN_VALUE is NA in R
+      if (value > Integer.MAX_VALUE) {
+        return false;
+      }
+      values[size] = (int) (negative ? -value : value);
+      return true;
+    }
+
+    @Override
+    void setNA() {
+      nulls.set(size);
+    }
+
+    @Override
+    void ensureCapacity() {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+    }
+
+    @Override
+    Column merge(List<ColumnChunk> chunks, int rowCount) {
+      int[] merged = new int[rowCount];
+      List<BitSet> nullList = new ArrayList<>(chunks.size());
+      int offset = 0;
+      for (ColumnChunk chunk : chunks) {
+        IntChunk c = (IntChunk) chunk;
+        System.arraycopy(c.values, 0, merged, offset, c.size);
+        nullList.add(c.nulls);
+        offset += c.size;
+      }
+      return ColumnEncoder.ints(merged, mergeNulls(chunks, nullList));
+    }
+  }
+
+  private static final class DoubleChunk extends ColumnChunk {
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+      POWERS_OF_TEN[0] = 1;
+      for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+        POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+      }
+    }
+
+    private double[] values = new double[1024];
+    private final BitSet nulls = new BitSet();
+
+    @Override
+    boolean parse(byte[] field, int len, boolean quoted) {
+      if (isNA(field, len, quoted)) {
+        setNA();
+        return true;
+      }
+      if (equalsAny(field, len, "NaN", "Inf", "+Inf", "-Inf")) {
+        values[size] = field[0] == 'N' ? Double.NaN
+            : field[0] == '-' ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        return true;
+      }
+      int pos = 0;
+      boolean negative = false;
+      if (field[0] == '-' || field[0] == '+') {
+        negative = field[0] == '-';
+        pos++;
+      }
+      long mantissa = 0;
+      int significantDigits = 0;
+      int digits = 0;
+      int scale = 0;
+      boolean seenDot = false;
+      for (; pos < len; pos++) {
+        byte c = field[pos];
+        if (c >= '0' && c <= '9') {
+          digits++;
+          if (mantissa != 0 || c != '0') {
+            significantDigits++;
+          }
+          if (significantDigits <= 18) {
+            mantissa = mantissa * 10 + (c - '0');
+            if (seenDot) {
+              scale--;
+            }
+          } else if (!seenDot) {
+            scale++;
+          }
+        } else if (c == '.' && !seenDot) {
+          seenDot = true;
+        } else {
+          break;
+        }
+      }
+      if (digits == 0) {
+        return false;
+      }
+      int exponent = 0;
+      if (pos < len) {
+        if (field[pos] != 'e' && field[pos] != 'E') {
+          return false;
+        }
+        pos++;
+        boolean negativeExponent = false;
+        if (pos < len && (field[pos] == '-' || field[pos] == '+')) {
+          negativeExponent = field[pos] == '-';
+          pos++;
+        }
+        if (pos == len) {
+          return false;
+        }
+        for (; pos < len; pos++) {
+          int digit = field[pos] - '0';
+          if (digit < 0 || digit > 9) {
+            return false;
+          }
+          if (exponent < 100_000) {
+            exponent = exponent * 10 + digit;
+          }
+        }
+        if (negativeExponent) {
+          exponent = -exponent;
+        }
+      }
+      int totalScale = scale + exponent;
+      double value;
+      if (significantDigits <= 15 && Math.abs(totalScale) < POWERS_OF_TEN.length) {
+        // exact since both the mantissa and the power of ten are exactly representable as doubles
+        value = totalScale >= 0 ? mantissa * POWERS_OF_TEN[totalScale] : mantissa / POWERS_OF_TEN[-totalScale];
+        if (negative) {
+          value = -value;
+        }
+      } else {
+        value = Double.parseDouble(new String(field, 0, len, StandardCharsets.US_ASCII));
+      }
+      values[size] = value;
+      return true;
+    }
+
+    @Override
+    void setNA() {
+      nulls.set(size);
+    }
+
+    @Override
+    void ensureCapacity() {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+    }
+
+    @Override
+    Column merge(List<ColumnChunk> chunks, int rowCount) {
+      double[] merged = new double[rowCount];
+      List<BitSet> nullList = new ArrayList<>(chunks.size());
+      int offset = 0;
+      for (ColumnChunk chunk : chunks) {
+        DoubleChunk c = (DoubleChunk) chunk;
+        System.arraycopy(c.values, 0, merged, offset, c.size);
+        nullList.add(c.nulls);
+        offset += c.size;
+      }
+      return ColumnEncoder.doubles(merged, mergeNulls(chunks, nullList));
+    }
+  }
+
+  private static final class BooleanChunk extends ColumnChunk {
+    private byte[] values = new byte[1024];
+
+    @Override
+    boolean parse(byte[] field, int len, boolean quoted) {
+      if (isNA(field, len, quoted)) {
+        setNA();
+        return true;
+      }
+      if (equalsAny(field, len, "TRUE", "True", "true")) {
+        values[size] = (byte) BooleanColumn.TRUE;
+        return true;
+      }
+      if (equalsAny(field, len, "FALSE", "False", "false")) {
+        values[size] = (byte) BooleanColumn.FALSE;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    void setNA() {
+      values[size] = (byte) BooleanColumn.NA;
+    }
+
+    @Override
+    void ensureCapacity() {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+    }
+
+    @Override
+    Column merge(List<ColumnChunk> chunks, int rowCount) {
+      PackedInts packed = new PackedInts(rowCount, 2);
+      int offset = 0;
+      for (ColumnChunk chunk : chunks) {
+        BooleanChunk c = (BooleanChunk) chunk;
+        for (int i = 0; i < c.size; i++) {
+          packed.set(offset + i, c.values[i]);
+        }
+        offset += c.size;
+      }
+      return new BooleanColumn(packed);
+    }
+  }
+
+  private static final class DateChunk extends ColumnChunk {
+    private int[] epochDays = new int[1024];
+    private final BitSet nulls = new BitSet();
+
+    @Override
+    boolean parse(byte[] field, int len, boolean quoted) {
+      if (isNA(field, len, quoted)) {
+        setNA();
+        return true;
+      }
+      // yyyy-MM-dd
+      if (len != 10 || field[4] != '-' || field[7] != '-') {
+        return false;
+      }
+      int year = digits(field, 0, 4);
+      int month = digits(field, 5, 7);
+      int day = digits(field, 8, 10);
+      if (year < 0 || month < 0 || day < 0) {
+        return false;
+      }
+      try {
+        epochDays[size] = (int) LocalDate.of(year, month, day).toEpochDay();
+        return true;
+      } catch (DateTimeException e) {
+        return false;
+      }
+    }
+
+    private static int digits(byte[] field, int from, int to) {
+      int value = 0;
+      for (int i = from; i < to; i++) {
+        int digit = field[i] - '0';
+        if (digit < 0 || digit > 9) {
+          return -1;
+        }
+        value = value * 10 + digit;
+      }
+      return value;
+    }
+
+    @Override
+    void setNA() {
+      nulls.set(size);
+    }
+
+    @Override
+    void ensureCapacity() {
+      if (size == epochDays.length) {
+        epochDays = Arrays.copyOf(epochDays, size * 2);
+      }
+    }
+
+    @Override
+    Column merge(List<ColumnChunk> chunks, int rowCount) {
+      int[] merged = new int[rowCount];
+      List<BitSet> nullList = new ArrayList<>(chunks.size());
+      int offset = 0;
+      for (ColumnChunk chunk : chunks) {
+        DateChunk c = (DateChunk) chunk;
+        System.arraycopy(c.epochDays, 0, merged, offset, c.size);
+        nullList.add(c.nulls);
+        offset += c.size;
+      }
+      BitSet nulls = mergeNulls(chunks, nullList);
+      return new DateColumn(merged, nulls == null ? new BitSet() : nulls);
+    }
+  }
+
+  /**
+   * Copies the bytes of each value into a string heap, the empty string is kept as is (only NA is missing).
+   */
+  private static final class StringChunk extends ColumnChunk {
+    private byte[] heap = new byte[8192];
+    private int heapSize;
+    private int[] offsets = new int[1025];
+    private final BitSet nulls = new BitSet();
+
+    @Override
+    boolean parse(byte[] field, int len, boolean quoted) {
+      if (!quoted && len == 2 && field[0] == 'N' && field[1] == 'A') {
+        setNA();
+        return true;
+      }
+      if (heapSize + len > heap.length) {
+        long capacity = Math.max(heap.length * 2L, (long) heapSize + len);
+        if (capacity > Integer.MAX_VALUE - 8) {
+          // too much text for one segment to fit in a single array, there is no wider type to fall back to
+          throw new IllegalStateException("Too much text in one column to read it into a string heap");
+        }
+        heap = Arrays.copyOf(heap, (int) capacity);
+      }
+      System.arraycopy(field, 0, heap, heapSize, len);
+      heapSize += len;
+      offsets[size + 1] = heapSize;
+      return true;
+    }
+
+    @Override
+    void setNA() {
+      nulls.set(size);
+      offsets[size + 1] = heapSize;
+    }
+
+    @Override
+    void ensureCapacity() {
+      if (size + 1 == offsets.length) {
+        offsets = Arrays.copyOf(offsets, size * 2 + 1);
+      }
+    }
+
+    Utf8StringColumn toColumn() {
+      return new Utf8StringColumn(Arrays.copyOf(heap, heapSize), Arrays.copyOf(offsets, size + 1),
+          nulls.isEmpty() ? null : nulls);
+    }
+
+    @Override
+    Column merge(List<ColumnChunk> chunks, int rowCount) {
+      long totalBytes = 0;
+      for (ColumnChunk chunk : chunks) {
+        totalBytes += ((StringChunk) chunk).heapSize;
+      }
+      if (totalBytes > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("Too much text in one column to read it into a string heap");
+      }
+      byte[] merged = new byte[(int) totalBytes];
+      int[] mergedOffsets = new int[rowCount + 1];
+      List<BitSet> nullList = new ArrayList<>(chunks.size());
+      int row = 0;
+      int heapOffset = 0;
+      for (ColumnChunk chunk : chunks) {
+        StringChunk c = (StringChunk) chunk;
+        System.arraycopy(c.heap, 0, merged, heapOffset, c.heapSize);
+        for (int i = 1; i <= c.size; i++) {
+          mergedOffsets[row + i] = heapOffset + c.offsets[i];
+        }
+        nullList.add(c.nulls);
+        row += c.size;
+        heapOffset += c.heapSize;
+      }
+      return ColumnEncoder.strings(new Utf8StringColumn(merged, mergedOffsets, mergeNulls(chunks, nullList)));
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.DoubleVector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Writes a Table as delimited text (csv, tsv etc.) in UTF-8.
+ * Blocks of rows are formatted in parallel directly from the columns into byte buffers which are then written
+ * to the channel in order, so at most <code>parallelism * blockSize</code> rows are held in memory as text.
+ * <p>
+ * Missing values are written as NA (like write.csv in R does), values are only quoted when they contain
+ * the delimiter, a quote or a line break (or are the string "NA"), and dates are written as yyyy-MM-dd.
+ * </p>
+ * <pre>
+ * DelimitedTextWriter.csv().write(table, Paths.get("data.csv"));
+ * </pre>
+ */
+public class DelimitedTextWriter {
+
+  private static final int DEFAULT_BLOCK_SIZE = 8192;
+  private static final byte[] NA = {'N', 'A'};
+  private static final byte[] TRUE = {'T', 'R', 'U', 'E'};
+  private static final byte[] FALSE = {'F', 'A', 'L', 'S', 'E'};
+
+  private final byte delimiter;
+  private byte quote = '"';
+  private boolean header = true;
+  private int blockSize = DEFAULT_BLOCK_SIZE;
+  private int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+
+  public DelimitedTextWriter(char delimiter) {
+    this.delimiter = asciiByte(delimiter);
+  }
+
+  /**
+   * @return a writer of comma separated values with a header line
+   */
+  public static DelimitedTextWriter csv() {
+    return new DelimitedTextWriter(',');
+  }
+
+  /**
+   * @return a writer of tab separated values with a header line
+   */
+  public static DelimitedTextWriter tsv() {
+    return new DelimitedTextWriter('\t');
+  }
+
+  public DelimitedTextWriter quote(char quoteChar) {
+    this.quote = asciiByte(quoteChar);
+    return this;
+  }
+
+  /**
+   * @param writeHeader whether to write the column names as the first line
+   * @return this writer
+   */
+  public DelimitedTextWriter header(boolean writeHeader) {
+    this.header = writeHeader;
+    return this;
+  }
+
+  /**
+   * @param rows the number of rows formatted by one task
+   * @return this writer
+   */
+  public DelimitedTextWriter blockSize(int rows) {
+    if (rows < 1) {
+      throw new IllegalArgumentException("Block size must be at least 1 but was " + rows);
+    }
+    this.blockSize = rows;
+    return this;
+  }
+
+  /**
+   * @param numBlocks the number of blocks formatted in parallel before they are written
+   * @return this writer
+   */
+  public DelimitedTextWriter parallelism(int numBlocks) {
+    if (numBlocks < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1 but was " + numBlocks);
+    }
+    this.parallelism = numBlocks;
+    return this;
+  }
+
+  public void write(Table table, Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      write(table, channel);
+    }
+  }
+
+  /**
+   * Write the table to the channel, the channel is not closed.
+   *
+   * @param table the table to write
+   * @param channel the channel to write to
+   * @throws IOException if writing to the channel fails
+   */
+  public void write(Table table, WritableByteChannel channel) throws IOException {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("DelimitedTextWriter.write")) {
+      int numCols = table.getHeaderSize();
+      int numRows = table.getRowSize();
+      if (header) {
+        ByteSink sink = new ByteSink(numCols * 16);
+        for (int col = 0; col < numCols; col++) {
+          if (col > 0) {
+            sink.write(delimiter);
+          }
+          writeString(sink, table.getHeaderList().get(col));
+        }
+        sink.write('\n');
+        writeFully(channel, sink.toByteBuffer());
+      }
+      Column[] columns = new Column[numCols];
+      for (int col = 0; col < numCols; col++) {
+        columns[col] = table.column(col);
+      }
+      int numBlocks = (int) ((numRows + (long) blockSize - 1) / blockSize);
+      for (int wave = 0; wave < numBlocks; wave += parallelism) {
+        ByteSink[] formatted = IntStream.range(wave, Math.min(numBlocks, wave + parallelism))
+            .parallel()
+            .mapToObj(block -> formatBlock(columns, block * blockSize, Math.min(numRows, (block + 1) * blockSize)))
+            .toArray(ByteSink[]::new);
+        for (ByteSink sink : formatted) {
+          writeFully(channel, sink.toByteBuffer());
+        }
+      }
+      probe.end(numRows, numCols);
+    }
+  }
+
+  private ByteSink formatBlock(Column[] columns, int fromRow, int toRow) {
+    ByteSink sink = new ByteSink((toRow - fromRow) * columns.length * 8);
+    for (int row = fromRow; row < toRow; row++) {
+      for (int col = 0; col < columns.length; col++) {
+        if (col > 0) {
+          sink.write(delimiter);
+        }
+        writeValue(sink, columns[col], row);
+      }
+      sink.write('\n');
+    }
+    return sink;
+  }
+
+  private void writeValue(ByteSink sink, Column column, int row) {
+    if (column instanceof IntColumn) {
+      IntColumn ints = (IntColumn) column;
+      if (ints.isNull(row)) {
+        sink.write(NA);
+      } else {
+        sink.writeInt(ints.getInt(row));
+      }
+    } else if (column instanceof DoubleColumn) {
+      DoubleColumn doubles = (DoubleColumn) column;
+      if (doubles.isNull(row)) {
+        sink.write(NA);
+      } else {
+        writeDouble(sink, doubles.getDouble(row));
+      }
+    } else if (column instanceof DateColumn) {
+      DateColumn dates = (DateColumn) column;
+      if (dates.isNull(row)) {
+        sink.write(NA);
+      } else {
+        sink.writeDate(LocalDate.ofEpochDay(dates.getEpochDay(row)));
+      }
+    } else if (column instanceof Utf8StringColumn) {
+      Utf8StringColumn strings = (Utf8StringColumn) column;
+      if (strings.isNull(row)) {
+        sink.write(NA);
+      } else {
+        writeUtf8(sink, strings.heap(), strings.start(row), strings.end(row));
+      }
+    } else {
+      writeObject(sink, column.get(row));
+    }
+  }
+
+  private void writeObject(ByteSink sink, Object value) {
+    if (value == null) {
+      sink.write(NA);
+    } else if (value instanceof Integer) {
+      sink.writeInt((Integer) value);
+    } else if (value instanceof Double) {
+      writeDouble(sink, (Double) value);
+    } else if (value instanceof Boolean) {
+      sink.write((Boolean) value ? TRUE : FALSE);
+    } else if (value instanceof LocalDate) {
+      sink.writeDate((LocalDate) value);
+    } else {
+      writeString(sink, String.valueOf(value));
+    }
+  }
+
+  private static void writeDouble(ByteSink sink, double value) {
+    if (DoubleVector.isNA(value)) {
+      sink.write(NA);
+    } else if (Double.isNaN(value)) {
+      sink.writeAscii("NaN");
+    } else if (Double.isInfinite(value)) {
+      sink.writeAscii(value > 0 ? "Inf" : "-Inf");
+    } else {
+      sink.writeFiniteDouble(value);
+    }
+  }
+
+  private void writeString(ByteSink sink, String value) {
+    if (!needsQuotes(value)) {
+      sink.writeUtf8(value);
+      return;
+    }
+    sink.write(quote);
+    int start = 0;
+    int idx;
+    while ((idx = value.indexOf(quote, start)) >= 0) {
+      sink.writeUtf8(value.substring(start, idx + 1));
+      sink.write(quote);
+      start = idx + 1;
+    }
+    sink.writeUtf8(value.substring(start));
+    sink.write(quote);
+  }
+
+  private void writeUtf8(ByteSink sink, byte[] heap, int start, int end) {
+    // a string "NA" is quoted to distinguish it from a missing value
+    boolean needsQuotes = end - start == 2 && heap[start] == 'N' && heap[start + 1] == 'A';
+    for (int i = start; i < end && !needsQuotes; i++) {
+      byte b = heap[i];
+      needsQuotes = b == delimiter || b == quote || b == '\n' || b == '\r';
+    }
+    if (!needsQuotes) {
+      sink.write(heap, start, end - start);
+      return;
+    }
+    sink.write(quote);
+    for (int i = start; i < end; i++) {
+      if (heap[i] == quote) {
+        sink.write(quote);
+      }
+      sink.write(heap[i]);
+    }
+    sink.write(quote);
+  }
+
+  private boolean needsQuotes(String value) {
+    if ("NA".equals(value)) {
+      return true;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == delimiter || c == quote || c == '\n' || c == '\r') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      channel.write(buf);
+    }
+  }
+
+  private static byte asciiByte(char c) {
+    if (c > 127 || c == '\n' || c == '\r') {
+      throw new IllegalArgumentException("Delimiters and quotes must be ascii characters other than line breaks");
+    }
+    return (byte) c;
+  }
+}
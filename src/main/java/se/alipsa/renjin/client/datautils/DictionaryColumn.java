@@ -0,0 +1,98 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.Arrays;
+
+/**
+ * A column where each distinct value is stored once in a dictionary and each row holds a bit packed code
+ * referring to the dictionary entry. Code 0 is NA (null), code n refers to dictionary entry n - 1.
+ * This is how factors are stored and suits low cardinality columns such as status strings.
+ */
+final class DictionaryColumn extends Column {
+
+  private final Object[] dictionary;
+  private final PackedInts codes;
+
+  DictionaryColumn(Object[] dictionary, PackedInts codes) {
+    this.dictionary = dictionary;
+    this.codes = codes;
+  }
+
+  @Override
+  int size() {
+    return codes.size();
+  }
+
+  @Override
+  Object get(int row) {
+    checkIndex(row);
+    int code = codes.get(row);
+    return code == 0 ? null : dictionary[code - 1];
+  }
+
+  Object[] dictionary() {
+    return dictionary;
+  }
+
+  /**
+   * @return the code of the row, 0 for NA and n for dictionary entry n - 1
+   */
+  int code(int row) {
+    return codes.get(row);
+  }
+
+  @Override
+  int indexOf(Object value, int fromRow, int toRow) {
+    int code = -1;
+    for (int i = 0; i < dictionary.length; i++) {
+      if (value.equals(dictionary[i])) {
+        code = i + 1;
+        break;
+      }
+    }
+    if (code == -1) {
+      return -1;
+    }
+    for (int i = Math.max(fromRow, 0); i < Math.min(toRow, codes.size()); i++) {
+      if (codes.get(i) == code) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  int[] rowsStartingWith(String prefix, int fromRow, int toRow) {
+    boolean[] matchingCodes = new boolean[dictionary.length + 1];
+    boolean anyMatch = false;
+    for (int i = 0; i < dictionary.length; i++) {
+      if (dictionary[i] instanceof String && ((String) dictionary[i]).startsWith(prefix)) {
+        matchingCodes[i + 1] = true;
+        anyMatch = true;
+      }
+    }
+    if (!anyMatch) {
+      return new int[0];
+    }
+    int[] rows = new int[16];
+    int count = 0;
+    for (int i = fromRow; i < toRow; i++) {
+      if (matchingCodes[codes.get(i)]) {
+        if (count == rows.length) {
+          rows = Arrays.copyOf(rows, count * 2);
+        }
+        rows[count++] = i;
+      }
+    }
+    return Arrays.copyOf(rows, count);
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.DICTIONARY;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    return 32 + dictionary.length * 48L + codes.estimatedByteSize();
+  }
+}
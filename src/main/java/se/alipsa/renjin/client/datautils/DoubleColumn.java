@@ -0,0 +1,61 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.BitSet;
+
+/**
+ * A column of doubles stored in a primitive array. Rows that are null (as opposed to an R NA which is just a
+ * special NaN) are flagged in a separate bit set.
+ */
+final class DoubleColumn extends Column {
+
+  private final double[] values;
+  private final BitSet nulls;
+
+  /**
+   * @param values the values
+   * @param nulls the rows that are null or null if there are none
+   */
+  DoubleColumn(double[] values, BitSet nulls) {
+    this.values = values;
+    this.nulls = nulls;
+  }
+
+  @Override
+  int size() {
+    return values.length;
+  }
+
+  @Override
+  Object get(int row) {
+    if (nulls != null && nulls.get(row)) {
+      return null;
+    }
+    return values[row];
+  }
+
+  boolean isNull(int row) {
+    return nulls != null && nulls.get(row);
+  }
+
+  double[] values() {
+    return values;
+  }
+
+  BitSet nulls() {
+    return nulls;
+  }
+
+  double getDouble(int row) {
+    return values[row];
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.PLAIN;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    return 16 + values.length * 8L + (nulls == null ? 0 : nulls.size() / 8);
+  }
+}
@@ -0,0 +1,93 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.Vector;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * A read only List view of an R vector as doubles, the values are read from the vector when accessed
+ * (see {@link RDataTransformer#toDoubleList(Vector)}). {@link #getDouble(int)} and
+ * {@link #forEachDouble(DoubleConsumer)} do not box, NA is either mapped to a sentinel value or, for the boxed
+ * access through get, to null. NaN values that are not NA are returned as NaN.
+ */
+public final class DoubleList extends AbstractList<Double> implements RandomAccess {
+
+  private final Vector vector;
+  private final boolean naAsNull;
+  private final double naValue;
+
+  /**
+   * @param vector the vector to view
+   * @param naAsNull if true, get returns null for NA and getDouble returns naValue
+   * @param naValue the value of NA
+   */
+  DoubleList(Vector vector, boolean naAsNull, double naValue) {
+    this.vector = vector;
+    this.naAsNull = naAsNull;
+    this.naValue = naValue;
+  }
+
+  @Override
+  public Double get(int index) {
+    double value = vector.getElementAsDouble(index);
+    if (DoubleVector.isNA(value)) {
+      return naAsNull ? null : naValue;
+    }
+    return value;
+  }
+
+  /**
+   * @param index the index of the element
+   * @return the value without boxing, NA is returned as the NA value of this list
+   */
+  public double getDouble(int index) {
+    double value = vector.getElementAsDouble(index);
+    return DoubleVector.isNA(value) ? naValue : value;
+  }
+
+  /**
+   * @param index the index of the element
+   * @return true if the element is NA
+   */
+  public boolean isNA(int index) {
+    return DoubleVector.isNA(vector.getElementAsDouble(index));
+  }
+
+  @Override
+  public int size() {
+    return vector.length();
+  }
+
+  /**
+   * @param action the action to run for each value (NA as the NA value of this list) in order
+   */
+  public void forEachDouble(DoubleConsumer action) {
+    int n = vector.length();
+    for (int i = 0; i < n; i++) {
+      action.accept(getDouble(i));
+    }
+  }
+
+  /**
+   * @return the values as a stream, NA as the NA value of this list
+   */
+  public DoubleStream doubleStream() {
+    return IntStream.range(0, vector.length()).mapToDouble(this::getDouble);
+  }
+
+  /**
+   * @return a copy of the values, NA as the NA value of this list
+   */
+  public double[] toDoubleArray() {
+    double[] values = new double[vector.length()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getDouble(i);
+    }
+    return values;
+  }
+}
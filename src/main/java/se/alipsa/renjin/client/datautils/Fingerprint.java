@@ -0,0 +1,166 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Computes a 64 bit hash of the content of a Table. The hash only depends on the header, the column types and the
+ * values (not on how the columns are stored) and is the same in every JVM, so it can be persisted and compared
+ * between runs. The columns are hashed in parallel, columns stored in primitive arrays are hashed without boxing.
+ */
+final class Fingerprint {
+
+  private static final long SEED = 0x5bd1e9955bd1e995L;
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  // type tags so that e.g. the Integer 1 and the Double 1.0 give different hashes
+  private static final long NULL_HASH = 0x2545F4914F6CDD1DL;
+  private static final long INT_TAG = 1;
+  private static final long DOUBLE_TAG = 2;
+  private static final long BOOLEAN_TAG = 3;
+  private static final long DATE_TAG = 4;
+  private static final long STRING_TAG = 5;
+  private static final long OTHER_TAG = 6;
+
+  private Fingerprint() {
+    // Utility class
+  }
+
+  static long of(Table table) {
+    long[] columnHashes = new long[table.columnCount()];
+    IntStream.range(0, columnHashes.length).parallel().forEach(i -> columnHashes[i] = hash(table.column(i)));
+    long h = combine(SEED, table.getRowSize());
+    List<String> header = table.getHeaderList();
+    h = combine(h, header == null ? 0 : header.size());
+    if (header != null) {
+      for (String name : header) {
+        h = combine(h, hashValue(name));
+      }
+    }
+    List<DataType> types = table.getColumnTypes();
+    h = combine(h, types == null ? 0 : types.size());
+    if (types != null) {
+      for (DataType type : types) {
+        h = combine(h, type == null ? NULL_HASH : hashValue(type.name()));
+      }
+    }
+    for (long columnHash : columnHashes) {
+      h = combine(h, columnHash);
+    }
+    return finish(h);
+  }
+
+  static long hash(Column column) {
+    int n = column.size();
+    long h = SEED;
+    if (column instanceof DoubleColumn) {
+      DoubleColumn col = (DoubleColumn) column;
+      for (int i = 0; i < n; i++) {
+        h = combine(h, col.isNull(i) ? NULL_HASH : hashDouble(col.getDouble(i)));
+      }
+    } else if (column instanceof IntColumn) {
+      IntColumn col = (IntColumn) column;
+      for (int i = 0; i < n; i++) {
+        h = combine(h, col.isNull(i) ? NULL_HASH : hashInt(col.getInt(i)));
+      }
+    } else if (column instanceof DateColumn) {
+      DateColumn col = (DateColumn) column;
+      for (int i = 0; i < n; i++) {
+        h = combine(h, col.isNull(i) ? NULL_HASH : hashDate(col.getEpochDay(i)));
+      }
+    } else if (column instanceof DictionaryColumn) {
+      DictionaryColumn col = (DictionaryColumn) column;
+      Object[] dictionary = col.dictionary();
+      long[] entryHashes = new long[dictionary.length + 1];
+      entryHashes[0] = NULL_HASH;
+      for (int i = 0; i < dictionary.length; i++) {
+        entryHashes[i + 1] = hashValue(dictionary[i]);
+      }
+      for (int i = 0; i < n; i++) {
+        h = combine(h, entryHashes[col.code(i)]);
+      }
+    } else if (column instanceof RunLengthColumn) {
+      RunLengthColumn col = (RunLengthColumn) column;
+      int run = -1;
+      long runHash = 0;
+      for (int i = 0; i < n; i++) {
+        int r = col.findRun(i);
+        if (r != run) {
+          run = r;
+          runHash = hashValue(col.runValues().get(r));
+        }
+        h = combine(h, runHash);
+      }
+    } else {
+      for (int i = 0; i < n; i++) {
+        h = combine(h, hashValue(column.get(i)));
+      }
+    }
+    return finish(h);
+  }
+
+  static long hashValue(Object value) {
+    if (value == null) {
+      return NULL_HASH;
+    }
+    if (value instanceof Integer) {
+      return hashInt((Integer) value);
+    }
+    if (value instanceof Double) {
+      return hashDouble((Double) value);
+    }
+    if (value instanceof Boolean) {
+      return mix(BOOLEAN_TAG, (Boolean) value ? 1 : 0);
+    }
+    if (value instanceof LocalDate) {
+      return hashDate(((LocalDate) value).toEpochDay());
+    }
+    if (value instanceof String) {
+      return mix(STRING_TAG, hashChars((String) value));
+    }
+    return mix(OTHER_TAG, combine(hashChars(value.getClass().getName()), hashChars(value.toString())));
+  }
+
+  static long hashInt(int value) {
+    return mix(INT_TAG, value);
+  }
+
+  static long hashDouble(double value) {
+    // doubleToLongBits (as opposed to the raw bits) makes all NaN equal, consistent with Double.equals
+    return mix(DOUBLE_TAG, Double.doubleToLongBits(value));
+  }
+
+  private static long hashDate(long epochDay) {
+    return mix(DATE_TAG, epochDay);
+  }
+
+  /** 64 bit FNV-1a of the chars of the string. */
+  private static long hashChars(String value) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      h ^= value.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  private static long mix(long tag, long value) {
+    return finish(tag * MULTIPLIER ^ value);
+  }
+
+  private static long combine(long hash, long value) {
+    long h = (hash ^ value) * MULTIPLIER;
+    return h ^ (h >>> 29);
+  }
+
+  /** The finalizer of MurmurHash3, spreads every input bit over the whole hash. */
+  private static long finish(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,233 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.Arrays;
+
+/**
+ * An approximate count of distinct values (HyperLogLog) using 2^precision one byte registers. The relative standard
+ * error is about 1.04 / sqrt(2^precision), i.e. 0.8% with the default precision of 14 (16 KB).
+ * A new sketch starts out sparse, keeping only the registers that are set in a small hash table, and switches to
+ * the full register array once that is smaller, so sketches of few values (e.g. of a chunk of a low cardinality
+ * column) stay small.
+ * Sketches with the same precision can be merged, e.g. sketches of the chunks of a column computed in parallel or
+ * of the same column in different Tables. Values are hashed as in {@link Table#fingerprint()}, so 1 and 1.0 are
+ * different values. NA (null) values are not counted. A sketch is not thread safe.
+ */
+public final class HyperLogLog {
+
+  public static final int DEFAULT_PRECISION = 14;
+  private static final int INITIAL_SPARSE_CAPACITY = 16;
+
+  private final int precision;
+  // the registers, null while the sketch is sparse
+  private byte[] registers;
+  // open addressing hash table of the registers set while sparse, each entry is index << 8 | rank and 0 is empty
+  private int[] sparse;
+  private int sparseSize;
+
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  /**
+   * @param precision the number of bits of the hash used to select a register, 4 to 18
+   */
+  public HyperLogLog(int precision) {
+    if (precision < 4 || precision > 18) {
+      throw new IllegalArgumentException("Precision must be between 4 and 18 but was " + precision);
+    }
+    this.precision = precision;
+    if (maxSparseCapacity() >= INITIAL_SPARSE_CAPACITY) {
+      this.sparse = new int[INITIAL_SPARSE_CAPACITY];
+    } else {
+      this.registers = new byte[1 << precision];
+    }
+  }
+
+  private HyperLogLog(HyperLogLog other) {
+    this.precision = other.precision;
+    this.registers = other.registers == null ? null : other.registers.clone();
+    this.sparse = other.sparse == null ? null : other.sparse.clone();
+    this.sparseSize = other.sparseSize;
+  }
+
+  /**
+   * @param value the value to add, null is ignored
+   */
+  public void add(Object value) {
+    if (value != null) {
+      addHash(Fingerprint.hashValue(value));
+    }
+  }
+
+  void addHash(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    // the position of the first 1 bit in the remaining bits, the guard bit caps it at 64 - precision + 1
+    long rest = (hash << precision) | (1L << (precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+    setRegister(index, rank);
+  }
+
+  private void setRegister(int index, byte rank) {
+    if (registers != null) {
+      if (rank > registers[index]) {
+        registers[index] = rank;
+      }
+      return;
+    }
+    int mask = sparse.length - 1;
+    for (int slot = (index * 0x9E3779B1) >>> 16 & mask; ; slot = (slot + 1) & mask) {
+      int entry = sparse[slot];
+      if (entry == 0) {
+        sparse[slot] = index << 8 | rank;
+        if (++sparseSize * 2 > sparse.length) {
+          growSparse();
+        }
+        return;
+      }
+      if (entry >>> 8 == index) {
+        if (rank > (entry & 0xFF)) {
+          sparse[slot] = index << 8 | rank;
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Double the sparse table or, when it would be larger than half the registers, switch to the registers.
+   */
+  private void growSparse() {
+    int[] entries = sparse;
+    if (entries.length * 2 > maxSparseCapacity()) {
+      registers = new byte[1 << precision];
+      sparse = null;
+      sparseSize = 0;
+    } else {
+      sparse = new int[entries.length * 2];
+      sparseSize = 0;
+    }
+    for (int entry : entries) {
+      if (entry != 0) {
+        setRegister(entry >>> 8, (byte) (entry & 0xFF));
+      }
+    }
+  }
+
+  private int maxSparseCapacity() {
+    // an int per entry, at most half the size of the registers
+    return (1 << precision) / 8;
+  }
+
+  /**
+   * Add all the values of the other sketch to this sketch.
+   *
+   * @param other a sketch with the same precision
+   * @return this sketch
+   */
+  public HyperLogLog merge(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Cannot merge a sketch with precision " + other.precision
+          + " into a sketch with precision " + precision);
+    }
+    if (other.registers == null) {
+      for (int entry : other.sparse.clone()) {
+        if (entry != 0) {
+          setRegister(entry >>> 8, (byte) (entry & 0xFF));
+        }
+      }
+      return this;
+    }
+    if (registers == null) {
+      int[] entries = sparse;
+      registers = other.registers.clone();
+      sparse = null;
+      sparseSize = 0;
+      for (int entry : entries) {
+        if (entry != 0) {
+          setRegister(entry >>> 8, (byte) (entry & 0xFF));
+        }
+      }
+      return this;
+    }
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+    return this;
+  }
+
+  /**
+   * @return the estimated number of distinct values added
+   */
+  public long estimate() {
+    int m = 1 << precision;
+    double sum = 0;
+    int zeros = 0;
+    if (registers == null) {
+      zeros = m - sparseSize;
+      sum = zeros;
+      for (int entry : sparse) {
+        if (entry != 0) {
+          sum += 1.0 / (1L << (entry & 0xFF));
+        }
+      }
+    } else {
+      for (byte register : registers) {
+        sum += 1.0 / (1L << register);
+        if (register == 0) {
+          zeros++;
+        }
+      }
+    }
+    double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+    double estimate = alpha * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      // linear counting is more accurate for small cardinalities
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * @return an independent copy of this sketch
+   */
+  public HyperLogLog copy() {
+    return new HyperLogLog(this);
+  }
+
+  /**
+   * @return the registers, created from the sparse entries if the sketch is sparse
+   */
+  private byte[] denseRegisters() {
+    if (registers != null) {
+      return registers;
+    }
+    byte[] dense = new byte[1 << precision];
+    for (int entry : sparse) {
+      if (entry != 0) {
+        dense[entry >>> 8] = (byte) (entry & 0xFF);
+      }
+    }
+    return dense;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof HyperLogLog && Arrays.equals(denseRegisters(), ((HyperLogLog) obj).denseRegisters());
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(denseRegisters());
+  }
+
+  @Override
+  public String toString() {
+    return "HyperLogLog{precision=" + precision + ", estimate=" + estimate() + "}";
+  }
+}
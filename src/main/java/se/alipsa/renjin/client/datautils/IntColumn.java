@@ -0,0 +1,60 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.BitSet;
+
+/**
+ * A column of ints stored in a primitive array with the NA (null) rows flagged in a separate bit set.
+ */
+final class IntColumn extends Column {
+
+  private final int[] values;
+  private final BitSet nulls;
+
+  /**
+   * @param values the values
+   * @param nulls the rows that are NA or null if there are none
+   */
+  IntColumn(int[] values, BitSet nulls) {
+    this.values = values;
+    this.nulls = nulls;
+  }
+
+  @Override
+  int size() {
+    return values.length;
+  }
+
+  @Override
+  Object get(int row) {
+    if (nulls != null && nulls.get(row)) {
+      return null;
+    }
+    return values[row];
+  }
+
+  boolean isNull(int row) {
+    return nulls != null && nulls.get(row);
+  }
+
+  int[] values() {
+    return values;
+  }
+
+  BitSet nulls() {
+    return nulls;
+  }
+
+  int getInt(int row) {
+    return values[row];
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.PLAIN;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    return 16 + values.length * 4L + (nulls == null ? 0 : nulls.size() / 8);
+  }
+}
@@ -0,0 +1,91 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.Vector;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * A read only List view of an R vector as ints, the values are read from the vector when accessed
+ * (see {@link RDataTransformer#toIntList(Vector)}). {@link #getInt(int)} and {@link #forEachInt(IntConsumer)}
+ * do not box, NA is either mapped to a sentinel value or, for the boxed access through get, to null.
+ */
+public final class IntList extends AbstractList<Integer> implements RandomAccess {
+
+  private final Vector vector;
+  private final boolean naAsNull;
+  private final int naValue;
+
+  /**
+   * @param vector the vector to view
+   * @param naAsNull if true, get returns null for NA and getInt returns naValue
+   * @param naValue the value of NA
+   */
+  IntList(Vector vector, boolean naAsNull, int naValue) {
+    this.vector = vector;
+    this.naAsNull = naAsNull;
+    this.naValue = naValue;
+  }
+
+  @Override
+  public Integer get(int index) {
+    int value = vector.getElementAsInt(index);
+    if (IntVector.isNA(value)) {
+      return naAsNull ? null : naValue;
+    }
+    return value;
+  }
+
+  /**
+   * @param index the index of the element
+   * @return the value without boxing, NA is returned as the NA value of this list
+   */
+  public int getInt(int index) {
+    int value = vector.getElementAsInt(index);
+    return IntVector.isNA(value) ? naValue : value;
+  }
+
+  /**
+   * @param index the index of the element
+   * @return true if the element is NA
+   */
+  public boolean isNA(int index) {
+    return IntVector.isNA(vector.getElementAsInt(index));
+  }
+
+  @Override
+  public int size() {
+    return vector.length();
+  }
+
+  /**
+   * @param action the action to run for each value (NA as the NA value of this list) in order
+   */
+  public void forEachInt(IntConsumer action) {
+    int n = vector.length();
+    for (int i = 0; i < n; i++) {
+      action.accept(getInt(i));
+    }
+  }
+
+  /**
+   * @return the values as a stream, NA as the NA value of this list
+   */
+  public IntStream intStream() {
+    return IntStream.range(0, vector.length()).map(this::getInt);
+  }
+
+  /**
+   * @return a copy of the values, NA as the NA value of this list
+   */
+  public int[] toIntArray() {
+    int[] values = new int[vector.length()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = getInt(i);
+    }
+    return values;
+  }
+}
@@ -0,0 +1,237 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.DoubleVector;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Inserts the rows of a Table using batched prepared statements, see
+ * {@link Table#writeTo(Connection, String, JdbcWriteOptions)}.
+ * The parameter setter of each column is chosen once from the way the column is stored and its DataType
+ * so that primitive values are set without boxing and setObject is only used for values of unknown types.
+ */
+final class JdbcTableWriter {
+
+  private JdbcTableWriter() {
+    // Utility class
+  }
+
+  static int write(Table table, Connection con, String tableName, JdbcWriteOptions options) throws SQLException {
+    String sql = insertSql(con, table.getHeaderList(), tableName, options.isQuoteIdentifiers());
+    ParameterSetter[] setters = setters(table);
+    int numRows = table.getRowSize();
+    int threads = Math.max(1, Math.min(options.getThreads(), numRows / options.getBatchSize()));
+    if (threads == 1) {
+      return insert(con, sql, setters, 0, numRows, options);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads - 1);
+    try {
+      List<Future<Integer>> partitions = new ArrayList<>(threads - 1);
+      for (int partition = 1; partition < threads; partition++) {
+        int from = (int) ((long) numRows * partition / threads);
+        int to = (int) ((long) numRows * (partition + 1) / threads);
+        partitions.add(executor.submit(() -> {
+          try (Connection partitionCon = options.getConnectionSupplier().get()) {
+            int inserted = insert(partitionCon, sql, setters, from, to, options);
+            if (!partitionCon.getAutoCommit()) {
+              // the connection is closed when done so nobody else can commit it
+              partitionCon.commit();
+            }
+            return inserted;
+          }
+        }));
+      }
+      SQLException failure = null;
+      int written = 0;
+      try {
+        written += insert(con, sql, setters, 0, numRows / threads, options);
+      } catch (SQLException e) {
+        failure = e;
+      }
+      for (Future<Integer> partition : partitions) {
+        try {
+          written += partition.get();
+        } catch (ExecutionException e) {
+          SQLException cause = e.getCause() instanceof SQLException
+              ? (SQLException) e.getCause()
+              : new SQLException("Failed to insert a partition into " + tableName, e.getCause());
+          if (failure == null) {
+            failure = cause;
+          } else {
+            failure.addSuppressed(cause);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted while inserting into " + tableName, e);
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return written;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static int insert(Connection con, String sql, ParameterSetter[] setters, int from, int to,
+                            JdbcWriteOptions options) throws SQLException {
+    boolean commit = options.getCommitInterval() > 0;
+    boolean autoCommit = con.getAutoCommit();
+    if (commit && autoCommit) {
+      con.setAutoCommit(false);
+    }
+    try (PreparedStatement ps = con.prepareStatement(sql)) {
+      int inBatch = 0;
+      int sinceCommit = 0;
+      for (int row = from; row < to; row++) {
+        for (int col = 0; col < setters.length; col++) {
+          setters[col].set(ps, col + 1, row);
+        }
+        ps.addBatch();
+        if (++inBatch == options.getBatchSize()) {
+          ps.executeBatch();
+          sinceCommit += inBatch;
+          inBatch = 0;
+          if (commit && sinceCommit >= options.getCommitInterval()) {
+            con.commit();
+            sinceCommit = 0;
+          }
+        }
+      }
+      if (inBatch > 0) {
+        ps.executeBatch();
+      }
+      if (commit) {
+        con.commit();
+      }
+      return to - from;
+    } catch (SQLException e) {
+      if (commit) {
+        try {
+          con.rollback();
+        } catch (SQLException rollbackFailure) {
+          e.addSuppressed(rollbackFailure);
+        }
+      }
+      throw e;
+    } finally {
+      if (commit && autoCommit) {
+        con.setAutoCommit(true);
+      }
+    }
+  }
+
+  static String insertSql(Connection con, List<String> columnNames, String tableName, boolean quote)
+      throws SQLException {
+    String quoteString = quote ? con.getMetaData().getIdentifierQuoteString().trim() : "";
+    StringBuilder sql = new StringBuilder("INSERT INTO ");
+    // a qualified name such as schema.table is quoted one part at a time
+    String[] nameParts = tableName.split("\\.", -1);
+    for (int i = 0; i < nameParts.length; i++) {
+      if (i > 0) {
+        sql.append('.');
+      }
+      appendIdentifier(sql, nameParts[i], quoteString);
+    }
+    sql.append(" (");
+    StringBuilder params = new StringBuilder();
+    for (int i = 0; i < columnNames.size(); i++) {
+      if (i > 0) {
+        sql.append(", ");
+        params.append(", ");
+      }
+      appendIdentifier(sql, columnNames.get(i), quoteString);
+      params.append('?');
+    }
+    return sql.append(") VALUES (").append(params).append(')').toString();
+  }
+
+  /**
+   * Append the identifier in quotes with any quote inside it doubled, as SQL escapes them, so that a name (e.g. from
+   * a csv header) cannot end the quoted identifier early.
+   */
+  private static void appendIdentifier(StringBuilder sql, String name, String quoteString) {
+    if (quoteString.isEmpty()) {
+      sql.append(name);
+      return;
+    }
+    sql.append(quoteString).append(name.replace(quoteString, quoteString + quoteString)).append(quoteString);
+  }
+
+  private static ParameterSetter[] setters(Table table) {
+    ParameterSetter[] setters = new ParameterSetter[table.getHeaderSize()];
+    for (int i = 0; i < setters.length; i++) {
+      Column column = table.column(i);
+      int sqlType = table.getColumnTypes().get(i).getSqlType();
+      if (column instanceof IntColumn) {
+        IntColumn ints = (IntColumn) column;
+        setters[i] = (ps, idx, row) -> {
+          if (ints.isNull(row)) {
+            ps.setNull(idx, sqlType);
+          } else {
+            ps.setInt(idx, ints.getInt(row));
+          }
+        };
+      } else if (column instanceof DoubleColumn) {
+        DoubleColumn doubles = (DoubleColumn) column;
+        setters[i] = (ps, idx, row) -> {
+          if (doubles.isNull(row) || DoubleVector.isNA(doubles.getDouble(row))) {
+            ps.setNull(idx, sqlType);
+          } else {
+            ps.setDouble(idx, doubles.getDouble(row));
+          }
+        };
+      } else if (column instanceof DateColumn) {
+        DateColumn dates = (DateColumn) column;
+        setters[i] = (ps, idx, row) -> {
+          if (dates.isNull(row)) {
+            ps.setNull(idx, sqlType);
+          } else {
+            ps.setDate(idx, java.sql.Date.valueOf(LocalDate.ofEpochDay(dates.getEpochDay(row))));
+          }
+        };
+      } else {
+        setters[i] = (ps, idx, row) -> setValue(ps, idx, column.get(row), sqlType);
+      }
+    }
+    return setters;
+  }
+
+  private static void setValue(PreparedStatement ps, int idx, Object value, int sqlType) throws SQLException {
+    if (value == null) {
+      ps.setNull(idx, sqlType);
+    } else if (value instanceof Integer) {
+      ps.setInt(idx, (Integer) value);
+    } else if (value instanceof Double) {
+      double d = (Double) value;
+      if (DoubleVector.isNA(d)) {
+        ps.setNull(idx, sqlType);
+      } else {
+        ps.setDouble(idx, d);
+      }
+    } else if (value instanceof String) {
+      ps.setString(idx, (String) value);
+    } else if (value instanceof Boolean) {
+      ps.setBoolean(idx, (Boolean) value);
+    } else if (value instanceof LocalDate) {
+      ps.setDate(idx, java.sql.Date.valueOf((LocalDate) value));
+    } else {
+      ps.setObject(idx, value);
+    }
+  }
+
+  @FunctionalInterface
+  private interface ParameterSetter {
+    void set(PreparedStatement ps, int index, int row) throws SQLException;
+  }
+}
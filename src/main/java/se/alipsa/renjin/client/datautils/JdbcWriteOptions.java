@@ -0,0 +1,99 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.sql.Connection;
+import java.util.function.Supplier;
+
+/**
+ * Options for {@link Table#writeTo(Connection, String, JdbcWriteOptions)}, e.g.
+ * <pre>
+ * table.writeTo(con, "model_output", new JdbcWriteOptions().batchSize(5000).commitInterval(100_000));
+ * </pre>
+ */
+public class JdbcWriteOptions {
+
+  private int batchSize = 1000;
+  private int commitInterval = 0;
+  private int threads = 1;
+  private Supplier<Connection> connectionSupplier;
+  private boolean quoteIdentifiers = false;
+
+  /**
+   * @param rows the number of rows added to a batch before it is executed, default 1000
+   * @return these options
+   */
+  public JdbcWriteOptions batchSize(int rows) {
+    if (rows < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1 but was " + rows);
+    }
+    this.batchSize = rows;
+    return this;
+  }
+
+  /**
+   * Commit every rows (rounded up to whole batches) with auto commit turned off during the insert.
+   * Default is 0 which leaves the transaction handling of the connection as is.
+   *
+   * @param rows the number of rows between each commit, 0 to not commit
+   * @return these options
+   */
+  public JdbcWriteOptions commitInterval(int rows) {
+    if (rows < 0) {
+      throw new IllegalArgumentException("Commit interval cannot be negative but was " + rows);
+    }
+    this.commitInterval = rows;
+    return this;
+  }
+
+  /**
+   * Insert in parallel by splitting the rows into one partition per thread. The first partition is inserted using
+   * the connection passed to writeTo, the others use connections from the connectionSupplier which are closed
+   * when done (after a commit if they are not in auto commit mode). Note that each partition is committed
+   * separately, so a failure might leave some partitions written.
+   *
+   * @param numThreads the number of partitions to insert in parallel
+   * @param connectionSupplier supplier of additional connections to the same database
+   * @return these options
+   */
+  public JdbcWriteOptions parallel(int numThreads, Supplier<Connection> connectionSupplier) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1 but was " + numThreads);
+    }
+    if (numThreads > 1 && connectionSupplier == null) {
+      throw new IllegalArgumentException("A connection supplier is required to insert using more than one thread");
+    }
+    this.threads = numThreads;
+    this.connectionSupplier = connectionSupplier;
+    return this;
+  }
+
+  /**
+   * @param quote whether to quote the table and column names (required for names such as Sepal.Length),
+   *              a qualified table name such as schema.table is quoted one part at a time and quotes inside a
+   *              name are doubled. Unquoted names are put in the SQL as they are.
+   * @return these options
+   */
+  public JdbcWriteOptions quoteIdentifiers(boolean quote) {
+    this.quoteIdentifiers = quote;
+    return this;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public int getCommitInterval() {
+    return commitInterval;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public Supplier<Connection> getConnectionSupplier() {
+    return connectionSupplier;
+  }
+
+  public boolean isQuoteIdentifiers() {
+    return quoteIdentifiers;
+  }
+}
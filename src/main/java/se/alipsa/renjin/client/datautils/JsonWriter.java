@@ -0,0 +1,385 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Writes a Table as JSON in UTF-8, either as an array of row objects
+ * <code>[{"id":1,"name":"Adam"},{"id":2,"name":"Bertil"}]</code> or as an object of column arrays
+ * <code>{"id":[1,2],"name":["Adam","Bertil"]}</code>.
+ * Like the {@link DelimitedTextWriter}, blocks of rows are formatted in parallel directly from the columns into
+ * byte buffers that are written in order and reused for the next blocks, no maps or Strings are created per row.
+ * <p>
+ * Missing values, NaN and infinite numbers are written as null, dates as "yyyy-MM-dd" strings and
+ * logical values as true/false.
+ * </p>
+ * <pre>
+ * JsonWriter.rows().write(table, response.getOutputStream());
+ * </pre>
+ */
+public class JsonWriter {
+
+  public enum Layout {
+    /** An array with one object per row */
+    ROWS,
+    /** An object with one array per column */
+    COLUMNS
+  }
+
+  private static final int DEFAULT_BLOCK_SIZE = 8192;
+  private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+  private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+  private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+  private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+  private final Layout layout;
+  private int blockSize = DEFAULT_BLOCK_SIZE;
+  private int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+
+  public JsonWriter(Layout layout) {
+    if (layout == null) {
+      throw new IllegalArgumentException("Layout must not be null");
+    }
+    this.layout = layout;
+  }
+
+  /**
+   * @return a writer of an array with one object per row
+   */
+  public static JsonWriter rows() {
+    return new JsonWriter(Layout.ROWS);
+  }
+
+  /**
+   * @return a writer of an object with one array per column
+   */
+  public static JsonWriter columns() {
+    return new JsonWriter(Layout.COLUMNS);
+  }
+
+  /**
+   * @param rows the number of rows formatted by one task
+   * @return this writer
+   */
+  public JsonWriter blockSize(int rows) {
+    if (rows < 1) {
+      throw new IllegalArgumentException("Block size must be at least 1 but was " + rows);
+    }
+    this.blockSize = rows;
+    return this;
+  }
+
+  /**
+   * @param numBlocks the number of blocks formatted in parallel before they are written
+   * @return this writer
+   */
+  public JsonWriter parallelism(int numBlocks) {
+    if (numBlocks < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1 but was " + numBlocks);
+    }
+    this.parallelism = numBlocks;
+    return this;
+  }
+
+  public void write(Table table, Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      write(table, channel);
+    }
+  }
+
+  /**
+   * Write the table to the channel, the channel is not closed.
+   *
+   * @param table the table to write
+   * @param channel the channel to write to
+   * @throws IOException if writing to the channel fails
+   */
+  public void write(Table table, WritableByteChannel channel) throws IOException {
+    write(table, sink -> writeFully(channel, sink.toByteBuffer()));
+  }
+
+  /**
+   * Write the table to the stream, the stream is flushed but not closed.
+   *
+   * @param table the table to write
+   * @param out the stream to write to
+   * @throws IOException if writing to the stream fails
+   */
+  public void write(Table table, OutputStream out) throws IOException {
+    write(table, sink -> sink.writeTo(out));
+    out.flush();
+  }
+
+  private void write(Table table, Output output) throws IOException {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("JsonWriter.write")) {
+      int numCols = table.getHeaderSize();
+      int numRows = table.getRowSize();
+      ValueWriter[] writers = new ValueWriter[numCols];
+      for (int col = 0; col < numCols; col++) {
+        writers[col] = valueWriter(table.column(col));
+      }
+      ByteSink[] sinks = new ByteSink[parallelism];
+      ByteSink sink = new ByteSink(numCols * 16);
+      if (layout == Layout.ROWS) {
+        // the keys including the surrounding punctuation, i.e. {"a": and ,"b":
+        byte[][] keys = new byte[numCols][];
+        for (int col = 0; col < numCols; col++) {
+          sink.reset();
+          sink.write(col == 0 ? '{' : ',');
+          writeString(sink, table.getHeaderList().get(col));
+          sink.write(':');
+          keys[col] = sink.toByteArray();
+        }
+        output.write(single(sink, '['));
+        writeBlocks(output, sinks, numRows, (out, from, to) -> formatRows(out, keys, writers, from, to));
+        output.write(single(sink, ']'));
+      } else {
+        sink.reset();
+        sink.write('{');
+        for (int col = 0; col < numCols; col++) {
+          if (col > 0) {
+            sink.write(',');
+          }
+          writeString(sink, table.getHeaderList().get(col));
+          sink.write(':');
+          sink.write('[');
+          output.write(sink);
+          ValueWriter writer = writers[col];
+          writeBlocks(output, sinks, numRows, (out, from, to) -> formatColumn(out, writer, from, to));
+          sink.reset();
+          sink.write(']');
+        }
+        sink.write('}');
+        output.write(sink);
+      }
+      probe.end(numRows, numCols);
+    }
+  }
+
+  private void writeBlocks(Output output, ByteSink[] sinks, int numRows, BlockFormatter formatter)
+      throws IOException {
+    int numBlocks = (int) ((numRows + (long) blockSize - 1) / blockSize);
+    for (int wave = 0; wave < numBlocks; wave += parallelism) {
+      int first = wave;
+      int last = Math.min(numBlocks, wave + parallelism);
+      IntStream.range(first, last).parallel().forEach(block -> {
+        int slot = block - first;
+        if (sinks[slot] == null) {
+          sinks[slot] = new ByteSink(blockSize * 16);
+        }
+        sinks[slot].reset();
+        formatter.format(sinks[slot], block * blockSize, Math.min(numRows, (block + 1) * blockSize));
+      });
+      for (int slot = 0; slot < last - first; slot++) {
+        output.write(sinks[slot]);
+      }
+    }
+  }
+
+  private static void formatRows(ByteSink sink, byte[][] keys, ValueWriter[] writers, int fromRow, int toRow) {
+    for (int row = fromRow; row < toRow; row++) {
+      if (row > 0) {
+        sink.write(',');
+      }
+      if (writers.length == 0) {
+        sink.write('{');
+      }
+      for (int col = 0; col < writers.length; col++) {
+        sink.write(keys[col]);
+        writers[col].write(sink, row);
+      }
+      sink.write('}');
+    }
+  }
+
+  private static void formatColumn(ByteSink sink, ValueWriter writer, int fromRow, int toRow) {
+    for (int row = fromRow; row < toRow; row++) {
+      if (row > 0) {
+        sink.write(',');
+      }
+      writer.write(sink, row);
+    }
+  }
+
+  private static ValueWriter valueWriter(Column column) {
+    if (column instanceof IntColumn) {
+      IntColumn ints = (IntColumn) column;
+      return (sink, row) -> {
+        if (ints.isNull(row)) {
+          sink.write(NULL);
+        } else {
+          sink.writeInt(ints.getInt(row));
+        }
+      };
+    }
+    if (column instanceof DoubleColumn) {
+      DoubleColumn doubles = (DoubleColumn) column;
+      return (sink, row) -> writeDouble(sink, doubles.isNull(row) ? Double.NaN : doubles.getDouble(row));
+    }
+    if (column instanceof DateColumn) {
+      DateColumn dates = (DateColumn) column;
+      return (sink, row) -> {
+        if (dates.isNull(row)) {
+          sink.write(NULL);
+        } else {
+          writeDate(sink, LocalDate.ofEpochDay(dates.getEpochDay(row)));
+        }
+      };
+    }
+    if (column instanceof Utf8StringColumn) {
+      Utf8StringColumn strings = (Utf8StringColumn) column;
+      return (sink, row) -> {
+        if (strings.isNull(row)) {
+          sink.write(NULL);
+        } else {
+          writeUtf8(sink, strings.heap(), strings.start(row), strings.end(row));
+        }
+      };
+    }
+    if (column instanceof DictionaryColumn) {
+      // each distinct value is formatted once, code 0 is NA
+      DictionaryColumn dict = (DictionaryColumn) column;
+      Object[] dictionary = dict.dictionary();
+      byte[][] encoded = new byte[dictionary.length + 1][];
+      encoded[0] = NULL;
+      ByteSink sink = new ByteSink(32);
+      for (int i = 0; i < dictionary.length; i++) {
+        sink.reset();
+        writeObject(sink, dictionary[i]);
+        encoded[i + 1] = sink.toByteArray();
+      }
+      return (out, row) -> out.write(encoded[dict.code(row)]);
+    }
+    return (sink, row) -> writeObject(sink, column.get(row));
+  }
+
+  private static void writeObject(ByteSink sink, Object value) {
+    if (value == null) {
+      sink.write(NULL);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+        || value instanceof Byte) {
+      sink.writeLong(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      writeDouble(sink, ((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      sink.write((Boolean) value ? TRUE : FALSE);
+    } else if (value instanceof LocalDate) {
+      writeDate(sink, (LocalDate) value);
+    } else {
+      writeString(sink, String.valueOf(value));
+    }
+  }
+
+  private static void writeDouble(ByteSink sink, double value) {
+    // NA is a NaN, JSON has no representation of NaN or infinity
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      sink.write(NULL);
+    } else {
+      sink.writeFiniteDouble(value);
+    }
+  }
+
+  private static void writeDate(ByteSink sink, LocalDate date) {
+    sink.write('"');
+    sink.writeDate(date);
+    sink.write('"');
+  }
+
+  private static void writeString(ByteSink sink, String value) {
+    sink.write('"');
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x20 || c == '"' || c == '\\') {
+        sink.writeUtf8(value.substring(start, i));
+        writeEscaped(sink, c);
+        start = i + 1;
+      }
+    }
+    sink.writeUtf8(start == 0 ? value : value.substring(start));
+    sink.write('"');
+  }
+
+  /**
+   * Write UTF-8 bytes as a JSON string, runs of bytes that need no escaping are copied as they are.
+   */
+  private static void writeUtf8(ByteSink sink, byte[] heap, int start, int end) {
+    sink.write('"');
+    int runStart = start;
+    for (int i = start; i < end; i++) {
+      byte b = heap[i];
+      // bytes of multi byte characters are negative and never need escaping
+      if (b >= 0 && (b < 0x20 || b == '"' || b == '\\')) {
+        sink.write(heap, runStart, i - runStart);
+        writeEscaped(sink, (char) b);
+        runStart = i + 1;
+      }
+    }
+    sink.write(heap, runStart, end - runStart);
+    sink.write('"');
+  }
+
+  private static void writeEscaped(ByteSink sink, char c) {
+    sink.write('\\');
+    switch (c) {
+      case '"':
+      case '\\':
+        sink.write(c);
+        break;
+      case '\n':
+        sink.write('n');
+        break;
+      case '\r':
+        sink.write('r');
+        break;
+      case '\t':
+        sink.write('t');
+        break;
+      case '\b':
+        sink.write('b');
+        break;
+      case '\f':
+        sink.write('f');
+        break;
+      default:
+        sink.write('u');
+        sink.write('0');
+        sink.write('0');
+        sink.write(HEX[c >> 4]);
+        sink.write(HEX[c & 0xF]);
+    }
+  }
+
+  private static ByteSink single(ByteSink sink, char c) {
+    sink.reset();
+    sink.write(c);
+    return sink;
+  }
+
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      channel.write(buf);
+    }
+  }
+
+  private interface ValueWriter {
+    void write(ByteSink sink, int row);
+  }
+
+  private interface BlockFormatter {
+    void format(ByteSink sink, int fromRow, int toRow);
+  }
+
+  private interface Output {
+    void write(ByteSink sink) throws IOException;
+  }
+}
@@ -0,0 +1,463 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.Vector;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Formats numbers as text into a byte buffer that is reused for every value, so that whole columns can be
+ * converted to strings without a NumberFormat or the intermediate Strings of String.valueOf.
+ * The digits of a double are the shortest that parse back to the same double (the closest of them if there
+ * are several), e.g. 0.1 rather than the 0.1000000000000000055511151231257827 that is actually stored.
+ * In R style there are at most 15 significant digits, as in R, so 0.1 + 0.2 is 0.3 rather than 0.30000000000000004.
+ * Not thread safe, each formatting thread uses its own formatter.
+ */
+final class NumberFormatter {
+
+  enum Style {
+    /** As R formats numbers with as.character, e.g. 1200, 0.5, 0.333333333333333, 1e+05, 1e-04, Inf */
+    R,
+    /** As Double.toString, e.g. 1200.0, 0.5, 100000.0, 1.0E-4, Infinity */
+    JAVA
+  }
+
+  // the constants of the binary64 format and the Schubfach algorithm
+  private static final int P = 53;
+  private static final int Q_MIN = -1074;
+  private static final long C_MIN = 1L << (P - 1);
+  private static final int BQ_MASK = 0x7FF;
+  private static final long T_MASK = (1L << (P - 1)) - 1;
+  private static final long C_TINY = 3;
+  private static final int K_MIN = -324;
+  private static final int K_MAX = 292;
+  private static final long MASK_63 = (1L << 63) - 1;
+  private static final long[] G = powersOfTen();
+  // R formats doubles with 15 significant digits
+  private static final long R_MAX_SIGNIFICAND = 1_000_000_000_000_000L;
+  private static final MathContext R_DIGITS = new MathContext(15);
+
+  private final Style style;
+  private final byte[] buf = new byte[32];
+  private final byte[] digits = new byte[20];
+  private int length;
+  // the absolute value of the double being formatted is significand * 10^exponent
+  private long significand;
+  private int exponent;
+
+  NumberFormatter(Style style) {
+    this.style = style;
+  }
+
+  /**
+   * Format the values start to end of an integer or double vector in R style, NA values are null.
+   *
+   * @return the formatted values or null if the vector is not a plain numeric vector
+   */
+  static String[] format(Vector vec, int start, int end) {
+    if (!isPlainNumeric(vec)) {
+      return null;
+    }
+    NumberFormatter formatter = new NumberFormatter(Style.R);
+    String[] values = new String[end - start];
+    for (int i = start; i < end; i++) {
+      if (formatter.formatElement(vec, i)) {
+        values[i - start] = formatter.toString();
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Format the values start to end of an integer or double vector in R style into a string heap.
+   *
+   * @return the column or null if the vector is not a plain numeric vector
+   */
+  static Utf8StringColumn formatColumn(Vector vec, int start, int end) {
+    if (!isPlainNumeric(vec)) {
+      return null;
+    }
+    NumberFormatter formatter = new NumberFormatter(Style.R);
+    int n = end - start;
+    ByteSink heap = new ByteSink(n * 8);
+    int[] offsets = new int[n + 1];
+    BitSet nulls = null;
+    for (int i = 0; i < n; i++) {
+      offsets[i] = heap.size();
+      if (formatter.formatElement(vec, start + i)) {
+        heap.write(formatter.buf, 0, formatter.length);
+      } else {
+        nulls = nulls == null ? new BitSet() : nulls;
+        nulls.set(i);
+      }
+    }
+    offsets[n] = heap.size();
+    return new Utf8StringColumn(heap.toByteArray(), offsets, nulls);
+  }
+
+  /**
+   * Format the rows start to end of an int or double column as String.valueOf does, NA values are null.
+   *
+   * @return the formatted values or null if the column is neither an int nor a double column
+   */
+  static String[] format(Column column, int start, int end) {
+    NumberFormatter formatter = new NumberFormatter(Style.JAVA);
+    String[] values = new String[end - start];
+    if (column instanceof DoubleColumn) {
+      DoubleColumn doubles = (DoubleColumn) column;
+      for (int row = start; row < end; row++) {
+        if (!doubles.isNull(row)) {
+          formatter.format(doubles.getDouble(row));
+          values[row - start] = formatter.toString();
+        }
+      }
+      return values;
+    }
+    if (column instanceof IntColumn) {
+      IntColumn ints = (IntColumn) column;
+      for (int row = start; row < end; row++) {
+        if (!ints.isNull(row)) {
+          formatter.format(ints.getInt(row));
+          values[row - start] = formatter.toString();
+        }
+      }
+      return values;
+    }
+    return null;
+  }
+
+  /**
+   * @return the buffer holding the last formatted value, valid until the next value is formatted
+   */
+  byte[] buffer() {
+    return buf;
+  }
+
+  /**
+   * @return the length of the last formatted value
+   */
+  int length() {
+    return length;
+  }
+
+  /**
+   * @return the last formatted value
+   */
+  @Override
+  public String toString() {
+    return new String(buf, 0, length, StandardCharsets.ISO_8859_1);
+  }
+
+  void format(int value) {
+    length = 0;
+    long v = value;
+    if (v < 0) {
+      buf[length++] = '-';
+      v = -v;
+    }
+    writeDigits(v);
+  }
+
+  void format(double value) {
+    length = 0;
+    if (Double.isNaN(value)) {
+      writeAscii("NaN");
+      return;
+    }
+    boolean negative = Double.doubleToRawLongBits(value) < 0;
+    if (Double.isInfinite(value)) {
+      writeAscii(negative ? "-" : "");
+      writeAscii(style == Style.R ? "Inf" : "Infinity");
+      return;
+    }
+    if (value == 0) {
+      writeAscii(style == Style.R ? "0" : negative ? "-0.0" : "0.0");
+      return;
+    }
+    if (negative) {
+      buf[length++] = '-';
+    }
+    decompose(Math.abs(value));
+    if (style == Style.R && significand >= R_MAX_SIGNIFICAND) {
+      // round the exact value, not the shortest digits, so there is no double rounding
+      BigDecimal rounded = new BigDecimal(Math.abs(value)).round(R_DIGITS);
+      setDecimal(rounded.unscaledValue().longValue(), -rounded.scale());
+    }
+    int numDigits = 0;
+    for (long v = significand; v > 0; v /= 10) {
+      digits[numDigits++] = (byte) ('0' + v % 10);
+    }
+    // the digits are in reverse order
+    for (int i = 0, j = numDigits - 1; i < j; i++, j--) {
+      byte tmp = digits[i];
+      digits[i] = digits[j];
+      digits[j] = tmp;
+    }
+    int sciExponent = numDigits - 1 + exponent;
+    boolean fixed;
+    if (style == Style.R) {
+      // R uses fixed notation unless scientific notation is narrower
+      int fixedWidth = exponent >= 0 ? numDigits + exponent
+          : sciExponent >= 0 ? numDigits + 1 : numDigits + 1 - sciExponent;
+      int sciWidth = numDigits + (numDigits > 1 ? 1 : 0) + 2 + Math.max(2, countDigits(Math.abs(sciExponent)));
+      fixed = fixedWidth <= sciWidth;
+    } else {
+      fixed = sciExponent >= -3 && sciExponent < 7;
+    }
+    if (fixed) {
+      writeFixed(numDigits, sciExponent);
+    } else {
+      writeScientific(numDigits, sciExponent);
+    }
+  }
+
+  /**
+   * @return true if the element was formatted, false if it is NA
+   */
+  private boolean formatElement(Vector vec, int index) {
+    if (vec instanceof IntVector) {
+      int value = vec.getElementAsInt(index);
+      if (IntVector.isNA(value)) {
+        return false;
+      }
+      format(value);
+    } else {
+      double value = vec.getElementAsDouble(index);
+      if (DoubleVector.isNA(value)) {
+        return false;
+      }
+      format(value);
+    }
+    return true;
+  }
+
+  private static boolean isPlainNumeric(Vector vec) {
+    // a DateArrayVector formats its elements itself
+    return vec instanceof IntVector || (vec instanceof DoubleVector && !(vec instanceof DateArrayVector));
+  }
+
+  /**
+   * Find the shortest significand and exponent for a finite, positive value using Raffaello Giulietti's
+   * Schubfach algorithm (which Double.toString also uses since Java 19): the decimals closest to the bounds of
+   * the interval rounding to the value are found with one 128 bit multiplication each.
+   */
+  private void decompose(double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    long t = bits & T_MASK;
+    int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+    if (bq == 0) {
+      // subnormal
+      if (t < C_TINY) {
+        decompose(Q_MIN, 10 * t, -1);
+      } else {
+        decompose(Q_MIN, t, 0);
+      }
+      return;
+    }
+    int mq = -Q_MIN + 1 - bq;
+    long c = C_MIN | t;
+    if (0 < mq && mq < P) {
+      long f = c >> mq;
+      if (f << mq == c) {
+        // an integer
+        setDecimal(f, 0);
+        return;
+      }
+    }
+    decompose(-mq, c, 0);
+  }
+
+  private void decompose(int q, long c, int dk) {
+    int out = (int) c & 0x1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != C_MIN || q == Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+    long g1 = G[2 * (k - K_MIN)];
+    long g0 = G[2 * (k - K_MIN) + 1];
+    long vb = roundOdd(g1, g0, cb << h);
+    long vbl = roundOdd(g1, g0, cbl << h);
+    long vbr = roundOdd(g1, g0, cbr << h);
+
+    long s = vb >> 2;
+    if (s >= 100) {
+      // s / 10 * 10, try with one digit less first
+      long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        setDecimal(upin ? sp10 : tp10, k);
+        return;
+      }
+    }
+    long st = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (st << 2) + out <= vbr;
+    if (uin != win) {
+      setDecimal(uin ? s : st, k + dk);
+      return;
+    }
+    // both are in the interval, take the closest (the even one on a tie)
+    long cmp = vb - ((s + st) << 1);
+    setDecimal(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : st, k + dk);
+  }
+
+  /**
+   * @return the 126 bit g1 * 2^63 + g0 multiplied by cp, shifted right 127 bits and rounded to odd
+   */
+  private static long roundOdd(long g1, long g0, long cp) {
+    long x1 = Math.multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = Math.multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+  }
+
+  /** floor(log10(2^q)) */
+  private static int flog10pow2(int q) {
+    return (int) (q * 661_971_961_083L >> 41);
+  }
+
+  /** floor(log10(3/4 * 2^q)) */
+  private static int flog10threeQuartersPow2(int q) {
+    return (int) (q * 661_971_961_083L + -274_743_187_321L >> 41);
+  }
+
+  /** floor(log2(10^e)) */
+  private static int flog2pow10(int e) {
+    return (int) (e * 913_124_641_741L >> 38);
+  }
+
+  /**
+   * The 126 bit approximations floor(10^-k * 2^(125 - floor(log2(10^-k)))) + 1 of the powers of 10 from K_MIN to
+   * K_MAX, stored as pairs of the 63 high and the 63 low bits.
+   */
+  private static long[] powersOfTen() {
+    long[] g = new long[2 * (K_MAX - K_MIN + 1)];
+    BigInteger mask63 = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+    for (int k = K_MIN; k <= K_MAX; k++) {
+      int shift = 125 - flog2pow10(-k);
+      BigInteger value;
+      if (k <= 0) {
+        BigInteger pow = BigInteger.TEN.pow(-k);
+        value = shift >= 0 ? pow.shiftLeft(shift) : pow.shiftRight(-shift);
+      } else {
+        value = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+      }
+      value = value.add(BigInteger.ONE);
+      g[2 * (k - K_MIN)] = value.shiftRight(63).longValue();
+      g[2 * (k - K_MIN) + 1] = value.and(mask63).longValue();
+    }
+    return g;
+  }
+
+  private void setDecimal(long m, int e) {
+    if (m % 100_000_000 == 0) {
+      m /= 100_000_000;
+      e += 8;
+    }
+    if (m % 10_000 == 0) {
+      m /= 10_000;
+      e += 4;
+    }
+    if (m % 100 == 0) {
+      m /= 100;
+      e += 2;
+    }
+    while (m % 10 == 0) {
+      m /= 10;
+      e++;
+    }
+    significand = m;
+    exponent = e;
+  }
+
+  private void writeFixed(int numDigits, int sciExponent) {
+    if (exponent >= 0) {
+      write(digits, 0, numDigits);
+      for (int i = 0; i < exponent; i++) {
+        buf[length++] = '0';
+      }
+      if (style == Style.JAVA) {
+        writeAscii(".0");
+      }
+    } else if (sciExponent >= 0) {
+      write(digits, 0, sciExponent + 1);
+      buf[length++] = '.';
+      write(digits, sciExponent + 1, numDigits - sciExponent - 1);
+    } else {
+      writeAscii("0.");
+      for (int i = -1; i > sciExponent; i--) {
+        buf[length++] = '0';
+      }
+      write(digits, 0, numDigits);
+    }
+  }
+
+  private void writeScientific(int numDigits, int sciExponent) {
+    buf[length++] = digits[0];
+    if (numDigits > 1) {
+      buf[length++] = '.';
+      write(digits, 1, numDigits - 1);
+    } else if (style == Style.JAVA) {
+      writeAscii(".0");
+    }
+    if (style == Style.R) {
+      buf[length++] = 'e';
+      buf[length++] = (byte) (sciExponent < 0 ? '-' : '+');
+      if (Math.abs(sciExponent) < 10) {
+        buf[length++] = '0';
+      }
+    } else {
+      buf[length++] = 'E';
+      if (sciExponent < 0) {
+        buf[length++] = '-';
+      }
+    }
+    writeDigits(Math.abs(sciExponent));
+  }
+
+  private void writeDigits(long value) {
+    int numDigits = countDigits(value);
+    for (int pos = length + numDigits - 1; pos >= length; pos--) {
+      buf[pos] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    length += numDigits;
+  }
+
+  private void write(byte[] src, int offset, int len) {
+    System.arraycopy(src, offset, buf, length, len);
+    length += len;
+  }
+
+  private void writeAscii(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      buf[length++] = (byte) s.charAt(i);
+    }
+  }
+
+  private static int countDigits(long value) {
+    int count = 1;
+    while (value >= 10) {
+      value /= 10;
+      count++;
+    }
+    return count;
+  }
+}
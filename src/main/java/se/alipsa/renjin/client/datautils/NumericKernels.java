@@ -0,0 +1,475 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.BitSet;
+
+/**
+ * Aggregations and comparisons over the primitive storage of numeric columns. NA rows (and NaN values) are
+ * skipped. The loops run over the stretches of rows between the NA rows with no per row NA check and without
+ * boxing, and sums use four independent accumulators to shorten the dependency chain of the additions. Run length
+ * encoded columns are aggregated a run at a time and chunked columns a chunk at a time, other columns fall back to
+ * reading each value.
+ */
+final class NumericKernels {
+
+  private NumericKernels() {
+    // Utility class
+  }
+
+  /**
+   * @return the sum of the values that are not NA or NaN, 0 if there are none
+   */
+  static double sum(Column column) {
+    if (column instanceof DoubleColumn) {
+      DoubleColumn col = (DoubleColumn) column;
+      return sum(col.values(), col.nulls(), 0, col.size());
+    }
+    if (column instanceof IntColumn) {
+      IntColumn col = (IntColumn) column;
+      return sum(col.values(), col.nulls(), 0, col.size());
+    }
+    if (column instanceof ChunkedColumn) {
+      double sum = 0;
+      for (Column chunk : ((ChunkedColumn) column).chunks()) {
+        sum += sum(chunk);
+      }
+      return sum;
+    }
+    if (column instanceof RunLengthColumn) {
+      RunLengthColumn rle = (RunLengthColumn) column;
+      int[] runEnds = rle.runEnds();
+      double sum = 0;
+      for (int run = 0; run < runEnds.length; run++) {
+        double val = valueAt(rle.runValues(), run);
+        if (!Double.isNaN(val)) {
+          sum += val * (runEnds[run] - (run == 0 ? 0 : runEnds[run - 1]));
+        }
+      }
+      return sum;
+    }
+    double sum = 0;
+    for (int row = 0; row < column.size(); row++) {
+      double val = valueAt(column, row);
+      if (!Double.isNaN(val)) {
+        sum += val;
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * @return the number of values that are not NA or NaN
+   */
+  static long count(Column column) {
+    if (column instanceof DoubleColumn) {
+      DoubleColumn col = (DoubleColumn) column;
+      return count(col.values(), col.nulls(), 0, col.size());
+    }
+    if (column instanceof IntColumn) {
+      IntColumn col = (IntColumn) column;
+      return count(col.nulls(), 0, col.size());
+    }
+    if (column instanceof ChunkedColumn) {
+      long count = 0;
+      for (Column chunk : ((ChunkedColumn) column).chunks()) {
+        count += count(chunk);
+      }
+      return count;
+    }
+    if (column instanceof RunLengthColumn) {
+      RunLengthColumn rle = (RunLengthColumn) column;
+      int[] runEnds = rle.runEnds();
+      long count = 0;
+      for (int run = 0; run < runEnds.length; run++) {
+        if (!Double.isNaN(valueAt(rle.runValues(), run))) {
+          count += runEnds[run] - (run == 0 ? 0 : runEnds[run - 1]);
+        }
+      }
+      return count;
+    }
+    long count = 0;
+    for (int row = 0; row < column.size(); row++) {
+      if (!Double.isNaN(valueAt(column, row))) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the smallest value that is not NA or NaN, NaN if there is none
+   */
+  static double min(Column column) {
+    return extreme(column, true);
+  }
+
+  /**
+   * @return the largest value that is not NA or NaN, NaN if there is none
+   */
+  static double max(Column column) {
+    return extreme(column, false);
+  }
+
+  private static double extreme(Column column, boolean min) {
+    if (column instanceof DoubleColumn) {
+      DoubleColumn col = (DoubleColumn) column;
+      double val = min ? min(col.values(), col.nulls(), 0, col.size()) : max(col.values(), col.nulls(), 0, col.size());
+      return Double.isInfinite(val) && count(col.values(), col.nulls(), 0, col.size()) == 0 ? Double.NaN : val;
+    }
+    if (column instanceof IntColumn) {
+      IntColumn col = (IntColumn) column;
+      if (count(col.nulls(), 0, col.size()) == 0) {
+        return Double.NaN;
+      }
+      return min ? min(col.values(), col.nulls(), 0, col.size()) : max(col.values(), col.nulls(), 0, col.size());
+    }
+    Column values = column;
+    if (column instanceof RunLengthColumn) {
+      // every run has at least one row so the extremes of the runs are the extremes of the column
+      values = ((RunLengthColumn) column).runValues();
+    }
+    Column[] parts = column instanceof ChunkedColumn ? ((ChunkedColumn) column).chunks() : null;
+    double result = Double.NaN;
+    int n = parts == null ? values.size() : parts.length;
+    for (int i = 0; i < n; i++) {
+      double val = parts == null ? valueAt(values, i) : extreme(parts[i], min);
+      if (Double.isNaN(result) || (min ? val < result : val > result)) {
+        result = val;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the sum of the products of the rows where neither value is NA or NaN
+   */
+  static double dot(Column a, Column b) {
+    if (a.size() != b.size()) {
+      throw new IllegalArgumentException("The columns have different sizes, " + a.size() + " and " + b.size());
+    }
+    if (a instanceof DoubleColumn && b instanceof DoubleColumn) {
+      DoubleColumn x = (DoubleColumn) a;
+      DoubleColumn y = (DoubleColumn) b;
+      return dot(x.values(), y.values(), union(x.nulls(), y.nulls()), 0, a.size());
+    }
+    double sum = 0;
+    for (int row = 0; row < a.size(); row++) {
+      double product = valueAt(a, row) * valueAt(b, row);
+      if (!Double.isNaN(product)) {
+        sum += product;
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * @return the rows where the value compared to the constant holds, never the NA (or NaN) rows
+   */
+  static BitSet mask(Column column, CompareOp op, double value) {
+    BitSet mask = new BitSet(column.size());
+    if (!Double.isNaN(value)) {
+      mask(column, op, value, mask, 0);
+    }
+    return mask;
+  }
+
+  private static void mask(Column column, CompareOp op, double value, BitSet mask, int offset) {
+    if (column instanceof DoubleColumn || column instanceof IntColumn) {
+      int n = column.size();
+      long[] words = new long[(n + 63) >>> 6];
+      BitSet nulls;
+      if (column instanceof DoubleColumn) {
+        DoubleColumn col = (DoubleColumn) column;
+        compare(col.values(), 0, n, op, value, words);
+        nulls = col.nulls();
+      } else {
+        IntColumn col = (IntColumn) column;
+        compare(col.values(), 0, n, op, value, words);
+        nulls = col.nulls();
+      }
+      BitSet matches = BitSet.valueOf(words);
+      if (nulls != null) {
+        matches.andNot(nulls);
+      }
+      if (offset == 0) {
+        mask.or(matches);
+      } else {
+        for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+          mask.set(offset + row);
+        }
+      }
+      return;
+    }
+    if (column instanceof ChunkedColumn) {
+      int start = offset;
+      for (Column chunk : ((ChunkedColumn) column).chunks()) {
+        mask(chunk, op, value, mask, start);
+        start += chunk.size();
+      }
+      return;
+    }
+    if (column instanceof RunLengthColumn) {
+      RunLengthColumn rle = (RunLengthColumn) column;
+      int[] runEnds = rle.runEnds();
+      for (int run = 0; run < runEnds.length; run++) {
+        if (op.test(valueAt(rle.runValues(), run), value)) {
+          mask.set(offset + (run == 0 ? 0 : runEnds[run - 1]), offset + runEnds[run]);
+        }
+      }
+      return;
+    }
+    for (int row = 0; row < column.size(); row++) {
+      if (op.test(valueAt(column, row), value)) {
+        mask.set(offset + row);
+      }
+    }
+  }
+
+  /**
+   * @return the value of the row as a double, NaN if it is NA
+   */
+  static double valueAt(Column column, int row) {
+    if (column instanceof DoubleColumn) {
+      DoubleColumn col = (DoubleColumn) column;
+      return col.isNull(row) ? Double.NaN : col.getDouble(row);
+    }
+    if (column instanceof IntColumn) {
+      IntColumn col = (IntColumn) column;
+      return col.isNull(row) ? Double.NaN : col.getInt(row);
+    }
+    Object val = column.get(row);
+    if (val == null) {
+      return Double.NaN;
+    }
+    if (val instanceof Number) {
+      return ((Number) val).doubleValue();
+    }
+    try {
+      return Double.parseDouble(String.valueOf(val));
+    } catch (NumberFormatException e) {
+      throw new DataTransformationRuntimeException("The value " + val + " in row " + row + " is not a number", e);
+    }
+  }
+
+  /**
+   * @return the end of the stretch of rows starting at from without NA rows, i.e. the next NA row or end
+   */
+  private static int nextNull(BitSet nulls, int from, int end) {
+    if (nulls == null) {
+      return end;
+    }
+    int next = nulls.nextSetBit(from);
+    return next < 0 || next > end ? end : next;
+  }
+
+  private static BitSet union(BitSet a, BitSet b) {
+    if (a == null || b == null) {
+      return a == null ? b : a;
+    }
+    BitSet union = (BitSet) a.clone();
+    union.or(b);
+    return union;
+  }
+
+  static double sum(double[] x, BitSet nulls, int start, int end) {
+    double s0 = 0;
+    double s1 = 0;
+    double s2 = 0;
+    double s3 = 0;
+    for (int from = start; from < end; ) {
+      int to = nextNull(nulls, from, end);
+      int i = from;
+      for (; i + 3 < to; i += 4) {
+        s0 += notNaN(x[i]);
+        s1 += notNaN(x[i + 1]);
+        s2 += notNaN(x[i + 2]);
+        s3 += notNaN(x[i + 3]);
+      }
+      for (; i < to; i++) {
+        s0 += notNaN(x[i]);
+      }
+      from = to + 1;
+    }
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  static long sum(int[] x, BitSet nulls, int start, int end) {
+    long s0 = 0;
+    long s1 = 0;
+    long s2 = 0;
+    long s3 = 0;
+    for (int from = start; from < end; ) {
+      int to = nextNull(nulls, from, end);
+      int i = from;
+      for (; i + 3 < to; i += 4) {
+        s0 += x[i];
+        s1 += x[i + 1];
+        s2 += x[i + 2];
+        s3 += x[i + 3];
+      }
+      for (; i < to; i++) {
+        s0 += x[i];
+      }
+      from = to + 1;
+    }
+    return s0 + s1 + s2 + s3;
+  }
+
+  static int count(double[] x, BitSet nulls, int start, int end) {
+    int count = 0;
+    for (int from = start; from < end; ) {
+      int to = nextNull(nulls, from, end);
+      for (int i = from; i < to; i++) {
+        count += x[i] == x[i] ? 1 : 0;
+      }
+      from = to + 1;
+    }
+    return count;
+  }
+
+  static int count(BitSet nulls, int start, int end) {
+    return nulls == null ? end - start : end - start - nulls.get(start, end).cardinality();
+  }
+
+  static double min(double[] x, BitSet nulls, int start, int end) {
+    double min = Double.POSITIVE_INFINITY;
+    for (int from = start; from < end; ) {
+      int to = nextNull(nulls, from, end);
+      for (int i = from; i < to; i++) {
+        // NaN compares false and is skipped
+        min = x[i] < min ? x[i] : min;
+      }
+      from = to + 1;
+    }
+    return min;
+  }
+
+  static double max(double[] x, BitSet nulls, int start, int end) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (int from = start; from < end; ) {
+      int to = nextNull(nulls, from, end);
+      for (int i = from; i < to; i++) {
+        max = x[i] > max ? x[i] : max;
+      }
+      from = to + 1;
+    }
+    return max;
+  }
+
+  static int min(int[] x, BitSet nulls, int start, int end) {
+    int min = Integer.MAX_VALUE;
+    for (int from = start; from < end; ) {
+      int to = nextNull(nulls, from, end);
+      for (int i = from; i < to; i++) {
+        min = Math.min(min, x[i]);
+      }
+      from = to + 1;
+    }
+    return min;
+  }
+
+  static int max(int[] x, BitSet nulls, int start, int end) {
+    int max = Integer.MIN_VALUE;
+    for (int from = start; from < end; ) {
+      int to = nextNull(nulls, from, end);
+      for (int i = from; i < to; i++) {
+        max = Math.max(max, x[i]);
+      }
+      from = to + 1;
+    }
+    return max;
+  }
+
+  static double dot(double[] x, double[] y, BitSet nulls, int start, int end) {
+    double s0 = 0;
+    double s1 = 0;
+    for (int from = start; from < end; ) {
+      int to = nextNull(nulls, from, end);
+      int i = from;
+      for (; i + 1 < to; i += 2) {
+        s0 += notNaN(x[i] * y[i]);
+        s1 += notNaN(x[i + 1] * y[i + 1]);
+      }
+      for (; i < to; i++) {
+        s0 += notNaN(x[i] * y[i]);
+      }
+      from = to + 1;
+    }
+    return s0 + s1;
+  }
+
+  /**
+   * Set the bit of each row in start to end (relative to start) where the comparison holds, NA rows are not
+   * excluded (the caller removes them with the NA mask).
+   */
+  static void compare(double[] x, int start, int end, CompareOp op, double value, long[] words) {
+    switch (op) {
+      case EQ:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] == value ? 1L : 0L) << (i - start);
+        }
+        break;
+      case NE:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] < value || x[i] > value ? 1L : 0L) << (i - start);
+        }
+        break;
+      case LT:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] < value ? 1L : 0L) << (i - start);
+        }
+        break;
+      case LE:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] <= value ? 1L : 0L) << (i - start);
+        }
+        break;
+      case GT:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] > value ? 1L : 0L) << (i - start);
+        }
+        break;
+      default:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] >= value ? 1L : 0L) << (i - start);
+        }
+    }
+  }
+
+  static void compare(int[] x, int start, int end, CompareOp op, double value, long[] words) {
+    switch (op) {
+      case EQ:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] == value ? 1L : 0L) << (i - start);
+        }
+        break;
+      case NE:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] != value ? 1L : 0L) << (i - start);
+        }
+        break;
+      case LT:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] < value ? 1L : 0L) << (i - start);
+        }
+        break;
+      case LE:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] <= value ? 1L : 0L) << (i - start);
+        }
+        break;
+      case GT:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] > value ? 1L : 0L) << (i - start);
+        }
+        break;
+      default:
+        for (int i = start; i < end; i++) {
+          words[(i - start) >>> 6] |= (x[i] >= value ? 1L : 0L) << (i - start);
+        }
+    }
+  }
+
+  private static double notNaN(double val) {
+    return val == val ? val : 0;
+  }
+}
@@ -0,0 +1,34 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * A column of arbitrary objects, one reference per row.
+ */
+final class ObjectColumn extends Column {
+
+  private final Object[] values;
+
+  ObjectColumn(Object[] values) {
+    this.values = values;
+  }
+
+  @Override
+  int size() {
+    return values.length;
+  }
+
+  @Override
+  Object get(int row) {
+    return values[row];
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.PLAIN;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    // a reference and (on average) a small object per row
+    return 16 + values.length * 24L;
+  }
+}
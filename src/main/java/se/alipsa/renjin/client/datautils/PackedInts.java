@@ -0,0 +1,61 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * A fixed size array of small non-negative ints stored with a fixed number of bits per value in a long array.
+ */
+final class PackedInts {
+
+  private final long[] words;
+  private final int bitsPerValue;
+  private final long mask;
+  private final int size;
+
+  PackedInts(int size, int bitsPerValue) {
+    if (bitsPerValue < 1 || bitsPerValue > 32) {
+      throw new IllegalArgumentException("bitsPerValue must be between 1 and 32 but was " + bitsPerValue);
+    }
+    this.size = size;
+    this.bitsPerValue = bitsPerValue;
+    this.mask = (1L << bitsPerValue) - 1;
+    this.words = new long[(int) (((long) size * bitsPerValue + 63) >>> 6)];
+  }
+
+  /**
+   * @param maxValue the largest value to store
+   * @return the number of bits needed to store values from 0 to maxValue
+   */
+  static int bitsRequired(int maxValue) {
+    return Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+  }
+
+  int size() {
+    return size;
+  }
+
+  int get(int index) {
+    long bitIndex = (long) index * bitsPerValue;
+    int word = (int) (bitIndex >>> 6);
+    int shift = (int) (bitIndex & 63);
+    long value = words[word] >>> shift;
+    if (shift + bitsPerValue > 64) {
+      value |= words[word + 1] << (64 - shift);
+    }
+    return (int) (value & mask);
+  }
+
+  void set(int index, int value) {
+    long bitIndex = (long) index * bitsPerValue;
+    int word = (int) (bitIndex >>> 6);
+    int shift = (int) (bitIndex & 63);
+    long bits = value & mask;
+    words[word] = (words[word] & ~(mask << shift)) | (bits << shift);
+    if (shift + bitsPerValue > 64) {
+      int spill = 64 - shift;
+      words[word + 1] = (words[word + 1] & ~(mask >>> spill)) | (bits >>> spill);
+    }
+  }
+
+  long estimatedByteSize() {
+    return 32 + words.length * 8L;
+  }
+}
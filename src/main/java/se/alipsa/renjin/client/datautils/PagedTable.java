@@ -0,0 +1,245 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.ListVector;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static se.alipsa.renjin.client.datautils.RDataTransformer.toHeaderList;
+import static se.alipsa.renjin.client.datautils.RDataTransformer.toTypeList;
+
+/**
+ * A read only view of a (large) data.frame that converts the rows in blocks when they are first accessed,
+ * suitable as the model of a virtually scrolling grid (e.g. a Swing JTable or a JavaFX TableView) where only
+ * the visible rows are ever read.
+ * <p>
+ * Each block is a {@link Table} created directly from the rows of the ListVector, at most maxBlocks blocks are kept
+ * and the least recently used block is evicted when a new one is loaded. When a block is accessed, the blocks
+ * before and after it are loaded on a background thread so that scrolling rarely has to wait for a conversion.
+ * </p>
+ * <pre>
+ * try (PagedTable table = new PagedTable(df)) {
+ *   Object value = table.getValue(2_500_000, 3);
+ * }
+ * </pre>
+ */
+public class PagedTable implements AutoCloseable {
+
+  /** The default number of rows in each block. */
+  public static final int DEFAULT_BLOCK_SIZE = 1024;
+  /** The default max number of blocks kept in memory. */
+  public static final int DEFAULT_MAX_BLOCKS = 16;
+
+  private final ListVector df;
+  private final List<String> headerList;
+  private final List<DataType> columnTypes;
+  private final int rowCount;
+  private final int blockSize;
+  private final Map<Integer, Table> blocks;
+  private final ConcurrentHashMap<Integer, CompletableFuture<Table>> loading = new ConcurrentHashMap<>();
+  private final ExecutorService prefetcher;
+  private volatile boolean closed;
+
+  /**
+   * @param df the data.frame to view
+   */
+  public PagedTable(ListVector df) {
+    this(df, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_BLOCKS);
+  }
+
+  /**
+   * @param df the data.frame to view
+   * @param blockSize the number of rows converted at a time
+   * @param maxBlocks the max number of blocks kept in memory
+   */
+  public PagedTable(ListVector df, int blockSize, int maxBlocks) {
+    if (blockSize < 1 || maxBlocks < 1) {
+      throw new IllegalArgumentException("Block size and max blocks must be at least 1 but were "
+          + blockSize + " and " + maxBlocks);
+    }
+    this.df = df;
+    this.headerList = Collections.unmodifiableList(toHeaderList(df));
+    this.columnTypes = Collections.unmodifiableList(toTypeList(df));
+    this.rowCount = df.length() == 0 ? 0 : df.getElementAsSEXP(0).length();
+    this.blockSize = blockSize;
+    this.blocks = new LinkedHashMap<Integer, Table>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Table> eldest) {
+        return size() > maxBlocks;
+      }
+    };
+    this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "PagedTable-prefetch");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public List<String> getHeaderList() {
+    return headerList;
+  }
+
+  public List<DataType> getColumnTypes() {
+    return columnTypes;
+  }
+
+  public int getRowSize() {
+    return rowCount;
+  }
+
+  public int getHeaderSize() {
+    return headerList.size();
+  }
+
+  /**
+   * @param row the row index
+   * @param column the column index
+   * @return the value, the block holding the row is loaded if needed
+   * @throws IllegalStateException if the table has been closed
+   */
+  public Object getValue(int row, int column) {
+    checkRow(row);
+    return block(row / blockSize).getValue(row % blockSize, column);
+  }
+
+  /**
+   * @param row the row index
+   * @return the values of the row, the block holding the row is loaded if needed
+   * @throws IllegalStateException if the table has been closed
+   */
+  public List<Object> getRow(int row) {
+    checkRow(row);
+    return block(row / blockSize).getRow(row % blockSize);
+  }
+
+  /**
+   * @return a List view of the rows, rows are loaded when accessed
+   */
+  public List<List<Object>> getRowList() {
+    return new RowList();
+  }
+
+  /**
+   * @return the number of blocks currently held in memory
+   */
+  public int getCachedBlockCount() {
+    synchronized (blocks) {
+      return blocks.size();
+    }
+  }
+
+  /**
+   * Stop the prefetching thread and release the cached blocks, the rows can no longer be read after this.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    prefetcher.shutdownNow();
+    // prefetches still queued will never run, fail them so that nobody waits for them forever
+    IllegalStateException closedException = new IllegalStateException("The PagedTable is closed");
+    for (CompletableFuture<Table> future : loading.values()) {
+      future.completeExceptionally(closedException);
+    }
+    loading.clear();
+    synchronized (blocks) {
+      blocks.clear();
+    }
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= rowCount) {
+      throw new IndexOutOfBoundsException("Row " + row + " is outside of the " + rowCount + " rows");
+    }
+  }
+
+  private Table block(int index) {
+    if (closed) {
+      throw new IllegalStateException("The PagedTable is closed");
+    }
+    Table block;
+    synchronized (blocks) {
+      block = blocks.get(index);
+    }
+    if (block == null) {
+      CompletableFuture<Table> future = new CompletableFuture<>();
+      CompletableFuture<Table> pending = loading.putIfAbsent(index, future);
+      if (pending == null) {
+        load(index, future);
+        pending = future;
+      }
+      try {
+        block = pending.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    }
+    prefetch(index + 1);
+    prefetch(index - 1);
+    return block;
+  }
+
+  private void prefetch(int index) {
+    if (index < 0 || index * (long) blockSize >= rowCount || prefetcher.isShutdown()) {
+      return;
+    }
+    synchronized (blocks) {
+      if (blocks.containsKey(index)) {
+        return;
+      }
+    }
+    CompletableFuture<Table> future = new CompletableFuture<>();
+    if (loading.putIfAbsent(index, future) == null) {
+      try {
+        prefetcher.execute(() -> load(index, future));
+      } catch (RuntimeException e) {
+        // the table has been closed, the block will be loaded when accessed
+        loading.remove(index, future);
+        future.completeExceptionally(e);
+      }
+    }
+  }
+
+  private void load(int index, CompletableFuture<Table> future) {
+    try {
+      Table block;
+      synchronized (blocks) {
+        block = blocks.get(index);
+      }
+      if (block == null) {
+        int start = index * blockSize;
+        int end = (int) Math.min((long) start + blockSize, rowCount);
+        block = new Table(df, null, RowRange.of(start, end));
+        synchronized (blocks) {
+          blocks.put(index, block);
+        }
+      }
+      future.complete(block);
+    } catch (RuntimeException | Error e) {
+      future.completeExceptionally(e);
+    } finally {
+      loading.remove(index, future);
+    }
+  }
+
+  private class RowList extends AbstractList<List<Object>> implements RandomAccess {
+
+    @Override
+    public List<Object> get(int index) {
+      return getRow(index);
+    }
+
+    @Override
+    public int size() {
+      return rowCount;
+    }
+  }
+}
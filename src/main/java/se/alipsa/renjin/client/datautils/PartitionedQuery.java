@@ -0,0 +1,245 @@
+package se.alipsa.renjin.client.datautils;
+
+import javax.sql.DataSource;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Runs a query as several partitions in parallel, each over its own connection, and combines the results into one
+ * Table. The partitions are ranges of a (typically indexed) column and the SQL template must contain the placeholder
+ * {partition} where the range condition is inserted, e.g.
+ * <pre>
+ * Table sales = new PartitionedQuery(dataSource, "select * from sales where {partition}", "id")
+ *     .ranges(1, 10_000_000, 8)
+ *     .read();
+ * </pre>
+ * The rows of each partition are converted into column batches by the thread running it and the batches are
+ * concatenated in partition order, so the rows of the Table are in the order of the ranges (and within each range
+ * in the order of the query). Column types come from {@link DataType#forSqlType(int)}.
+ */
+public class PartitionedQuery {
+
+  static final String PLACEHOLDER = "{partition}";
+  private static final int BATCH_SIZE = 4096;
+
+  private final Supplier<Connection> connections;
+  private final String sqlTemplate;
+  private final String partitionColumn;
+  private final List<Object[]> ranges = new ArrayList<>();
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * @param connections supplier of connections, each partition gets (and closes) its own connection
+   * @param sqlTemplate the query containing the placeholder {partition}
+   * @param partitionColumn the column to partition the query on
+   */
+  public PartitionedQuery(Supplier<Connection> connections, String sqlTemplate, String partitionColumn) {
+    if (!sqlTemplate.contains(PLACEHOLDER)) {
+      throw new IllegalArgumentException("The sql template must contain " + PLACEHOLDER + " but was " + sqlTemplate);
+    }
+    this.connections = connections;
+    this.sqlTemplate = sqlTemplate;
+    this.partitionColumn = partitionColumn;
+  }
+
+  /**
+   * @param dataSource the DataSource to get a connection from for each partition
+   * @param sqlTemplate the query containing the placeholder {partition}
+   * @param partitionColumn the column to partition the query on
+   */
+  public PartitionedQuery(DataSource dataSource, String sqlTemplate, String partitionColumn) {
+    this(() -> {
+      try {
+        return dataSource.getConnection();
+      } catch (SQLException e) {
+        throw new DataTransformationRuntimeException("Failed to get a connection from the DataSource", e);
+      }
+    }, sqlTemplate, partitionColumn);
+  }
+
+  /**
+   * Add a partition with the rows where lower &lt;= partitionColumn &lt; upper.
+   *
+   * @param lower the inclusive lower bound, null for no lower bound
+   * @param upper the exclusive upper bound, null for no upper bound
+   * @return this query
+   */
+  public PartitionedQuery range(Object lower, Object upper) {
+    ranges.add(new Object[]{lower, upper});
+    return this;
+  }
+
+  /**
+   * Add numPartitions partitions of (almost) equal size covering min to max (both inclusive).
+   *
+   * @param min the smallest value of the partition column
+   * @param max the largest value of the partition column
+   * @param numPartitions the number of partitions to split the range into
+   * @return this query
+   */
+  public PartitionedQuery ranges(long min, long max, int numPartitions) {
+    if (max < min || numPartitions < 1) {
+      throw new IllegalArgumentException("Cannot split " + min + " to " + max + " into " + numPartitions + " partitions");
+    }
+    // max - min + 1 overflows a long for wide ranges such as Long.MIN_VALUE to Long.MAX_VALUE
+    BigInteger first = BigInteger.valueOf(min);
+    BigInteger span = BigInteger.valueOf(max).subtract(first).add(BigInteger.ONE);
+    int partitions = span.compareTo(BigInteger.valueOf(numPartitions)) < 0 ? span.intValue() : numPartitions;
+    BigInteger[] sizeAndRest = span.divideAndRemainder(BigInteger.valueOf(partitions));
+    int rest = sizeAndRest[1].intValue();
+    long lower = min;
+    for (int i = 1; i <= partitions; i++) {
+      BigInteger upper = first.add(sizeAndRest[0].multiply(BigInteger.valueOf(i)))
+          .add(BigInteger.valueOf(Math.min(i, rest)));
+      if (upper.bitLength() >= Long.SIZE) {
+        // only the last upper bound (max + 1) can be too large, when max is Long.MAX_VALUE
+        range(lower, null);
+      } else {
+        range(lower, upper.longValue());
+        lower = upper.longValue();
+      }
+    }
+    return this;
+  }
+
+  /**
+   * @param numThreads the max number of partitions to run concurrently, default is the number of processors
+   * @return this query
+   */
+  public PartitionedQuery threads(int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1 but was " + numThreads);
+    }
+    this.threads = numThreads;
+    return this;
+  }
+
+  /**
+   * Run all partitions and combine the results.
+   *
+   * @return a Table with the rows of all partitions
+   * @throws SQLException if a database issue occurs in any of the partitions
+   */
+  public Table read() throws SQLException {
+    if (ranges.isEmpty()) {
+      throw new IllegalStateException("No partitions have been added");
+    }
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("PartitionedQuery.read")) {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, ranges.size()));
+      List<PartitionResult> results = new ArrayList<>(ranges.size());
+      try {
+        List<Future<PartitionResult>> futures = new ArrayList<>(ranges.size());
+        for (Object[] range : ranges) {
+          futures.add(executor.submit(() -> readPartition(range[0], range[1])));
+        }
+        SQLException failure = null;
+        for (Future<PartitionResult> future : futures) {
+          try {
+            results.add(future.get());
+          } catch (ExecutionException e) {
+            SQLException cause = e.getCause() instanceof SQLException
+                ? (SQLException) e.getCause()
+                : new SQLException("Failed to read a partition", e.getCause());
+            if (failure == null) {
+              failure = cause;
+            } else {
+              failure.addSuppressed(cause);
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while reading partitions", e);
+          }
+        }
+        if (failure != null) {
+          throw failure;
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      PartitionResult first = results.get(0);
+      List<ColumnBatch> batches = new ArrayList<>();
+      int rowCount = 0;
+      for (PartitionResult result : results) {
+        batches.addAll(result.batches);
+        for (ColumnBatch batch : result.batches) {
+          rowCount += batch.size();
+        }
+      }
+      int ncols = first.headers.size();
+      Table table = new Table(first.headers, first.types, new ArrayList<>(ColumnBatch.concat(batches, ncols)),
+          rowCount);
+      probe.end(table.getRowSize(), table.getHeaderSize());
+      return table;
+    }
+  }
+
+  String partitionSql(Object lower, Object upper) {
+    String condition;
+    if (lower == null && upper == null) {
+      condition = "1 = 1";
+    } else if (lower == null) {
+      condition = partitionColumn + " < ?";
+    } else if (upper == null) {
+      condition = partitionColumn + " >= ?";
+    } else {
+      condition = partitionColumn + " >= ? and " + partitionColumn + " < ?";
+    }
+    return sqlTemplate.replace(PLACEHOLDER, condition);
+  }
+
+  private PartitionResult readPartition(Object lower, Object upper) throws SQLException {
+    try (Connection con = connections.get();
+         PreparedStatement ps = con.prepareStatement(partitionSql(lower, upper))) {
+      int idx = 1;
+      if (lower != null) {
+        ps.setObject(idx++, lower);
+      }
+      if (upper != null) {
+        ps.setObject(idx, upper);
+      }
+      try (ResultSet rs = ps.executeQuery()) {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int ncols = rsmd.getColumnCount();
+        PartitionResult result = new PartitionResult();
+        for (int i = 1; i <= ncols; i++) {
+          result.headers.add(rsmd.getColumnName(i));
+          result.types.add(DataType.forSqlType(rsmd.getColumnType(i)));
+        }
+        Object[][] rows = new Object[BATCH_SIZE][];
+        int size = 0;
+        while (rs.next()) {
+          Object[] row = new Object[ncols];
+          for (int i = 0; i < ncols; i++) {
+            row[i] = rs.getObject(i + 1);
+          }
+          rows[size++] = row;
+          if (size == BATCH_SIZE) {
+            result.batches.add(ColumnBatch.fromRows(rows, size, ncols));
+            size = 0;
+          }
+        }
+        if (size > 0) {
+          result.batches.add(ColumnBatch.fromRows(rows, size, ncols));
+        }
+        return result;
+      }
+    }
+  }
+
+  private static final class PartitionResult {
+    private final List<String> headers = new ArrayList<>();
+    private final List<DataType> types = new ArrayList<>();
+    private final List<ColumnBatch> batches = new ArrayList<>();
+  }
+}
@@ -0,0 +1,284 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.Arrays;
+
+/**
+ * An approximate quantile sketch (KLL) of numeric values. The sketch keeps a few hundred values in levels of
+ * compactors: when a level is full it is sorted and every other value is promoted to the next level with twice the
+ * weight. With the default k of 200 the rank error is about 1.5% and the sketch holds about 600 values regardless of
+ * how many values are added. Sketches with the same k can be merged, e.g. sketches of the chunks of a column computed
+ * in parallel or of the same column in different Tables. NaN (NA) values are ignored. A sketch is not thread safe.
+ */
+public final class QuantileSketch {
+
+  public static final int DEFAULT_K = 200;
+  private static final double CAPACITY_DECAY = 2.0 / 3.0;
+  private static final int MIN_CAPACITY = 8;
+
+  private final int k;
+  // the values of each level, level n values have the weight 2^n
+  private double[][] levels = new double[0][];
+  private int[] sizes = new int[0];
+  private int[] capacities = new int[0];
+  private int numLevels;
+  private long count;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+  // alternates which half of a compacted level is kept, deterministic so results are reproducible
+  private boolean keepOdd;
+
+  public QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+  /**
+   * @param k the capacity of the top level, higher means more accurate and larger
+   */
+  public QuantileSketch(int k) {
+    if (k < MIN_CAPACITY) {
+      throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY + " but was " + k);
+    }
+    this.k = k;
+    addLevel();
+  }
+
+  /**
+   * @param value the value to add, NaN is ignored
+   */
+  public void add(double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    if (count == 0) {
+      min = value;
+      max = value;
+    } else {
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    count++;
+    append(0, value);
+    if (sizes[0] >= capacity(0)) {
+      compress();
+    }
+  }
+
+  /**
+   * Add all the values of the other sketch to this sketch.
+   *
+   * @param other a sketch with the same k
+   * @return this sketch
+   */
+  public QuantileSketch merge(QuantileSketch other) {
+    if (other.k != k) {
+      throw new IllegalArgumentException("Cannot merge a sketch with k = " + other.k + " into a sketch with k = " + k);
+    }
+    if (other.count == 0) {
+      return this;
+    }
+    if (other == this) {
+      // appending to the levels being read would never end
+      return merge(copy());
+    }
+    while (numLevels < other.numLevels) {
+      addLevel();
+    }
+    for (int level = 0; level < other.numLevels; level++) {
+      double[] values = other.levels[level];
+      for (int i = 0; i < other.sizes[level]; i++) {
+        append(level, values[i]);
+      }
+    }
+    min = count == 0 ? other.min : Math.min(min, other.min);
+    max = count == 0 ? other.max : Math.max(max, other.max);
+    count += other.count;
+    compress();
+    return this;
+  }
+
+  /**
+   * @param fraction the quantile to get, 0 is the min, 0.5 the median and 1 the max
+   * @return the approximate value at the quantile or NaN if no values have been added
+   */
+  public double quantile(double fraction) {
+    if (fraction < 0 || fraction > 1) {
+      throw new IllegalArgumentException("The fraction must be between 0 and 1 but was " + fraction);
+    }
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (fraction == 0) {
+      return min;
+    }
+    if (fraction == 1) {
+      return max;
+    }
+    double[][] sorted = weightedValues();
+    double[] values = sorted[0];
+    double[] weights = sorted[1];
+    double total = 0;
+    for (double weight : weights) {
+      total += weight;
+    }
+    double target = fraction * total;
+    double cumulative = 0;
+    for (int i = 0; i < values.length; i++) {
+      cumulative += weights[i];
+      if (cumulative >= target) {
+        return values[i];
+      }
+    }
+    return max;
+  }
+
+  /**
+   * @param fractions the quantiles to get
+   * @return the approximate value at each quantile
+   */
+  public double[] quantiles(double... fractions) {
+    double[] result = new double[fractions.length];
+    for (int i = 0; i < fractions.length; i++) {
+      result[i] = quantile(fractions[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @param value the value to find the rank of
+   * @return the approximate fraction of the values that are less than or equal to the value
+   */
+  public double rank(double value) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    double below = 0;
+    double total = 0;
+    for (int level = 0; level < numLevels; level++) {
+      double[] values = levels[level];
+      long weight = 1L << level;
+      for (int i = 0; i < sizes[level]; i++) {
+        total += weight;
+        if (values[i] <= value) {
+          below += weight;
+        }
+      }
+    }
+    return below / total;
+  }
+
+  /**
+   * @return the number of (non NaN) values added
+   */
+  public long getCount() {
+    return count;
+  }
+
+  public double getMin() {
+    return min;
+  }
+
+  public double getMax() {
+    return max;
+  }
+
+  public int getK() {
+    return k;
+  }
+
+  /**
+   * @return an independent copy of this sketch
+   */
+  public QuantileSketch copy() {
+    QuantileSketch copy = new QuantileSketch(k);
+    copy.merge(this);
+    copy.keepOdd = keepOdd;
+    return copy;
+  }
+
+  @Override
+  public String toString() {
+    return "QuantileSketch{k=" + k + ", count=" + count + ", min=" + min + ", median=" + quantile(0.5)
+        + ", max=" + max + "}";
+  }
+
+  private void addLevel() {
+    levels = Arrays.copyOf(levels, numLevels + 1);
+    sizes = Arrays.copyOf(sizes, numLevels + 1);
+    levels[numLevels] = new double[MIN_CAPACITY];
+    numLevels++;
+    // the lower levels get smaller as the sketch grows
+    capacities = new int[numLevels];
+    for (int level = 0; level < numLevels; level++) {
+      int depth = numLevels - level - 1;
+      capacities[level] = Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+  }
+
+  private void append(int level, double value) {
+    double[] values = levels[level];
+    int size = sizes[level];
+    if (size == values.length) {
+      values = Arrays.copyOf(values, size * 2);
+      levels[level] = values;
+    }
+    values[size] = value;
+    sizes[level] = size + 1;
+  }
+
+  private int capacity(int level) {
+    return capacities[level];
+  }
+
+  /**
+   * Compact the levels that are over capacity, starting from the bottom.
+   */
+  private void compress() {
+    for (int level = 0; level < numLevels; level++) {
+      if (sizes[level] < capacity(level)) {
+        continue;
+      }
+      if (level + 1 == numLevels) {
+        addLevel();
+      }
+      double[] values = levels[level];
+      int size = sizes[level];
+      Arrays.sort(values, 0, size);
+      // an odd value out stays on this level
+      int start = size % 2 == 1 ? 1 : 0;
+      int offset = keepOdd ? 1 : 0;
+      keepOdd = !keepOdd;
+      for (int i = start + offset; i < size; i += 2) {
+        append(level + 1, values[i]);
+      }
+      sizes[level] = start;
+    }
+  }
+
+  private double[][] weightedValues() {
+    int total = 0;
+    for (int size : sizes) {
+      total += size;
+    }
+    double[] values = new double[total];
+    double[] weights = new double[total];
+    Integer[] order = new Integer[total];
+    int idx = 0;
+    for (int level = 0; level < numLevels; level++) {
+      double[] levelValues = levels[level];
+      for (int i = 0; i < sizes[level]; i++) {
+        values[idx] = levelValues[i];
+        weights[idx] = 1L << level;
+        order[idx] = idx;
+        idx++;
+      }
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+    double[] sortedValues = new double[total];
+    double[] sortedWeights = new double[total];
+    for (int i = 0; i < total; i++) {
+      sortedValues[i] = values[order[i]];
+      sortedWeights[i] = weights[order[i]];
+    }
+    return new double[][]{sortedValues, sortedWeights};
+  }
+}
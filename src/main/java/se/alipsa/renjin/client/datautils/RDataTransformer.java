@@ -5,9 +5,12 @@ import org.renjin.primitives.sequence.IntSequence;
 import org.renjin.sexp.*;
 
 import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import javax.annotation.Nonnull;
 
 /**
@@ -55,12 +58,75 @@ public class RDataTransformer {
   }
 
   public static List<List<Object>> toRowlist(ListVector df, boolean contentAsStrings) {
-    List<Vector> table = new ArrayList<>();
-    for (SEXP col : df) {
-      Vector column = (Vector) col;
-      table.add(column);
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RDataTransformer.toRowlist")) {
+      List<Vector> table = new ArrayList<>();
+      for (SEXP col : df) {
+        Vector column = (Vector) col;
+        table.add(column);
+      }
+      List<List<Object>> rows = transpose(table, contentAsStrings);
+      probe.end(rows.size(), table.size());
+      return rows;
+    }
+  }
+
+  /**
+   * Convert only some of the columns and rows of the data.frame, the other columns and rows are never read.
+   *
+   * @param df the data.frame to convert
+   * @param columns the names of the columns to include (in that order), null for all columns
+   * @param rows the rows to include
+   * @return a List of the rows, each row a List of the values of the columns
+   */
+  public static List<List<Object>> toRowlist(ListVector df, List<String> columns, RowRange rows) {
+    return toRowlist(df, columns, rows, false);
+  }
+
+  /**
+   * Convert only some of the columns and rows of the data.frame, the other columns and rows are never read.
+   *
+   * @param df the data.frame to convert
+   * @param columns the names of the columns to include (in that order), null for all columns
+   * @param rows the rows to include
+   * @param contentAsStrings if true, the values are converted to Strings
+   * @return a List of the rows, each row a List of the values of the columns
+   */
+  public static List<List<Object>> toRowlist(ListVector df, List<String> columns, RowRange rows,
+                                             boolean contentAsStrings) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RDataTransformer.toRowlist")) {
+      int[] indexes = columnIndexes(toHeaderList(df), columns);
+      List<Vector> table = new ArrayList<>(indexes.length);
+      for (int idx : indexes) {
+        table.add((Vector) df.getElementAsSEXP(idx));
+      }
+      int numRows = table.isEmpty() ? 0 : table.get(0).length();
+      List<List<Object>> rowList = transpose(table, contentAsStrings, rows.start(numRows), rows.end(numRows));
+      probe.end(rowList.size(), table.size());
+      return rowList;
+    }
+  }
+
+  /**
+   * @param header the names of all columns
+   * @param columns the names of the columns to find, null for all columns
+   * @return the index in the header of each column
+   */
+  static int[] columnIndexes(List<String> header, List<String> columns) {
+    if (columns == null) {
+      int[] indexes = new int[header.size()];
+      for (int i = 0; i < indexes.length; i++) {
+        indexes[i] = i;
+      }
+      return indexes;
+    }
+    int[] indexes = new int[columns.size()];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = header.indexOf(columns.get(i));
+      if (indexes[i] == -1) {
+        throw new IllegalArgumentException("There is no column named " + columns.get(i) + ", columns are " + header);
+      }
     }
-    return transpose(table, contentAsStrings);
+    return indexes;
   }
 
 
@@ -69,19 +135,40 @@ public class RDataTransformer {
   }
 
   public static List<List<Object>> transpose(List<Vector> table, boolean contentAsStrings) {
+    if (table.size() == 0) {
+      return new ArrayList<>();
+    }
+    return transpose(table, contentAsStrings, 0, table.get(0).length());
+  }
+
+  private static List<List<Object>> transpose(List<Vector> table, boolean contentAsStrings, int start, int end) {
     List<List<Object>> ret = new ArrayList<>();
     if (table.size() == 0) {
       return ret;
     }
-    final int N = table.get(0).length();
-    for (int i = 0; i < N; i++) {
-      List<Object> row = new ArrayList<>();
-      for (Vector col : table) {
-        addValue(col, row, i, contentAsStrings);
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RDataTransformer.transpose")) {
+      // numeric columns are formatted a whole column at a time
+      String[][] formatted = new String[table.size()][];
+      if (contentAsStrings) {
+        for (int c = 0; c < table.size(); c++) {
+          Vector col = table.get(c);
+          formatted[c] = Types.isFactor(col) ? null : NumberFormatter.format(col, start, end);
+        }
+      }
+      for (int i = start; i < end; i++) {
+        List<Object> row = new ArrayList<>();
+        for (int c = 0; c < table.size(); c++) {
+          if (formatted[c] != null) {
+            row.add(formatted[c][i - start]);
+          } else {
+            addValue(table.get(c), row, i, contentAsStrings);
+          }
+        }
+        ret.add(row);
       }
-      ret.add(row);
+      probe.end(end - start, table.size());
+      return ret;
     }
-    return ret;
   }
 
   private static void addValue(Vector col, List<Object> column, int i, boolean contentAsStrings) {
@@ -119,52 +206,164 @@ public class RDataTransformer {
   }
 
   /**
+   * The vectors of the columns are cached in the Table (unless stringsOnly or a number format is given) so converting
+   * the same Table again, or a Table derived from it (see {@link Table#withColumn(String, DataType, List)}
+   * and {@link Table#withRowsAppended(List)}), reuses the vectors already built.
+   *
    * @param table       the Table to convert
    * @param stringsOnly if true, the resulting ListVector (data.frame) will consist of Strings (characters)
    * @param numberFormat (optional) the number format to use when handling decimals
    * @return a ListVector (data.frame) corresponding to the Table
    */
   public static ListVector toDataframe(Table table, boolean stringsOnly, NumberFormat... numberFormat) {
-    List<Vector.Builder<?>> builders;
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RDataTransformer.toDataframe")) {
+      int numRows = table.getRowSize();
+      ListVector.NamedBuilder dfBuilder = new ListVector.NamedBuilder();
+      boolean cacheable = !stringsOnly && numberFormat.length == 0;
+      for (int i = 0; i < table.getHeaderSize(); i++) {
+        Vector column = cacheable ? table.columnVector(i) : buildColumn(table, i, stringsOnly, numberFormat);
+        dfBuilder.add(table.getHeaderList().get(i), column);
+      }
+      ListVector df = dataframe(dfBuilder, numRows);
+      probe.end(numRows, table.getHeaderSize());
+      return df;
+    }
+  }
+
+  /**
+   * Convert only some of the columns and rows of the Table to a data.frame. Selecting all rows of a column reuses
+   * the vector cached in the Table (if already built).
+   *
+   * @param table the Table to convert
+   * @param columns the names of the columns to include (in that order), null for all columns
+   * @param rows the rows to include
+   * @return a ListVector (data.frame) with the selected part of the Table
+   */
+  public static ListVector toDataframe(Table table, List<String> columns, RowRange rows) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RDataTransformer.toDataframe")) {
+      int[] indexes = columnIndexes(table.getHeaderList(), columns);
+      int start = rows.start(table.getRowSize());
+      int end = rows.end(table.getRowSize());
+      boolean allRows = rows.coversAll(table.getRowSize());
+      ListVector.NamedBuilder dfBuilder = new ListVector.NamedBuilder();
+      for (int idx : indexes) {
+        Vector column = allRows ? table.columnVector(idx) : buildColumn(table, idx, start, end, false);
+        dfBuilder.add(table.getHeaderList().get(idx), column);
+      }
+      ListVector df = dataframe(dfBuilder, end - start);
+      probe.end(end - start, indexes.length);
+      return df;
+    }
+  }
+
+  /**
+   * Create a data.frame with a column for each readable property (public getter or field) of the class, the
+   * reverse of {@link Table#asBeans(Class)}. int, short and byte properties become integer columns, other numbers
+   * double columns, booleans logical columns, LocalDate Date columns and everything else character columns.
+   * The values are written straight into the vectors using accessors looked up once per class.
+   *
+   * @param beans the objects to convert, one per row
+   * @param type the class of the objects
+   * @param <T> the type of the objects
+   * @return a ListVector (data.frame) with the properties of the objects
+   */
+  public static <T> ListVector fromBeans(List<? extends T> beans, Class<T> type) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RDataTransformer.fromBeans")) {
+      BeanMapper<T> mapper = BeanMapper.of(type);
+      ListVector df = mapper.toDataframe(beans);
+      probe.end(beans.size(), df.length());
+      return df;
+    }
+  }
+
+  /**
+   * Create a data.frame whose columns read directly from the storage of the Table instead of copying it.
+   * Integer, double, date, boolean and string columns are viewed, other columns
+   * (e.g. a DOUBLE column holding Strings that needs to be parsed) are copied as {@link #toDataframe(Table)} does.
+   * Since the data of a Table is immutable, the view stays valid for as long as it is used.
+   *
+   * @param table the Table to convert
+   * @return a ListVector (data.frame) backed by the Table
+   */
+  public static ListVector toDataframeView(Table table) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RDataTransformer.toDataframeView")) {
+      int numRows = table.getRowSize();
+      ListVector.NamedBuilder dfBuilder = new ListVector.NamedBuilder();
+      for (int i = 0; i < table.getHeaderSize(); i++) {
+        Vector column = columnView(table, i);
+        dfBuilder.add(table.getHeaderList().get(i), column == null ? buildColumn(table, i, false) : column);
+      }
+      ListVector df = dataframe(dfBuilder, numRows);
+      probe.end(numRows, table.getHeaderSize());
+      return df;
+    }
+  }
+
+  /**
+   * @return a vector backed by the column storage or null if the column cannot be viewed as its DataType
+   */
+  static Vector columnView(Table table, int col) {
+    Column column = table.column(col);
+    switch (table.getColumnType(col)) {
+      case INTEGER:
+        return TableIntVector.of(column, AttributeMap.EMPTY);
+      case DOUBLE:
+        return TableDoubleVector.of(column, AttributeMap.EMPTY);
+      case DATE:
+        return TableDoubleVector.of(column, AttributeMap.builder().setClass("Date").build());
+      case BOOLEAN:
+        return TableLogicalVector.of(column, AttributeMap.EMPTY);
+      case STRING:
+      case UNKNOWN:
+        return new TableStringVector(column, AttributeMap.EMPTY);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Copy a column of the table into a new vector.
+   */
+  static Vector buildColumn(Table table, int col, boolean stringsOnly, NumberFormat... numberFormat) {
+    return buildColumn(table, col, 0, table.getRowSize(), stringsOnly, numberFormat);
+  }
+
+  /**
+   * Copy the rows start to end of a column of the table into a new vector.
+   */
+  static Vector buildColumn(Table table, int col, int start, int end, boolean stringsOnly,
+                            NumberFormat... numberFormat) {
     if (stringsOnly) {
-      builders = stringBuilders(table.getHeaderSize());
-    } else {
-      builders = builders(table);
-    }
-    int numRows = 0;
-
-    for (int rowIdx = 0; rowIdx < table.getRowSize(); rowIdx++) {
-      numRows++;
-      List<Object> row = table.getRow(rowIdx);
-      int i = 0;
-      for (Object val : row) {
-        // Unfortunately Vector.Builder does not have an add(Object) method so we need to downcast
-        Vector.Builder<?> builder = builders.get(i++);
-        if (val == null) {
-          builder.addNA();
-        } else if (builder instanceof IntArrayVector.Builder) {
-          ((IntArrayVector.Builder) builder).add(asInt(val));
-        } else if (builder instanceof LogicalArrayVector.Builder) {
-          ((LogicalArrayVector.Builder) builder).add(ValueConverter.asBoolean(val));
-        } else if (builder instanceof DoubleArrayVector.Builder) {
-          ((DoubleArrayVector.Builder) builder).add(asDouble(val, numberFormat));
-        } else if (builder instanceof StringVector.Builder) {
-          ((StringVector.Builder) builder).add(asString(val));
-        } else if (builder instanceof RawVector.Builder) {
-          ((RawVector.Builder) builder).add(asByte(val));
-        } else {
-          throw new DataTransformationRuntimeException(RDataTransformer.class + ".toDataFrame(): Unknown Builder type: "
-              + builder.getClass());
-        }
+      String[] formatted = NumberFormatter.format(table.column(col), start, end);
+      if (formatted != null) {
+        return new StringArrayVector(formatted);
       }
     }
-    ListVector columnVector = columnInfo(table.getHeaderList());
-    /* call build() on each column and add them as named cols to df */
-    ListVector.NamedBuilder dfBuilder = new ListVector.NamedBuilder();
-    for (int i = 0; i < columnVector.length(); i++) {
-      ListVector ci = (ListVector) columnVector.get(i);
-      dfBuilder.add(ci.get("name").asString(), builders.get(i).build());
+    Vector.Builder<?> builder = stringsOnly ? new StringVector.Builder() : builder(table, col, end - start);
+    for (int row = start; row < end; row++) {
+      Object val = table.getValue(row, col);
+      // Unfortunately Vector.Builder does not have an add(Object) method so we need to downcast
+      if (val == null) {
+        builder.addNA();
+      } else if (builder instanceof IntArrayVector.Builder) {
+        ((IntArrayVector.Builder) builder).add(asInt(val));
+      } else if (builder instanceof LogicalArrayVector.Builder) {
+        ((LogicalArrayVector.Builder) builder).add(ValueConverter.asBoolean(val));
+      } else if (builder instanceof DoubleArrayVector.Builder) {
+        ((DoubleArrayVector.Builder) builder).add(asDouble(val, numberFormat));
+      } else if (builder instanceof StringVector.Builder) {
+        ((StringVector.Builder) builder).add(asString(val));
+      } else if (builder instanceof RawVector.Builder) {
+        ((RawVector.Builder) builder).add(asByte(val));
+      } else {
+        throw new DataTransformationRuntimeException(RDataTransformer.class + ".toDataFrame(): Unknown Builder type: "
+            + builder.getClass());
+      }
     }
+    return builder.build();
+  }
+
+  static ListVector dataframe(ListVector.NamedBuilder dfBuilder, int numRows) {
     // used to be able to do
     //dfBuilder.setAttribute("row.names", new org.renjin.primitives.vector.RowNamesVector(numRows));
     // Try it with an IntSequence for now...
@@ -185,6 +384,9 @@ public class RDataTransformer {
   }
 
   private static double asDouble(@Nonnull Object value, NumberFormat... numberFormatOpt) {
+    if (value instanceof LocalDate) {
+      return ((LocalDate) value).toEpochDay();
+    }
     NumberFormat numberFormat = numberFormatOpt.length > 0 ? numberFormatOpt[0] : NumberFormat.getNumberInstance();
     return ValueConverter.asDouble(value, numberFormat);
   }
@@ -196,34 +398,12 @@ public class RDataTransformer {
     return Integer.parseInt(String.valueOf(value));
   }
 
-  private static ListVector columnInfo(List<String> headerList) {
-    ListVector.Builder tv = new ListVector.Builder();
-    for (String name : headerList) {
-      ListVector.NamedBuilder cv = new ListVector.NamedBuilder();
-      cv.add("name", name);
-      tv.add(cv.build());
-    }
-    return tv.build();
-  }
-
-  private static List<Vector.Builder<?>> builders(Table table) {
-    int numColNums = table.getColumnTypes().size();
-    int numRows = table.getRowSize();
-    List<Vector.Builder<?>> builderList = new ArrayList<>(numColNums);
-    for (int i = 0; i < numColNums; i++) {
-      DataType dataType = table.getColumnType(i);
-      builderList.add(dataType.getVectorType().newBuilderWithInitialCapacity(numRows));
-    }
-    return builderList;
-  }
-
-
-  private static List<Vector.Builder<?>> stringBuilders(int numColNums) {
-    List<Vector.Builder<?>> builder = new ArrayList<>();
-    for (int i = 0; i <= numColNums; i++) {
-      builder.add(new StringVector.Builder());
+  private static Vector.Builder<?> builder(Table table, int col, int numRows) {
+    DataType dataType = table.getColumnType(col);
+    Vector.Builder<?> builder = dataType.getVectorType().newBuilderWithInitialCapacity(numRows);
+    if (DataType.DATE == dataType) {
+      builder.setAttribute("class", StringVector.valueOf("Date"));
     }
-    //System.out.println("created " + builder.size() + " stringBuilders");
     return builder;
   }
 
@@ -243,4 +423,84 @@ public class RDataTransformer {
     }
     return list;
   }
+
+  /**
+   * Unlike {@link #vectorToList(Vector)}, the elements are not copied but read from the vector when accessed.
+   *
+   * @param vector the vector to view
+   * @return an unmodifiable, random access List view of the vector
+   */
+  public static List<Object> vectorView(Vector vector) {
+    return new VectorView<>(vector, Object.class);
+  }
+
+  /**
+   * Unlike {@link #vectorToList(Vector, Class)}, the elements are not copied but read from the vector
+   * (and cast to the class) when accessed.
+   *
+   * @param vector the vector to view
+   * @param clazz the class of the elements
+   * @param <T> the type of the elements
+   * @return an unmodifiable, random access List view of the vector
+   */
+  public static <T> List<T> vectorView(Vector vector, Class<T> clazz) {
+    return new VectorView<>(vector, clazz);
+  }
+
+  /**
+   * @param vector the (numeric) vector to view
+   * @return a List view of the vector as ints where get returns null for NA and getInt returns IntVector.NA
+   */
+  public static IntList toIntList(Vector vector) {
+    return new IntList(vector, true, IntVector.NA);
+  }
+
+  /**
+   * @param vector the (numeric) vector to view
+   * @param naValue the value to return for NA
+   * @return a List view of the vector as ints where NA is returned as naValue
+   */
+  public static IntList toIntList(Vector vector, int naValue) {
+    return new IntList(vector, false, naValue);
+  }
+
+  /**
+   * @param vector the (numeric) vector to view
+   * @return a List view of the vector as doubles where get returns null for NA and getDouble returns DoubleVector.NA
+   */
+  public static DoubleList toDoubleList(Vector vector) {
+    return new DoubleList(vector, true, DoubleVector.NA);
+  }
+
+  /**
+   * @param vector the (numeric) vector to view
+   * @param naValue the value to return for NA, e.g. Double.NaN
+   * @return a List view of the vector as doubles where NA is returned as naValue
+   */
+  public static DoubleList toDoubleList(Vector vector, double naValue) {
+    return new DoubleList(vector, false, naValue);
+  }
+
+  private static final class VectorView<T> extends AbstractList<T> implements RandomAccess {
+    private final Vector vector;
+    private final Class<T> clazz;
+
+    private VectorView(Vector vector, Class<T> clazz) {
+      this.vector = vector;
+      this.clazz = clazz;
+    }
+
+    @Override
+    public T get(int index) {
+      if (index < 0 || index >= vector.length()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + vector.length());
+      }
+      return clazz.cast(vector.getElementAsObject(index));
+    }
+
+    @Override
+    public int size() {
+      return vector.length();
+    }
+  }
 }
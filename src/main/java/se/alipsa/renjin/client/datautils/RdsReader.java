@@ -0,0 +1,582 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static se.alipsa.renjin.client.datautils.RdsWriter.*;
+
+/**
+ * Reads a data.frame saved by R with <code>saveRDS</code> (XDR format version 2 or 3, uncompressed or gzip
+ * compressed, e.g. <code>saveRDS(df, "data.rds")</code>) into a Table. The vectors are decoded straight into the
+ * column storage: integer, double and logical vectors into primitive arrays, character vectors into a UTF-8 string
+ * heap and factors into dictionary columns, no SEXP (ListVector) is created.
+ * <p>
+ * Integer, double (and Date), logical, character, factor and raw columns are supported, as are the compact
+ * sequences (e.g. <code>1:n</code>) R 3.5 and later writes.
+ * </p>
+ * <pre>
+ * Table table = new RdsReader().read(Paths.get("data.rds"));
+ * </pre>
+ */
+public class RdsReader {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  public Table read(Path file) throws IOException {
+    try (InputStream in = Files.newInputStream(file)) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Read a data.frame from the stream, the stream is not closed.
+   *
+   * @param in the stream to read from
+   * @return a Table with the columns of the data.frame
+   * @throws IOException if reading fails or the stream does not hold a serialized data.frame
+   */
+  public Table read(InputStream in) throws IOException {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RdsReader.read")) {
+      BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+      buffered.mark(2);
+      boolean gzipped = buffered.read() == 0x1f && buffered.read() == 0x8b;
+      buffered.reset();
+      XdrInput xdr = new XdrInput(gzipped ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered);
+      int format = xdr.readByte();
+      if (format != 'X' || xdr.readByte() != '\n') {
+        throw new IOException("Only the XDR (binary) serialization format is supported, the format is "
+            + (char) format);
+      }
+      int version = xdr.readInt();
+      if (version != 2 && version != 3) {
+        throw new IOException("Unsupported serialization format version " + version);
+      }
+      xdr.readInt();
+      xdr.readInt();
+      if (version == 3) {
+        // the native encoding
+        xdr.skip(xdr.readInt());
+      }
+      Object item = new ItemReader(xdr).read();
+      if (!(item instanceof Sexp) || ((Sexp) item).type != VECSXP) {
+        throw new IOException("The data is not a data.frame (list)");
+      }
+      Table table = toTable((Sexp) item);
+      probe.end(table.getRowSize(), table.getHeaderSize());
+      return table;
+    }
+  }
+
+  private static Table toTable(Sexp df) throws IOException {
+    Object[] vectors = (Object[]) df.data;
+    List<String> names = df.strings("names");
+    if (names == null || names.size() != vectors.length) {
+      throw new IOException("The list has no names");
+    }
+    int numRows = vectors.length == 0 ? rowCount(df.attributes.get("row.names")) : -1;
+    List<String> headers = new ArrayList<>(vectors.length);
+    List<DataType> types = new ArrayList<>(vectors.length);
+    List<Column> columns = new ArrayList<>(vectors.length);
+    for (int i = 0; i < vectors.length; i++) {
+      if (!(vectors[i] instanceof Sexp)) {
+        throw new IOException("The column " + names.get(i) + " is not a vector");
+      }
+      Sexp vector = (Sexp) vectors[i];
+      if (numRows == -1) {
+        numRows = vector.length;
+      } else if (vector.length != numRows) {
+        throw new IOException("The column " + names.get(i) + " has " + vector.length + " rows, expected " + numRows);
+      }
+      headers.add(names.get(i));
+      types.add(vector.dataType());
+      columns.add(vector.toColumn());
+    }
+    return new Table(headers, types, columns, Math.max(numRows, 0));
+  }
+
+  private static int rowCount(Object rowNames) {
+    if (!(rowNames instanceof Sexp)) {
+      return 0;
+    }
+    Sexp names = (Sexp) rowNames;
+    if (names.data instanceof int[] && names.length == 2 && ((int[]) names.data)[0] == NA_INTEGER) {
+      return Math.abs(((int[]) names.data)[1]);
+    }
+    return names.length;
+  }
+
+  /**
+   * A decoded vector, data is an int[] (integer and logical), double[], byte[], Utf8StringColumn or Object[] (list).
+   */
+  private static final class Sexp {
+    final int type;
+    final int length;
+    final Object data;
+    Map<String, Object> attributes = Collections.emptyMap();
+
+    Sexp(int type, int length, Object data) {
+      this.type = type;
+      this.length = length;
+      this.data = data;
+    }
+
+    List<String> strings(String attribute) {
+      Object value = attributes.get(attribute);
+      if (!(value instanceof Sexp) || !(((Sexp) value).data instanceof Utf8StringColumn)) {
+        return null;
+      }
+      Utf8StringColumn strings = (Utf8StringColumn) ((Sexp) value).data;
+      List<String> list = new ArrayList<>(strings.size());
+      for (int i = 0; i < strings.size(); i++) {
+        list.add((String) strings.get(i));
+      }
+      return list;
+    }
+
+    boolean inherits(String className) {
+      List<String> classes = strings("class");
+      return classes != null && classes.contains(className);
+    }
+
+    DataType dataType() {
+      switch (type) {
+        case INTSXP:
+          return inherits("factor") ? DataType.STRING : DataType.INTEGER;
+        case REALSXP:
+          return inherits("Date") ? DataType.DATE : DataType.DOUBLE;
+        case LGLSXP:
+          return DataType.BOOLEAN;
+        case RAWSXP:
+          return DataType.BYTE;
+        default:
+          return DataType.STRING;
+      }
+    }
+
+    Column toColumn() throws IOException {
+      switch (type) {
+        case INTSXP: {
+          int[] values = (int[]) data;
+          if (inherits("factor")) {
+            List<String> levels = strings("levels");
+            Object[] strings = new Object[length];
+            for (int i = 0; i < length; i++) {
+              strings[i] = values[i] == NA_INTEGER ? null : levels.get(values[i] - 1);
+            }
+            return ColumnEncoder.strings(strings);
+          }
+          return ColumnEncoder.ints(values, naMask(values));
+        }
+        case REALSXP: {
+          double[] values = (double[]) data;
+          BitSet naMask = null;
+          for (int i = 0; i < length; i++) {
+            if (isNA(values[i])) {
+              naMask = naMask == null ? new BitSet(length) : naMask;
+              naMask.set(i);
+            }
+          }
+          if (inherits("Date")) {
+            int[] epochDays = new int[length];
+            for (int i = 0; i < length; i++) {
+              // R stores some NA dates as NaN rather than NA_real_
+              epochDays[i] = Double.isNaN(values[i]) ? 0 : (int) Math.floor(values[i]);
+              if (Double.isNaN(values[i])) {
+                naMask = naMask == null ? new BitSet(length) : naMask;
+                naMask.set(i);
+              }
+            }
+            return new DateColumn(epochDays, naMask);
+          }
+          return ColumnEncoder.doubles(values, naMask);
+        }
+        case LGLSXP: {
+          int[] values = (int[]) data;
+          PackedInts booleans = new PackedInts(length, 2);
+          for (int i = 0; i < length; i++) {
+            booleans.set(i, values[i] == NA_INTEGER ? BooleanColumn.NA
+                : values[i] == 0 ? BooleanColumn.FALSE : BooleanColumn.TRUE);
+          }
+          return new BooleanColumn(booleans);
+        }
+        case RAWSXP: {
+          byte[] values = (byte[]) data;
+          Object[] bytes = new Object[length];
+          for (int i = 0; i < length; i++) {
+            bytes[i] = values[i];
+          }
+          return new ObjectColumn(bytes);
+        }
+        case STRSXP:
+          return ColumnEncoder.strings((Utf8StringColumn) data);
+        default:
+          throw new IOException("Columns of type " + type + " are not supported");
+      }
+    }
+
+    /**
+     * @return true if the value is R's NA_real_, i.e. a NaN with the low word 1954, which arithmetic may have turned
+     * from a signalling to a quiet NaN
+     */
+    private static boolean isNA(double value) {
+      return Double.isNaN(value) && (Double.doubleToRawLongBits(value) & 0xFFFFFFFFL) == (NA_REAL_BITS & 0xFFFFFFFFL);
+    }
+
+    private static BitSet naMask(int[] values) {
+      BitSet naMask = null;
+      for (int i = 0; i < values.length; i++) {
+        if (values[i] == NA_INTEGER) {
+          naMask = naMask == null ? new BitSet(values.length) : naMask;
+          naMask.set(i);
+        }
+      }
+      return naMask;
+    }
+  }
+
+  /**
+   * Reads the items of the serialized data, symbols are returned as Strings, NULL as null and vectors as Sexp.
+   */
+  private static final class ItemReader {
+    private final XdrInput xdr;
+    // the symbols read so far, later occurrences are references to them
+    private final List<String> references = new ArrayList<>();
+
+    ItemReader(XdrInput xdr) {
+      this.xdr = xdr;
+    }
+
+    Object read() throws IOException {
+      return read(xdr.readInt());
+    }
+
+    private Object read(int flags) throws IOException {
+      int type = flags & 0xFF;
+      boolean hasAttr = (flags & HAS_ATTR) != 0;
+      boolean hasTag = (flags & HAS_TAG) != 0;
+      switch (type) {
+        case NILVALUE_SXP:
+          return null;
+        case REFSXP: {
+          int index = flags >>> 8;
+          if (index == 0) {
+            index = xdr.readInt();
+          }
+          return references.get(index - 1);
+        }
+        case SYMSXP: {
+          Object name = read();
+          String symbol = name instanceof Sexp ? (String) ((Utf8StringColumn) ((Sexp) name).data).get(0) : null;
+          references.add(symbol);
+          return symbol;
+        }
+        case LISTSXP: {
+          Map<String, Object> pairs = new LinkedHashMap<>();
+          readPairs(flags, pairs);
+          return pairs;
+        }
+        case CHARSXP: {
+          Utf8Strings strings = new Utf8Strings(1);
+          readCharsxp(flags, strings);
+          return new Sexp(STRSXP, 1, strings.build());
+        }
+        case ALTREP_SXP:
+          return readAltrep();
+        default:
+          Sexp vector = readVector(type);
+          if (hasTag) {
+            throw new IOException("Unexpected tag on a vector of type " + type);
+          }
+          if (hasAttr) {
+            vector.attributes = attributes();
+          }
+          return vector;
+      }
+    }
+
+    private Sexp readVector(int type) throws IOException {
+      int length = xdr.readInt();
+      if (length == -1) {
+        throw new IOException("Vectors longer than " + Integer.MAX_VALUE + " elements are not supported");
+      }
+      switch (type) {
+        case LGLSXP:
+        case INTSXP:
+          return new Sexp(type, length, xdr.readInts(length));
+        case REALSXP:
+          return new Sexp(type, length, xdr.readDoubles(length));
+        case RAWSXP:
+          return new Sexp(type, length, xdr.readBytes(length));
+        case STRSXP: {
+          Utf8Strings strings = new Utf8Strings(length);
+          for (int i = 0; i < length; i++) {
+            readCharsxp(xdr.readInt(), strings);
+          }
+          return new Sexp(type, length, strings.build());
+        }
+        case VECSXP: {
+          Object[] elements = new Object[length];
+          for (int i = 0; i < length; i++) {
+            elements[i] = read();
+          }
+          return new Sexp(type, length, elements);
+        }
+        default:
+          throw new IOException("Unsupported SEXP type " + type);
+      }
+    }
+
+    private void readCharsxp(int flags, Utf8Strings strings) throws IOException {
+      if ((flags & 0xFF) != CHARSXP) {
+        throw new IOException("Expected a CHARSXP but got the type " + (flags & 0xFF));
+      }
+      int length = xdr.readInt();
+      if (length == -1) {
+        strings.addNA();
+        return;
+      }
+      byte[] bytes = xdr.readBytes(length);
+      int encoding = flags >>> 12;
+      if ((encoding & LATIN1) != 0) {
+        bytes = new String(bytes, StandardCharsets.ISO_8859_1).getBytes(StandardCharsets.UTF_8);
+      }
+      strings.add(bytes);
+    }
+
+    /**
+     * Read the rest of a pairlist starting with the node with the flags into the map. The CDR of the last node of a
+     * dotted pair (such as the state of the wrap_* and deferred_string ALTREP classes) is put last, untagged.
+     */
+    private void readPairs(int flags, Map<String, Object> pairs) throws IOException {
+      while (true) {
+        if ((flags & HAS_ATTR) != 0) {
+          // attributes of a pairlist node, not used
+          read();
+        }
+        String tag = (flags & HAS_TAG) != 0 ? (String) read() : null;
+        Object value = read();
+        pairs.put(tag == null ? String.valueOf(pairs.size()) : tag, value);
+        flags = xdr.readInt();
+        if ((flags & 0xFF) == NILVALUE_SXP) {
+          return;
+        }
+        if ((flags & 0xFF) != LISTSXP) {
+          pairs.put(String.valueOf(pairs.size()), read(flags));
+          return;
+        }
+      }
+    }
+
+    private Map<String, Object> attributes() throws IOException {
+      int flags = xdr.readInt();
+      if ((flags & 0xFF) != LISTSXP) {
+        throw new IOException("Expected an attribute pairlist but got the type " + (flags & 0xFF));
+      }
+      Map<String, Object> attributes = new LinkedHashMap<>();
+      readPairs(flags, attributes);
+      return attributes;
+    }
+
+    /**
+     * Read an ALTREP object: the class info (a pairlist of the class and package symbols and the type),
+     * the state and the attributes. Compact sequences are expanded and wrappers unwrapped.
+     */
+    private Object readAltrep() throws IOException {
+      Object info = read();
+      Object state = read();
+      Object attributes = read();
+      String className = info instanceof Map && !((Map<?, ?>) info).isEmpty()
+          ? String.valueOf(((Map<?, ?>) info).values().iterator().next()) : null;
+      Sexp vector;
+      if ("compact_intseq".equals(className) || "compact_realseq".equals(className)) {
+        double[] seq = (double[]) ((Sexp) state).data;
+        int length = (int) seq[0];
+        double start = seq[1];
+        double step = seq[2];
+        if ("compact_intseq".equals(className)) {
+          int[] values = new int[length];
+          for (int i = 0; i < length; i++) {
+            values[i] = (int) (start + i * step);
+          }
+          vector = new Sexp(INTSXP, length, values);
+        } else {
+          double[] values = new double[length];
+          for (int i = 0; i < length; i++) {
+            values[i] = start + i * step;
+          }
+          vector = new Sexp(REALSXP, length, values);
+        }
+      } else if (className != null && className.startsWith("wrap_") && state instanceof Map) {
+        // the state of a wrapper is a dotted pair of the wrapped vector and its integer metadata
+        vector = (Sexp) ((Map<?, ?>) state).values().iterator().next();
+      } else if ("deferred_string".equals(className) && state instanceof Map) {
+        // the state is a dotted pair of the integer or double vector to convert to strings and the scipen option
+        vector = deferredStrings((Sexp) ((Map<?, ?>) state).values().iterator().next());
+      } else {
+        throw new IOException("Unsupported ALTREP class " + className);
+      }
+      if (attributes instanceof Map) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) attributes;
+        vector.attributes = map;
+      }
+      return vector;
+    }
+  }
+
+  private static Sexp deferredStrings(Sexp numbers) {
+    Utf8Strings strings = new Utf8Strings(numbers.length);
+    for (int i = 0; i < numbers.length; i++) {
+      String value;
+      if (numbers.data instanceof int[]) {
+        int val = ((int[]) numbers.data)[i];
+        value = val == NA_INTEGER ? null : Integer.toString(val);
+      } else {
+        double val = ((double[]) numbers.data)[i];
+        value = Double.isNaN(val) ? null : formatDouble(val);
+      }
+      if (value == null) {
+        strings.addNA();
+      } else {
+        strings.add(value.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return new Sexp(STRSXP, numbers.length, strings.build());
+  }
+
+  /**
+   * @return the double with at most 15 significant digits as R's as.character does
+   */
+  private static String formatDouble(double val) {
+    if (Double.isInfinite(val)) {
+      return val > 0 ? "Inf" : "-Inf";
+    }
+    if (val == Math.rint(val) && Math.abs(val) < 1e15) {
+      return Long.toString((long) val);
+    }
+    return new BigDecimal(val).round(new MathContext(15)).stripTrailingZeros().toString();
+  }
+
+  /**
+   * Collects UTF-8 strings into a string heap.
+   */
+  private static final class Utf8Strings {
+    private final ByteSink heap;
+    private final int[] offsets;
+    private BitSet nulls;
+    private int count;
+
+    Utf8Strings(int length) {
+      heap = new ByteSink(Math.max(16, length * 8));
+      offsets = new int[length + 1];
+    }
+
+    void add(byte[] utf8) {
+      heap.write(utf8);
+      offsets[++count] = heap.size();
+    }
+
+    void addNA() {
+      nulls = nulls == null ? new BitSet() : nulls;
+      nulls.set(count);
+      offsets[++count] = heap.size();
+    }
+
+    Utf8StringColumn build() {
+      return new Utf8StringColumn(heap.toByteArray(), offsets, nulls);
+    }
+  }
+
+  /**
+   * Big endian (XDR) input reading arrays a buffer at a time.
+   */
+  private static final class XdrInput {
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    XdrInput(InputStream in) {
+      this.in = in;
+    }
+
+    int readByte() throws IOException {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      return b;
+    }
+
+    int readInt() throws IOException {
+      readFully(buffer, 0, Integer.BYTES);
+      return getInt(buffer, 0);
+    }
+
+    void skip(int length) throws IOException {
+      readBytes(length);
+    }
+
+    byte[] readBytes(int length) throws IOException {
+      byte[] bytes = new byte[length];
+      readFully(bytes, 0, length);
+      return bytes;
+    }
+
+    int[] readInts(int length) throws IOException {
+      int[] values = new int[length];
+      int chunk = buffer.length / Integer.BYTES;
+      for (int start = 0; start < length; start += chunk) {
+        int n = Math.min(chunk, length - start);
+        readFully(buffer, 0, n * Integer.BYTES);
+        for (int i = 0; i < n; i++) {
+          values[start + i] = getInt(buffer, i * Integer.BYTES);
+        }
+      }
+      return values;
+    }
+
+    double[] readDoubles(int length) throws IOException {
+      double[] values = new double[length];
+      int chunk = buffer.length / Long.BYTES;
+      for (int start = 0; start < length; start += chunk) {
+        int n = Math.min(chunk, length - start);
+        readFully(buffer, 0, n * Long.BYTES);
+        for (int i = 0; i < n; i++) {
+          int pos = i * Long.BYTES;
+          long bits = ((long) getInt(buffer, pos) << 32) | (getInt(buffer, pos + 4) & 0xFFFFFFFFL);
+          values[start + i] = Double.longBitsToDouble(bits);
+        }
+      }
+      return values;
+    }
+
+    private void readFully(byte[] dest, int offset, int length) throws IOException {
+      int read = 0;
+      while (read < length) {
+        int n = in.read(dest, offset + read, length - read);
+        if (n < 0) {
+          throw new EOFException("Unexpected end of the serialized data");
+        }
+        read += n;
+      }
+    }
+
+    private static int getInt(byte[] bytes, int pos) {
+      return ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16) | ((bytes[pos + 2] & 0xFF) << 8)
+          | (bytes[pos + 3] & 0xFF);
+    }
+  }
+}
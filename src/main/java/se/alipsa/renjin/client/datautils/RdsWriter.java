@@ -0,0 +1,321 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a Table as a data.frame in R's serialization format (what <code>saveRDS</code> writes, XDR format version 2
+ * which every R version, and Renjin, can read) so that it can be loaded with <code>readRDS</code>.
+ * The columns are streamed one at a time straight from the column storage, no ListVector is created.
+ * <p>
+ * INTEGER, DOUBLE, BOOLEAN and BYTE columns are written as integer, double, logical and raw vectors, DATE columns
+ * as Date (double) vectors and all other columns as character vectors.
+ * </p>
+ * <pre>
+ * new RdsWriter().write(table, Paths.get("data.rds"));
+ * </pre>
+ * and in R <code>df &lt;- readRDS("data.rds")</code>
+ */
+public class RdsWriter {
+
+  static final int NILVALUE_SXP = 254;
+  static final int REFSXP = 255;
+  static final int SYMSXP = 1;
+  static final int LISTSXP = 2;
+  static final int CHARSXP = 9;
+  static final int LGLSXP = 10;
+  static final int INTSXP = 13;
+  static final int REALSXP = 14;
+  static final int STRSXP = 16;
+  static final int VECSXP = 19;
+  static final int RAWSXP = 24;
+  static final int ALTREP_SXP = 238;
+
+  static final int IS_OBJECT = 1 << 8;
+  static final int HAS_ATTR = 1 << 9;
+  static final int HAS_TAG = 1 << 10;
+  /** The encoding flags of a CHARSXP (shifted 12 bits into the flags) */
+  static final int LATIN1 = 1 << 2;
+  static final int UTF8 = 1 << 3;
+  static final int ASCII = 1 << 6;
+
+  static final int NA_INTEGER = Integer.MIN_VALUE;
+  /** The bits of R's NA_real_, a NaN with the payload 1954 */
+  static final long NA_REAL_BITS = 0x7FF00000000007A2L;
+
+  // the version of R the data is written by (3.5.0) and the version needed to read it (2.3.0)
+  private static final int R_VERSION = (3 << 16) | (5 << 8);
+  private static final int MIN_R_VERSION = (2 << 16) | (3 << 8);
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private boolean compress = true;
+
+  /**
+   * @param gzip whether to gzip the output as saveRDS does by default, readRDS reads both
+   * @return this writer
+   */
+  public RdsWriter compress(boolean gzip) {
+    this.compress = gzip;
+    return this;
+  }
+
+  public void write(Table table, Path file) throws IOException {
+    try (OutputStream out = Files.newOutputStream(file)) {
+      write(table, out);
+    }
+  }
+
+  /**
+   * Write the table to the stream, the stream is not closed.
+   *
+   * @param table the table to write
+   * @param out the stream to write to
+   * @throws IOException if writing to the stream fails
+   */
+  public void write(Table table, OutputStream out) throws IOException {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("RdsWriter.write")) {
+      GZIPOutputStream gzip = compress ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+      XdrOutput xdr = new XdrOutput(gzip == null ? out : gzip);
+      xdr.writeByte('X');
+      xdr.writeByte('\n');
+      xdr.writeInt(2);
+      xdr.writeInt(R_VERSION);
+      xdr.writeInt(MIN_R_VERSION);
+
+      int numCols = table.getHeaderSize();
+      int numRows = table.getRowSize();
+      xdr.writeInt(VECSXP | IS_OBJECT | HAS_ATTR);
+      xdr.writeInt(numCols);
+      for (int col = 0; col < numCols; col++) {
+        writeColumn(xdr, table.column(col), table.getColumnType(col), numRows);
+      }
+      writeAttributeTag(xdr, "names");
+      xdr.writeInt(STRSXP);
+      xdr.writeInt(numCols);
+      for (String name : table.getHeaderList()) {
+        writeString(xdr, name);
+      }
+      writeAttributeTag(xdr, "class");
+      writeStrings(xdr, "data.frame");
+      writeAttributeTag(xdr, "row.names");
+      // the compact form of the row names 1:n
+      xdr.writeInt(INTSXP);
+      xdr.writeInt(2);
+      xdr.writeInt(NA_INTEGER);
+      xdr.writeInt(-numRows);
+      xdr.writeInt(NILVALUE_SXP);
+      xdr.flush();
+      if (gzip != null) {
+        gzip.finish();
+      }
+      out.flush();
+      probe.end(numRows, numCols);
+    }
+  }
+
+  private static void writeColumn(XdrOutput xdr, Column column, DataType type, int numRows) throws IOException {
+    switch (type) {
+      case INTEGER:
+        xdr.writeInt(INTSXP);
+        xdr.writeInt(numRows);
+        if (column instanceof IntColumn) {
+          IntColumn ints = (IntColumn) column;
+          for (int row = 0; row < numRows; row++) {
+            xdr.writeInt(ints.isNull(row) ? NA_INTEGER : ints.getInt(row));
+          }
+        } else {
+          for (int row = 0; row < numRows; row++) {
+            Object val = column.get(row);
+            xdr.writeInt(val == null ? NA_INTEGER : asNumber(val).intValue());
+          }
+        }
+        break;
+      case DOUBLE:
+        xdr.writeInt(REALSXP);
+        xdr.writeInt(numRows);
+        if (column instanceof DoubleColumn) {
+          DoubleColumn doubles = (DoubleColumn) column;
+          for (int row = 0; row < numRows; row++) {
+            xdr.writeLong(doubles.isNull(row) ? NA_REAL_BITS : Double.doubleToRawLongBits(doubles.getDouble(row)));
+          }
+        } else {
+          for (int row = 0; row < numRows; row++) {
+            Object val = column.get(row);
+            xdr.writeLong(val == null ? NA_REAL_BITS : Double.doubleToRawLongBits(asNumber(val).doubleValue()));
+          }
+        }
+        break;
+      case DATE:
+        xdr.writeInt(REALSXP | IS_OBJECT | HAS_ATTR);
+        xdr.writeInt(numRows);
+        if (column instanceof DateColumn) {
+          DateColumn dates = (DateColumn) column;
+          for (int row = 0; row < numRows; row++) {
+            xdr.writeLong(dates.isNull(row) ? NA_REAL_BITS : Double.doubleToRawLongBits(dates.getEpochDay(row)));
+          }
+        } else {
+          for (int row = 0; row < numRows; row++) {
+            Object val = column.get(row);
+            xdr.writeLong(val == null ? NA_REAL_BITS : Double.doubleToRawLongBits(asEpochDay(val)));
+          }
+        }
+        writeAttributeTag(xdr, "class");
+        writeStrings(xdr, "Date");
+        xdr.writeInt(NILVALUE_SXP);
+        break;
+      case BOOLEAN:
+        xdr.writeInt(LGLSXP);
+        xdr.writeInt(numRows);
+        for (int row = 0; row < numRows; row++) {
+          Boolean val = ValueConverter.asBoolean(column.get(row));
+          xdr.writeInt(val == null ? NA_INTEGER : val ? 1 : 0);
+        }
+        break;
+      case BYTE:
+        xdr.writeInt(RAWSXP);
+        xdr.writeInt(numRows);
+        for (int row = 0; row < numRows; row++) {
+          Object val = column.get(row);
+          // raw vectors have no NA
+          xdr.writeByte(val == null ? 0 : asNumber(val).byteValue());
+        }
+        break;
+      default:
+        xdr.writeInt(STRSXP);
+        xdr.writeInt(numRows);
+        if (column instanceof Utf8StringColumn) {
+          Utf8StringColumn strings = (Utf8StringColumn) column;
+          for (int row = 0; row < numRows; row++) {
+            if (strings.isNull(row)) {
+              writeNaString(xdr);
+            } else {
+              writeCharsxp(xdr, strings.heap(), strings.start(row), strings.end(row));
+            }
+          }
+        } else {
+          for (int row = 0; row < numRows; row++) {
+            Object val = column.get(row);
+            writeString(xdr, val == null ? null : val.toString());
+          }
+        }
+    }
+  }
+
+  private static Number asNumber(Object val) {
+    if (val instanceof Number) {
+      return (Number) val;
+    }
+    if (val instanceof Boolean) {
+      return (Boolean) val ? 1 : 0;
+    }
+    return Double.valueOf(String.valueOf(val));
+  }
+
+  private static double asEpochDay(Object val) {
+    if (val instanceof LocalDate) {
+      return ((LocalDate) val).toEpochDay();
+    }
+    return asNumber(val).doubleValue();
+  }
+
+  /**
+   * Write the pairlist node and symbol of an attribute, the value is written next.
+   */
+  private static void writeAttributeTag(XdrOutput xdr, String name) throws IOException {
+    xdr.writeInt(LISTSXP | HAS_TAG);
+    xdr.writeInt(SYMSXP);
+    writeString(xdr, name);
+  }
+
+  private static void writeStrings(XdrOutput xdr, String... values) throws IOException {
+    xdr.writeInt(STRSXP);
+    xdr.writeInt(values.length);
+    for (String value : values) {
+      writeString(xdr, value);
+    }
+  }
+
+  private static void writeString(XdrOutput xdr, String value) throws IOException {
+    if (value == null) {
+      writeNaString(xdr);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeCharsxp(xdr, bytes, 0, bytes.length);
+    }
+  }
+
+  private static void writeNaString(XdrOutput xdr) throws IOException {
+    xdr.writeInt(CHARSXP);
+    xdr.writeInt(-1);
+  }
+
+  private static void writeCharsxp(XdrOutput xdr, byte[] utf8, int start, int end) throws IOException {
+    boolean ascii = true;
+    for (int i = start; i < end && ascii; i++) {
+      ascii = utf8[i] >= 0;
+    }
+    xdr.writeInt(CHARSXP | ((ascii ? ASCII : UTF8) << 12));
+    xdr.writeInt(end - start);
+    xdr.write(utf8, start, end - start);
+  }
+
+  /**
+   * Big endian (XDR) output through a buffer, cheaper than a DataOutputStream for the many small writes.
+   */
+  private static final class XdrOutput {
+    private final OutputStream out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    XdrOutput(OutputStream out) {
+      this.out = out;
+    }
+
+    void writeByte(int b) throws IOException {
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      buffer.put((byte) b);
+    }
+
+    void writeInt(int value) throws IOException {
+      if (buffer.remaining() < Integer.BYTES) {
+        drain();
+      }
+      buffer.putInt(value);
+    }
+
+    void writeLong(long value) throws IOException {
+      if (buffer.remaining() < Long.BYTES) {
+        drain();
+      }
+      buffer.putLong(value);
+    }
+
+    void write(byte[] src, int offset, int length) throws IOException {
+      if (length > buffer.remaining()) {
+        drain();
+        if (length > buffer.capacity()) {
+          out.write(src, offset, length);
+          return;
+        }
+      }
+      buffer.put(src, offset, length);
+    }
+
+    void flush() throws IOException {
+      drain();
+      out.flush();
+    }
+
+    private void drain() throws IOException {
+      out.write(buffer.array(), 0, buffer.position());
+      buffer.clear();
+    }
+  }
+}
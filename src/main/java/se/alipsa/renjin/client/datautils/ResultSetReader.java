@@ -0,0 +1,306 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Creates a Table from a ResultSet with fetching and conversion overlapping in a pipeline.
+ * The calling thread drives rs.next() (and thereby the network fetch of the driver) and reads the values of each row,
+ * batches of rows are then handed to converter threads over a bounded queue which encode each batch into column
+ * storage as it arrives, the encoded batches become the chunks of the columns of the Table.
+ * When the converters cannot keep up, the queue is full and the fetching thread waits (backpressure) so memory use
+ * is bounded by <code>queueCapacity * batchSize</code> unconverted rows.
+ * <p>
+ * The result is equal to the Table {@link Table#Table(ResultSet)} would give. Note that a ResultSet is not thread safe
+ * so the values are always read (decoded by the driver) on the calling thread, it is the conversion to column storage
+ * that is done in parallel.
+ * </p>
+ * <pre>
+ * Table table = new ResultSetReader().batchSize(10_000).read(rs);
+ * </pre>
+ */
+public class ResultSetReader {
+
+  private static final ConverterBatch END = new ConverterBatch(-1, null, 0);
+
+  private int batchSize = 4096;
+  private int queueCapacity = 8;
+  private int converterThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+  private ExecutorService executor;
+  private boolean virtualThreads;
+  private ColumnSketches sketches;
+
+  /**
+   * @param rows the number of rows in each batch handed to the converters, default 4096
+   * @return this reader
+   */
+  public ResultSetReader batchSize(int rows) {
+    if (rows < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1 but was " + rows);
+    }
+    this.batchSize = rows;
+    return this;
+  }
+
+  /**
+   * @param batches the max number of fetched batches waiting to be converted, default 8
+   * @return this reader
+   */
+  public ResultSetReader queueCapacity(int batches) {
+    if (batches < 1) {
+      throw new IllegalArgumentException("Queue capacity must be at least 1 but was " + batches);
+    }
+    this.queueCapacity = batches;
+    return this;
+  }
+
+  /**
+   * @param threads the number of threads converting batches
+   * @return this reader
+   */
+  public ResultSetReader converterThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of converter threads must be at least 1 but was " + threads);
+    }
+    this.converterThreads = threads;
+    return this;
+  }
+
+  /**
+   * @param executorService the executor to run the converters in, it is not shut down by the reader.
+   *                        If null (the default), a thread pool is created for each read.
+   *                        Note that the executor must be able to run all converter threads concurrently.
+   * @return this reader
+   */
+  public ResultSetReader executor(ExecutorService executorService) {
+    this.executor = executorService;
+    return this;
+  }
+
+  /**
+   * Run the converters in virtual threads (Executors.newVirtualThreadPerTaskExecutor) when running on Java 21 or
+   * later, on earlier versions a platform thread pool is used.
+   *
+   * @param useVirtualThreads whether to use virtual threads if available
+   * @return this reader
+   */
+  public ResultSetReader virtualThreads(boolean useVirtualThreads) {
+    this.virtualThreads = useVirtualThreads;
+    return this;
+  }
+
+  /**
+   * Update the sketches with each batch as it is converted, the distinct counts and quantiles of the rows read
+   * so far can then be read from the sketches (e.g. by a progress view) while the ResultSet is being read.
+   *
+   * @param columnSketches the sketches to update, null (the default) for none
+   * @return this reader
+   */
+  public ResultSetReader sketches(ColumnSketches columnSketches) {
+    this.sketches = columnSketches;
+    return this;
+  }
+
+  /**
+   * Read all the remaining rows of the ResultSet into a Table, the ResultSet is not closed.
+   *
+   * @param rs the ResultSet to read
+   * @return a new Table with the content of the ResultSet
+   * @throws SQLException if a database issue occurs
+   */
+  public Table read(ResultSet rs) throws SQLException {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("ResultSetReader.read")) {
+      ResultSetMetaData rsmd = rs.getMetaData();
+      int ncols = rsmd.getColumnCount();
+      List<String> headers = new ArrayList<>(ncols);
+      List<DataType> types = new ArrayList<>(ncols);
+      for (int i = 1; i <= ncols; i++) {
+        headers.add(rsmd.getColumnName(i));
+        types.add(DataType.forSqlType(rsmd.getColumnType(i)));
+      }
+
+      BlockingQueue<ConverterBatch> queue = new ArrayBlockingQueue<>(queueCapacity);
+      ConcurrentHashMap<Integer, Column[]> converted = new ConcurrentHashMap<>();
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      ExecutorService converters = executor != null ? executor : newExecutor();
+      List<Future<?>> workers = new ArrayList<>(converterThreads);
+      int numBatches = 0;
+      int rowCount = 0;
+      try {
+        for (int i = 0; i < converterThreads; i++) {
+          workers.add(converters.submit(() -> convert(queue, converted, failure, ncols, sketches)));
+        }
+        Object[][] rows = new Object[batchSize][];
+        int size = 0;
+        boolean converting = true;
+        while (converting && rs.next()) {
+          Object[] row = new Object[ncols];
+          for (int i = 0; i < ncols; i++) {
+            row[i] = rs.getObject(i + 1);
+          }
+          rows[size++] = row;
+          if (size == batchSize) {
+            rowCount += size;
+            converting = enqueue(queue, new ConverterBatch(numBatches++, rows, size), failure);
+            rows = new Object[batchSize][];
+            size = 0;
+          }
+        }
+        if (converting && size > 0) {
+          rowCount += size;
+          enqueue(queue, new ConverterBatch(numBatches++, rows, size), failure);
+        }
+      } finally {
+        if (failure.get() != null) {
+          // make room for the end markers, the remaining batches will not be used anyway
+          queue.clear();
+        }
+        for (int i = 0; i < workers.size(); i++) {
+          putUninterruptibly(queue, END);
+        }
+        awaitWorkers(workers, failure);
+        if (executor == null) {
+          converters.shutdown();
+        }
+      }
+      Throwable error = failure.get();
+      if (error != null) {
+        throw new SQLException("Failed to convert the ResultSet to a Table", error);
+      }
+      List<Column> columns = new ArrayList<>(ncols);
+      for (int col = 0; col < ncols; col++) {
+        List<Column> chunks = new ArrayList<>(numBatches);
+        for (int i = 0; i < numBatches; i++) {
+          chunks.add(converted.get(i)[col]);
+        }
+        columns.add(ChunkedColumn.of(chunks));
+      }
+      Table table = new Table(headers, types, columns, rowCount);
+      probe.end(table.getRowSize(), table.getHeaderSize());
+      return table;
+    }
+  }
+
+  private static void convert(BlockingQueue<ConverterBatch> queue, ConcurrentHashMap<Integer, Column[]> converted,
+                              AtomicReference<Throwable> failure, int ncols, ColumnSketches sketches) {
+    while (true) {
+      ConverterBatch batch;
+      try {
+        batch = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failure.compareAndSet(null, e);
+        return;
+      }
+      if (batch == END) {
+        return;
+      }
+      try {
+        converted.put(batch.index, encode(batch, ncols));
+        if (sketches != null) {
+          sketches.update(batch.rows, batch.size);
+        }
+      } catch (RuntimeException | Error e) {
+        failure.compareAndSet(null, e);
+      }
+    }
+  }
+
+  private static Column[] encode(ConverterBatch batch, int ncols) {
+    Column[] columns = new Column[ncols];
+    for (int col = 0; col < ncols; col++) {
+      Object[] values = new Object[batch.size];
+      for (int row = 0; row < batch.size; row++) {
+        values[row] = batch.rows[row][col];
+      }
+      columns[col] = ColumnEncoder.fromObjects(values);
+    }
+    return columns;
+  }
+
+  /**
+   * Put the batch on the queue, waiting for room as long as the converters are running.
+   *
+   * @return false if a converter has failed and there is no point in reading more
+   */
+  private static boolean enqueue(BlockingQueue<ConverterBatch> queue, ConverterBatch batch,
+                                 AtomicReference<Throwable> failure) throws SQLException {
+    try {
+      while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+        if (failure.get() != null) {
+          return false;
+        }
+      }
+      return failure.get() == null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure.compareAndSet(null, e);
+      throw new SQLException("Interrupted while reading the ResultSet", e);
+    }
+  }
+
+  private static void putUninterruptibly(BlockingQueue<ConverterBatch> queue, ConverterBatch batch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        queue.put(batch);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void awaitWorkers(List<Future<?>> workers, AtomicReference<Throwable> failure) {
+    for (Future<?> worker : workers) {
+      try {
+        worker.get();
+      } catch (ExecutionException e) {
+        failure.compareAndSet(null, e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failure.compareAndSet(null, e);
+        return;
+      }
+    }
+  }
+
+  private ExecutorService newExecutor() {
+    if (virtualThreads) {
+      try {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+        // Before Java 21, fall back to platform threads
+      }
+    }
+    return Executors.newFixedThreadPool(converterThreads);
+  }
+
+  private static final class ConverterBatch {
+    private final int index;
+    private final Object[][] rows;
+    private final int size;
+
+    private ConverterBatch(int index, Object[][] rows, int size) {
+      this.index = index;
+      this.rows = rows;
+      this.size = size;
+    }
+  }
+}
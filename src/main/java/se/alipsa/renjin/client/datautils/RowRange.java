@@ -0,0 +1,83 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * A range of rows, from the start row (inclusive) to the end row (exclusive), used to convert only part of a
+ * data.frame or Table. The end is capped at the number of rows available so e.g. <code>RowRange.first(100)</code>
+ * of a data.frame with 40 rows gives all 40 rows.
+ */
+public final class RowRange {
+
+  private static final RowRange ALL = new RowRange(0, Integer.MAX_VALUE);
+
+  private final int start;
+  private final int end;
+
+  private RowRange(int start, int end) {
+    if (start < 0 || end < start) {
+      throw new IllegalArgumentException("Invalid row range, start = " + start + ", end = " + end);
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @param start the index of the first row
+   * @param end the index after the last row
+   * @return the range of rows from start to end
+   */
+  public static RowRange of(int start, int end) {
+    return new RowRange(start, end);
+  }
+
+  /**
+   * @param numRows the number of rows
+   * @return the range of the first numRows rows
+   */
+  public static RowRange first(int numRows) {
+    return new RowRange(0, numRows);
+  }
+
+  /**
+   * @return the range of all rows
+   */
+  public static RowRange all() {
+    return ALL;
+  }
+
+  public int getStart() {
+    return start;
+  }
+
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * @param numRows the number of rows available
+   * @return the start of the range within the available rows
+   */
+  int start(int numRows) {
+    return Math.min(start, numRows);
+  }
+
+  /**
+   * @param numRows the number of rows available
+   * @return the end of the range within the available rows
+   */
+  int end(int numRows) {
+    return Math.min(end, numRows);
+  }
+
+  /**
+   * @param numRows the number of rows available
+   * @return true if the range covers all the available rows
+   */
+  boolean coversAll(int numRows) {
+    return start == 0 && end >= numRows;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + start + ", " + (end == Integer.MAX_VALUE ? "" : String.valueOf(end)) + ")";
+  }
+}
@@ -0,0 +1,80 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.Arrays;
+
+/**
+ * A column where each run of equal consecutive values is stored once, suitable for sorted or repetitive data.
+ * The value of run n is held in row n of the values column and runEnds[n] is the (exclusive) end row of the run.
+ */
+final class RunLengthColumn extends Column {
+
+  private final int[] runEnds;
+  private final Column runValues;
+
+  // The last run found, sequential access (e.g. iterating over the rows) is then mostly a single comparison.
+  // Reads and writes of an int are atomic so a stale value from another thread is just a bad guess.
+  private int lastRun;
+
+  RunLengthColumn(int[] runEnds, Column runValues) {
+    this.runEnds = runEnds;
+    this.runValues = runValues;
+  }
+
+  @Override
+  int size() {
+    return runEnds.length == 0 ? 0 : runEnds[runEnds.length - 1];
+  }
+
+  @Override
+  Object get(int row) {
+    return runValues.get(findRun(row));
+  }
+
+  Column runValues() {
+    return runValues;
+  }
+
+  int[] runEnds() {
+    return runEnds;
+  }
+
+  int findRun(int row) {
+    checkIndex(row);
+    int hint = lastRun;
+    if (row < runEnds[hint] && (hint == 0 || row >= runEnds[hint - 1])) {
+      return hint;
+    }
+    int idx = Arrays.binarySearch(runEnds, row);
+    int run = idx >= 0 ? idx + 1 : -idx - 1;
+    lastRun = run;
+    return run;
+  }
+
+  @Override
+  int indexOf(Object value, int fromRow, int toRow) {
+    int end = Math.min(toRow, size());
+    if (fromRow >= end) {
+      return -1;
+    }
+    for (int run = findRun(Math.max(fromRow, 0)); run < runEnds.length; run++) {
+      int runStart = run == 0 ? 0 : runEnds[run - 1];
+      if (runStart >= end) {
+        return -1;
+      }
+      if (value.equals(runValues.get(run))) {
+        return Math.max(fromRow, runStart);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.RUN_LENGTH;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    return 32 + runEnds.length * 4L + runValues.estimatedByteSize();
+  }
+}
@@ -5,6 +5,7 @@ import org.renjin.primitives.matrix.Matrix;
 import org.renjin.primitives.sequence.IntSequence;
 import org.renjin.sexp.*;
 
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -14,9 +15,16 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
 
 import static se.alipsa.renjin.client.datautils.RDataTransformer.*;
 
@@ -29,23 +37,95 @@ import static se.alipsa.renjin.client.datautils.RDataTransformer.*;
  * performed when you retrieve the data though the convenience methods {@link #getValueAsDouble(int, int)}
  * and {@link #getValueAsFloat(int, int)}
  * (The default DecimalFormatter is using the default (current) Locale of the jvm).
+ * <p>
+ * Internally the data is stored column by column and each column is encoded in the way that best suits its data
+ * (see {@link ColumnEncoding}), the rows and columns you get from the Table are views on top of that storage.
+ * </p>
  */
 public class Table {
 
   private NumberFormat numberFormat = DecimalFormat.getInstance();
 
   private List<String> headerList;
-  private List<List<Object>> rowList;
   private List<DataType> columnTypes;
+  private List<Column> columns;
+  private int rowCount;
 
-  // derived from rowlist, calculated on first use and cached (this is why rowList is immutable)
+  // views on the column storage, created on first use and cached (this is why the data is immutable)
+  private List<List<Object>> rowList = null;
   private List<List<Object>> columnList = null;
+  // the R vector of each column, built on first use by asDataframe and shared with derived tables
+  private CachedVector[] vectorCache = null;
+  // the content hash, computed on first use by fingerprint(), hashCode() or equals()
+  private volatile Long fingerprint = null;
+  // the statistics of each chunk of rows per column, computed on first use by the searches
+  private volatile ZoneMap[] zoneMaps = null;
 
   public Table() {
     // Empty
   }
 
   public static Table createTable(SEXP sexp) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.createTable")) {
+      Table table = create(sexp);
+      probe.end(table.getRowSize(), table.getHeaderSize());
+      return table;
+    }
+  }
+
+  /**
+   * Create a Table with only some of the columns and rows of the R data. For a data.frame only the selected columns
+   * and rows are converted, for other data (e.g. a matrix) the data is converted and then selected from.
+   *
+   * @param sexp the R data to convert
+   * @param columns the names of the columns to include (in that order), null for all columns
+   * @param rows the rows to include
+   * @return a new Table with the selected columns and rows
+   */
+  public static Table createTable(SEXP sexp, List<String> columns, RowRange rows) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.createTable")) {
+      Table table;
+      if (sexp instanceof ListVector) {
+        table = new Table((ListVector) sexp, columns, rows);
+      } else {
+        table = create(sexp).select(columns, rows);
+      }
+      probe.end(table.getRowSize(), table.getHeaderSize());
+      return table;
+    }
+  }
+
+  /**
+   * Create a Table for each element of the list, e.g. a list of data.frames with the results per segment.
+   * See {@link #createTables(Collection)}.
+   *
+   * @param list the list of R data to convert
+   * @return the Tables in the same order as the elements of the list
+   */
+  public static List<Table> createTables(ListVector list) {
+    List<SEXP> sexps = new ArrayList<>(list.length());
+    for (SEXP sexp : list) {
+      sexps.add(sexp);
+    }
+    return createTables(sexps);
+  }
+
+  /**
+   * Create a Table for each of the R objects as {@link #createTable(SEXP)} does, but concurrently on the common
+   * ForkJoinPool. The columns of all the data.frames are converted in parallel, largest first, so a single large
+   * data.frame is also spread over the available cores.
+   *
+   * @param sexps the R data to convert
+   * @return the Tables in the same order as the R data
+   */
+  public static List<Table> createTables(Collection<? extends SEXP> sexps) {
+    return BatchConverter.createTables(new ArrayList<>(sexps));
+  }
+
+  /**
+   * Create a Table as {@link #createTable(SEXP)} does but without reporting it as a conversion of its own.
+   */
+  static Table create(SEXP sexp) {
     String type = sexp.getTypeName();
     if (sexp instanceof ListVector) {
       return new Table((ListVector) sexp);
@@ -80,141 +160,320 @@ public class Table {
   }
 
   public Table(ListVector df, boolean contentAsStrings) {
-    headerList = Collections.unmodifiableList(toHeaderList(df));
-    columnTypes = Collections.unmodifiableList(toTypeList(df, contentAsStrings));
-    rowList = Collections.unmodifiableList(toRowlist(df, contentAsStrings));
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table(ListVector)")) {
+      headerList = Collections.unmodifiableList(toHeaderList(df));
+      columnTypes = Collections.unmodifiableList(toTypeList(df, contentAsStrings));
+      List<Column> cols = new ArrayList<>(df.length());
+      for (SEXP col : df) {
+        cols.add(ColumnEncoder.fromVector((Vector) col, contentAsStrings));
+      }
+      setColumns(cols);
+      probe.end(getRowSize(), getHeaderSize());
+    }
   }
 
-  public Table(List<String> headers, AbstractAtomicVector... columns) {
-    if (columns.length == 0) {
-      throw new IllegalArgumentException("No column data provided");
+  /**
+   * Create a Table from some of the columns and rows of a data.frame, the other columns and rows are never read.
+   *
+   * @param df the data.frame to convert
+   * @param columns the names of the columns to include (in that order), null for all columns
+   * @param rows the rows to include
+   */
+  public Table(ListVector df, List<String> columns, RowRange rows) {
+    this(df, columns, rows, false);
+  }
+
+  /**
+   * Create a Table from some of the columns and rows of a data.frame, the other columns and rows are never read.
+   *
+   * @param df the data.frame to convert
+   * @param columns the names of the columns to include (in that order), null for all columns
+   * @param rows the rows to include
+   * @param contentAsStrings if true, all columns are converted to Strings
+   */
+  public Table(ListVector df, List<String> columns, RowRange rows, boolean contentAsStrings) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table(ListVector)")) {
+      List<String> header = toHeaderList(df);
+      int[] indexes = columnIndexes(header, columns);
+      List<String> headers = new ArrayList<>(indexes.length);
+      List<DataType> types = new ArrayList<>(indexes.length);
+      List<Column> cols = new ArrayList<>(indexes.length);
+      int numRows = df.length() == 0 ? 0 : df.getElementAsSEXP(0).length();
+      int start = rows.start(numRows);
+      int end = rows.end(numRows);
+      for (int idx : indexes) {
+        Vector vec = (Vector) df.getElementAsSEXP(idx);
+        headers.add(header.get(idx));
+        types.add(contentAsStrings ? DataType.STRING : DataType.forVectorType(vec.getVectorType()));
+        cols.add(ColumnEncoder.fromVector(vec, contentAsStrings, start, end));
+      }
+      setHeaderList(headers);
+      setColumnTypes(types);
+      setColumns(cols, end - start);
+      probe.end(getRowSize(), getHeaderSize());
     }
-    ListVector.NamedBuilder builder = new ListVector.NamedBuilder();
-    for (AbstractAtomicVector vec : columns) {
-      builder.add(vec);
+  }
+
+  public Table(List<String> headers, AbstractAtomicVector... columns) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table(AbstractAtomicVector...)")) {
+      if (columns.length == 0) {
+        throw new IllegalArgumentException("No column data provided");
+      }
+      headerList = Collections.unmodifiableList(headers);
+      List<DataType> types = new ArrayList<>(columns.length);
+      List<Column> cols = new ArrayList<>(columns.length);
+      for (AbstractAtomicVector vec : columns) {
+        types.add(DataType.forVectorType(vec.getVectorType()));
+        cols.add(ColumnEncoder.fromVector(vec, false));
+      }
+      setColumnTypes(types);
+      setColumns(cols);
+      probe.end(getRowSize(), getHeaderSize());
     }
-    builder.setAttribute("row.names", new IntSequence(1, 1, columns[0].length()));
-    builder.setAttribute("class", StringVector.valueOf("data.frame"));
-    ListVector df = builder.build();
-    headerList = Collections.unmodifiableList(headers);
-    columnTypes = Collections.unmodifiableList(toTypeList(df, false));
-    rowList = Collections.unmodifiableList(toRowlist(df, false));
   }
 
   @SafeVarargs
   public Table(List<String> headerList, List<List<Object>> rowList, List<DataType>... dataTypesOpt) {
-    setHeaderList(headerList);
-    setRowList(rowList);
-    if (dataTypesOpt.length > 0) {
-      setColumnTypes(dataTypesOpt[0]);
-    } else {
-      List<DataType> columns = new ArrayList<>();
-      for(int i = 0; i < headerList.size(); i++) {
-        columns.add(DataType.UNKNOWN);
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table(List<List<Object>>)")) {
+      setHeaderList(headerList);
+      int numCols = headerList.size();
+      checkRowSizes(rowList, numCols);
+      List<Column> cols = new ArrayList<>(numCols);
+      for (int colIdx = 0; colIdx < numCols; colIdx++) {
+        Object[] values = new Object[rowList.size()];
+        for (int rowIdx = 0; rowIdx < values.length; rowIdx++) {
+          values[rowIdx] = rowList.get(rowIdx).get(colIdx);
+        }
+        cols.add(ColumnEncoder.fromObjects(values));
       }
-      setColumnTypes(columns);
+      setColumns(cols, rowList.size());
+      if (dataTypesOpt.length > 0) {
+        setColumnTypes(dataTypesOpt[0]);
+      } else {
+        List<DataType> columns = new ArrayList<>();
+        for(int i = 0; i < headerList.size(); i++) {
+          columns.add(DataType.UNKNOWN);
+        }
+        setColumnTypes(columns);
+      }
+      probe.end(getRowSize(), getHeaderSize());
     }
   }
 
-  public Table(Matrix mat) {
-    DataType dataType;
-    if("integer".equals(mat.getVector().getTypeName())) {
-      dataType = DataType.INTEGER;
-    } else { // No other types supported in Renjin at the moment
-      dataType = DataType.DOUBLE;
-    }
-    List<DataType> columns = new ArrayList<>();
-    for (int i = 0; i < mat.getNumCols(); i++) {
-      columns.add(dataType);
+  private static void checkRowSizes(List<List<Object>> rowList, int numCols) {
+    for (int rowIdx = 0; rowIdx < rowList.size(); rowIdx++) {
+      int size = rowList.get(rowIdx).size();
+      if (size != numCols) {
+        throw new IllegalArgumentException("Row " + rowIdx + " has " + size + " values but there are "
+            + numCols + " columns");
+      }
     }
-    setColumnTypes(columns);
+  }
 
-    List<String> headers = new ArrayList<>();
-    for (int i = 0; i < mat.getNumCols(); i++) {
-      String colName = mat.getColName(i) == null ? i + "" : mat.getColName(i);
-      headers.add(colName);
+  /**
+   * Create a Table from rows of data where the type of each column is inferred from the values.
+   * Columns where all values (except NA i.e. null, "" or "NA") are Booleans or the Strings TRUE/FALSE become
+   * BOOLEAN, integer numbers or Strings of digits become INTEGER, decimal numbers or numeric Strings become DOUBLE
+   * and LocalDates or Strings in ISO format (yyyy-MM-dd) become DATE. Columns that could be converted are stored
+   * in primitive form, so getValue returns e.g. an Integer where the row had the String "12", and
+   * {@link #asDataframe(boolean...)} creates proper numeric (or Date) vectors for them. Other columns are kept as is.
+   * The columns are inferred in parallel.
+   *
+   * @param headerList the names of the columns
+   * @param rowList the rows of data
+   * @return a new Table with inferred column types
+   * @throws IllegalArgumentException if a row does not have one value per column
+   */
+  public static Table withInferredTypes(List<String> headerList, List<List<Object>> rowList) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.withInferredTypes")) {
+      int numCols = headerList.size();
+      checkRowSizes(rowList, numCols);
+      TypeInference.InferredColumn[] inferred = TypeInference.inferColumns(rowList, numCols);
+      List<DataType> types = new ArrayList<>(numCols);
+      List<Column> cols = new ArrayList<>(numCols);
+      for (TypeInference.InferredColumn column : inferred) {
+        cols.add(column.column);
+        types.add(column.type);
+      }
+      Table table = new Table(headerList, types, cols, rowList.size());
+      probe.end(table.getRowSize(), table.getHeaderSize());
+      return table;
     }
-    setHeaderList(headers);
+  }
 
-    List<Object> row;
-    List<List<Object>> rows = new ArrayList<>();
-    for (int i = 0; i < mat.getNumRows(); i++) {
-      row = new ArrayList<>();
+  Table(List<String> headerList, List<DataType> columnTypes, List<Column> columns, int rowCount) {
+    setHeaderList(headerList);
+    setColumnTypes(columnTypes);
+    setColumns(columns, rowCount);
+  }
+
+  public Table(Matrix mat) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table(Matrix)")) {
+      DataType dataType;
+      if("integer".equals(mat.getVector().getTypeName())) {
+        dataType = DataType.INTEGER;
+      } else { // No other types supported in Renjin at the moment
+        dataType = DataType.DOUBLE;
+      }
+      List<DataType> columns = new ArrayList<>();
+      for (int i = 0; i < mat.getNumCols(); i++) {
+        columns.add(dataType);
+      }
+      setColumnTypes(columns);
+
+      List<String> headers = new ArrayList<>();
+      for (int i = 0; i < mat.getNumCols(); i++) {
+        String colName = mat.getColName(i) == null ? i + "" : mat.getColName(i);
+        headers.add(colName);
+      }
+      setHeaderList(headers);
+
+      List<Column> cols = new ArrayList<>();
       for (int j = 0; j < mat.getNumCols(); j++) {
         if (DataType.INTEGER == dataType) {
-          row.add(mat.getElementAsInt(i, j));
+          int[] values = new int[mat.getNumRows()];
+          BitSet nulls = null;
+          for (int i = 0; i < values.length; i++) {
+            values[i] = mat.getElementAsInt(i, j);
+            if (IntVector.isNA(values[i])) {
+              nulls = nulls == null ? new BitSet() : nulls;
+              nulls.set(i);
+            }
+          }
+          cols.add(ColumnEncoder.ints(values, nulls));
         } else {
-          row.add(mat.getElementAsDouble(i, j));
+          double[] values = new double[mat.getNumRows()];
+          for (int i = 0; i < values.length; i++) {
+            values[i] = mat.getElementAsDouble(i, j);
+          }
+          cols.add(ColumnEncoder.doubles(values, null));
         }
       }
-      rows.add(row);
+      setColumns(cols, mat.getNumRows());
+      probe.end(getRowSize(), getHeaderSize());
     }
-    setRowList(rows);
   }
 
   public Table(Vector vec) {
-    setHeaderList(Collections.singletonList(vec.getTypeName())); // TODO: should be name of the list, not the type name
-    setColumnTypes(Collections.singletonList(DataType.forVectorType(vec.getVectorType())));
-    List<Vector> values = new ArrayList<>();
-    values.add(vec);
-    setRowList(transpose(values));
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table(Vector)")) {
+      // TODO: should be name of the list, not the type name
+      setHeaderList(Collections.singletonList(vec.getTypeName()));
+      setColumnTypes(Collections.singletonList(DataType.forVectorType(vec.getVectorType())));
+      setColumns(Collections.singletonList(ColumnEncoder.fromVector(vec, false)));
+      probe.end(getRowSize(), getHeaderSize());
+    }
   }
 
   /**
    * Constructor to create a Table from a live java.sql.ResultSet.
    * The resultSet meta data is used to determine column types.
+   * For large results from slow drivers, see {@link ResultSetReader} which overlaps fetching and conversion.
    *
    * @param rs the ResultSet to create the Table from
    * @throws SQLException if a database issue occurs
    */
   public Table(ResultSet rs) throws SQLException {
-    ResultSetMetaData rsmd = rs.getMetaData();
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table(ResultSet)")) {
+      ResultSetMetaData rsmd = rs.getMetaData();
 
-    int ncols = rsmd.getColumnCount();
+      int ncols = rsmd.getColumnCount();
 
-    List<String> headers = new ArrayList<>();
-    List<DataType> types = new ArrayList<>();
-    for (int i = 1; i <= ncols; i++) {
-      headers.add(rsmd.getColumnName(i));
-      types.add(DataType.forSqlType(rsmd.getColumnType(i)));
-    }
-    setHeaderList(headers);
-    setColumnTypes(types);
+      List<String> headers = new ArrayList<>();
+      List<DataType> types = new ArrayList<>();
+      for (int i = 1; i <= ncols; i++) {
+        headers.add(rsmd.getColumnName(i));
+        types.add(DataType.forSqlType(rsmd.getColumnType(i)));
+      }
+      setHeaderList(headers);
+      setColumnTypes(types);
 
-    List<List<Object>> rows = new ArrayList<>();
-    while (rs.next()) {
-      List<Object> row = new ArrayList<>();
+      List<List<Object>> values = new ArrayList<>();
       for (int i = 1; i <= ncols; i++) {
-        row.add(rs.getObject(i));
+        values.add(new ArrayList<>());
+      }
+      int rows = 0;
+      while (rs.next()) {
+        for (int i = 1; i <= ncols; i++) {
+          values.get(i - 1).add(rs.getObject(i));
+        }
+        rows++;
       }
-      rows.add(row);
+      List<Column> cols = new ArrayList<>(ncols);
+      for (List<Object> colValues : values) {
+        cols.add(ColumnEncoder.fromObjects(colValues.toArray()));
+      }
+      setColumns(cols, rows);
+      probe.end(getRowSize(), getHeaderSize());
     }
-    setRowList(rows);
   }
 
   /**
    * @return a transposed version of the Table i.e. the table is "tilted" 90 degrees so that each row becomes a column
-   * and each column becomes a row.
+   * and each column becomes a row. This is a view that reads from the storage of this Table (swapping the row
+   * and column index) so it is created in constant time, use {@link #transposedCopy()} if the transposed
+   * data is read many times.
    */
   public Table asTransposed() {
-    return new Table(headerList, getColumnList(), columnTypes);
+    return new Table(headerList, columnTypes, TransposedColumn.of(columns, rowCount), columns.size());
+  }
+
+  /**
+   * Same as {@link #asTransposed()} but the data is copied into new column storage. If all columns are stored as
+   * ints or all as doubles, the copy is done in cache sized tiles in parallel into primitive columns.
+   *
+   * @return a transposed copy of the Table
+   */
+  public Table transposedCopy() {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.transposedCopy")) {
+      Table table = new Table(headerList, columnTypes, Transposer.transpose(columns, rowCount), columns.size());
+      probe.end(table.getRowSize(), table.getHeaderSize());
+      return table;
+    }
+  }
+
+  /**
+   * Insert the rows of this Table into an existing database table with columns named as the headers of this Table.
+   * This is the reverse of {@link #Table(ResultSet)}.
+   *
+   * @param con the connection to use
+   * @param tableName the name of the database table to insert into
+   * @param options batch size, commit interval etc.
+   * @return the number of rows inserted
+   * @throws SQLException if a database issue occurs
+   */
+  public int writeTo(Connection con, String tableName, JdbcWriteOptions options) throws SQLException {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.writeTo")) {
+      int rows = JdbcTableWriter.write(this, con, tableName, options);
+      probe.end(rows, getHeaderSize());
+      return rows;
+    }
+  }
+
+  /**
+   * Insert the rows of this Table into an existing database table using the default {@link JdbcWriteOptions}.
+   *
+   * @param con the connection to use
+   * @param tableName the name of the database table to insert into
+   * @return the number of rows inserted
+   * @throws SQLException if a database issue occurs
+   */
+  public int writeTo(Connection con, String tableName) throws SQLException {
+    return writeTo(con, tableName, new JdbcWriteOptions());
   }
 
+  /**
+   * @return a List of all the columns of the table where each column is a List of the values in that column
+   */
   @SuppressFBWarnings("EI_EXPOSE_REP")
   public List<List<Object>> getColumnList() {
     if (columnList == null) {
-      List<List<Object>> columns = new ArrayList<>();
-      for (List<Object> row : rowList) {
-        if (columns.size() == 0) {
-          for (int i = 0; i < row.size(); i++) {
-            columns.add(new ArrayList<>());
-          }
-        }
-        for (int j = 0; j < row.size(); j++) {
-          columns.get(j).add(row.get(j));
+      List<List<Object>> cols = new ArrayList<>();
+      if (rowCount > 0) {
+        for (Column column : columns) {
+          cols.add(new ColumnView(column));
         }
       }
-      columnList = Collections.unmodifiableList(columns);
+      columnList = Collections.unmodifiableList(cols);
     }
     return columnList;
   }
@@ -230,11 +489,14 @@ public class Table {
 
   @SuppressFBWarnings("EI_EXPOSE_REP")
   public List<List<Object>> getRowList() {
+    if (rowList == null) {
+      rowList = new RowListView();
+    }
     return rowList;
   }
 
   public int getRowSize() {
-    return rowList.size();
+    return rowCount;
   }
 
   /**
@@ -242,15 +504,23 @@ public class Table {
    * @return a List of Objects where each object in the list is the cell data
    */
   public List<Object> getRow(int index) {
-    return rowList.get(index);
+    if (index < 0 || index >= rowCount) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rowCount);
+    }
+    return new RowView(index);
   }
 
   private void setHeaderList(List<String> headers) {
     headerList = Collections.unmodifiableList(headers);
   }
 
-  private void setRowList(List<List<Object>> rows) {
-    rowList = Collections.unmodifiableList(rows);
+  private void setColumns(List<Column> cols) {
+    setColumns(cols, cols.isEmpty() ? 0 : cols.get(0).size());
+  }
+
+  private void setColumns(List<Column> cols, int numRows) {
+    columns = Collections.unmodifiableList(cols);
+    rowCount = numRows;
   }
 
   private void setColumnTypes(List<DataType> dataTypes) {
@@ -266,14 +536,208 @@ public class Table {
    */
   public List<Object> getRowForName(String value, int... column) {
     int col = column.length == 0 ? 0 : column[0];
-    for (List<Object> row : rowList) {
-      if (value.equals(row.get(col))) {
-        return row;
+    Column data = columns.get(col);
+    ZoneMap zoneMap = zoneMap(col);
+    for (int chunk = 0; chunk < zoneMap.chunkCount(); chunk++) {
+      if (zoneMap.mayContain(chunk, value)) {
+        int rowIdx = data.indexOf(value, zoneMap.chunkStart(chunk), zoneMap.chunkEnd(chunk));
+        if (rowIdx != -1) {
+          return getRow(rowIdx);
+        }
       }
     }
     return null;
   }
 
+  /**
+   * Find the rows where the value of a column starts with the prefix specified.
+   * For string columns the comparison is made on the stored bytes, without creating a String for each row.
+   *
+   * @param prefix the prefix to search for
+   * @param column the column index to look in, defaults to 0 (first column)
+   * @return the indexes of the matching rows in ascending order
+   */
+  public int[] getRowIndexesForPrefix(String prefix, int... column) {
+    int col = column.length == 0 ? 0 : column[0];
+    Column data = columns.get(col);
+    ZoneMap zoneMap = zoneMap(col);
+    RowIndexes rows = new RowIndexes();
+    int chunk = 0;
+    while (chunk < zoneMap.chunkCount()) {
+      if (!zoneMap.mayStartWith(chunk, prefix)) {
+        chunk++;
+        continue;
+      }
+      // search consecutive chunks that may match in one go
+      int start = zoneMap.chunkStart(chunk);
+      while (chunk < zoneMap.chunkCount() && zoneMap.mayStartWith(chunk, prefix)) {
+        chunk++;
+      }
+      rows.addAll(data.rowsStartingWith(prefix, start, zoneMap.chunkEnd(chunk - 1)));
+    }
+    return rows.toArray();
+  }
+
+  /**
+   * Find the rows where the value of a column is within a range, e.g. the dates of a quarter.
+   * The chunks of rows that cannot be within the range (see {@link #getColumnStats(int)}) are skipped without
+   * looking at the values and the rows of chunks that are entirely within the range are all included.
+   *
+   * @param column the column index to look in
+   * @param from the inclusive lower bound or null for no lower bound
+   * @param to the inclusive upper bound or null for no upper bound
+   * @return the indexes of the matching rows in ascending order
+   */
+  public int[] getRowIndexesInRange(int column, Comparable<?> from, Comparable<?> to) {
+    Column data = columns.get(column);
+    ZoneMap zoneMap = zoneMap(column);
+    RowIndexes rows = new RowIndexes();
+    for (int chunk = 0; chunk < zoneMap.chunkCount(); chunk++) {
+      int start = zoneMap.chunkStart(chunk);
+      int end = zoneMap.chunkEnd(chunk);
+      if (zoneMap.within(chunk, from, to)) {
+        for (int row = start; row < end; row++) {
+          rows.add(row);
+        }
+      } else if (zoneMap.mayOverlap(chunk, from, to)) {
+        for (int row = start; row < end; row++) {
+          if (inRange(data.get(row), from, to)) {
+            rows.add(row);
+          }
+        }
+      }
+    }
+    return rows.toArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static boolean inRange(Object value, Comparable<?> from, Comparable<?> to) {
+    if (value == null || value instanceof Double && ((Double) value).isNaN()) {
+      return false;
+    }
+    try {
+      return (from == null || ((Comparable<Object>) from).compareTo(value) <= 0)
+          && (to == null || ((Comparable<Object>) to).compareTo(value) >= 0);
+    } catch (ClassCastException e) {
+      // a value of another type than the bounds is not in the range
+      return false;
+    }
+  }
+
+  /**
+   * The row count, NA count, min and max of the values of a column. The statistics are computed in a single pass
+   * over the column per chunk of rows the first time they (or a search on the column) are needed and then kept
+   * with the Table.
+   *
+   * @param column the column index
+   * @return the statistics of the column
+   */
+  public ColumnStats getColumnStats(int column) {
+    return zoneMap(column).stats();
+  }
+
+  /**
+   * The aggregations and the row mask of numeric columns below run over the primitive column storage,
+   * skipping NA (and NaN) values, see {@link NumericKernels}.
+   *
+   * @param column the index of a numeric column
+   * @return the sum of the values, 0 if all values are NA
+   */
+  public double sum(int column) {
+    return NumericKernels.sum(numericColumn(column));
+  }
+
+  /**
+   * @param column the index of a numeric column
+   * @return the mean of the values, NaN if all values are NA
+   */
+  public double mean(int column) {
+    Column data = numericColumn(column);
+    long count = NumericKernels.count(data);
+    return count == 0 ? Double.NaN : NumericKernels.sum(data) / count;
+  }
+
+  /**
+   * @param column the index of a numeric column
+   * @return the smallest value, NaN if all values are NA
+   */
+  public double min(int column) {
+    return NumericKernels.min(numericColumn(column));
+  }
+
+  /**
+   * @param column the index of a numeric column
+   * @return the largest value, NaN if all values are NA
+   */
+  public double max(int column) {
+    return NumericKernels.max(numericColumn(column));
+  }
+
+  /**
+   * @param column the index of a numeric column
+   * @param otherColumn the index of another numeric column
+   * @return the sum of the products of the values of the two columns in each row, rows with an NA are skipped
+   */
+  public double dot(int column, int otherColumn) {
+    return NumericKernels.dot(numericColumn(column), numericColumn(otherColumn));
+  }
+
+  /**
+   * E.g. <code>BitSet expensive = table.getRowMask(priceIdx, CompareOp.GT, 100.0);</code> The masks of several
+   * conditions can be combined with {@link BitSet#and(BitSet)} and {@link BitSet#or(BitSet)}.
+   *
+   * @param column the index of a numeric column
+   * @param op the comparison
+   * @param value the value to compare to
+   * @return the rows where the value of the column compared to the value holds, never the rows that are NA
+   */
+  public BitSet getRowMask(int column, CompareOp op, double value) {
+    return NumericKernels.mask(numericColumn(column), op, value);
+  }
+
+  private Column numericColumn(int column) {
+    DataType type = columnTypes.get(column);
+    if (type != DataType.DOUBLE && type != DataType.INTEGER) {
+      throw new IllegalArgumentException("The column " + headerList.get(column) + " is " + type
+          + ", not a numeric (DOUBLE or INTEGER) column");
+    }
+    return columns.get(column);
+  }
+
+  /**
+   * Compute a distinct count (HyperLogLog) and a quantile sketch of each column, in parallel over chunks of rows.
+   * The sketches of tables with the same columns can be merged, see {@link ColumnSketches#merge(ColumnSketches)}.
+   *
+   * @return the sketches of the columns of this table
+   */
+  public ColumnSketches sketches() {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.sketches")) {
+      ColumnSketches sketches = ColumnSketches.of(this);
+      probe.end(getRowSize(), columnCount());
+      return sketches;
+    }
+  }
+
+  private ZoneMap zoneMap(int column) {
+    ZoneMap[] maps = zoneMaps;
+    if (maps == null) {
+      synchronized (this) {
+        maps = zoneMaps;
+        if (maps == null) {
+          maps = new ZoneMap[columns.size()];
+          zoneMaps = maps;
+        }
+      }
+    }
+    ZoneMap zoneMap = maps[column];
+    if (zoneMap == null) {
+      zoneMap = ZoneMap.of(columns.get(column));
+      // computing it twice in a race gives the same result so no need to lock
+      maps[column] = zoneMap;
+    }
+    return zoneMap;
+  }
+
   @SuppressFBWarnings("EI_EXPOSE_REP")
   public List<DataType> getColumnTypes() {
     return columnTypes;
@@ -328,6 +792,184 @@ public class Table {
     return toDataframe(this, stringsOnlyOpt.length > 0 && stringsOnlyOpt[0]);
   }
 
+  /**
+   * Create a data.frame backed by this Table, i.e. the columns read directly from the storage of the Table
+   * instead of being copied which halves the memory needed when handing a large Table over to R, e.g.
+   * <code>engine.put("salaryData", myTable.asDataframeView());</code>
+   * See {@link RDataTransformer#toDataframeView(Table)} for details.
+   *
+   * @return this table as a ListVector (data.frame) backed by the Table
+   */
+  public ListVector asDataframeView() {
+    return toDataframeView(this);
+  }
+
+  /**
+   * Convert some of the columns and rows of this table to a data.frame.
+   * See {@link RDataTransformer#toDataframe(Table, List, RowRange)} for details.
+   *
+   * @param columns the names of the columns to include (in that order), null for all columns
+   * @param rows the rows to include
+   * @return the selected part of this table as a ListVector (data.frame)
+   */
+  public ListVector asDataframe(List<String> columns, RowRange rows) {
+    return toDataframe(this, columns, rows);
+  }
+
+  /**
+   * Map each row to an object of the class, setting the properties (public setters or fields) named as the
+   * columns (case insensitive if there is no exact match). Columns without a matching property are ignored and
+   * NA values leave primitive properties at their default. The accessors are looked up once per class and cached,
+   * e.g. <code>List&lt;Employee&gt; employees = table.asBeans(Employee.class);</code>
+   *
+   * @param type the class to create, must have a no argument constructor
+   * @param <T> the type of the objects
+   * @return an object for each row of this table
+   */
+  public <T> List<T> asBeans(Class<T> type) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.asBeans")) {
+      List<T> beans = BeanMapper.of(type).toBeans(this);
+      probe.end(rowCount, getHeaderSize());
+      return beans;
+    }
+  }
+
+  /**
+   * Create a new Table with a column added or, if a column with the name exists, replaced.
+   * The data of the other columns is shared with this Table, as are their R vectors, so
+   * {@link #asDataframe(boolean...)} of the new Table only needs to convert the new column.
+   *
+   * @param name the name of the column
+   * @param type the type of the column
+   * @param values the values of the column, one per row
+   * @return a new Table with the column added or replaced
+   */
+  public Table withColumn(String name, DataType type, List<?> values) {
+    if (!columns.isEmpty() && values.size() != rowCount) {
+      throw new IllegalArgumentException("The table has " + rowCount + " rows but there are " + values.size()
+          + " values for the column " + name);
+    }
+    return withColumn(name, type, ColumnEncoder.fromObjects(values.toArray()));
+  }
+
+  /**
+   * Create a new Table with a column derived from the other columns added or, if a column with the name exists,
+   * replaced. The expression is evaluated in Java over the column storage, e.g.
+   * <code>table.withColumn("ratio", col("revenue").divide(col("cost")))</code>, see {@link ColumnExpression}.
+   * As for {@link #withColumn(String, DataType, List)} the other columns and their R vectors are shared.
+   *
+   * @param name the name of the column
+   * @param expression the expression giving the value of each row
+   * @return a new Table with the column added or replaced
+   */
+  public Table withColumn(String name, ColumnExpression expression) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("Table.withColumn")) {
+      DataType type = expression.getType(this);
+      Table derived = withColumn(name, type, expression.evaluate(this));
+      probe.end(rowCount, 1);
+      return derived;
+    }
+  }
+
+  private Table withColumn(String name, DataType type, Column column) {
+    int idx = headerList.indexOf(name);
+    List<String> headers = new ArrayList<>(headerList);
+    List<DataType> types = new ArrayList<>(columnTypes);
+    List<Column> cols = new ArrayList<>(columns);
+    List<CachedVector> vectors = new ArrayList<>(Arrays.asList(vectorCache()));
+    if (idx == -1) {
+      idx = headers.size();
+      headers.add(name);
+      types.add(type);
+      cols.add(column);
+      vectors.add(null);
+    } else {
+      types.set(idx, type);
+      cols.set(idx, column);
+    }
+    Table derived = new Table(headers, types, cols, column.size());
+    derived.numberFormat = (NumberFormat) numberFormat.clone();
+    vectors.set(idx, derived.newCachedVector(idx));
+    derived.vectorCache = vectors.toArray(new CachedVector[0]);
+    return derived;
+  }
+
+  /**
+   * Create a new Table with rows added at the end of the rows of this Table. The data of this Table is shared
+   * rather than copied and {@link #asDataframe(boolean...)} of the new Table reuses the R vectors of this Table
+   * so only the appended rows need to be converted.
+   *
+   * @param rows the rows to append, each with one value per column
+   * @return a new Table with the rows appended
+   * @throws IllegalArgumentException if a row does not have one value per column
+   */
+  public Table withRowsAppended(List<List<Object>> rows) {
+    if (rows.isEmpty()) {
+      return this;
+    }
+    // throws if the size of a row differs from the number of columns
+    Table tail = new Table(headerList, rows, columnTypes);
+    List<Column> cols = new ArrayList<>(columns.size());
+    for (int i = 0; i < columns.size(); i++) {
+      cols.add(ChunkedColumn.concat(columns.get(i), tail.columns.get(i)));
+    }
+    Table derived = new Table(headerList, columnTypes, cols, rowCount + tail.rowCount);
+    derived.numberFormat = (NumberFormat) numberFormat.clone();
+    CachedVector[] headVectors = vectorCache();
+    CachedVector[] vectors = new CachedVector[columns.size()];
+    for (int i = 0; i < vectors.length; i++) {
+      int col = i;
+      vectors[i] = new CachedVector(() -> {
+        Vector vector = ChunkedVectors.concat(headVectors[col].get(), tail.columnVector(col));
+        return vector == null ? buildColumn(derived, col, false) : vector;
+      });
+    }
+    derived.vectorCache = vectors;
+    return derived;
+  }
+
+  private Table select(List<String> names, RowRange rows) {
+    int[] indexes = columnIndexes(headerList, names);
+    int start = rows.start(rowCount);
+    int end = rows.end(rowCount);
+    List<String> headers = new ArrayList<>(indexes.length);
+    List<DataType> types = new ArrayList<>(indexes.length);
+    List<Column> cols = new ArrayList<>(indexes.length);
+    for (int idx : indexes) {
+      headers.add(headerList.get(idx));
+      types.add(columnTypes.get(idx));
+      Column column = columns.get(idx);
+      Object[] values = new Object[end - start];
+      for (int row = start; row < end; row++) {
+        values[row - start] = column.get(row);
+      }
+      cols.add(ColumnEncoder.fromObjects(values));
+    }
+    return new Table(headers, types, cols, end - start);
+  }
+
+  /**
+   * @return the R vector of the column, built on first use
+   */
+  Vector columnVector(int column) {
+    return vectorCache()[column].get();
+  }
+
+  private synchronized CachedVector[] vectorCache() {
+    if (vectorCache == null) {
+      CachedVector[] vectors = new CachedVector[columns.size()];
+      for (int i = 0; i < vectors.length; i++) {
+        vectors[i] = newCachedVector(i);
+      }
+      vectorCache = vectors;
+    }
+    return vectorCache;
+  }
+
+  private CachedVector newCachedVector(int column) {
+    return new CachedVector(() -> buildColumn(this, column, false));
+  }
+
   /**
    *
    * @param row the row index
@@ -335,7 +977,81 @@ public class Table {
    * @return the value of the cell specified
    */
   public Object getValue(int row, int column) {
-    return rowList.get(row).get(column);
+    return columns.get(column).get(row);
+  }
+
+  /**
+   * @param column the column index
+   * @return the way the data of the column is stored
+   */
+  public ColumnEncoding getColumnEncoding(int column) {
+    return columns.get(column).getEncoding();
+  }
+
+  Column column(int index) {
+    return columns.get(index);
+  }
+
+  int columnCount() {
+    return columns == null ? 0 : columns.size();
+  }
+
+  /**
+   * A 64 bit hash of the header, column types and values of this Table. It does not depend on how the data is
+   * stored and is stable between JVMs and runs, so it can be saved and compared later to find out whether the data
+   * has changed. The columns are hashed in parallel and the result is cached (the data is immutable).
+   *
+   * @return the content hash of this table
+   */
+  public long fingerprint() {
+    Long fp = fingerprint;
+    if (fp == null) {
+      fp = Fingerprint.of(this);
+      fingerprint = fp;
+    }
+    return fp;
+  }
+
+  /**
+   * Compare this table to another table, see {@link TableDiff#compare(Table, Table, String...)}.
+   *
+   * @param other the new version of this table
+   * @param keyColumns the columns identifying a row, if none are given the rows are compared by position
+   * @return the differences from this table to the other table
+   */
+  public TableDiff diff(Table other, String... keyColumns) {
+    return TableDiff.compare(this, other, keyColumns);
+  }
+
+  /**
+   * Two Tables are equal if they have the same header, column types and values, regardless of how the values are
+   * stored. The number format is not part of the comparison.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Table)) {
+      return false;
+    }
+    Table other = (Table) obj;
+    if (rowCount != other.rowCount || columnCount() != other.columnCount()
+        || !Objects.equals(headerList, other.headerList) || !Objects.equals(columnTypes, other.columnTypes)) {
+      return false;
+    }
+    Long fp = fingerprint;
+    Long otherFp = other.fingerprint;
+    if (fp != null && otherFp != null && !fp.equals(otherFp)) {
+      return false;
+    }
+    return IntStream.range(0, columnCount()).parallel()
+        .allMatch(i -> TableDiff.sameValues(columns.get(i), other.columns.get(i)));
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(fingerprint());
   }
 
   /**
@@ -408,7 +1124,9 @@ public class Table {
     if (val == null) {
       return null;
     }
-    if (val instanceof Double) {
+    if (val instanceof LocalDate) {
+      return (LocalDate) val;
+    } else if (val instanceof Double) {
       return LocalDate.ofEpochDay(((Double)val).longValue());
     } else {
       return LocalDate.parse(String.valueOf(val), DateTimeFormatter.ofPattern(format));
@@ -424,7 +1142,9 @@ public class Table {
     if (val == null) {
       return null;
     }
-    if (val instanceof Double) {
+    if (val instanceof LocalDate) {
+      return ((LocalDate) val).atStartOfDay();
+    } else if (val instanceof Double) {
       long longVal = ((Double)val).longValue();
       //System.out.println("LocalDateTime from " + longVal + ", offset = " + offset);
       return LocalDateTime.ofEpochSecond(longVal, 0, offset);
@@ -448,6 +1168,29 @@ public class Table {
     return columnTypes.get(i);
   }
 
+  /**
+   * A rough estimate of the heap used by this table, used e.g. to bound a {@link TableCache} by a memory budget.
+   * The R vectors of the columns are included once they have been built (e.g. by asDataframe).
+   *
+   * @return the estimated number of bytes used by the table data
+   */
+  long estimatedByteSize() {
+    long size = getHeaderSize() * 64L;
+    for (Column column : columns) {
+      size += column.estimatedByteSize();
+    }
+    CachedVector[] vectors;
+    synchronized (this) {
+      vectors = vectorCache;
+    }
+    if (vectors != null) {
+      for (CachedVector vector : vectors) {
+        size += vector.estimatedByteSize();
+      }
+    }
+    return size;
+  }
+
   /**
    * Set the decimal formatter to use in convenience methods getting data as double or float.
    * Once set, the decimal formatter is no longer mutable i.e. a change to the decimal formatter
@@ -458,4 +1201,85 @@ public class Table {
   public void setNumberFormat(NumberFormat numberFormat) {
     this.numberFormat = (NumberFormat)numberFormat.clone();
   }
+
+  /** A read only view of the rows of the table. */
+  private class RowListView extends AbstractList<List<Object>> implements RandomAccess {
+
+    @Override
+    public List<Object> get(int index) {
+      return getRow(index);
+    }
+
+    @Override
+    public int size() {
+      return rowCount;
+    }
+  }
+
+  /** A read only view of one row of the table. */
+  private class RowView extends AbstractList<Object> implements RandomAccess {
+
+    private final int rowIdx;
+
+    RowView(int rowIdx) {
+      this.rowIdx = rowIdx;
+    }
+
+    @Override
+    public Object get(int index) {
+      return columns.get(index).get(rowIdx);
+    }
+
+    @Override
+    public int size() {
+      return columns.size();
+    }
+  }
+
+  /** A read only view of one column of the table. */
+  private static class ColumnView extends AbstractList<Object> implements RandomAccess {
+
+    private final Column column;
+
+    ColumnView(Column column) {
+      this.column = column;
+    }
+
+    @Override
+    public Object get(int index) {
+      return column.get(index);
+    }
+
+    @Override
+    public int size() {
+      return column.size();
+    }
+  }
+
+  /**
+   * A growable array of row indexes.
+   */
+  private static final class RowIndexes {
+    private int[] rows = new int[16];
+    private int count;
+
+    void add(int row) {
+      if (count == rows.length) {
+        rows = Arrays.copyOf(rows, count * 2);
+      }
+      rows[count++] = row;
+    }
+
+    void addAll(int[] values) {
+      if (count + values.length > rows.length) {
+        rows = Arrays.copyOf(rows, Math.max(count * 2, count + values.length));
+      }
+      System.arraycopy(values, 0, rows, count, values.length);
+      count += values.length;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(rows, count);
+    }
+  }
 }
@@ -0,0 +1,248 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.SEXP;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * An optional cache of Tables converted from R objects, useful when the same SEXP is converted over and over again
+ * (e.g. a dashboard that refreshes by calling <code>engine.get("df")</code> and then creates a Table from it).
+ * <p>
+ * Entries are keyed on the identity of the SEXP (not on its content) and the keys are weakly referenced
+ * so the cache never keeps an R object alive; once the SEXP is garbage collected the entry is purged.
+ * The cache is bounded either by number of entries or by an (estimated) memory budget and evicts the least recently
+ * used entries first.
+ * </p>
+ * Since the data of a Table is immutable, a cached Table can safely be shared between callers. Note however that
+ * the number format (see {@link Table#setNumberFormat(java.text.NumberFormat)}) is also shared.
+ * <pre>
+ * TableCache cache = new TableCache(100);
+ * Table table = cache.createTable((SEXP) engine.get("df"));
+ * </pre>
+ */
+public class TableCache {
+
+  private final long maxWeight;
+  private final ToLongFunction<Table> weigher;
+
+  private final LinkedHashMap<IdentityKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final ReferenceQueue<SEXP> collected = new ReferenceQueue<>();
+
+  private long totalWeight;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * Create a cache holding at most maxEntries Tables.
+   *
+   * @param maxEntries the maximum number of tables to keep in the cache
+   */
+  public TableCache(int maxEntries) {
+    this(maxEntries, t -> 1L);
+  }
+
+  /**
+   * Create a cache bounded by a custom weight.
+   *
+   * @param maxWeight the maximum total weight of the tables in the cache
+   * @param weigher function calculating the weight of a Table, must be a positive number
+   */
+  public TableCache(long maxWeight, ToLongFunction<Table> weigher) {
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("The max weight of the cache must be a positive number but was " + maxWeight);
+    }
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+  }
+
+  /**
+   * Create a cache bounded by an estimate of the memory used by the cached Tables.
+   *
+   * @param maxBytes the memory budget in bytes
+   * @return a new TableCache
+   */
+  public static TableCache withMemoryBudget(long maxBytes) {
+    return new TableCache(maxBytes, Table::estimatedByteSize);
+  }
+
+  /**
+   * Get the Table for the sexp from the cache or, if not present, create it
+   * using {@link Table#createTable(SEXP)} and cache the result.
+   * The conversion is done outside any lock, so two threads asking for the same uncached SEXP at the same time
+   * might both convert it.
+   *
+   * @param sexp the R object to convert
+   * @return the Table corresponding to the sexp
+   */
+  public Table createTable(SEXP sexp) {
+    Table table = get(sexp);
+    if (table == null) {
+      table = Table.createTable(sexp);
+      put(sexp, table);
+    }
+    return table;
+  }
+
+  /**
+   * The weight of the table is recalculated on each hit since it can grow after the table was cached
+   * (e.g. when asDataframe has built the R vectors of the columns).
+   *
+   * @param sexp the R object to look up
+   * @return the cached Table for the sexp or null if there is none
+   */
+  public synchronized Table get(SEXP sexp) {
+    purgeCollected();
+    Entry entry = entries.get(new IdentityKey(sexp, null));
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    long weight = weigher.applyAsLong(entry.table);
+    if (weight != entry.weight) {
+      totalWeight += weight - entry.weight;
+      entry.weight = weight;
+      evict();
+    }
+    return entry.table;
+  }
+
+  /**
+   * Add a Table to the cache, evicting the least recently used entries if the cache is full.
+   * A table heavier than the max weight of the cache is not cached.
+   *
+   * @param sexp the R object the table was created from
+   * @param table the Table to cache
+   */
+  public synchronized void put(SEXP sexp, Table table) {
+    purgeCollected();
+    long weight = weigher.applyAsLong(table);
+    if (weight > maxWeight) {
+      return;
+    }
+    Entry previous = entries.put(new IdentityKey(sexp, collected), new Entry(table, weight));
+    if (previous != null) {
+      totalWeight -= previous.weight;
+    }
+    totalWeight += weight;
+    evict();
+  }
+
+  /**
+   * Remove the least recently used entries until the total weight is within the max weight.
+   */
+  private void evict() {
+    Iterator<Entry> it = entries.values().iterator();
+    while (totalWeight > maxWeight && it.hasNext()) {
+      totalWeight -= it.next().weight;
+      it.remove();
+      evictionCount++;
+    }
+  }
+
+  /**
+   * @param sexp the R object to remove the cached Table for
+   */
+  public synchronized void invalidate(SEXP sexp) {
+    Entry entry = entries.remove(new IdentityKey(sexp, null));
+    if (entry != null) {
+      totalWeight -= entry.weight;
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    totalWeight = 0;
+  }
+
+  /**
+   * @return the number of tables currently in the cache
+   */
+  public synchronized int size() {
+    purgeCollected();
+    return entries.size();
+  }
+
+  /**
+   * @return the sum of the weights (e.g. the estimated bytes) of the tables currently in the cache
+   */
+  public synchronized long getWeight() {
+    purgeCollected();
+    return totalWeight;
+  }
+
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "TableCache with " + entries.size() + " entries, weight " + totalWeight + " of " + maxWeight
+        + ", " + hitCount + " hits and " + missCount + " misses";
+  }
+
+  private void purgeCollected() {
+    Reference<? extends SEXP> ref;
+    while ((ref = collected.poll()) != null) {
+      Entry entry = entries.remove(ref);
+      if (entry != null) {
+        totalWeight -= entry.weight;
+      }
+    }
+  }
+
+  private static final class Entry {
+    private final Table table;
+    private long weight;
+
+    private Entry(Table table, long weight) {
+      this.table = table;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * A weak reference that is equal to another key only if both refer to the same SEXP instance.
+   * Once the referent has been collected, a key is only equal to itself which is what allows us to
+   * remove it when it shows up in the reference queue.
+   */
+  private static final class IdentityKey extends WeakReference<SEXP> {
+    private final int hash;
+
+    private IdentityKey(SEXP sexp, ReferenceQueue<SEXP> queue) {
+      super(sexp, queue);
+      hash = System.identityHashCode(sexp);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof IdentityKey)) {
+        return false;
+      }
+      SEXP sexp = get();
+      return sexp != null && sexp == ((IdentityKey) obj).get();
+    }
+  }
+}
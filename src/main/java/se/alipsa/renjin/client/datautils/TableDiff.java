@@ -0,0 +1,299 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * The differences between two versions of a Table: added and removed columns, inserted and deleted rows and
+ * changed cells. Rows are matched on the key columns if any are given (so rows may be reordered), otherwise by
+ * position, in which case rows beyond the end of the shorter table are inserted or deleted.
+ * Cells are compared for the columns present in both tables, in parallel over the columns.
+ * <pre>
+ * TableDiff diff = TableDiff.compare(yesterday, today, "id");
+ * if (!diff.isEmpty()) {
+ *   republish(today);
+ * }
+ * </pre>
+ */
+public final class TableDiff {
+
+  private final List<String> addedColumns;
+  private final List<String> removedColumns;
+  private final List<Integer> insertedRows;
+  private final List<Integer> deletedRows;
+  private final List<CellChange> changedCells;
+
+  private TableDiff(List<String> addedColumns, List<String> removedColumns, List<Integer> insertedRows,
+                    List<Integer> deletedRows, List<CellChange> changedCells) {
+    this.addedColumns = Collections.unmodifiableList(addedColumns);
+    this.removedColumns = Collections.unmodifiableList(removedColumns);
+    this.insertedRows = Collections.unmodifiableList(insertedRows);
+    this.deletedRows = Collections.unmodifiableList(deletedRows);
+    this.changedCells = Collections.unmodifiableList(changedCells);
+  }
+
+  /**
+   * @param before the old version of the table
+   * @param after the new version of the table
+   * @param keyColumns the columns identifying a row, present in both tables. If none are given,
+   *                   the rows are compared by position.
+   * @return the differences between the tables
+   */
+  public static TableDiff compare(Table before, Table after, String... keyColumns) {
+    try (ConversionMonitor.Probe probe = ConversionMonitor.start("TableDiff.compare")) {
+      List<String> addedColumns = new ArrayList<>();
+      for (String name : after.getHeaderList()) {
+        if (!before.getHeaderList().contains(name)) {
+          addedColumns.add(name);
+        }
+      }
+      List<String> removedColumns = new ArrayList<>();
+      List<String> commonColumns = new ArrayList<>();
+      for (String name : before.getHeaderList()) {
+        if (after.getHeaderList().contains(name)) {
+          commonColumns.add(name);
+        } else {
+          removedColumns.add(name);
+        }
+      }
+
+      // matched[i] is the row in before matching row i in after, or -1 if row i is inserted
+      int[] matched = new int[after.getRowSize()];
+      List<Integer> insertedRows = new ArrayList<>();
+      List<Integer> deletedRows = new ArrayList<>();
+      if (keyColumns.length == 0) {
+        for (int row = 0; row < matched.length; row++) {
+          if (row < before.getRowSize()) {
+            matched[row] = row;
+          } else {
+            matched[row] = -1;
+            insertedRows.add(row);
+          }
+        }
+        for (int row = after.getRowSize(); row < before.getRowSize(); row++) {
+          deletedRows.add(row);
+        }
+      } else {
+        int[] beforeKeys = keyIndexes(before, keyColumns);
+        int[] afterKeys = keyIndexes(after, keyColumns);
+        Map<List<Object>, Integer> beforeRows = new HashMap<>();
+        for (int row = 0; row < before.getRowSize(); row++) {
+          if (beforeRows.put(key(before, row, beforeKeys), row) != null) {
+            throw new IllegalArgumentException("The key " + key(before, row, beforeKeys) + " is not unique");
+          }
+        }
+        boolean[] found = new boolean[before.getRowSize()];
+        for (int row = 0; row < matched.length; row++) {
+          Integer beforeRow = beforeRows.get(key(after, row, afterKeys));
+          if (beforeRow == null || found[beforeRow]) {
+            matched[row] = -1;
+            insertedRows.add(row);
+          } else {
+            matched[row] = beforeRow;
+            found[beforeRow] = true;
+          }
+        }
+        for (int row = 0; row < found.length; row++) {
+          if (!found[row]) {
+            deletedRows.add(row);
+          }
+        }
+      }
+
+      List<List<CellChange>> changesPerColumn = new ArrayList<>(Collections.nCopies(commonColumns.size(), null));
+      IntStream.range(0, commonColumns.size()).parallel().forEach(i -> {
+        String name = commonColumns.get(i);
+        Column beforeColumn = before.column(before.getHeaderList().indexOf(name));
+        Column afterColumn = after.column(after.getHeaderList().indexOf(name));
+        List<CellChange> changes = new ArrayList<>();
+        for (int row = 0; row < matched.length; row++) {
+          int beforeRow = matched[row];
+          if (beforeRow != -1) {
+            Object oldValue = beforeColumn.get(beforeRow);
+            Object newValue = afterColumn.get(row);
+            if (!Objects.equals(oldValue, newValue)) {
+              changes.add(new CellChange(beforeRow, row, name, oldValue, newValue));
+            }
+          }
+        }
+        changesPerColumn.set(i, changes);
+      });
+      List<CellChange> changedCells = new ArrayList<>();
+      for (List<CellChange> changes : changesPerColumn) {
+        changedCells.addAll(changes);
+      }
+      changedCells.sort((a, b) -> a.afterRow != b.afterRow
+          ? Integer.compare(a.afterRow, b.afterRow)
+          : Integer.compare(commonColumns.indexOf(a.column), commonColumns.indexOf(b.column)));
+      TableDiff diff = new TableDiff(addedColumns, removedColumns, insertedRows, deletedRows, changedCells);
+      probe.end(after.getRowSize(), commonColumns.size());
+      return diff;
+    }
+  }
+
+  /**
+   * @return true if the values of the two columns are equal, primitive columns are compared without boxing
+   */
+  static boolean sameValues(Column a, Column b) {
+    int n = a.size();
+    if (n != b.size()) {
+      return false;
+    }
+    if (a instanceof DoubleColumn && b instanceof DoubleColumn) {
+      DoubleColumn x = (DoubleColumn) a;
+      DoubleColumn y = (DoubleColumn) b;
+      for (int i = 0; i < n; i++) {
+        boolean isNull = x.isNull(i);
+        // the value stored in a null row is undefined (NA or 0 depending on how the column was created)
+        if (isNull != y.isNull(i)
+            || !isNull && Double.doubleToLongBits(x.getDouble(i)) != Double.doubleToLongBits(y.getDouble(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (a instanceof IntColumn && b instanceof IntColumn) {
+      IntColumn x = (IntColumn) a;
+      IntColumn y = (IntColumn) b;
+      for (int i = 0; i < n; i++) {
+        boolean isNull = x.isNull(i);
+        if (isNull != y.isNull(i) || !isNull && x.getInt(i) != y.getInt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (int i = 0; i < n; i++) {
+      if (!Objects.equals(a.get(i), b.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int[] keyIndexes(Table table, String... keyColumns) {
+    int[] indexes = new int[keyColumns.length];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = table.getHeaderList().indexOf(keyColumns[i]);
+      if (indexes[i] == -1) {
+        throw new IllegalArgumentException("There is no key column named " + keyColumns[i]
+            + ", columns are " + table.getHeaderList());
+      }
+    }
+    return indexes;
+  }
+
+  private static List<Object> key(Table table, int row, int[] keyIndexes) {
+    List<Object> key = new ArrayList<>(keyIndexes.length);
+    for (int idx : keyIndexes) {
+      key.add(table.getValue(row, idx));
+    }
+    return key;
+  }
+
+  /**
+   * @return true if the tables have the same columns and rows with the same values
+   */
+  public boolean isEmpty() {
+    return addedColumns.isEmpty() && removedColumns.isEmpty() && insertedRows.isEmpty() && deletedRows.isEmpty()
+        && changedCells.isEmpty();
+  }
+
+  /**
+   * @return the names of the columns only in the new table
+   */
+  public List<String> getAddedColumns() {
+    return addedColumns;
+  }
+
+  /**
+   * @return the names of the columns only in the old table
+   */
+  public List<String> getRemovedColumns() {
+    return removedColumns;
+  }
+
+  /**
+   * @return the indexes (in the new table) of the rows not in the old table
+   */
+  public List<Integer> getInsertedRows() {
+    return insertedRows;
+  }
+
+  /**
+   * @return the indexes (in the old table) of the rows not in the new table
+   */
+  public List<Integer> getDeletedRows() {
+    return deletedRows;
+  }
+
+  /**
+   * @return the cells of the rows and columns in both tables that have different values,
+   * ordered by row and column
+   */
+  public List<CellChange> getChangedCells() {
+    return changedCells;
+  }
+
+  @Override
+  public String toString() {
+    return "TableDiff with " + addedColumns.size() + " added and " + removedColumns.size() + " removed columns, "
+        + insertedRows.size() + " inserted and " + deletedRows.size() + " deleted rows and "
+        + changedCells.size() + " changed cells";
+  }
+
+  /**
+   * A cell with different values in the old and the new table.
+   */
+  public static final class CellChange {
+    private final int beforeRow;
+    private final int afterRow;
+    private final String column;
+    private final Object oldValue;
+    private final Object newValue;
+
+    CellChange(int beforeRow, int afterRow, String column, Object oldValue, Object newValue) {
+      this.beforeRow = beforeRow;
+      this.afterRow = afterRow;
+      this.column = column;
+      this.oldValue = oldValue;
+      this.newValue = newValue;
+    }
+
+    /**
+     * @return the index of the row in the old table
+     */
+    public int getBeforeRow() {
+      return beforeRow;
+    }
+
+    /**
+     * @return the index of the row in the new table
+     */
+    public int getAfterRow() {
+      return afterRow;
+    }
+
+    public String getColumn() {
+      return column;
+    }
+
+    public Object getOldValue() {
+      return oldValue;
+    }
+
+    public Object getNewValue() {
+      return newValue;
+    }
+
+    @Override
+    public String toString() {
+      return column + "[" + afterRow + "]: " + oldValue + " -> " + newValue;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.SEXP;
+
+/**
+ * A double vector reading directly from a (plain or run length encoded) double or date column of a Table
+ * so that no data is copied when a Table is handed over to R, see {@link Table#asDataframeView()}.
+ */
+final class TableDoubleVector extends DoubleVector {
+
+  private final Column column;
+  private final DoubleColumn doubles;
+  private final DateColumn dates;
+  private final RunLengthColumn runs;
+
+  private TableDoubleVector(Column column, AttributeMap attributes) {
+    super(attributes);
+    this.column = column;
+    runs = column instanceof RunLengthColumn ? (RunLengthColumn) column : null;
+    Column values = runs == null ? column : runs.runValues();
+    doubles = values instanceof DoubleColumn ? (DoubleColumn) values : null;
+    dates = values instanceof DateColumn ? (DateColumn) values : null;
+  }
+
+  /**
+   * @return a vector viewing the column or null if the column is not stored as doubles or dates
+   */
+  static TableDoubleVector of(Column column, AttributeMap attributes) {
+    Column values = column instanceof RunLengthColumn ? ((RunLengthColumn) column).runValues() : column;
+    if (values instanceof DoubleColumn || values instanceof DateColumn) {
+      return new TableDoubleVector(column, attributes);
+    }
+    return null;
+  }
+
+  @Override
+  protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+    return new TableDoubleVector(column, attributes);
+  }
+
+  @Override
+  public double getElementAsDouble(int index) {
+    int idx = runs == null ? index : runs.findRun(index);
+    if (dates != null) {
+      return dates.isNull(idx) ? NA : dates.getEpochDay(idx);
+    }
+    return doubles.isNull(idx) ? NA : doubles.getDouble(idx);
+  }
+
+  @Override
+  public int length() {
+    return column.size();
+  }
+
+  @Override
+  public boolean isConstantAccessTime() {
+    return runs == null;
+  }
+}
@@ -0,0 +1,52 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.SEXP;
+
+/**
+ * An integer vector reading directly from a (plain or run length encoded) int column of a Table,
+ * see {@link Table#asDataframeView()}.
+ */
+final class TableIntVector extends IntVector {
+
+  private final Column column;
+  private final IntColumn ints;
+  private final RunLengthColumn runs;
+
+  private TableIntVector(Column column, AttributeMap attributes) {
+    super(attributes);
+    this.column = column;
+    runs = column instanceof RunLengthColumn ? (RunLengthColumn) column : null;
+    ints = (IntColumn) (runs == null ? column : runs.runValues());
+  }
+
+  /**
+   * @return a vector viewing the column or null if the column is not stored as ints
+   */
+  static TableIntVector of(Column column, AttributeMap attributes) {
+    Column values = column instanceof RunLengthColumn ? ((RunLengthColumn) column).runValues() : column;
+    return values instanceof IntColumn ? new TableIntVector(column, attributes) : null;
+  }
+
+  @Override
+  protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+    return new TableIntVector(column, attributes);
+  }
+
+  @Override
+  public int getElementAsInt(int index) {
+    int idx = runs == null ? index : runs.findRun(index);
+    return ints.isNull(idx) ? NA : ints.getInt(idx);
+  }
+
+  @Override
+  public int length() {
+    return column.size();
+  }
+
+  @Override
+  public boolean isConstantAccessTime() {
+    return runs == null;
+  }
+}
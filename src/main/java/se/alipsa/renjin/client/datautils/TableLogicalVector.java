@@ -0,0 +1,46 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.SEXP;
+
+/**
+ * A logical vector reading directly from a boolean column of a Table, see {@link Table#asDataframeView()}.
+ */
+final class TableLogicalVector extends LogicalVector {
+
+  private final BooleanColumn column;
+
+  private TableLogicalVector(BooleanColumn column, AttributeMap attributes) {
+    super(attributes);
+    this.column = column;
+  }
+
+  /**
+   * @return a vector viewing the column or null if the column is not a boolean column
+   */
+  static TableLogicalVector of(Column column, AttributeMap attributes) {
+    return column instanceof BooleanColumn ? new TableLogicalVector((BooleanColumn) column, attributes) : null;
+  }
+
+  @Override
+  protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+    return new TableLogicalVector(column, attributes);
+  }
+
+  @Override
+  public int getElementAsRawLogical(int index) {
+    Object value = column.get(index);
+    return value == null ? NA : (Boolean) value ? 1 : 0;
+  }
+
+  @Override
+  public int length() {
+    return column.size();
+  }
+
+  @Override
+  public boolean isConstantAccessTime() {
+    return true;
+  }
+}
@@ -0,0 +1,40 @@
+package se.alipsa.renjin.client.datautils;
+
+import org.renjin.sexp.AttributeMap;
+import org.renjin.sexp.SEXP;
+import org.renjin.sexp.StringVector;
+
+/**
+ * A character vector reading directly from a column of a Table, non String values are converted using
+ * String.valueOf when accessed. See {@link Table#asDataframeView()}.
+ */
+final class TableStringVector extends StringVector {
+
+  private final Column column;
+
+  TableStringVector(Column column, AttributeMap attributes) {
+    super(attributes);
+    this.column = column;
+  }
+
+  @Override
+  protected SEXP cloneWithNewAttributes(AttributeMap attributes) {
+    return new TableStringVector(column, attributes);
+  }
+
+  @Override
+  public String getElementAsString(int index) {
+    Object value = column.get(index);
+    return value == null ? NA : String.valueOf(value);
+  }
+
+  @Override
+  public int length() {
+    return column.size();
+  }
+
+  @Override
+  public boolean isConstantAccessTime() {
+    return column.getEncoding() != ColumnEncoding.RUN_LENGTH;
+  }
+}
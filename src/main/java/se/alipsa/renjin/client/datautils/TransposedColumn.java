@@ -0,0 +1,60 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A row of a Table viewed as a column, the values are read from the columns of the Table on access.
+ */
+final class TransposedColumn extends Column {
+
+  private final List<Column> columns;
+  private final int row;
+
+  TransposedColumn(List<Column> columns, int row) {
+    this.columns = columns;
+    this.row = row;
+  }
+
+  /**
+   * @param columns the columns of the Table to transpose
+   * @param numRows the number of rows in the Table
+   * @return a column for each row, created on access
+   */
+  static List<Column> of(List<Column> columns, int numRows) {
+    return new AbstractList<Column>() {
+      @Override
+      public Column get(int index) {
+        if (index < 0 || index >= numRows) {
+          throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numRows);
+        }
+        return new TransposedColumn(columns, index);
+      }
+
+      @Override
+      public int size() {
+        return numRows;
+      }
+    };
+  }
+
+  @Override
+  int size() {
+    return columns.size();
+  }
+
+  @Override
+  Object get(int index) {
+    return columns.get(index).get(row);
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.TRANSPOSED;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    return 24;
+  }
+}
@@ -0,0 +1,222 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Materializes the transpose of a Table. Tables where all columns are ints or all columns are doubles are transposed
+ * into primitive arrays tile by tile so that both the columns read and the rows written stay in the cpu cache,
+ * the tiles of different output rows are processed in parallel. Other tables are copied value by value.
+ */
+final class Transposer {
+
+  /** The side of the square tile transposed at a time, 64 doubles is 8 cache lines. */
+  static final int TILE = 64;
+
+  /** Transposes smaller than this (number of values) are done in the calling thread. */
+  private static final long MIN_PARALLEL_SIZE = 1 << 16;
+
+  private Transposer() {
+    // Utility class
+  }
+
+  /**
+   * @param columns the columns to transpose, all of the same size
+   * @param numRows the number of rows in the columns
+   * @return a column for each row
+   */
+  static List<Column> transpose(List<Column> columns, int numRows) {
+    int numCols = columns.size();
+    List<Column> result = new ArrayList<>(numRows);
+    if (numCols == 0) {
+      for (int row = 0; row < numRows; row++) {
+        result.add(new ObjectColumn(new Object[0]));
+      }
+      return result;
+    }
+    DoubleColumn[] doubleColumns = plainDoubles(columns);
+    if (doubleColumns != null) {
+      double[][] src = new double[numCols][];
+      BitSet[] srcNulls = new BitSet[numCols];
+      for (int c = 0; c < numCols; c++) {
+        src[c] = doubleColumns[c].values();
+        srcNulls[c] = doubleColumns[c].nulls();
+      }
+      double[][] dst = transpose(src, numRows);
+      BitSet[] dstNulls = transposeNulls(srcNulls, numRows);
+      for (int row = 0; row < numRows; row++) {
+        result.add(ColumnEncoder.doubles(dst[row], dstNulls[row]));
+      }
+      return result;
+    }
+    IntColumn[] intColumns = plainInts(columns);
+    if (intColumns != null) {
+      int[][] src = new int[numCols][];
+      BitSet[] srcNulls = new BitSet[numCols];
+      for (int c = 0; c < numCols; c++) {
+        src[c] = intColumns[c].values();
+        srcNulls[c] = intColumns[c].nulls();
+      }
+      int[][] dst = transpose(src, numRows);
+      BitSet[] dstNulls = transposeNulls(srcNulls, numRows);
+      for (int row = 0; row < numRows; row++) {
+        result.add(ColumnEncoder.ints(dst[row], dstNulls[row]));
+      }
+      return result;
+    }
+    Column[] transposed = new Column[numRows];
+    rows(numRows, numCols).forEach(row -> {
+      Object[] values = new Object[numCols];
+      for (int c = 0; c < numCols; c++) {
+        values[c] = columns.get(c).get(row);
+      }
+      transposed[row] = ColumnEncoder.fromObjects(values);
+    });
+    for (Column column : transposed) {
+      result.add(column);
+    }
+    return result;
+  }
+
+  /**
+   * @param src the columns, each with numRows values
+   * @param numRows the number of rows
+   * @return the rows, each with a value per column
+   */
+  static double[][] transpose(double[][] src, int numRows) {
+    int numCols = src.length;
+    double[][] dst = new double[numRows][numCols];
+    tiles(numRows, numCols).forEach(tile -> {
+      int rowStart = tile * TILE;
+      int rowEnd = Math.min(rowStart + TILE, numRows);
+      for (int colStart = 0; colStart < numCols; colStart += TILE) {
+        int colEnd = Math.min(colStart + TILE, numCols);
+        for (int c = colStart; c < colEnd; c++) {
+          double[] column = src[c];
+          for (int r = rowStart; r < rowEnd; r++) {
+            dst[r][c] = column[r];
+          }
+        }
+      }
+    });
+    return dst;
+  }
+
+  /**
+   * @param src the columns, each with numRows values
+   * @param numRows the number of rows
+   * @return the rows, each with a value per column
+   */
+  static int[][] transpose(int[][] src, int numRows) {
+    int numCols = src.length;
+    int[][] dst = new int[numRows][numCols];
+    tiles(numRows, numCols).forEach(tile -> {
+      int rowStart = tile * TILE;
+      int rowEnd = Math.min(rowStart + TILE, numRows);
+      for (int colStart = 0; colStart < numCols; colStart += TILE) {
+        int colEnd = Math.min(colStart + TILE, numCols);
+        for (int c = colStart; c < colEnd; c++) {
+          int[] column = src[c];
+          for (int r = rowStart; r < rowEnd; r++) {
+            dst[r][c] = column[r];
+          }
+        }
+      }
+    });
+    return dst;
+  }
+
+  private static BitSet[] transposeNulls(BitSet[] srcNulls, int numRows) {
+    BitSet[] dstNulls = new BitSet[numRows];
+    for (int c = 0; c < srcNulls.length; c++) {
+      BitSet nulls = srcNulls[c];
+      if (nulls == null) {
+        continue;
+      }
+      for (int r = nulls.nextSetBit(0); r >= 0 && r < numRows; r = nulls.nextSetBit(r + 1)) {
+        if (dstNulls[r] == null) {
+          dstNulls[r] = new BitSet();
+        }
+        dstNulls[r].set(c);
+      }
+    }
+    return dstNulls;
+  }
+
+  /**
+   * @return a stream of the indexes of the tile rows, parallel if the transpose is large enough
+   */
+  private static IntStream tiles(int numRows, int numCols) {
+    IntStream tiles = IntStream.range(0, (numRows + TILE - 1) / TILE);
+    return (long) numRows * numCols >= MIN_PARALLEL_SIZE ? tiles.parallel() : tiles;
+  }
+
+  private static IntStream rows(int numRows, int numCols) {
+    IntStream rows = IntStream.range(0, numRows);
+    return (long) numRows * numCols >= MIN_PARALLEL_SIZE ? rows.parallel() : rows;
+  }
+
+  /**
+   * @return the columns as plain double columns (run length encoded columns are expanded)
+   * or null if not all columns are double columns
+   */
+  private static DoubleColumn[] plainDoubles(List<Column> columns) {
+    DoubleColumn[] plain = new DoubleColumn[columns.size()];
+    for (int c = 0; c < plain.length; c++) {
+      Column column = columns.get(c);
+      if (column instanceof DoubleColumn) {
+        plain[c] = (DoubleColumn) column;
+      } else if (column instanceof RunLengthColumn && ((RunLengthColumn) column).runValues() instanceof DoubleColumn) {
+        RunLengthColumn rle = (RunLengthColumn) column;
+        DoubleColumn runs = (DoubleColumn) rle.runValues();
+        double[] values = new double[rle.size()];
+        BitSet nulls = null;
+        for (int row = 0; row < values.length; row++) {
+          int run = rle.findRun(row);
+          values[row] = runs.getDouble(run);
+          if (runs.isNull(run)) {
+            nulls = nulls == null ? new BitSet() : nulls;
+            nulls.set(row);
+          }
+        }
+        plain[c] = new DoubleColumn(values, nulls);
+      } else {
+        return null;
+      }
+    }
+    return plain;
+  }
+
+  /**
+   * @return the columns as plain int columns (run length encoded columns are expanded)
+   * or null if not all columns are int columns
+   */
+  private static IntColumn[] plainInts(List<Column> columns) {
+    IntColumn[] plain = new IntColumn[columns.size()];
+    for (int c = 0; c < plain.length; c++) {
+      Column column = columns.get(c);
+      if (column instanceof IntColumn) {
+        plain[c] = (IntColumn) column;
+      } else if (column instanceof RunLengthColumn && ((RunLengthColumn) column).runValues() instanceof IntColumn) {
+        RunLengthColumn rle = (RunLengthColumn) column;
+        IntColumn runs = (IntColumn) rle.runValues();
+        int[] values = new int[rle.size()];
+        BitSet nulls = null;
+        for (int row = 0; row < values.length; row++) {
+          int run = rle.findRun(row);
+          values[row] = runs.getInt(run);
+          if (runs.isNull(run)) {
+            nulls = nulls == null ? new BitSet() : nulls;
+            nulls.set(row);
+          }
+        }
+        plain[c] = new IntColumn(values, nulls);
+      } else {
+        return null;
+      }
+    }
+    return plain;
+  }
+}
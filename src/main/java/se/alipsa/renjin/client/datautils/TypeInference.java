@@ -0,0 +1,336 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Infers the data type of columns of java objects (typically Strings read from a file) and converts them into
+ * primitive column storage so that they reach R as proper logical, integer, double or Date vectors.
+ * The columns are processed in parallel. For each column the candidate type is first determined from a sample
+ * of the values and then the full column is converted (large columns in parallel chunks); if the conversion
+ * fails the column is widened (integer to double) or, failing that, left as is.
+ */
+final class TypeInference {
+
+  private static final int SAMPLE_SIZE = 1000;
+  // a multiple of 32 so that parallel chunks never share a long when packing 2 bit logicals
+  private static final int CHUNK_SIZE = 65536;
+
+  private static final Pattern DECIMAL = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+  private static final Pattern ISO_DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+  private TypeInference() {
+    // Utility class
+  }
+
+  /**
+   * The result of inferring the type of one column.
+   */
+  static final class InferredColumn {
+    final DataType type;
+    final Column column;
+
+    InferredColumn(DataType type, Column column) {
+      this.type = type;
+      this.column = column;
+    }
+  }
+
+  /**
+   * @param rows the rows of data, each with numCols values
+   * @param numCols the number of columns
+   * @return the inferred type and converted storage of each column
+   */
+  static InferredColumn[] inferColumns(List<List<Object>> rows, int numCols) {
+    return IntStream.range(0, numCols).parallel()
+        .mapToObj(colIdx -> {
+          Object[] values = new Object[rows.size()];
+          for (int rowIdx = 0; rowIdx < values.length; rowIdx++) {
+            values[rowIdx] = rows.get(rowIdx).get(colIdx);
+          }
+          return infer(values);
+        })
+        .toArray(InferredColumn[]::new);
+  }
+
+  /**
+   * @param values the values of the column
+   * @return the inferred type and converted storage of the column
+   */
+  static InferredColumn infer(Object[] values) {
+    DataType candidate = sampleType(values);
+    if (candidate == DataType.BOOLEAN) {
+      Column column = toBooleans(values);
+      if (column != null) {
+        return new InferredColumn(DataType.BOOLEAN, column);
+      }
+    } else if (candidate == DataType.DATE) {
+      Column column = toDates(values);
+      if (column != null) {
+        return new InferredColumn(DataType.DATE, column);
+      }
+    } else if (candidate == DataType.INTEGER || candidate == DataType.DOUBLE) {
+      if (candidate == DataType.INTEGER) {
+        Column column = toInts(values);
+        if (column != null) {
+          return new InferredColumn(DataType.INTEGER, column);
+        }
+      }
+      Column column = toDoubles(values);
+      if (column != null) {
+        return new InferredColumn(DataType.DOUBLE, column);
+      }
+    }
+    return new InferredColumn(allStrings(values) ? DataType.STRING : DataType.UNKNOWN, ColumnEncoder.fromObjects(values));
+  }
+
+  /**
+   * @return the narrowest type that all the sampled values can be converted to, UNKNOWN if there is none
+   */
+  static DataType sampleType(Object[] values) {
+    boolean bool = true;
+    boolean integer = true;
+    boolean decimal = true;
+    boolean date = true;
+    boolean anyValue = false;
+    int sampled = Math.min(values.length, SAMPLE_SIZE);
+    for (int i = 0; i < sampled && (bool || integer || decimal || date); i++) {
+      Object val = values[(int) ((long) i * values.length / sampled)];
+      if (isNA(val)) {
+        continue;
+      }
+      anyValue = true;
+      bool = bool && toBoolean(val) != null;
+      integer = integer && toInt(val) != null;
+      decimal = decimal && toDouble(val) != null;
+      date = date && toEpochDay(val) != null;
+    }
+    if (!anyValue) {
+      return DataType.UNKNOWN;
+    }
+    if (bool) {
+      return DataType.BOOLEAN;
+    }
+    if (integer) {
+      return DataType.INTEGER;
+    }
+    if (decimal) {
+      return DataType.DOUBLE;
+    }
+    return date ? DataType.DATE : DataType.UNKNOWN;
+  }
+
+  private static Column toBooleans(Object[] values) {
+    PackedInts packed = new PackedInts(values.length, 2);
+    boolean ok = convert(values.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        if (isNA(values[i])) {
+          continue;
+        }
+        Boolean val = toBoolean(values[i]);
+        if (val == null) {
+          return false;
+        }
+        packed.set(i, val ? BooleanColumn.TRUE : BooleanColumn.FALSE);
+      }
+      return true;
+    });
+    return ok ? new BooleanColumn(packed) : null;
+  }
+
+  private static Column toInts(Object[] values) {
+    int[] ints = new int[values.length];
+    BitSet nulls = nulls(values);
+    boolean ok = convert(values.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        if (isNA(values[i])) {
+          continue;
+        }
+        Integer val = toInt(values[i]);
+        if (val == null) {
+          return false;
+        }
+        ints[i] = val;
+      }
+      return true;
+    });
+    return ok ? ColumnEncoder.ints(ints, nulls) : null;
+  }
+
+  private static Column toDoubles(Object[] values) {
+    double[] doubles = new double[values.length];
+    BitSet nulls = nulls(values);
+    boolean ok = convert(values.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        if (isNA(values[i])) {
+          continue;
+        }
+        Double val = toDouble(values[i]);
+        if (val == null) {
+          return false;
+        }
+        doubles[i] = val;
+      }
+      return true;
+    });
+    return ok ? ColumnEncoder.doubles(doubles, nulls) : null;
+  }
+
+  private static Column toDates(Object[] values) {
+    int[] epochDays = new int[values.length];
+    BitSet nulls = nulls(values);
+    boolean ok = convert(values.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        if (isNA(values[i])) {
+          continue;
+        }
+        Integer val = toEpochDay(values[i]);
+        if (val == null) {
+          return false;
+        }
+        epochDays[i] = val;
+      }
+      return true;
+    });
+    return ok ? new DateColumn(epochDays, nulls) : null;
+  }
+
+  /**
+   * Run the conversion over the rows, in parallel chunks if there are many rows.
+   *
+   * @return true if all chunks converted successfully
+   */
+  private static boolean convert(int n, ChunkConverter converter) {
+    if (n <= CHUNK_SIZE) {
+      return converter.convert(0, n);
+    }
+    AtomicBoolean ok = new AtomicBoolean(true);
+    IntStream.range(0, (n + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel().forEach(chunk -> {
+      if (ok.get() && !converter.convert(chunk * CHUNK_SIZE, Math.min(n, (chunk + 1) * CHUNK_SIZE))) {
+        ok.set(false);
+      }
+    });
+    return ok.get();
+  }
+
+  private static BitSet nulls(Object[] values) {
+    BitSet nulls = null;
+    for (int i = 0; i < values.length; i++) {
+      if (isNA(values[i])) {
+        nulls = nulls == null ? new BitSet() : nulls;
+        nulls.set(i);
+      }
+    }
+    return nulls;
+  }
+
+  private static boolean allStrings(Object[] values) {
+    boolean anyValue = false;
+    for (Object val : values) {
+      if (val != null) {
+        if (!(val instanceof String)) {
+          return false;
+        }
+        anyValue = true;
+      }
+    }
+    return anyValue;
+  }
+
+  static boolean isNA(Object val) {
+    return val == null || (val instanceof String && (((String) val).isEmpty() || "NA".equals(val)));
+  }
+
+  static Boolean toBoolean(Object val) {
+    if (val instanceof Boolean) {
+      return (Boolean) val;
+    }
+    if (val instanceof String) {
+      switch ((String) val) {
+        case "TRUE":
+        case "True":
+        case "true":
+          return Boolean.TRUE;
+        case "FALSE":
+        case "False":
+        case "false":
+          return Boolean.FALSE;
+        default:
+          return null;
+      }
+    }
+    return null;
+  }
+
+  static Integer toInt(Object val) {
+    if (val instanceof Integer || val instanceof Short || val instanceof Byte) {
+      return ((Number) val).intValue();
+    }
+    long longVal;
+    if (val instanceof Long) {
+      longVal = (Long) val;
+    } else if (val instanceof String) {
+      String str = (String) val;
+      int start = str.startsWith("-") || str.startsWith("+") ? 1 : 0;
+      if (str.length() == start || str.length() - start > 10) {
+        return null;
+      }
+      longVal = 0;
+      for (int i = start; i < str.length(); i++) {
+        char c = str.charAt(i);
+        if (c < '0' || c > '9') {
+          return null;
+        }
+        longVal = longVal * 10 + (c - '0');
+      }
+      longVal = str.charAt(0) == '-' ? -longVal : longVal;
+    } else {
+      return null;
+    }
+    // Integer.MIN_VALUE is NA in R so it is not a valid integer value
+    return longVal > Integer.MIN_VALUE && longVal <= Integer.MAX_VALUE ? (int) longVal : null;
+  }
+
+  static Double toDouble(Object val) {
+    if (val instanceof Double || val instanceof Float || val instanceof Integer || val instanceof Long
+        || val instanceof Short || val instanceof Byte || val instanceof BigDecimal || val instanceof BigInteger) {
+      return ((Number) val).doubleValue();
+    }
+    if (val instanceof String && DECIMAL.matcher((String) val).matches()) {
+      return Double.parseDouble((String) val);
+    }
+    return null;
+  }
+
+  static Integer toEpochDay(Object val) {
+    LocalDate date = null;
+    if (val instanceof LocalDate) {
+      date = (LocalDate) val;
+    } else if (val instanceof java.sql.Date) {
+      date = ((java.sql.Date) val).toLocalDate();
+    } else if (val instanceof String && ISO_DATE.matcher((String) val).matches()) {
+      try {
+        date = LocalDate.parse((String) val);
+      } catch (DateTimeParseException e) {
+        return null;
+      }
+    }
+    if (date == null) {
+      return null;
+    }
+    long epochDay = date.toEpochDay();
+    return epochDay > Integer.MIN_VALUE && epochDay <= Integer.MAX_VALUE ? (int) epochDay : null;
+  }
+
+  @FunctionalInterface
+  private interface ChunkConverter {
+    boolean convert(int from, int to);
+  }
+}
@@ -0,0 +1,246 @@
+package se.alipsa.renjin.client.datautils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A column of Strings stored as UTF-8 bytes in one contiguous byte array with an offsets array pointing out where
+ * each value starts and a bit set flagging the NA (null) values. A String is only created when a value is read,
+ * comparisons ({@link #indexOf(Object, int)}, {@link #rowsStartingWith(String)}) are made on the bytes directly.
+ */
+final class Utf8StringColumn extends Column {
+
+  private final byte[] heap;
+  // offsets[i] is where value i starts and offsets[i + 1] where it ends
+  private final int[] offsets;
+  private final BitSet nulls;
+
+  /**
+   * @param heap the UTF-8 bytes of all values
+   * @param offsets where each value starts in the heap, with an extra last element where the last value ends
+   * @param nulls the rows that are NA or null if there are none
+   */
+  Utf8StringColumn(byte[] heap, int[] offsets, BitSet nulls) {
+    this.heap = heap;
+    this.offsets = offsets;
+    this.nulls = nulls;
+  }
+
+  /**
+   * @param values the Strings to store (as Objects so both String[] and Object[] can be passed)
+   * @return the column or null if the values cannot be stored in a string heap (strings with unpaired surrogates
+   * which have no UTF-8 representation, or more than 2GB of bytes)
+   */
+  static Utf8StringColumn create(Object[] values) {
+    int n = values.length;
+    long totalBytes = 0;
+    for (Object val : values) {
+      if (val != null) {
+        int length = utf8Length((String) val);
+        if (length < 0) {
+          return null;
+        }
+        totalBytes += length;
+      }
+    }
+    if (totalBytes > Integer.MAX_VALUE - 8) {
+      return null;
+    }
+    byte[] heap = new byte[(int) totalBytes];
+    int[] offsets = new int[n + 1];
+    BitSet nulls = null;
+    int pos = 0;
+    for (int i = 0; i < n; i++) {
+      offsets[i] = pos;
+      String val = (String) values[i];
+      if (val == null) {
+        nulls = nulls == null ? new BitSet() : nulls;
+        nulls.set(i);
+      } else {
+        pos = encode(val, heap, pos);
+      }
+    }
+    offsets[n] = pos;
+    return new Utf8StringColumn(heap, offsets, nulls);
+  }
+
+  @Override
+  int size() {
+    return offsets.length - 1;
+  }
+
+  @Override
+  Object get(int row) {
+    checkIndex(row);
+    if (nulls != null && nulls.get(row)) {
+      return null;
+    }
+    return new String(heap, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param row the row index
+   * @param utf8 the UTF-8 bytes of the value to compare with
+   * @return true if the value at the row is not NA and consists of exactly the bytes specified
+   */
+  boolean equalsAt(int row, byte[] utf8) {
+    int start = offsets[row];
+    int end = offsets[row + 1];
+    return end - start == utf8.length && !isNull(row)
+        && Arrays.equals(heap, start, end, utf8, 0, utf8.length);
+  }
+
+  /**
+   * @param row the row index
+   * @param utf8Prefix the UTF-8 bytes of the prefix
+   * @return true if the value at the row is not NA and starts with the bytes specified
+   */
+  boolean startsWithAt(int row, byte[] utf8Prefix) {
+    int start = offsets[row];
+    return offsets[row + 1] - start >= utf8Prefix.length && !isNull(row)
+        && Arrays.equals(heap, start, start + utf8Prefix.length, utf8Prefix, 0, utf8Prefix.length);
+  }
+
+  boolean isNull(int row) {
+    return nulls != null && nulls.get(row);
+  }
+
+  /**
+   * Gives direct access to the bytes e.g. to write them to an output without creating a String.
+   * The value of a row is heap()[start(row)] up to (but not including) heap()[end(row)].
+   */
+  byte[] heap() {
+    return heap;
+  }
+
+  int start(int row) {
+    return offsets[row];
+  }
+
+  int end(int row) {
+    return offsets[row + 1];
+  }
+
+  @Override
+  int indexOf(Object value, int fromRow, int toRow) {
+    if (!(value instanceof String)) {
+      return -1;
+    }
+    byte[] utf8 = toUtf8((String) value);
+    if (utf8 == null) {
+      return -1;
+    }
+    for (int i = Math.max(fromRow, 0); i < Math.min(toRow, size()); i++) {
+      if (equalsAt(i, utf8)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  int[] rowsStartingWith(String prefix, int fromRow, int toRow) {
+    byte[] utf8 = toUtf8(prefix);
+    if (utf8 == null) {
+      return new int[0];
+    }
+    int[] rows = new int[16];
+    int count = 0;
+    for (int i = fromRow; i < toRow; i++) {
+      if (startsWithAt(i, utf8)) {
+        if (count == rows.length) {
+          rows = Arrays.copyOf(rows, count * 2);
+        }
+        rows[count++] = i;
+      }
+    }
+    return Arrays.copyOf(rows, count);
+  }
+
+  @Override
+  ColumnEncoding getEncoding() {
+    return ColumnEncoding.STRING_HEAP;
+  }
+
+  @Override
+  long estimatedByteSize() {
+    return 48 + heap.length + offsets.length * 4L + (nulls == null ? 0 : nulls.size() / 8);
+  }
+
+  /**
+   * @return the String in UTF-8 or null if it contains unpaired surrogates, which no row of the column holds
+   * (String.getBytes would turn them into '?' and match a row with a '?' instead)
+   */
+  private static byte[] toUtf8(String s) {
+    int length = utf8Length(s);
+    if (length < 0) {
+      return null;
+    }
+    byte[] utf8 = new byte[length];
+    encode(s, utf8, 0);
+    return utf8;
+  }
+
+  /**
+   * @return the number of bytes needed to encode the String in UTF-8 or -1 if it contains unpaired surrogates
+   */
+  private static int utf8Length(String s) {
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        if (i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+          length += 4;
+          i++;
+        } else {
+          return -1;
+        }
+      } else if (Character.isLowSurrogate(c)) {
+        return -1;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Encode a String to UTF-8, an unpaired surrogate is written as the replacement character U+FFFD.
+   *
+   * @param s the String to encode
+   * @param dest the array to write to, must have room for the encoded bytes (at most 3 bytes per char)
+   * @param pos the position in dest to start writing at
+   * @return the position after the last byte written
+   */
+  static int encode(String s, byte[] dest, int pos) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        dest[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        dest[pos++] = (byte) (0xC0 | (c >> 6));
+        dest[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        dest[pos++] = (byte) (0xF0 | (cp >> 18));
+        dest[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        dest[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        dest[pos++] = (byte) (0x80 | (cp & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        dest[pos++] = (byte) 0xEF;
+        dest[pos++] = (byte) 0xBF;
+        dest[pos++] = (byte) 0xBD;
+      } else {
+        dest[pos++] = (byte) (0xE0 | (c >> 12));
+        dest[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        dest[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    return pos;
+  }
+}
@@ -4,6 +4,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.time.LocalDate;
 
 public class ValueConverter {
 
@@ -49,6 +50,10 @@ public class ValueConverter {
     if (val instanceof Double) {
       return (Double)val;
     }
+    if (val instanceof LocalDate) {
+      // the number of days since 1970-01-01, which is how R stores a Date
+      return (double) ((LocalDate) val).toEpochDay();
+    }
 
     try {
       return numberFormat.parse(String.valueOf(val)).doubleValue();
@@ -73,6 +78,9 @@ public class ValueConverter {
     if (val instanceof Long) {
       return (Long)val;
     }
+    if (val instanceof LocalDate) {
+      return ((LocalDate) val).toEpochDay();
+    }
     Double dVal = asDouble(val, numberFormat);
     return dVal == null ? null : dVal.longValue();
   }
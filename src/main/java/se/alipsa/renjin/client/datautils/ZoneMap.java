@@ -0,0 +1,226 @@
+package se.alipsa.renjin.client.datautils;
+
+/**
+ * The min, max and NA count of each chunk of {@value #CHUNK_SIZE} rows of a column, computed in a single pass over
+ * the column. Searches use it to skip the chunks that cannot contain a match.
+ */
+final class ZoneMap {
+
+  static final int CHUNK_SIZE = 4096;
+
+  private final int rowCount;
+  /** The class of all non NA values if they are Comparable, otherwise null and there is no min and max. */
+  private final Class<?> valueClass;
+  private final Object[] mins;
+  private final Object[] maxs;
+  private final int[] naCounts;
+
+  private ZoneMap(int rowCount, Class<?> valueClass, Object[] mins, Object[] maxs, int[] naCounts) {
+    this.rowCount = rowCount;
+    this.valueClass = valueClass;
+    this.mins = mins;
+    this.maxs = maxs;
+    this.naCounts = naCounts;
+  }
+
+  static ZoneMap of(Column column) {
+    int n = column.size();
+    int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    Object[] mins = new Object[chunks];
+    Object[] maxs = new Object[chunks];
+    int[] naCounts = new int[chunks];
+    if (column instanceof DoubleColumn) {
+      DoubleColumn col = (DoubleColumn) column;
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int nas = 0;
+        for (int i = chunk * CHUNK_SIZE; i < Math.min(n, (chunk + 1) * CHUNK_SIZE); i++) {
+          double val = col.getDouble(i);
+          if (col.isNull(i) || Double.isNaN(val)) {
+            nas++;
+          } else {
+            min = Math.min(min, val);
+            max = Math.max(max, val);
+          }
+        }
+        naCounts[chunk] = nas;
+        if (nas < chunkSize(n, chunk)) {
+          mins[chunk] = min;
+          maxs[chunk] = max;
+        }
+      }
+      return new ZoneMap(n, Double.class, mins, maxs, naCounts);
+    }
+    if (column instanceof IntColumn) {
+      IntColumn col = (IntColumn) column;
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int nas = 0;
+        for (int i = chunk * CHUNK_SIZE; i < Math.min(n, (chunk + 1) * CHUNK_SIZE); i++) {
+          if (col.isNull(i)) {
+            nas++;
+          } else {
+            min = Math.min(min, col.getInt(i));
+            max = Math.max(max, col.getInt(i));
+          }
+        }
+        naCounts[chunk] = nas;
+        if (nas < chunkSize(n, chunk)) {
+          mins[chunk] = min;
+          maxs[chunk] = max;
+        }
+      }
+      return new ZoneMap(n, Integer.class, mins, maxs, naCounts);
+    }
+    Class<?> valueClass = null;
+    boolean comparable = true;
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      Comparable<Object> min = null;
+      Comparable<Object> max = null;
+      int nas = 0;
+      for (int i = chunk * CHUNK_SIZE; i < Math.min(n, (chunk + 1) * CHUNK_SIZE); i++) {
+        Object val = column.get(i);
+        if (val == null || val instanceof Double && ((Double) val).isNaN()) {
+          nas++;
+          continue;
+        }
+        if (!comparable) {
+          continue;
+        }
+        if (valueClass == null) {
+          valueClass = val.getClass();
+          comparable = val instanceof Comparable;
+        } else if (valueClass != val.getClass()) {
+          comparable = false;
+        }
+        if (comparable) {
+          @SuppressWarnings("unchecked")
+          Comparable<Object> value = (Comparable<Object>) val;
+          if (min == null || value.compareTo(min) < 0) {
+            min = value;
+          }
+          if (max == null || value.compareTo(max) > 0) {
+            max = value;
+          }
+        }
+      }
+      naCounts[chunk] = nas;
+      mins[chunk] = min;
+      maxs[chunk] = max;
+    }
+    if (!comparable) {
+      return new ZoneMap(n, null, new Object[chunks], new Object[chunks], naCounts);
+    }
+    return new ZoneMap(n, valueClass, mins, maxs, naCounts);
+  }
+
+  private static int chunkSize(int rowCount, int chunk) {
+    return Math.min(rowCount, (chunk + 1) * CHUNK_SIZE) - chunk * CHUNK_SIZE;
+  }
+
+  int chunkCount() {
+    return naCounts.length;
+  }
+
+  int chunkStart(int chunk) {
+    return chunk * CHUNK_SIZE;
+  }
+
+  int chunkEnd(int chunk) {
+    return Math.min(rowCount, (chunk + 1) * CHUNK_SIZE);
+  }
+
+  /**
+   * @return the statistics of the chunk
+   */
+  ColumnStats chunkStats(int chunk) {
+    return new ColumnStats(chunkSize(rowCount, chunk), naCounts[chunk], mins[chunk], maxs[chunk]);
+  }
+
+  /**
+   * @return the statistics of the whole column
+   */
+  ColumnStats stats() {
+    int nas = 0;
+    Object min = null;
+    Object max = null;
+    for (int chunk = 0; chunk < chunkCount(); chunk++) {
+      nas += naCounts[chunk];
+      if (mins[chunk] != null && (min == null || compare(mins[chunk], min) < 0)) {
+        min = mins[chunk];
+      }
+      if (maxs[chunk] != null && (max == null || compare(maxs[chunk], max) > 0)) {
+        max = maxs[chunk];
+      }
+    }
+    return new ColumnStats(rowCount, nas, min, max);
+  }
+
+  /**
+   * @return false if no row of the chunk can be equal to the value
+   */
+  boolean mayContain(int chunk, Object value) {
+    if (!isBounded(value)) {
+      return true;
+    }
+    return mins[chunk] != null && compare(value, mins[chunk]) >= 0 && compare(value, maxs[chunk]) <= 0;
+  }
+
+  /**
+   * @param from the inclusive lower bound or null for none
+   * @param to the inclusive upper bound or null for none
+   * @return false if no row of the chunk can be within the range
+   */
+  boolean mayOverlap(int chunk, Object from, Object to) {
+    if ((from != null && !isBounded(from)) || (to != null && !isBounded(to))) {
+      return true;
+    }
+    if (mins[chunk] == null) {
+      return false;
+    }
+    return (from == null || compare(maxs[chunk], from) >= 0) && (to == null || compare(mins[chunk], to) <= 0);
+  }
+
+  /**
+   * @return true if every row of the chunk is within the range (so there is no need to check them)
+   */
+  boolean within(int chunk, Object from, Object to) {
+    if ((from != null && !isBounded(from)) || (to != null && !isBounded(to))) {
+      return false;
+    }
+    return naCounts[chunk] == 0 && mins[chunk] != null
+        && (from == null || compare(mins[chunk], from) >= 0) && (to == null || compare(maxs[chunk], to) <= 0);
+  }
+
+  /**
+   * @return false if no row of the chunk can start with the prefix
+   */
+  boolean mayStartWith(int chunk, String prefix) {
+    if (valueClass != String.class) {
+      return true;
+    }
+    if (mins[chunk] == null) {
+      return false;
+    }
+    // all strings starting with the prefix sort at or after the prefix and no string after max can match
+    // unless max itself (or anything before it) starts with the prefix
+    String min = (String) mins[chunk];
+    String max = (String) maxs[chunk];
+    return max.compareTo(prefix) >= 0 && (min.startsWith(prefix) || min.compareTo(prefix) < 0);
+  }
+
+  /**
+   * @return true if the value can be compared to the min and max of the chunks
+   */
+  private boolean isBounded(Object value) {
+    return valueClass != null && value != null && value.getClass() == valueClass
+        && !(value instanceof Double && ((Double) value).isNaN());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(Object a, Object b) {
+    return ((Comparable<Object>) a).compareTo(b);
+  }
+}
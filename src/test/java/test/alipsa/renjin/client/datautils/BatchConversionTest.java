@@ -0,0 +1,87 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.IntArrayVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.SEXP;
+import se.alipsa.renjin.client.datautils.ConversionMetrics;
+import se.alipsa.renjin.client.datautils.ConversionMonitor;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchConversionTest {
+
+  private static ListVector segment(int segment, int numRows) {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < numRows; i++) {
+      rows.add(Arrays.asList(i, segment * 0.5 + i, "segment " + segment, LocalDate.of(2021, 1, 1).plusDays(i),
+          i % 3 == 0));
+    }
+    return Table.withInferredTypes(Arrays.asList("id", "amount", "segment", "date", "flag"), rows).asDataframe();
+  }
+
+  @Test
+  public void testCreateTables() {
+    List<SEXP> frames = new ArrayList<>();
+    // one large data.frame among many small ones
+    frames.add(segment(0, 50_000));
+    for (int segment = 1; segment < 200; segment++) {
+      frames.add(segment(segment, segment % 10));
+    }
+    frames.add(new IntArrayVector(1, 2, 3));
+
+    List<Table> tables = Table.createTables(new ListVector(frames.toArray(new SEXP[0])));
+    assertEquals(frames.size(), tables.size(), "Number of tables");
+    for (int i = 0; i < frames.size(); i++) {
+      Table expected = Table.createTable(frames.get(i));
+      Table table = tables.get(i);
+      assertEquals(expected.getHeaderList(), table.getHeaderList(), "Headers of table " + i);
+      assertEquals(expected.getColumnTypes(), table.getColumnTypes(), "Types of table " + i);
+      assertEquals(expected, table, "Table " + i);
+    }
+    assertEquals(50_000, tables.get(0).getRowSize(), "Rows of the large table");
+    assertEquals("segment 7", tables.get(7).getValue(6, 2));
+    assertEquals(0, tables.get(10).getRowSize(), "Rows of an empty segment");
+    assertEquals(3, tables.get(200).getRowSize(), "Rows of the vector");
+  }
+
+  @Test
+  public void testColumnsMustHaveSameLength() {
+    List<SEXP> frames = new ArrayList<>();
+    frames.add(segment(1, 3));
+    frames.add(new ListVector(new IntArrayVector(1, 2, 3), new IntArrayVector(1, 2)));
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Table.createTables(frames));
+    assertEquals("Column 1 of data.frame 1 has 2 values but there are 3 rows", e.getMessage());
+  }
+
+  @Test
+  public void testReportedOnce() {
+    List<SEXP> frames = new ArrayList<>();
+    for (int segment = 0; segment < 50; segment++) {
+      frames.add(segment % 2 == 0 ? segment(segment, 100) : new IntArrayVector(1, 2, segment));
+    }
+    List<ConversionMetrics> metrics = Collections.synchronizedList(new ArrayList<>());
+    ConversionMonitor.setListener(metrics::add);
+    try {
+      Table.createTables(frames);
+    } finally {
+      ConversionMonitor.setListener(null);
+    }
+    assertEquals(1, metrics.size(), "Only the batch should be reported, not the work on the worker threads: "
+        + metrics);
+    assertEquals("Table.createTables", metrics.get(0).getOperation());
+    assertEquals(25 * 100 + 25 * 3, metrics.get(0).getRows(), "rows");
+  }
+
+  @Test
+  public void testCreateTablesEmpty() {
+    assertTrue(Table.createTables(new ArrayList<SEXP>()).isEmpty());
+  }
+}
@@ -0,0 +1,165 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.StringVector;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.RDataTransformer;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BeanMappingTest {
+
+  public enum Level { JUNIOR, SENIOR }
+
+  public static class Employee {
+    private int id;
+    private String name;
+    private double salary;
+    private LocalDate startDate;
+    private Boolean active;
+    private Level level;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public double getSalary() {
+      return salary;
+    }
+
+    public void setSalary(double salary) {
+      this.salary = salary;
+    }
+
+    public LocalDate getStartDate() {
+      return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+      this.startDate = startDate;
+    }
+
+    public Boolean getActive() {
+      return active;
+    }
+
+    public void setActive(Boolean active) {
+      this.active = active;
+    }
+
+    public Level getLevel() {
+      return level;
+    }
+
+    public void setLevel(Level level) {
+      this.level = level;
+    }
+  }
+
+  /** Mapped through the (private) fields since there are no accessors. */
+  static class Point {
+    private Integer x;
+    private long y;
+  }
+
+  @Test
+  public void testAsBeans() {
+    Table table = new Table(
+        Arrays.asList("id", "NAME", "salary", "startDate", "active", "level", "ignored"),
+        Arrays.<List<Object>>asList(
+            Arrays.asList(1, "Per", 1200.5, LocalDate.of(2020, 1, 2), true, "SENIOR", "x"),
+            Arrays.asList(null, "Anna", null, null, null, null, "y")
+        ),
+        Arrays.asList(DataType.INTEGER, DataType.STRING, DataType.DOUBLE, DataType.DATE, DataType.BOOLEAN,
+            DataType.STRING, DataType.STRING));
+    List<Employee> employees = table.asBeans(Employee.class);
+    assertEquals(2, employees.size());
+    Employee per = employees.get(0);
+    assertEquals(1, per.getId(), "id");
+    assertEquals("Per", per.getName(), "name matched case insensitive");
+    assertEquals(1200.5, per.getSalary(), "salary");
+    assertEquals(LocalDate.of(2020, 1, 2), per.getStartDate(), "startDate");
+    assertEquals(Boolean.TRUE, per.getActive(), "active");
+    assertEquals(Level.SENIOR, per.getLevel(), "level");
+
+    Employee anna = employees.get(1);
+    assertEquals(0, anna.getId(), "NA leaves a primitive at the default");
+    assertEquals(0.0, anna.getSalary(), "NA leaves a primitive at the default");
+    assertNull(anna.getStartDate(), "startDate");
+    assertNull(anna.getActive(), "active");
+  }
+
+  @Test
+  public void testFields() {
+    Table table = new Table(Arrays.asList("x", "y"),
+        Arrays.<List<Object>>asList(Arrays.asList(1, 2.0), Arrays.asList(null, 4.0)),
+        Arrays.asList(DataType.INTEGER, DataType.DOUBLE));
+    List<Point> points = table.asBeans(Point.class);
+    assertEquals(1, points.get(0).x);
+    assertEquals(2L, points.get(0).y);
+    assertNull(points.get(1).x);
+    assertEquals(4L, points.get(1).y);
+
+    ListVector df = RDataTransformer.fromBeans(points, Point.class);
+    assertEquals(Arrays.asList("x", "y"), RDataTransformer.toHeaderList(df));
+    assertTrue(df.getElementAsSEXP(0) instanceof IntVector, "Integer becomes an integer column");
+    assertTrue(df.getElementAsSEXP(1) instanceof DoubleVector, "long becomes a double column");
+    assertTrue(((IntVector) df.getElementAsSEXP(0)).isElementNA(1), "null becomes NA");
+  }
+
+  @Test
+  public void testFromBeans() {
+    Employee per = new Employee();
+    per.setId(1);
+    per.setName("Per");
+    per.setSalary(1200.5);
+    per.setStartDate(LocalDate.of(2020, 1, 2));
+    per.setActive(true);
+    per.setLevel(Level.JUNIOR);
+    Employee anna = new Employee();
+    anna.setId(2);
+
+    ListVector df = RDataTransformer.fromBeans(Arrays.asList(per, anna), Employee.class);
+    assertEquals(Arrays.asList("id", "name", "salary", "startDate", "active", "level"),
+        RDataTransformer.toHeaderList(df), "properties are in field declaration order");
+    assertEquals(2, df.getElementAsSEXP(0).length(), "rows");
+    IntVector id = (IntVector) df.getElementAsSEXP(0);
+    assertEquals(2, id.getElementAsInt(1), "id");
+    assertTrue(((StringVector) df.getElementAsSEXP(1)).isElementNA(1), "name");
+    DoubleVector salary = (DoubleVector) df.getElementAsSEXP(2);
+    assertEquals(1200.5, salary.getElementAsDouble(0), "salary");
+    DoubleVector startDate = (DoubleVector) df.getElementAsSEXP(3);
+    assertEquals(LocalDate.of(2020, 1, 2).toEpochDay(), startDate.getElementAsDouble(0), "startDate");
+    assertTrue(df.getElementAsSEXP(4) instanceof LogicalVector, "active");
+    assertEquals("JUNIOR", ((StringVector) df.getElementAsSEXP(5)).getElementAsString(0), "level");
+    assertTrue(startDate.isElementNA(1), "startDate");
+  }
+
+  @Test
+  public void testNoConstructor() {
+    Table table = new Table(Arrays.asList("a"), Arrays.<List<Object>>asList(Arrays.asList("b")),
+        Arrays.asList(DataType.STRING));
+    assertThrows(IllegalArgumentException.class, () -> table.asBeans(Comparable.class));
+  }
+}
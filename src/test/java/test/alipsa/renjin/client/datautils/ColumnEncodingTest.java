@@ -0,0 +1,131 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.IntArrayVector;
+import org.renjin.sexp.LogicalArrayVector;
+import org.renjin.sexp.StringArrayVector;
+import se.alipsa.renjin.client.datautils.ColumnEncoding;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnEncodingTest {
+
+  private static final String[] STATUSES = {"NEW", "OPEN", "CLOSED"};
+
+  @Test
+  public void testEncodingsFromVectors() {
+    int n = 5000;
+    String[] status = new String[n];
+    int[] sorted = new int[n];
+    double[] measurements = new double[n];
+    boolean[] flags = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      status[i] = i % 97 == 0 ? null : STATUSES[i % STATUSES.length];
+      sorted[i] = i / 100;
+      measurements[i] = i * 0.37;
+      flags[i] = i % 3 == 0;
+    }
+    Table table = new Table(
+        Arrays.asList("status", "group", "measurement", "flag"),
+        new StringArrayVector(status),
+        new IntArrayVector(sorted),
+        new DoubleArrayVector(measurements),
+        new LogicalArrayVector(flags)
+    );
+    assertEquals(ColumnEncoding.DICTIONARY, table.getColumnEncoding(0));
+    assertEquals(ColumnEncoding.RUN_LENGTH, table.getColumnEncoding(1));
+    assertEquals(ColumnEncoding.PLAIN, table.getColumnEncoding(2));
+    assertEquals(ColumnEncoding.BIT_PACKED, table.getColumnEncoding(3));
+
+    for (int i = 0; i < n; i++) {
+      assertEquals(status[i], table.getValue(i, 0), "status at row " + i);
+      assertEquals(sorted[i], table.getValueAsInteger(i, 1), "group at row " + i);
+      assertEquals(measurements[i], table.getValueAsDouble(i, 2), "measurement at row " + i);
+      assertEquals(flags[i], table.getValue(i, 3), "flag at row " + i);
+    }
+    // random access after sequential access
+    assertEquals(37, table.getValue(3789, 1));
+    assertEquals(0, table.getValue(5, 1));
+    assertEquals(49, table.getValue(n - 1, 1));
+
+    assertEquals(Arrays.asList("OPEN", 0, 0.37, false), table.getRow(1));
+    assertEquals(Arrays.asList("CLOSED", 0, 0.74, false), table.getRowForName("CLOSED"));
+    assertNull(table.getRowForName("REOPENED"));
+  }
+
+  @Test
+  public void testEncodingsFromRows() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      rows.add(Arrays.asList(STATUSES[i % STATUSES.length], i < 500 ? 1 : 2, i % 2 == 0 ? Boolean.TRUE : null, "id" + i));
+    }
+    Table table = new Table(Arrays.asList("status", "half", "even", "id"), rows);
+    assertEquals(ColumnEncoding.DICTIONARY, table.getColumnEncoding(0));
+    assertEquals(ColumnEncoding.RUN_LENGTH, table.getColumnEncoding(1));
+    assertEquals(ColumnEncoding.BIT_PACKED, table.getColumnEncoding(2));
+    assertEquals(ColumnEncoding.STRING_HEAP, table.getColumnEncoding(3));
+    assertEquals(rows, table.getRowList());
+    assertEquals(2, table.getValue(500, 1));
+    assertNull(table.getValue(999, 2));
+    assertEquals(Arrays.asList("id3", "id4"), table.getColumn(3).subList(3, 5));
+  }
+
+  @Test
+  public void testStringHeap() {
+    Table table = new Table(
+        Arrays.asList("address"),
+        new StringArrayVector("Storgatan 1", null, "Stora torget 3", "Åsvägen 12", "Baker street 221b", "Smørrebrød \uD83D\uDE00")
+    );
+    assertEquals(ColumnEncoding.STRING_HEAP, table.getColumnEncoding(0));
+    assertEquals("Storgatan 1", table.getValue(0, 0));
+    assertNull(table.getValue(1, 0));
+    assertEquals("Åsvägen 12", table.getValue(3, 0));
+    assertEquals("Smørrebrød \uD83D\uDE00", table.getValue(5, 0));
+
+    assertArrayEquals(new int[]{0, 2}, table.getRowIndexesForPrefix("Stor"));
+    assertArrayEquals(new int[]{3}, table.getRowIndexesForPrefix("Åsv"));
+    assertArrayEquals(new int[0], table.getRowIndexesForPrefix("Storgatan 12"));
+    assertEquals(Arrays.asList("Baker street 221b"), table.getRowForName("Baker street 221b"));
+    assertNull(table.getRowForName("Baker street"));
+  }
+
+  @Test
+  public void testUnpairedSurrogateSearch() {
+    Table table = new Table(Arrays.asList("text"), new StringArrayVector("a?", "b?c", "z"));
+    assertEquals(ColumnEncoding.STRING_HEAP, table.getColumnEncoding(0));
+    assertEquals(Arrays.asList("a?"), table.getRowForName("a?"));
+    assertNull(table.getRowForName("a\uD800"), "An unpaired surrogate is not a ?");
+    assertArrayEquals(new int[]{1}, table.getRowIndexesForPrefix("b?"));
+    assertArrayEquals(new int[0], table.getRowIndexesForPrefix("b\uDC00"), "An unpaired surrogate is not a ?");
+  }
+
+  @Test
+  public void testDictionaryPrefixSearch() {
+    String[] status = new String[300];
+    for (int i = 0; i < status.length; i++) {
+      status[i] = STATUSES[i % STATUSES.length];
+    }
+    Table table = new Table(Arrays.asList("status"), new StringArrayVector(status));
+    assertEquals(ColumnEncoding.DICTIONARY, table.getColumnEncoding(0));
+    int[] rows = table.getRowIndexesForPrefix("CL");
+    assertEquals(100, rows.length);
+    assertEquals(2, rows[0]);
+    assertEquals(299, rows[99]);
+  }
+
+  @Test
+  public void testRowsMustMatchHeader() {
+    List<String> headers = Arrays.asList("id", "name");
+    List<List<Object>> longRow = Arrays.asList(Arrays.asList(1, "a"), Arrays.asList(2, "b", "extra"));
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new Table(headers, longRow));
+    assertEquals("Row 1 has 3 values but there are 2 columns", e.getMessage());
+    List<List<Object>> shortRow = Arrays.asList(Arrays.asList(1, "a"), Arrays.asList(2));
+    assertThrows(IllegalArgumentException.class, () -> new Table(headers, shortRow), "Short row");
+  }
+}
@@ -0,0 +1,112 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static se.alipsa.renjin.client.datautils.ColumnExpression.col;
+import static se.alipsa.renjin.client.datautils.ColumnExpression.lit;
+import static se.alipsa.renjin.client.datautils.ColumnExpression.na;
+
+public class ColumnExpressionTest {
+
+  private Table orders() {
+    return new Table(Arrays.asList("id", "revenue", "cost", "ordered", "delivered", "paid"),
+        Arrays.<List<Object>>asList(
+            Arrays.asList(1, 100.0, 80.0, LocalDate.of(2021, 1, 1), LocalDate.of(2021, 1, 11), true),
+            Arrays.asList(2, 50.0, 0.0, LocalDate.of(2021, 2, 1), LocalDate.of(2021, 4, 1), false),
+            Arrays.asList(3, null, 10.0, LocalDate.of(2021, 3, 1), null, null)
+        ),
+        Arrays.asList(DataType.INTEGER, DataType.DOUBLE, DataType.DOUBLE, DataType.DATE, DataType.DATE,
+            DataType.BOOLEAN));
+  }
+
+  @Test
+  public void testArithmetic() {
+    Table table = orders().withColumn("margin", col("revenue").minus(col("cost")).divide(col("revenue")));
+    assertEquals(7, table.getHeaderSize());
+    assertEquals(DataType.DOUBLE, table.getColumnType(6));
+    assertEquals(0.2, (Double) table.getValue(0, 6), 1e-12, "margin");
+    assertEquals(1.0, table.getValue(1, 6), "margin");
+    assertNull(table.getValue(2, 6), "NA propagates");
+    assertEquals(orders().withColumn("margin", DataType.DOUBLE, table.getColumn(6)), table,
+        "equal to the same values added as a list");
+
+    Table ids = orders().withColumn("id", col("id").times(lit(10)).plus(lit(1)));
+    assertEquals(6, ids.getHeaderSize(), "the column is replaced");
+    assertEquals(DataType.INTEGER, ids.getColumnType(0));
+    assertEquals(Arrays.asList(11, 21, 31), ids.getColumn(0));
+    assertEquals(DataType.DOUBLE, orders().withColumn("half", col("id").divide(lit(2))).getColumnType(6),
+        "integer division gives a double");
+
+    Table overflow = orders().withColumn("big", col("id").times(lit(Integer.MAX_VALUE)));
+    assertEquals(Integer.MAX_VALUE, overflow.getValue(0, 6));
+    assertNull(overflow.getValue(1, 6), "integer overflow is NA");
+    assertEquals(orders().withColumn("big", DataType.INTEGER, overflow.getColumn(6)), overflow,
+        "equal to the same values added as a list");
+  }
+
+  @Test
+  public void testDates() {
+    Table table = orders()
+        .withColumn("days", col("delivered").minus(col("ordered")))
+        .withColumn("due", col("ordered").plus(lit(30)))
+        .withColumn("late", col("delivered").gt(col("due")));
+    assertEquals(DataType.DOUBLE, table.getColumnType(6));
+    assertEquals(Arrays.asList(10.0, 59.0, null), table.getColumn(6));
+    assertEquals(DataType.DATE, table.getColumnType(7));
+    assertEquals(LocalDate.of(2021, 1, 31), table.getValue(0, 7));
+    assertEquals(Arrays.asList(false, true, null), table.getColumn(8));
+    assertThrows(IllegalArgumentException.class, () -> orders().withColumn("x", col("ordered").times(lit(2))));
+    assertThrows(IllegalArgumentException.class, () -> orders().withColumn("x", col("ordered").lt(lit(2))));
+  }
+
+  @Test
+  public void testLogic() {
+    Table table = orders()
+        .withColumn("flag", col("paid").and(col("revenue").gt(lit(60.0))))
+        .withColumn("either", col("paid").or(col("cost").eq(lit(10))))
+        .withColumn("unpaid", col("paid").not())
+        .withColumn("missing", col("revenue").isNA());
+    assertEquals(Arrays.asList(true, false, null), table.getColumn(6));
+    assertEquals(Arrays.asList(true, false, true), table.getColumn(7), "NA or TRUE is TRUE");
+    assertEquals(Arrays.asList(false, true, null), table.getColumn(8));
+    assertEquals(Arrays.asList(false, false, true), table.getColumn(9));
+  }
+
+  @Test
+  public void testIfElse() {
+    Table table = orders()
+        .withColumn("bonus", col("paid").ifElse(col("revenue").times(lit(0.1)), lit(0)))
+        .withColumn("capped", col("cost").gt(lit(50.0)).ifElse(na(DataType.DOUBLE), col("cost")));
+    assertEquals(DataType.DOUBLE, table.getColumnType(6));
+    assertEquals(Arrays.asList(10.0, 0.0, null), table.getColumn(6));
+    assertEquals(Arrays.asList(null, 0.0, 10.0), table.getColumn(7));
+  }
+
+  @Test
+  public void testLargeTable() {
+    int numRows = 50_000;
+    List<List<Object>> rows = new ArrayList<>(numRows);
+    for (int i = 0; i < numRows; i++) {
+      rows.add(Arrays.asList(i, i % 7 == 0 ? null : i * 0.5));
+    }
+    Table table = new Table(Arrays.asList("a", "b"), rows, Arrays.asList(DataType.INTEGER, DataType.DOUBLE))
+        .withColumn("c", col("a").plus(col("b")));
+    for (int i = 0; i < numRows; i++) {
+      Object expected = i % 7 == 0 ? null : i * 1.5;
+      assertEquals(expected, table.getValue(i, 2), "row " + i);
+    }
+  }
+
+  @Test
+  public void testUnknownColumn() {
+    assertThrows(IllegalArgumentException.class, () -> orders().withColumn("x", col("nope").plus(lit(1))));
+  }
+}
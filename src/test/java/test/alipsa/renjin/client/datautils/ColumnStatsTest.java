@@ -0,0 +1,92 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.ColumnStats;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnStatsTest {
+
+  private static final int NUM_ROWS = 20_000;
+
+  private static Table createTable() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < NUM_ROWS; i++) {
+      rows.add(Arrays.asList(
+          i,
+          i % 100 == 0 ? null : (i % 1000) * 0.25,
+          LocalDate.of(2000, 1, 1).plusDays(i),
+          String.format("key%06d", i),
+          i % 2 == 0 ? "even" : 3));
+    }
+    return Table.withInferredTypes(Arrays.asList("id", "amount", "date", "key", "mixed"), rows);
+  }
+
+  private static int[] bruteForce(Table table, int column, Comparable<Object> from, Comparable<Object> to) {
+    List<Integer> rows = new ArrayList<>();
+    for (int i = 0; i < table.getRowSize(); i++) {
+      Object val = table.getValue(i, column);
+      if (val != null && from.compareTo(val) <= 0 && to.compareTo(val) >= 0) {
+        rows.add(i);
+      }
+    }
+    return rows.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  @Test
+  public void testColumnStats() {
+    Table table = createTable();
+    ColumnStats id = table.getColumnStats(0);
+    assertEquals(NUM_ROWS, id.getRowCount());
+    assertEquals(0, id.getNaCount());
+    assertEquals(0, id.getMin());
+    assertEquals(NUM_ROWS - 1, id.getMax());
+
+    ColumnStats amount = table.getColumnStats(1);
+    assertEquals(NUM_ROWS / 100, amount.getNaCount(), "NA count");
+    assertEquals(0.25, amount.getMin());
+    assertEquals(999 * 0.25, amount.getMax());
+
+    assertEquals(LocalDate.of(2000, 1, 1), table.getColumnStats(2).getMin());
+    assertEquals("key019999", table.getColumnStats(3).getMax());
+    assertNull(table.getColumnStats(4).getMin(), "Mixed types cannot be compared");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRangeSearch() {
+    Table table = createTable();
+    assertArrayEquals(bruteForce(table, 0, (Comparable) 4000, (Comparable) 12_500),
+        table.getRowIndexesInRange(0, 4000, 12_500));
+    assertEquals(NUM_ROWS, table.getRowIndexesInRange(0, null, null).length, "Unbounded");
+    assertEquals(0, table.getRowIndexesInRange(0, 30_000, null).length);
+    assertArrayEquals(bruteForce(table, 1, (Comparable) 10.0, (Comparable) 20.0),
+        table.getRowIndexesInRange(1, 10.0, 20.0));
+    LocalDate from = LocalDate.of(2010, 1, 1);
+    LocalDate to = LocalDate.of(2010, 3, 31);
+    int[] rows = table.getRowIndexesInRange(2, from, to);
+    assertEquals(90, rows.length, "Days in Q1 2010");
+    assertEquals(from, table.getValue(rows[0], 2));
+    assertEquals(0, table.getRowIndexesInRange(1, 10, 20).length, "Integer bounds do not match doubles");
+  }
+
+  @Test
+  public void testPrunedSearches() {
+    Table table = createTable();
+    assertEquals(17_654, table.getRowForName("key017654", 3).get(0));
+    assertNull(table.getRowForName("nokey", 3));
+    assertEquals(Arrays.asList(1, 0.25, LocalDate.of(2000, 1, 2), "key000001", 3), table.getRowForName("key000001", 3));
+
+    int[] rows = table.getRowIndexesForPrefix("key0099", 3);
+    assertEquals(100, rows.length);
+    assertEquals(9900, rows[0]);
+    assertEquals(9999, rows[99]);
+    assertEquals(NUM_ROWS / 2, table.getRowIndexesForPrefix("ev", 4).length);
+  }
+}
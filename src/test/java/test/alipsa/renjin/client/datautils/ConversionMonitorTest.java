@@ -0,0 +1,65 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.IntArrayVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.StringArrayVector;
+import se.alipsa.renjin.client.datautils.ConversionMetrics;
+import se.alipsa.renjin.client.datautils.ConversionMonitor;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversionMonitorTest {
+
+  @Test
+  public void testListenerIsNotified() {
+    List<ConversionMetrics> metrics = new ArrayList<>();
+    ConversionMonitor.setListener(metrics::add);
+    try {
+      Table table = new Table(
+          Arrays.asList("id", "name"),
+          new IntArrayVector(1, 2, 3),
+          new StringArrayVector("Adam", "Bertil", "Cesar")
+      );
+      table.asDataframe();
+    } finally {
+      ConversionMonitor.setListener(null);
+    }
+    ConversionMetrics created = metrics.stream()
+        .filter(m -> "Table(AbstractAtomicVector...)".equals(m.getOperation()))
+        .findFirst().orElseThrow(() -> new AssertionError("No metrics for the table creation in " + metrics));
+    assertEquals(3, created.getRows(), "rows");
+    assertEquals(2, created.getColumns(), "columns");
+    assertTrue(created.getElapsedNanos() > 0, "elapsed time");
+    assertTrue(metrics.stream().anyMatch(m -> "RDataTransformer.toDataframe".equals(m.getOperation())),
+        "No metrics for toDataframe in " + metrics);
+
+    int reported = metrics.size();
+    Table.createTable(new IntArrayVector(1, 2));
+    assertEquals(reported, metrics.size(), "Listener should no longer be notified");
+  }
+
+  @Test
+  public void testNestedConversionReportedOnce() {
+    ListVector df = new Table(
+        Arrays.asList("id", "name"),
+        new IntArrayVector(1, 2, 3),
+        new StringArrayVector("Adam", "Bertil", "Cesar")
+    ).asDataframe();
+    List<ConversionMetrics> metrics = new ArrayList<>();
+    ConversionMonitor.setListener(metrics::add);
+    try {
+      Table.createTable(df);
+    } finally {
+      ConversionMonitor.setListener(null);
+    }
+    assertEquals(1, metrics.size(), "Number of events in " + metrics);
+    assertEquals("Table.createTable", metrics.get(0).getOperation());
+    assertEquals(3, metrics.get(0).getRows(), "rows");
+  }
+}
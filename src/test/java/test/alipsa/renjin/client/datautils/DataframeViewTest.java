@@ -0,0 +1,57 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.StringVector;
+import org.renjin.sexp.Vector;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataframeViewTest {
+
+  @Test
+  public void testViewEqualsCopy() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      rows.add(Arrays.asList(
+          i % 50 == 0 ? null : i,
+          i / 100 * 1.5,
+          i % 3 == 0 ? null : i % 2 == 0,
+          i % 7 == 0 ? null : LocalDate.of(2020, 1, 1).plusDays(i),
+          "name " + i % 4,
+          i % 2 == 0 ? "mixed" : i));
+    }
+    Table table = Table.withInferredTypes(Arrays.asList("id", "amount", "valid", "date", "name", "other"), rows);
+    ListVector copy = table.asDataframe();
+    ListVector view = table.asDataframeView();
+
+    assertEquals(copy.length(), view.length(), "Number of columns");
+    assertEquals(copy.getAttributes().getNames().length(), view.getAttributes().getNames().length());
+    for (int col = 0; col < copy.length(); col++) {
+      Vector expected = (Vector) copy.get(col);
+      Vector actual = (Vector) view.get(col);
+      assertEquals(expected.getVectorType(), actual.getVectorType(), "Type of column " + col);
+      assertEquals(expected.length(), actual.length(), "Length of column " + col);
+      for (int row = 0; row < expected.length(); row++) {
+        assertEquals(expected.isElementNA(row), actual.isElementNA(row), "NA at " + row + ", " + col);
+        assertEquals(expected.getElementAsString(row), actual.getElementAsString(row), "Value at " + row + ", " + col);
+      }
+    }
+    assertTrue(view.get(0) instanceof IntVector, "id should be an int vector");
+    assertTrue(view.get(2) instanceof LogicalVector, "valid should be a logical vector");
+    assertTrue(view.get(3) instanceof DoubleVector, "date should be a double vector");
+    assertTrue(view.get(4) instanceof StringVector, "name should be a character vector");
+    assertEquals("Date", view.get(3).getAttributes().getClassVector().getElementAsString(0));
+    assertTrue(((Vector) view.get(0)).isConstantAccessTime(), "A plain int column has constant access time");
+    assertFalse(((Vector) view.get(1)).isConstantAccessTime(), "A run length encoded column is searched");
+  }
+}
@@ -0,0 +1,138 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alipsa.renjin.client.datautils.DataTransformationRuntimeException;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.DelimitedTextReader;
+import se.alipsa.renjin.client.datautils.DelimitedTextWriter;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DelimitedTextTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testReadQuotedValues() throws IOException {
+    Path file = tempDir.resolve("quoted.csv");
+    Files.write(file, ("name,comment,amount\r\n"
+        + "Adam,\"Hello, world\",1.5\r\n"
+        + "\"Bertil\",\"Say \"\"hi\"\"\",NA\r\n"
+        + "Cesar,,-2\r\n"
+        + "Åsa,\"NA\"\r\n").getBytes(StandardCharsets.UTF_8));
+
+    Table table = DelimitedTextReader.csv().read(file);
+    assertEquals(Arrays.asList("name", "comment", "amount"), table.getHeaderList());
+    assertEquals(Arrays.asList(DataType.STRING, DataType.STRING, DataType.DOUBLE), table.getColumnTypes());
+    assertEquals(4, table.getRowSize(), "Number of rows");
+    assertEquals("Hello, world", table.getValue(0, 1));
+    assertEquals("Say \"hi\"", table.getValue(1, 1));
+    assertEquals("", table.getValue(2, 1), "An empty string is not NA");
+    assertEquals("NA", table.getValue(3, 1), "A quoted NA is a string");
+    assertEquals("Åsa", table.getValue(3, 0));
+    assertNull(table.getValue(1, 2));
+    assertEquals(-2.0, table.getValue(2, 2));
+    assertNull(table.getValue(3, 2), "Missing values at the end of a line are NA");
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList(1, 1.25, true, LocalDate.of(2021, 3, 14), "Adam, the first"));
+    rows.add(Arrays.asList(null, 3.0, false, null, "NA"));
+    rows.add(Arrays.asList(-3, null, null, LocalDate.of(1969, 12, 31), null));
+    Table table = Table.withInferredTypes(Arrays.asList("id", "amount", "valid", "date", "name"), rows);
+
+    Path file = tempDir.resolve("table.tsv");
+    DelimitedTextWriter.tsv().write(table, file);
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    assertEquals("id\tamount\tvalid\tdate\tname", lines.get(0));
+    assertEquals("NA\t3\tFALSE\tNA\t\"NA\"", lines.get(2));
+
+    Table read = DelimitedTextReader.tsv().read(file);
+    assertEquals(table.getColumnTypes(), read.getColumnTypes());
+    for (int row = 0; row < table.getRowSize(); row++) {
+      assertEquals(table.getRow(row), read.getRow(row), "Row " + row);
+    }
+  }
+
+  @Test
+  public void testParallelSegmentsAndWidening() throws IOException {
+    Path file = tempDir.resolve("large.csv");
+    int numRows = 300_000;
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write("id,value,category\n");
+      for (int i = 0; i < numRows; i++) {
+        String value = i == numRows - 1 ? "0.5" : String.valueOf(i);
+        String category = i == numRows - 2 ? "unknown" : String.valueOf(i % 3);
+        writer.write(i + "," + value + "," + category + "\n");
+      }
+    }
+    Table table = DelimitedTextReader.csv().parallelism(4).read(file);
+    assertEquals(numRows, table.getRowSize(), "Number of rows");
+    assertEquals(Arrays.asList(DataType.INTEGER, DataType.DOUBLE, DataType.STRING), table.getColumnTypes());
+    for (int row : new int[]{0, 1, 123_456, 250_000, numRows - 3}) {
+      assertEquals(row, table.getValue(row, 0));
+      assertEquals((double) row, table.getValue(row, 1));
+      assertEquals(String.valueOf(row % 3), table.getValue(row, 2));
+    }
+    assertEquals(0.5, table.getValue(numRows - 1, 1));
+    assertEquals("unknown", table.getValue(numRows - 2, 2));
+
+    Path copy = tempDir.resolve("copy.csv");
+    DelimitedTextWriter.csv().blockSize(10_000).write(table, copy);
+    assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(copy), "Written file should equal the original");
+  }
+
+  @Test
+  public void testNoHeader() throws IOException {
+    Path file = tempDir.resolve("noheader.tsv");
+    Files.write(file, "1\tTRUE\n2\tfalse\n".getBytes(StandardCharsets.UTF_8));
+    Table table = DelimitedTextReader.tsv().header(false).read(file);
+    assertEquals(Arrays.asList("V1", "V2"), table.getHeaderList());
+    assertEquals(Arrays.asList(DataType.INTEGER, DataType.BOOLEAN), table.getColumnTypes());
+    assertEquals(Boolean.FALSE, table.getValue(1, 1));
+  }
+
+  @Test
+  public void testGivenTypesAreNotWidened() throws IOException {
+    Path file = tempDir.resolve("typed.csv");
+    Files.write(file, "id,name\n1,a\n2,b\n3.5,c\nx,d\n".getBytes(StandardCharsets.UTF_8));
+    DelimitedTextReader reader = DelimitedTextReader.csv().columnTypes(Arrays.asList(DataType.INTEGER,
+        DataType.STRING));
+    DataTransformationRuntimeException e = assertThrows(DataTransformationRuntimeException.class,
+        () -> reader.read(file));
+    assertEquals("The value 3.5 in row 2 of the column id is not a valid INTEGER", e.getMessage());
+
+    Table inferred = DelimitedTextReader.csv().read(file);
+    assertEquals(DataType.STRING, inferred.getColumnType(0), "Inferred types are widened");
+  }
+
+  @Test
+  public void testUnpairedSurrogates() throws IOException {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList("high \uD83D alone"));
+    rows.add(Arrays.asList("low \uDE00 alone"));
+    rows.add(Arrays.asList("at the end \uD83D"));
+    rows.add(Arrays.asList("pair \uD83D\uDE00"));
+    Table table = new Table(Arrays.asList("text"), rows, Arrays.asList(DataType.STRING));
+
+    Path file = tempDir.resolve("surrogates.csv");
+    DelimitedTextWriter.csv().write(table, file);
+    assertEquals(Arrays.asList("text", "high \uFFFD alone", "low \uFFFD alone", "at the end \uFFFD",
+        "pair \uD83D\uDE00"), Files.readAllLines(file, StandardCharsets.UTF_8));
+  }
+}
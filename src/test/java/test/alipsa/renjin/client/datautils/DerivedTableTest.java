@@ -0,0 +1,134 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.Vector;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.Table;
+import se.alipsa.renjin.client.datautils.TableCache;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DerivedTableTest {
+
+  private static Table createTable(int numRows, int offset) {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = offset; i < offset + numRows; i++) {
+      rows.add(Arrays.asList(
+          i % 50 == 0 ? null : i,
+          i * 1.5,
+          i % 3 == 0 ? null : i % 2 == 0,
+          LocalDate.of(2020, 1, 1).plusDays(i),
+          "name " + i % 4));
+    }
+    return Table.withInferredTypes(Arrays.asList("id", "amount", "valid", "date", "name"), rows);
+  }
+
+  @Test
+  public void testVectorsAreCached() {
+    Table table = createTable(100, 0);
+    ListVector df = table.asDataframe();
+    assertSame(df.get(1), table.asDataframe().get(1), "The vector of a column should be built once");
+    assertNotSame(df.get(1), table.asDataframe(true).get(1), "strings only is not cached");
+  }
+
+  @Test
+  public void testWithColumn() {
+    Table table = createTable(100, 0);
+    ListVector df = table.asDataframe();
+    List<Object> scores = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      scores.add(i % 10 == 0 ? null : i / 2.0);
+    }
+    Table added = table.withColumn("score", DataType.DOUBLE, scores);
+    assertEquals(6, added.getHeaderSize(), "Number of columns after adding");
+    assertEquals(5, table.getHeaderSize(), "The original table is unchanged");
+    ListVector addedDf = added.asDataframe();
+    for (int col = 0; col < 5; col++) {
+      assertSame(df.get(col), addedDf.get(col), "Column " + col + " should be reused");
+    }
+    Vector score = (Vector) addedDf.get(5);
+    assertTrue(score.isElementNA(0));
+    assertEquals(2.5, score.getElementAsDouble(5));
+
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      names.add("n" + i);
+    }
+    Table replaced = added.withColumn("name", DataType.STRING, names);
+    assertEquals(6, replaced.getHeaderSize(), "Number of columns after replacing");
+    ListVector replacedDf = replaced.asDataframe();
+    assertSame(addedDf.get(5), replacedDf.get(5), "The added column should be reused");
+    assertEquals("n42", ((Vector) replacedDf.get(4)).getElementAsString(42));
+    assertEquals("name 2", ((Vector) addedDf.get(4)).getElementAsString(42), "The original column is unchanged");
+
+    assertThrows(IllegalArgumentException.class, () -> table.withColumn("short", DataType.STRING, names.subList(0, 5)));
+  }
+
+  @Test
+  public void testWithRowsAppended() {
+    Table head = createTable(300, 0);
+    head.asDataframe();
+    Table tail = createTable(120, 300);
+    List<List<Object>> tailRows = new ArrayList<>();
+    for (int i = 0; i < tail.getRowSize(); i++) {
+      tailRows.add(tail.getRow(i));
+    }
+    Table appended = head.withRowsAppended(tailRows);
+    assertEquals(420, appended.getRowSize(), "Number of rows");
+    assertEquals(300, head.getRowSize(), "The original table is unchanged");
+    assertEquals(tail.getRow(7), appended.getRow(307));
+
+    ListVector actual = appended.asDataframe();
+    ListVector expected = createTable(420, 0).asDataframe();
+    for (int col = 0; col < expected.length(); col++) {
+      Vector exp = (Vector) expected.get(col);
+      Vector act = (Vector) actual.get(col);
+      assertEquals(exp.getVectorType(), act.getVectorType(), "Type of column " + col);
+      assertEquals(exp.length(), act.length(), "Length of column " + col);
+      for (int row = 0; row < exp.length(); row++) {
+        assertEquals(exp.isElementNA(row), act.isElementNA(row), "NA at " + row + ", " + col);
+        assertEquals(exp.getElementAsString(row), act.getElementAsString(row), "Value at " + row + ", " + col);
+      }
+    }
+    assertEquals("Date", ((Vector) actual.get(3)).getAttributes().getClassVector().getElementAsString(0));
+
+    Table twice = appended.withRowsAppended(tailRows);
+    assertEquals(540, twice.getRowSize(), "Number of rows after appending twice");
+    assertEquals(tail.getValue(119, 4), ((Vector) twice.asDataframe().get(4)).getElementAsString(539));
+  }
+
+  @Test
+  public void testAppendedRowsMustMatchHeader() {
+    Table table = createTable(10, 0);
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList(10, 15.0, true, LocalDate.of(2020, 1, 11), "name 2"));
+    rows.add(Arrays.asList(11, 16.5, false, LocalDate.of(2020, 1, 12)));
+    assertThrows(IllegalArgumentException.class, () -> table.withRowsAppended(rows));
+    rows.set(1, Arrays.asList(11, 16.5, false, LocalDate.of(2020, 1, 12), "name 3", "extra"));
+    assertThrows(IllegalArgumentException.class, () -> table.withRowsAppended(rows));
+  }
+
+  @Test
+  public void testCachedVectorsAreWeighed() {
+    Table table = createTable(1000, 0);
+    ListVector df = table.asDataframe();
+    TableCache cache = TableCache.withMemoryBudget(100_000_000L);
+    cache.put(df, table);
+    long weight = cache.getWeight();
+    Table derived = table.withRowsAppended(Arrays.asList(
+        Arrays.asList(1000, 1500.0, true, LocalDate.of(2022, 9, 27), "name 0")));
+    cache.put(df, derived);
+    long unbuilt = cache.getWeight();
+    derived.asDataframe();
+    assertSame(derived, cache.get(df));
+    assertTrue(cache.getWeight() > unbuilt, "The built vectors should add to the weight, "
+        + unbuilt + " before and " + cache.getWeight() + " after");
+    assertTrue(weight > 1000 * 8, "The vectors of the cached table should be weighed, was " + weight);
+  }
+}
@@ -0,0 +1,161 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.JdbcWriteOptions;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcWriteTest {
+
+  private static Connection connect(String db) {
+    try {
+      return DriverManager.getConnection("jdbc:h2:mem:" + db + ";DB_CLOSE_DELAY=-1");
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Test
+  public void testWriteAndReadBack() throws SQLException {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList(1, 1.5, true, LocalDate.of(2021, 3, 14), "Adam"));
+    rows.add(Arrays.asList(2, null, false, null, null));
+    rows.add(Arrays.asList(null, -3.25, null, LocalDate.of(2022, 1, 1), "Cesar"));
+    Table table = Table.withInferredTypes(Arrays.asList("ID", "AMOUNT", "VALID", "BORN", "NAME"), rows);
+
+    try (Connection con = connect("writeAndReadBack"); Statement stm = con.createStatement()) {
+      stm.execute("create table result (id int, amount double precision, valid boolean, born date, name varchar(20))");
+      assertEquals(3, table.writeTo(con, "result", new JdbcWriteOptions().batchSize(2).commitInterval(2)));
+      assertTrue(con.getAutoCommit(), "auto commit should be restored");
+
+      try (ResultSet rs = stm.executeQuery("select id, amount, valid, born, name from result order by name")) {
+        Table read = new Table(rs);
+        assertEquals(3, read.getRowSize(), "Number of rows");
+        assertEquals(Arrays.asList(2, null, false, null, null), read.getRow(0), "NULL is sorted first");
+        assertEquals(1, read.getValue(1, 0));
+        assertEquals(1.5, read.getValue(1, 1));
+        assertEquals(Boolean.TRUE, read.getValue(1, 2));
+        assertEquals(java.sql.Date.valueOf("2021-03-14"), read.getValue(1, 3));
+        assertEquals(-3.25, read.getValue(2, 1));
+        assertEquals("Cesar", read.getValue(2, 4));
+      }
+    }
+  }
+
+  @Test
+  public void testParallelInsert() throws SQLException {
+    int numRows = 10_000;
+    List<List<Object>> rows = new ArrayList<>(numRows);
+    for (int i = 0; i < numRows; i++) {
+      rows.add(Arrays.asList(i, "name " + i));
+    }
+    Table table = new Table(Arrays.asList("ID", "NAME"), rows);
+
+    try (Connection con = connect("parallelInsert"); Statement stm = con.createStatement()) {
+      stm.execute("create table parallel (id int primary key, name varchar(20))");
+      JdbcWriteOptions options = new JdbcWriteOptions()
+          .batchSize(500)
+          .commitInterval(2000)
+          .parallel(4, () -> connect("parallelInsert"));
+      assertEquals(numRows, table.writeTo(con, "parallel", options));
+      try (ResultSet rs = stm.executeQuery("select count(*), sum(id), max(name) from parallel")) {
+        assertTrue(rs.next());
+        assertEquals(numRows, rs.getInt(1), "Number of rows");
+        assertEquals((long) numRows * (numRows - 1) / 2, rs.getLong(2), "Sum of ids");
+        assertEquals("name 9999", rs.getString(3));
+      }
+    }
+  }
+
+  @Test
+  public void testFailedInsertIsRolledBack() throws SQLException {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      rows.add(Arrays.asList(i % 6, "name " + i));
+    }
+    Table table = new Table(Arrays.asList("Id", "Name"), rows);
+    try (Connection con = connect("failedInsert"); Statement stm = con.createStatement()) {
+      stm.execute("create table \"unique\" (\"Id\" int primary key, \"Name\" varchar(20))");
+      JdbcWriteOptions options = new JdbcWriteOptions().batchSize(3).commitInterval(100).quoteIdentifiers(true);
+      assertThrows(SQLException.class, () -> table.writeTo(con, "unique", options));
+      try (ResultSet rs = stm.executeQuery("select count(*) from \"unique\"")) {
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1), "Nothing should have been committed");
+      }
+    }
+  }
+
+  @Test
+  public void testParallelInsertWithoutAutoCommit() throws SQLException {
+    int numRows = 4_000;
+    List<List<Object>> rows = new ArrayList<>(numRows);
+    for (int i = 0; i < numRows; i++) {
+      rows.add(Arrays.asList(i, "name " + i));
+    }
+    Table table = new Table(Arrays.asList("ID", "NAME"), rows);
+
+    try (Connection con = connect("noAutoCommit"); Statement stm = con.createStatement()) {
+      stm.execute("create table manual (id int primary key, name varchar(20))");
+      JdbcWriteOptions options = new JdbcWriteOptions()
+          .batchSize(500)
+          .parallel(4, () -> {
+            Connection partitionCon = connect("noAutoCommit");
+            try {
+              partitionCon.setAutoCommit(false);
+            } catch (SQLException e) {
+              throw new IllegalStateException(e);
+            }
+            return partitionCon;
+          });
+      assertEquals(numRows, table.writeTo(con, "manual", options));
+      try (ResultSet rs = stm.executeQuery("select count(*) from manual")) {
+        assertTrue(rs.next());
+        assertEquals(numRows, rs.getInt(1), "Rows of all partitions should be committed");
+      }
+    }
+  }
+
+  @Test
+  public void testQuotedSchemaQualifiedName() throws SQLException {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList(1.5, 0.2));
+    Table table = new Table(Arrays.asList("Sepal.Length", "Petal.Width"), rows);
+    try (Connection con = connect("qualifiedName"); Statement stm = con.createStatement()) {
+      stm.execute("create schema \"Model\"");
+      stm.execute("create table \"Model\".\"Iris\" "
+          + "(\"Sepal.Length\" double precision, \"Petal.Width\" double precision)");
+      assertEquals(1, table.writeTo(con, "Model.Iris", new JdbcWriteOptions().quoteIdentifiers(true)));
+      try (ResultSet rs = stm.executeQuery("select \"Sepal.Length\" from \"Model\".\"Iris\"")) {
+        assertTrue(rs.next());
+        assertEquals(1.5, rs.getDouble(1));
+      }
+    }
+  }
+
+  @Test
+  public void testQuoteInColumnName() throws SQLException {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList(1, "x"));
+    Table table = new Table(Arrays.asList("a\" , \"b", "c"), rows);
+    try (Connection con = connect("quoteInName"); Statement stm = con.createStatement()) {
+      stm.execute("create table quoted (\"a\"\" , \"\"b\" int, \"c\" varchar(10))");
+      assertEquals(1, table.writeTo(con, "QUOTED", new JdbcWriteOptions().quoteIdentifiers(true)));
+      try (ResultSet rs = stm.executeQuery("select \"a\"\" , \"\"b\", \"c\" from quoted")) {
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1), "The quote is part of the column name");
+        assertEquals("x", rs.getString(2));
+      }
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.JsonWriter;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonWriterTest {
+
+  @TempDir
+  Path tempDir;
+
+  private Table createTable() {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList(1, 1.25, true, LocalDate.of(2021, 3, 14), "Say \"hi\""));
+    rows.add(Arrays.asList(null, 3.0, false, null, "Åsa\tand\\Bo"));
+    rows.add(Arrays.asList(-3, null, null, LocalDate.of(1969, 12, 31), null));
+    return Table.withInferredTypes(Arrays.asList("id", "amount", "valid", "date", "name"), rows);
+  }
+
+  @Test
+  public void testRowLayout() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonWriter.rows().write(createTable(), out);
+    assertEquals("[{\"id\":1,\"amount\":1.25,\"valid\":true,\"date\":\"2021-03-14\",\"name\":\"Say \\\"hi\\\"\"},"
+            + "{\"id\":null,\"amount\":3,\"valid\":false,\"date\":null,\"name\":\"Åsa\\tand\\\\Bo\"},"
+            + "{\"id\":-3,\"amount\":null,\"valid\":null,\"date\":\"1969-12-31\",\"name\":null}]",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testColumnLayout() throws IOException {
+    Path file = tempDir.resolve("table.json");
+    JsonWriter.columns().write(createTable(), file);
+    assertEquals("{\"id\":[1,null,-3],\"amount\":[1.25,3,null],\"valid\":[true,false,null],"
+            + "\"date\":[\"2021-03-14\",null,\"1969-12-31\"],"
+            + "\"name\":[\"Say \\\"hi\\\"\",\"Åsa\\tand\\\\Bo\",null]}",
+        new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testBlocksAndSpecialValues() throws IOException {
+    List<List<Object>> rows = new ArrayList<>();
+    StringBuilder expected = new StringBuilder("[");
+    for (int i = 0; i < 1000; i++) {
+      double value = i == 10 ? Double.NaN : i == 11 ? Double.POSITIVE_INFINITY : i / 4.0;
+      rows.add(Arrays.asList(i, value, "a" + (char) (i % 3)));
+      if (i > 0) {
+        expected.append(',');
+      }
+      String json = i == 10 || i == 11 ? "null" : i % 4 == 0 ? String.valueOf(i / 4) : String.valueOf(i / 4.0);
+      expected.append("{\"id\":").append(i)
+          .append(",\"value\":").append(json)
+          .append(",\"code\":\"a\\u000").append(i % 3).append("\"}");
+    }
+    expected.append(']');
+    Table table = new Table(Arrays.asList("id", "value", "code"), rows,
+        Arrays.asList(DataType.INTEGER, DataType.DOUBLE, DataType.STRING));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonWriter.rows().blockSize(7).parallelism(3).write(table, out);
+    assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testUnpairedSurrogates() throws IOException {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList("a\uD800b", "\uDC00"));
+    rows.add(Arrays.asList("\uD83D\uDE00", "x\uD83D"));
+    Table table = new Table(Arrays.asList("key\uDFFF", "name"), rows,
+        Arrays.asList(DataType.STRING, DataType.STRING));
+
+    ByteArrayOutputStream rowsOut = new ByteArrayOutputStream();
+    JsonWriter.rows().write(table, rowsOut);
+    assertEquals("[{\"key\uFFFD\":\"a\uFFFDb\",\"name\":\"\uFFFD\"},"
+            + "{\"key\uFFFD\":\"\uD83D\uDE00\",\"name\":\"x\uFFFD\"}]",
+        new String(rowsOut.toByteArray(), StandardCharsets.UTF_8), "Unpaired surrogates become U+FFFD");
+    ByteArrayOutputStream colsOut = new ByteArrayOutputStream();
+    JsonWriter.columns().write(table, colsOut);
+    assertEquals("{\"key\uFFFD\":[\"a\uFFFDb\",\"\uD83D\uDE00\"],\"name\":[\"\uFFFD\",\"x\uFFFD\"]}",
+        new String(colsOut.toByteArray(), StandardCharsets.UTF_8), "Unpaired surrogates become U+FFFD");
+  }
+
+  @Test
+  public void testEmptyTable() throws IOException {
+    Table table = new Table(Arrays.asList("a", "b"), new ArrayList<>(),
+        Arrays.asList(DataType.INTEGER, DataType.STRING));
+    ByteArrayOutputStream rowsOut = new ByteArrayOutputStream();
+    JsonWriter.rows().write(table, rowsOut);
+    assertEquals("[]", rowsOut.toString("UTF-8"));
+    ByteArrayOutputStream colsOut = new ByteArrayOutputStream();
+    JsonWriter.columns().write(table, colsOut);
+    assertEquals("{\"a\":[],\"b\":[]}", colsOut.toString("UTF-8"));
+  }
+}
@@ -0,0 +1,137 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.ColumnEncoding;
+import se.alipsa.renjin.client.datautils.CompareOp;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NumericKernelsTest {
+
+  private static final int ROWS = 10_000;
+
+  /** Column 0 random doubles with NA and NaN, column 1 ints with NA, column 2 sorted (run length encoded) ints. */
+  private Table table() {
+    Random random = new Random(42);
+    List<List<Object>> rows = new ArrayList<>(ROWS);
+    for (int i = 0; i < ROWS; i++) {
+      Double d = i % 17 == 0 ? null : i % 23 == 0 ? Double.NaN : random.nextDouble() * 100 - 50;
+      Integer n = i % 13 == 0 ? null : random.nextInt(1000) - 500;
+      rows.add(Arrays.asList(d, n, i / 100));
+    }
+    return new Table(Arrays.asList("d", "n", "sorted"), rows,
+        Arrays.asList(DataType.DOUBLE, DataType.INTEGER, DataType.INTEGER));
+  }
+
+  private static double[] values(Table table, int column) {
+    return table.getColumn(column).stream()
+        .filter(v -> v != null && !Double.isNaN(((Number) v).doubleValue()))
+        .mapToDouble(v -> ((Number) v).doubleValue())
+        .toArray();
+  }
+
+  @Test
+  public void testAggregations() {
+    Table table = table();
+    assertEquals(ColumnEncoding.RUN_LENGTH, table.getColumnEncoding(2));
+    for (int col = 0; col < 3; col++) {
+      double[] values = values(table, col);
+      double sum = Arrays.stream(values).sum();
+      assertEquals(sum, table.sum(col), 1e-6, "sum of column " + col);
+      assertEquals(sum / values.length, table.mean(col), 1e-9, "mean of column " + col);
+      assertEquals(Arrays.stream(values).min().getAsDouble(), table.min(col), "min of column " + col);
+      assertEquals(Arrays.stream(values).max().getAsDouble(), table.max(col), "max of column " + col);
+    }
+  }
+
+  @Test
+  public void testDot() {
+    Table table = table().withColumn("d2", DataType.DOUBLE, table().getColumn(0));
+    double expected = 0;
+    for (int row = 0; row < ROWS; row++) {
+      Object val = table.getValue(row, 0);
+      if (val != null && !Double.isNaN((Double) val)) {
+        expected += (Double) val * (Double) val;
+      }
+    }
+    assertEquals(expected, table.dot(0, 3), 1e-6, "dot of the double columns");
+    double mixed = 0;
+    for (int row = 0; row < ROWS; row++) {
+      Object d = table.getValue(row, 0);
+      Object n = table.getValue(row, 1);
+      if (d != null && n != null && !Double.isNaN((Double) d)) {
+        mixed += (Double) d * (Integer) n;
+      }
+    }
+    assertEquals(mixed, table.dot(0, 1), 1e-6, "dot of a double and an int column");
+  }
+
+  @Test
+  public void testRowMask() {
+    Table table = table();
+    for (CompareOp op : CompareOp.values()) {
+      for (int col = 0; col < 3; col++) {
+        BitSet expected = new BitSet();
+        for (int row = 0; row < ROWS; row++) {
+          Object val = table.getValue(row, col);
+          if (val != null && test(op, ((Number) val).doubleValue(), 20)) {
+            expected.set(row);
+          }
+        }
+        assertEquals(expected, table.getRowMask(col, op, 20), op + " on column " + col);
+      }
+    }
+  }
+
+  @Test
+  public void testAppendedRows() {
+    Table head = table();
+    Table table = head.withRowsAppended(Arrays.asList(Arrays.asList(1000.0, 1000, 1000),
+        Arrays.asList(null, null, null)));
+    assertEquals(ColumnEncoding.CHUNKED, table.getColumnEncoding(0));
+    assertEquals(head.sum(0) + 1000, table.sum(0), 1e-6);
+    assertEquals(1000.0, table.max(1));
+    assertEquals(1000.0, table.max(2));
+    BitSet mask = table.getRowMask(2, CompareOp.GE, 99);
+    assertEquals(101, mask.cardinality());
+    assertTrue(mask.get(ROWS), "the appended row");
+  }
+
+  @Test
+  public void testAllNA() {
+    Table table = new Table(Arrays.asList("a"), Arrays.<List<Object>>asList(Arrays.asList((Object) null)),
+        Arrays.asList(DataType.DOUBLE));
+    assertEquals(0.0, table.sum(0));
+    assertTrue(Double.isNaN(table.mean(0)));
+    assertTrue(Double.isNaN(table.min(0)));
+    assertTrue(table.getRowMask(0, CompareOp.NE, 1).isEmpty());
+    Table strings = new Table(Arrays.asList("a"), Arrays.<List<Object>>asList(Arrays.asList("x")),
+        Arrays.asList(DataType.STRING));
+    assertThrows(IllegalArgumentException.class, () -> strings.sum(0));
+  }
+
+  private static boolean test(CompareOp op, double a, double b) {
+    switch (op) {
+      case EQ:
+        return a == b;
+      case NE:
+        return !Double.isNaN(a) && a != b;
+      case LT:
+        return a < b;
+      case LE:
+        return a <= b;
+      case GT:
+        return a > b;
+      default:
+        return a >= b;
+    }
+  }
+}
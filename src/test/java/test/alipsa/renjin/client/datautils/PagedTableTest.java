@@ -0,0 +1,66 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.ListVector;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.PagedTable;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagedTableTest {
+
+  private static ListVector createDataframe(int numRows) {
+    List<List<Object>> rows = new ArrayList<>(numRows);
+    for (int i = 0; i < numRows; i++) {
+      rows.add(Arrays.asList(i, i * 0.5, "name " + i));
+    }
+    return new Table(Arrays.asList("id", "amount", "name"), rows,
+        Arrays.asList(DataType.INTEGER, DataType.DOUBLE, DataType.STRING)).asDataframe();
+  }
+
+  @Test
+  public void testPagedAccess() {
+    ListVector df = createDataframe(10_000);
+    try (PagedTable table = new PagedTable(df, 100, 4)) {
+      assertEquals(10_000, table.getRowSize(), "Number of rows");
+      assertEquals(Arrays.asList("id", "amount", "name"), table.getHeaderList());
+      assertEquals(DataType.DOUBLE, table.getColumnTypes().get(1));
+      assertEquals(Arrays.asList(0, 0.0, "name 0"), table.getRow(0));
+      assertEquals(5_432, table.getValue(5_432, 0));
+      assertEquals("name 9999", table.getValue(9_999, 2));
+      for (int row = 3_000; row < 6_000; row += 7) {
+        assertEquals(row * 0.5, table.getValue(row, 1), "Value at row " + row);
+        assertTrue(table.getCachedBlockCount() <= 4, "At most 4 blocks should be cached");
+      }
+      List<List<Object>> rows = table.getRowList();
+      assertEquals(10_000, rows.size());
+      assertEquals(Arrays.asList(42, 21.0, "name 42"), rows.get(42));
+      assertThrows(IndexOutOfBoundsException.class, () -> table.getValue(10_000, 0));
+    }
+  }
+
+  @Test
+  public void testClosedTableIsNotRead() {
+    ListVector df = createDataframe(250);
+    PagedTable table = new PagedTable(df, 100, 2);
+    assertEquals(120, table.getValue(120, 0));
+    table.close();
+    assertEquals(0, table.getCachedBlockCount(), "Blocks are released on close");
+    assertThrows(IllegalStateException.class, () -> table.getValue(249, 2));
+    assertThrows(IllegalStateException.class, () -> table.getRow(0));
+  }
+
+  @Test
+  public void testHugeBlockSize() {
+    ListVector df = createDataframe(250);
+    try (PagedTable table = new PagedTable(df, Integer.MAX_VALUE, 1)) {
+      assertEquals("name 249", table.getValue(249, 2));
+      assertEquals(1, table.getCachedBlockCount(), "Number of blocks");
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.Vector;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.RDataTransformer;
+import se.alipsa.renjin.client.datautils.RowRange;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartialConversionTest {
+
+  private static ListVector createDataframe() {
+    return createTable().asDataframe();
+  }
+
+  private static Table createTable() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      rows.add(Arrays.asList(i, i * 0.5, LocalDate.of(2021, 1, 1).plusDays(i), "name " + i, i % 2 == 0));
+    }
+    return Table.withInferredTypes(Arrays.asList("id", "amount", "date", "name", "even"), rows);
+  }
+
+  @Test
+  public void testCreateTable() {
+    ListVector df = createDataframe();
+    Table table = Table.createTable(df, Arrays.asList("name", "id"), RowRange.of(10, 15));
+    assertEquals(Arrays.asList("name", "id"), table.getHeaderList());
+    assertEquals(Arrays.asList(DataType.STRING, DataType.INTEGER), table.getColumnTypes());
+    assertEquals(5, table.getRowSize(), "Number of rows");
+    assertEquals(Arrays.asList("name 10", 10), table.getRow(0));
+    assertEquals(Arrays.asList("name 14", 14), table.getRow(4));
+
+    Table tail = Table.createTable(df, null, RowRange.of(190, 1000));
+    assertEquals(5, tail.getHeaderSize(), "null selects all columns");
+    assertEquals(10, tail.getRowSize(), "The range is capped at the number of rows");
+    assertEquals(199, tail.getValue(9, 0));
+
+    Table strings = new Table(df, Arrays.asList("amount"), RowRange.first(3), true);
+    assertEquals(DataType.STRING, strings.getColumnType(0));
+    assertEquals("0.5", strings.getValue(1, 0));
+
+    assertThrows(IllegalArgumentException.class, () -> Table.createTable(df, Arrays.asList("foo"), RowRange.all()));
+    assertThrows(IllegalArgumentException.class, () -> RowRange.of(5, 2));
+  }
+
+  @Test
+  public void testToRowlist() {
+    ListVector df = createDataframe();
+    List<List<Object>> rows = RDataTransformer.toRowlist(df, Arrays.asList("even", "id"), RowRange.of(100, 102));
+    assertEquals(2, rows.size(), "Number of rows");
+    assertEquals(Arrays.asList(Boolean.TRUE, 100), rows.get(0));
+    assertEquals(Arrays.asList(Boolean.FALSE, 101), rows.get(1));
+    List<List<Object>> all = RDataTransformer.toRowlist(df, null, RowRange.all());
+    assertEquals(RDataTransformer.toRowlist(df), all, "All columns and rows");
+  }
+
+  @Test
+  public void testToDataframe() {
+    Table table = createTable();
+    ListVector part = RDataTransformer.toDataframe(table, Arrays.asList("date", "amount"), RowRange.of(50, 60));
+    assertEquals(2, part.length(), "Number of columns");
+    Vector date = (Vector) part.get(0);
+    assertEquals(10, date.length(), "Number of rows");
+    assertEquals("Date", date.getAttributes().getClassVector().getElementAsString(0));
+    assertEquals(LocalDate.of(2021, 1, 1).plusDays(50).toEpochDay(), date.getElementAsDouble(0));
+    assertEquals(29.5, ((Vector) part.get(1)).getElementAsDouble(9));
+
+    ListVector whole = table.asDataframe(Arrays.asList("name"), RowRange.all());
+    assertSame(table.asDataframe().get(3), whole.get(0), "All rows reuse the cached vector");
+  }
+}
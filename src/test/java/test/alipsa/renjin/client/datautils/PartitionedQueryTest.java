@@ -0,0 +1,91 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.PartitionedQuery;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartitionedQueryTest {
+
+  @Test
+  public void testPartitionsEqualSingleQuery() throws SQLException {
+    JdbcDataSource ds = new JdbcDataSource();
+    ds.setURL("jdbc:h2:mem:partitioned;DB_CLOSE_DELAY=-1");
+    try (Connection con = ds.getConnection(); Statement stm = con.createStatement()) {
+      stm.execute("create table sales (id int, amount double precision, region varchar(10))");
+      try (PreparedStatement ps = con.prepareStatement("insert into sales values (?, ?, ?)")) {
+        for (int i = 1; i <= 10_000; i++) {
+          ps.setInt(1, i);
+          ps.setDouble(2, i * 0.25);
+          ps.setString(3, i % 2 == 0 ? "north" : "south");
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      Table expected;
+      try (ResultSet rs = stm.executeQuery("select * from sales order by id")) {
+        expected = new Table(rs);
+      }
+
+      Table table = new PartitionedQuery(ds, "select * from sales where {partition} order by id", "id")
+          .ranges(1, 10_000, 7)
+          .threads(3)
+          .read();
+      assertEquals(Arrays.asList("ID", "AMOUNT", "REGION"), table.getHeaderList());
+      assertEquals(Arrays.asList(DataType.INTEGER, DataType.DOUBLE, DataType.STRING), table.getColumnTypes());
+      assertEquals(expected.getRowSize(), table.getRowSize(), "Number of rows");
+      for (int row = 0; row < expected.getRowSize(); row++) {
+        assertEquals(expected.getRow(row), table.getRow(row), "Row " + row);
+      }
+
+      Supplier<Connection> connections = () -> {
+        try {
+          return ds.getConnection();
+        } catch (SQLException e) {
+          throw new IllegalStateException(e);
+        }
+      };
+      Table openEnded = new PartitionedQuery(connections, "select id from sales where {partition}", "id")
+          .range(null, 100)
+          .range(9_990, null)
+          .read();
+      assertEquals(99 + 11, openEnded.getRowSize(), "Number of rows in open ended ranges");
+    }
+  }
+
+  @Test
+  public void testExtremeRange() throws SQLException {
+    JdbcDataSource ds = new JdbcDataSource();
+    ds.setURL("jdbc:h2:mem:extremeRange;DB_CLOSE_DELAY=-1");
+    try (Connection con = ds.getConnection(); Statement stm = con.createStatement()) {
+      stm.execute("create table keys (id bigint)");
+      try (PreparedStatement ps = con.prepareStatement("insert into keys values (?)")) {
+        for (long id : new long[]{Long.MIN_VALUE, -1, 0, 1, Long.MAX_VALUE - 1, Long.MAX_VALUE}) {
+          ps.setLong(1, id);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      Table table = new PartitionedQuery(ds, "select id from keys where {partition}", "id")
+          .ranges(Long.MIN_VALUE, Long.MAX_VALUE, 4)
+          .read();
+      assertEquals(6, table.getRowSize(), "Number of rows over the full range of long");
+
+      Table top = new PartitionedQuery(ds, "select id from keys where {partition}", "id")
+          .ranges(Long.MAX_VALUE - 1, Long.MAX_VALUE, 5)
+          .read();
+      assertEquals(2, top.getRowSize(), "Number of rows at the top of the range");
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.RdsReader;
+import se.alipsa.renjin.client.datautils.RdsWriter;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RdsTest {
+
+  private Table table() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      rows.add(Arrays.asList(i % 10 == 0 ? null : i, i % 7 == 0 ? null : i / 3.0, LocalDate.of(2020, 1, 1).plusDays(i),
+          i % 2 == 0, i % 11 == 0 ? null : "name " + i, i % 5 == 0 ? "Ö" : "A"));
+    }
+    return new Table(Arrays.asList("id", "value", "date", "even", "name", "group"), rows,
+        Arrays.asList(DataType.INTEGER, DataType.DOUBLE, DataType.DATE, DataType.BOOLEAN, DataType.STRING,
+            DataType.STRING));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Table table = table();
+    for (boolean compress : new boolean[]{true, false}) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new RdsWriter().compress(compress).write(table, out);
+      Table read = new RdsReader().read(new ByteArrayInputStream(out.toByteArray()));
+      assertEquals(table.getHeaderList(), read.getHeaderList());
+      assertEquals(table.getColumnTypes(), read.getColumnTypes());
+      assertEquals(table, read, "compressed = " + compress);
+    }
+  }
+
+  @Test
+  public void testFile() throws IOException {
+    Path file = Files.createTempFile("table", ".rds");
+    try {
+      new RdsWriter().write(table(), file);
+      byte[] bytes = Files.readAllBytes(file);
+      assertEquals(0x1f, bytes[0] & 0xFF, "gzipped by default");
+      assertEquals(table(), new RdsReader().read(file));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  /**
+   * What R 4 writes for <code>saveRDS(data.frame(id = 1:3, f = factor(c("b", "a", NA))), compress = FALSE)</code>,
+   * a version 3 stream where id is a compact integer sequence and the symbols are referenced after the first use.
+   */
+  @Test
+  public void testVersion3() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeBytes("X\n");
+    out.writeInt(3);
+    out.writeInt(0x040200);
+    out.writeInt(0x030500);
+    out.writeInt(5);
+    out.writeBytes("UTF-8");
+    out.writeInt(19 | 1 << 8 | 1 << 9); // VECSXP, object with attributes
+    out.writeInt(2);
+    // id: ALTREP compact_intseq
+    out.writeInt(238);
+    out.writeInt(2); // info pairlist
+    symbol(out, "compact_intseq");
+    out.writeInt(2);
+    symbol(out, "base");
+    out.writeInt(2);
+    out.writeInt(13);
+    out.writeInt(1);
+    out.writeInt(13);
+    out.writeInt(254);
+    out.writeInt(14); // state: n, start, step
+    out.writeInt(3);
+    out.writeDouble(3);
+    out.writeDouble(1);
+    out.writeDouble(1);
+    out.writeInt(254); // no attributes
+    // f: factor
+    out.writeInt(13 | 1 << 8 | 1 << 9);
+    out.writeInt(3);
+    out.writeInt(2);
+    out.writeInt(1);
+    out.writeInt(Integer.MIN_VALUE);
+    out.writeInt(2 | 1 << 10);
+    symbol(out, "levels");
+    strings(out, "a", "b");
+    out.writeInt(2 | 1 << 10);
+    symbol(out, "class");
+    strings(out, "factor");
+    out.writeInt(254);
+    // data.frame attributes
+    out.writeInt(2 | 1 << 10);
+    symbol(out, "names");
+    strings(out, "id", "f");
+    out.writeInt(2 | 1 << 10);
+    out.writeInt(255 | 4 << 8); // reference to the class symbol
+    strings(out, "data.frame");
+    out.writeInt(2 | 1 << 10);
+    symbol(out, "row.names");
+    out.writeInt(13);
+    out.writeInt(2);
+    out.writeInt(Integer.MIN_VALUE);
+    out.writeInt(-3);
+    out.writeInt(254);
+
+    Table table = new RdsReader().read(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(Arrays.asList("id", "f"), table.getHeaderList());
+    assertEquals(Arrays.asList(DataType.INTEGER, DataType.STRING), table.getColumnTypes());
+    assertEquals(Arrays.asList(1, 2, 3), table.getColumn(0));
+    assertEquals(Arrays.asList("b", "a", null), table.getColumn(1));
+  }
+
+  /**
+   * What R 4 writes for a data.frame of wrapped and deferred string columns, e.g. <code>saveRDS(data.frame(
+   * i = sort(c(3L, NA, 1L), na.last = TRUE), d = sort(c(2.25, NA, 1.5), na.last = TRUE), s = sort(c("z", NA, "x"),
+   * na.last = TRUE), c = as.character(c(1.5, NA, 1 / 3)), stringsAsFactors = FALSE), compress = FALSE)</code>.
+   * The state of these ALTREP classes is a dotted pair of the vector and an integer vector, not a pairlist.
+   */
+  @Test
+  public void testWrappedAndDeferredStrings() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    List<String> symbols = new ArrayList<>();
+    out.writeBytes("X\n");
+    out.writeInt(3);
+    out.writeInt(0x040200);
+    out.writeInt(0x030500);
+    out.writeInt(5);
+    out.writeBytes("UTF-8");
+    out.writeInt(19 | 1 << 8 | 1 << 9);
+    out.writeInt(4);
+    // i: wrap_integer
+    altrepInfo(out, symbols, "wrap_integer", 13);
+    out.writeInt(2);
+    out.writeInt(13);
+    out.writeInt(3);
+    out.writeInt(1);
+    out.writeInt(3);
+    out.writeInt(Integer.MIN_VALUE);
+    wrapperMetadata(out);
+    out.writeInt(254);
+    // d: wrap_real
+    altrepInfo(out, symbols, "wrap_real", 14);
+    out.writeInt(2);
+    out.writeInt(14);
+    out.writeInt(3);
+    out.writeDouble(1.5);
+    out.writeDouble(2.25);
+    out.writeLong(0x7FF00000000007A2L); // NA_real_
+    wrapperMetadata(out);
+    out.writeInt(254);
+    // s: wrap_string
+    altrepInfo(out, symbols, "wrap_string", 16);
+    out.writeInt(2);
+    out.writeInt(16);
+    out.writeInt(3);
+    charsxp(out, "x");
+    charsxp(out, "z");
+    out.writeInt(9);
+    out.writeInt(-1);
+    wrapperMetadata(out);
+    out.writeInt(254);
+    // c: deferred_string of a double vector, the CDR is the scipen option
+    altrepInfo(out, symbols, "deferred_string", 16);
+    out.writeInt(2);
+    out.writeInt(14);
+    out.writeInt(3);
+    out.writeDouble(1.5);
+    out.writeLong(0x7FF00000000007A2L);
+    out.writeDouble(1.0 / 3);
+    out.writeInt(13);
+    out.writeInt(1);
+    out.writeInt(0);
+    out.writeInt(254);
+    // data.frame attributes
+    out.writeInt(2 | 1 << 10);
+    symbol(out, symbols, "names");
+    strings(out, "i", "d", "s", "c");
+    out.writeInt(2 | 1 << 10);
+    symbol(out, symbols, "class");
+    strings(out, "data.frame");
+    out.writeInt(2 | 1 << 10);
+    symbol(out, symbols, "row.names");
+    out.writeInt(13);
+    out.writeInt(2);
+    out.writeInt(Integer.MIN_VALUE);
+    out.writeInt(-3);
+    out.writeInt(254);
+
+    Table table = new RdsReader().read(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(Arrays.asList("i", "d", "s", "c"), table.getHeaderList());
+    assertEquals(Arrays.asList(DataType.INTEGER, DataType.DOUBLE, DataType.STRING, DataType.STRING),
+        table.getColumnTypes());
+    assertEquals(Arrays.asList(1, 3, null), table.getColumn(0), "wrap_integer");
+    assertEquals(Arrays.asList(1.5, 2.25, null), table.getColumn(1), "wrap_real");
+    assertEquals(Arrays.asList("x", "z", null), table.getColumn(2), "wrap_string");
+    assertEquals(Arrays.asList("1.5", null, "0.333333333333333"), table.getColumn(3), "deferred_string");
+  }
+
+  @Test
+  public void testNotRds() {
+    byte[] bytes = "A\n".getBytes(StandardCharsets.US_ASCII);
+    assertThrows(IOException.class, () -> new RdsReader().read(new ByteArrayInputStream(bytes)));
+  }
+
+  private static void symbol(DataOutputStream out, String name) throws IOException {
+    out.writeInt(1);
+    charsxp(out, name);
+  }
+
+  /**
+   * Writes the symbol, or a reference to it if it has been written before.
+   */
+  private static void symbol(DataOutputStream out, List<String> symbols, String name) throws IOException {
+    int index = symbols.indexOf(name);
+    if (index >= 0) {
+      out.writeInt(255 | (index + 1) << 8);
+    } else {
+      symbols.add(name);
+      symbol(out, name);
+    }
+  }
+
+  /**
+   * Writes the ALTREP flags and the class info pairlist of the class and package symbols and the type.
+   */
+  private static void altrepInfo(DataOutputStream out, List<String> symbols, String className, int type)
+      throws IOException {
+    out.writeInt(238);
+    out.writeInt(2);
+    symbol(out, symbols, className);
+    out.writeInt(2);
+    symbol(out, symbols, "base");
+    out.writeInt(2);
+    out.writeInt(13);
+    out.writeInt(1);
+    out.writeInt(type);
+    out.writeInt(254);
+  }
+
+  /**
+   * Writes the CDR of the state of a wrapper: the sortedness (increasing, NAs last) and whether there are no NAs.
+   */
+  private static void wrapperMetadata(DataOutputStream out) throws IOException {
+    out.writeInt(13);
+    out.writeInt(2);
+    out.writeInt(1);
+    out.writeInt(0);
+  }
+
+  private static void strings(DataOutputStream out, String... values) throws IOException {
+    out.writeInt(16);
+    out.writeInt(values.length);
+    for (String value : values) {
+      charsxp(out, value);
+    }
+  }
+
+  private static void charsxp(DataOutputStream out, String value) throws IOException {
+    out.writeInt(9 | 64 << 12);
+    out.writeInt(value.length());
+    out.writeBytes(value);
+  }
+}
@@ -0,0 +1,71 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.ColumnEncoding;
+import se.alipsa.renjin.client.datautils.ResultSetReader;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultSetReaderTest {
+
+  @Test
+  public void testPipelinedReadEqualsTableFromResultSet() throws SQLException {
+    try (Connection con = DriverManager.getConnection("jdbc:h2:mem:pipelined");
+         Statement stm = con.createStatement()) {
+      stm.execute("create table measures (id int, amount double precision, name varchar(20), "
+          + "category varchar(10), valid boolean, big bigint)");
+      try (PreparedStatement ps = con.prepareStatement("insert into measures values (?, ?, ?, ?, ?, ?)")) {
+        for (int i = 0; i < 10_000; i++) {
+          ps.setInt(1, i);
+          ps.setObject(2, i % 100 == 0 ? null : i * 0.5);
+          ps.setString(3, "name " + i);
+          ps.setString(4, "cat" + i % 3);
+          ps.setObject(5, i % 7 == 0 ? null : i % 2 == 0);
+          ps.setLong(6, i * 1_000_000_000L);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      String sql = "select * from measures order by id";
+      Table expected;
+      try (ResultSet rs = stm.executeQuery(sql)) {
+        expected = new Table(rs);
+      }
+      Table table;
+      try (ResultSet rs = stm.executeQuery(sql)) {
+        table = new ResultSetReader().batchSize(333).queueCapacity(2).converterThreads(3).virtualThreads(true).read(rs);
+      }
+      assertEquals(expected.getHeaderList(), table.getHeaderList());
+      assertEquals(expected.getColumnTypes(), table.getColumnTypes());
+      assertEquals(expected.getRowSize(), table.getRowSize(), "Number of rows");
+      for (int row = 0; row < expected.getRowSize(); row++) {
+        assertEquals(expected.getRow(row), table.getRow(row), "Row " + row);
+      }
+      assertEquals(expected, table);
+      for (int col = 0; col < expected.getHeaderSize(); col++) {
+        assertEquals(ColumnEncoding.CHUNKED, table.getColumnEncoding(col), "Encoding of column " + col);
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyResultSet() throws SQLException {
+    try (Connection con = DriverManager.getConnection("jdbc:h2:mem:empty");
+         Statement stm = con.createStatement()) {
+      stm.execute("create table nothing (id int, name varchar(20))");
+      try (ResultSet rs = stm.executeQuery("select * from nothing")) {
+        Table table = new ResultSetReader().read(rs);
+        assertEquals(0, table.getRowSize(), "Number of rows");
+        assertEquals(2, table.getHeaderSize(), "Number of columns");
+      }
+    }
+  }
+}
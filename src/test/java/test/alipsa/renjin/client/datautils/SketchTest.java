@@ -0,0 +1,169 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.ColumnSketches;
+import se.alipsa.renjin.client.datautils.HyperLogLog;
+import se.alipsa.renjin.client.datautils.QuantileSketch;
+import se.alipsa.renjin.client.datautils.ResultSetReader;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SketchTest {
+
+  @Test
+  public void testHyperLogLog() {
+    HyperLogLog first = new HyperLogLog();
+    HyperLogLog second = new HyperLogLog();
+    for (int i = 0; i < 100_000; i++) {
+      first.add("value " + i);
+      second.add("value " + (i + 50_000));
+    }
+    assertEquals(100_000, first.estimate(), 3_000, "Estimate of 100 000 distinct values");
+    assertEquals(150_000, first.copy().merge(second).estimate(), 4_500, "Estimate of the union");
+
+    HyperLogLog small = new HyperLogLog();
+    for (int i = 0; i < 1000; i++) {
+      small.add(i % 10);
+    }
+    small.add(null);
+    assertEquals(10, small.estimate(), "Small cardinalities are (almost) exact");
+    assertThrows(IllegalArgumentException.class, () -> small.merge(new HyperLogLog(10)));
+  }
+
+  @Test
+  public void testQuantileSketch() {
+    Random random = new Random(42);
+    List<Double> values = new ArrayList<>();
+    QuantileSketch first = new QuantileSketch();
+    QuantileSketch second = new QuantileSketch();
+    for (int i = 0; i < 200_000; i++) {
+      double value = random.nextGaussian() * 10 + 100;
+      values.add(value);
+      (i % 2 == 0 ? first : second).add(value);
+    }
+    first.add(Double.NaN);
+    QuantileSketch sketch = first.merge(second);
+    assertEquals(200_000, sketch.getCount());
+    values.sort(Double::compare);
+    for (double fraction : new double[]{0.01, 0.25, 0.5, 0.75, 0.99}) {
+      double estimate = sketch.quantile(fraction);
+      double rank = (double) Math.abs(Collections.binarySearch(values, estimate)) / values.size();
+      assertEquals(fraction, rank, 0.02, "Rank of the " + fraction + " quantile");
+    }
+    assertEquals(values.get(0), sketch.quantile(0));
+    assertEquals(values.get(values.size() - 1), sketch.quantile(1));
+    assertEquals(0.5, sketch.rank(sketch.quantile(0.5)), 0.02);
+    assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)));
+  }
+
+  @Test
+  public void testTableSketches() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 50_000; i++) {
+      rows.add(Arrays.asList(i, i % 250 * 2.0, "cat" + i % 40, i % 10 == 0 ? null : i % 3));
+    }
+    Table table = Table.withInferredTypes(Arrays.asList("id", "amount", "category", "small"), rows);
+    ColumnSketches sketches = table.sketches();
+    assertEquals(4, sketches.getColumnCount());
+    assertEquals(50_000, sketches.distinctCount(0), 1_500);
+    assertEquals(250, sketches.distinctCount(1), 5);
+    assertEquals(40, sketches.distinctCount(2));
+    assertEquals(3, sketches.distinctCount(3));
+    assertEquals(25_000, sketches.quantile(0, 0.5), 1_000, "Median of the ids");
+    assertEquals(45_000, sketches.getQuantileSketch(3).getCount(), "NA values are not in the quantiles");
+    assertTrue(Double.isNaN(sketches.quantile(2, 0.5)), "No numbers in a string column");
+
+    ColumnSketches merged = new ColumnSketches().merge(sketches).merge(table.sketches());
+    assertEquals(250, merged.distinctCount(1), 5, "Merging the same values again");
+    assertEquals(100_000, merged.getQuantileSketch(0).getCount());
+  }
+
+  @Test
+  public void testSketchesWhileReading() throws SQLException {
+    try (Connection con = DriverManager.getConnection("jdbc:h2:mem:sketches");
+         Statement stm = con.createStatement()) {
+      stm.execute("create table facts as select x as id, mod(x, 17) as bucket from system_range(1, 20000)");
+      ColumnSketches sketches = new ColumnSketches();
+      Table table;
+      try (ResultSet rs = stm.executeQuery("select id, bucket from facts")) {
+        table = new ResultSetReader().batchSize(1000).sketches(sketches).read(rs);
+      }
+      assertEquals(20_000, table.getRowSize());
+      assertEquals(17, sketches.distinctCount(1));
+      assertEquals(20_000, sketches.distinctCount(0), 600);
+      assertEquals(table.sketches().distinctCount(0), sketches.distinctCount(0), "Same values give the same sketch");
+    }
+  }
+
+  @Test
+  public void testSparseHyperLogLog() {
+    HyperLogLog sparse = new HyperLogLog();
+    HyperLogLog dense = new HyperLogLog();
+    for (int i = 0; i < 50_000; i++) {
+      dense.add("value " + i);
+    }
+    HyperLogLog all = dense.copy();
+    for (int i = 0; i < 100; i++) {
+      sparse.add("other " + i);
+      all.add("other " + i);
+    }
+    assertEquals(100, sparse.estimate(), 1, "Estimate of a sparse sketch");
+    assertEquals(all, dense.copy().merge(sparse), "Merging a sparse sketch into a dense one");
+    assertEquals(all, sparse.copy().merge(dense), "Merging a dense sketch into a sparse one");
+    assertEquals(all.hashCode(), sparse.copy().merge(dense).hashCode());
+
+    HyperLogLog grown = new HyperLogLog();
+    HyperLogLog merged = new HyperLogLog();
+    for (int i = 0; i < 5_000; i++) {
+      grown.add(i);
+      HyperLogLog single = new HyperLogLog();
+      single.add(i);
+      merged.merge(single);
+    }
+    assertEquals(grown, merged, "The same values give the same sketch whether sparse or not");
+    assertEquals(5_000, grown.estimate(), 150);
+    assertEquals(grown, grown.copy().merge(grown), "Merging with itself");
+  }
+
+  @Test
+  public void testQuantileSketchMergedWithItself() {
+    QuantileSketch sketch = new QuantileSketch();
+    for (int i = 1; i <= 1000; i++) {
+      sketch.add(i);
+    }
+    assertSame(sketch, sketch.merge(sketch));
+    assertEquals(2000, sketch.getCount());
+    assertEquals(500, sketch.quantile(0.5), 20);
+  }
+
+  @Test
+  public void testNaNIsNotCounted() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      rows.add(Arrays.asList(i % 4 == 0 ? Double.NaN : i % 4 * 1.0, i % 3 == 0 ? null : i % 5 * 0.5));
+    }
+    ColumnSketches sketches = Table.withInferredTypes(Arrays.asList("nan", "na"), rows).sketches();
+    assertEquals(3, sketches.distinctCount(0), "NaN is not a distinct value");
+    assertEquals(5, sketches.distinctCount(1), "NA is not a distinct value");
+
+    ColumnSketches updated = new ColumnSketches();
+    Object[][] values = new Object[rows.size()][];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = rows.get(i).toArray();
+    }
+    updated.update(values, values.length);
+    assertEquals(3, updated.distinctCount(0), "NaN is not a distinct value when updating");
+  }
+}
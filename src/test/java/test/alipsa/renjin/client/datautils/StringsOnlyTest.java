@@ -0,0 +1,104 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.StringVector;
+import org.renjin.sexp.Vector;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.RDataTransformer;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StringsOnlyTest {
+
+  private static final double[] VALUES = {1200, 0.1 + 0.2, 1e5, 1e-4, 0.00012, Double.NaN, -2.5, 1.0 / 0, 1e300};
+
+  private static Table createTable() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < VALUES.length; i++) {
+      rows.add(Arrays.asList(i - 4, VALUES[i]));
+    }
+    rows.add(Arrays.asList(null, null));
+    return new Table(Arrays.asList("id", "value"), rows, Arrays.asList(DataType.INTEGER, DataType.DOUBLE));
+  }
+
+  @Test
+  public void testNumbersFormattedAsInR() {
+    ListVector df = createTable().asDataframe();
+    List<Object> expected = Arrays.asList("1200", "0.3", "1e+05", "1e-04", "0.00012", "NaN",
+        "-2.5", "Inf", "1e+300", null);
+
+    Table table = new Table(df, true);
+    assertEquals(Arrays.asList(DataType.STRING, DataType.STRING), table.getColumnTypes());
+    assertEquals(expected, table.getColumn(1));
+    assertEquals(Arrays.asList("-4", "-3", "-2", "-1", "0", "1", "2", "3", "4", null), table.getColumn(0));
+
+    List<List<Object>> rows = RDataTransformer.toRowlist(df, true);
+    for (int row = 0; row < rows.size(); row++) {
+      assertEquals(expected.get(row), rows.get(row).get(1), "Row " + row);
+    }
+  }
+
+  /**
+   * R's as.character gives 15 significant digits, the expected strings are what R prints. They are written out
+   * since the getElementAsString of the test Renjin does not format as R does.
+   */
+  @Test
+  public void testFifteenSignificantDigits() {
+    double[] values = {0.1 + 0.2, 1.0 / 3, 1e15 + 0.3, 1e-5, 100000};
+    List<Object> expected = Arrays.asList("0.3", "0.333333333333333", "1e+15", "1e-05", "1e+05");
+    List<List<Object>> rows = new ArrayList<>();
+    for (double value : values) {
+      rows.add(Arrays.asList(value));
+    }
+    ListVector df = new Table(Arrays.asList("value"), rows, Arrays.asList(DataType.DOUBLE)).asDataframe();
+
+    assertEquals(expected, new Table(df, true).getColumn(0), "new Table(df, true)");
+    List<List<Object>> rowList = RDataTransformer.toRowlist(df, true);
+    List<List<Object>> transposed = RDataTransformer.transpose(
+        Arrays.<Vector>asList(new DoubleArrayVector(values)), true);
+    for (int row = 0; row < values.length; row++) {
+      assertEquals(expected.get(row), rowList.get(row).get(0), "toRowlist row " + row);
+      assertEquals(expected.get(row), transposed.get(row).get(0), "transpose row " + row);
+    }
+  }
+
+  @Test
+  public void testStringsOnlyDataframe() {
+    Table table = createTable();
+    ListVector df = RDataTransformer.toDataframe(table, true);
+    StringVector ids = (StringVector) df.getElementAsSEXP(0);
+    StringVector values = (StringVector) df.getElementAsSEXP(1);
+    for (int row = 0; row < VALUES.length; row++) {
+      assertEquals(String.valueOf(row - 4), ids.getElementAsString(row), "Row " + row);
+      assertEquals(String.valueOf(VALUES[row]), values.getElementAsString(row), "Row " + row);
+    }
+    assertNull(ids.getElementAsString(VALUES.length), "NA id");
+    assertNull(values.getElementAsString(VALUES.length), "NA value");
+  }
+
+  @Test
+  public void testLargeColumn() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      rows.add(Arrays.asList(i % 7 / 8.0, i * 1000.0));
+    }
+    Table table = new Table(Arrays.asList("fraction", "thousands"), rows,
+        Arrays.asList(DataType.DOUBLE, DataType.DOUBLE));
+    Table strings = new Table(table.asDataframe(), true);
+    assertEquals("0.75", strings.getValue(6, 0));
+    assertEquals("1e+06", strings.getValue(1000, 1));
+    assertEquals("1001000", strings.getValue(1001, 1));
+
+    ListVector df = RDataTransformer.toDataframe(table, true);
+    StringVector fractions = (StringVector) df.getElementAsSEXP(0);
+    assertEquals("0.375", fractions.getElementAsString(3));
+    assertEquals("2000.0", ((StringVector) df.getElementAsSEXP(1)).getElementAsString(2));
+  }
+}
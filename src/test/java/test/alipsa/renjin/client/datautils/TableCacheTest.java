@@ -0,0 +1,63 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.StringArrayVector;
+import se.alipsa.renjin.client.datautils.Table;
+import se.alipsa.renjin.client.datautils.TableCache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableCacheTest {
+
+  @Test
+  public void testHitsAndMisses() {
+    TableCache cache = new TableCache(10);
+    StringArrayVector names = new StringArrayVector("Adam", "Bertil", "Cesar");
+    Table first = cache.createTable(names);
+    Table second = cache.createTable(names);
+    assertSame(first, second, "Same SEXP should give the cached table");
+    assertEquals(1, cache.getHitCount(), "hits");
+    assertEquals(1, cache.getMissCount(), "misses");
+
+    // Same content but a different R object is a different entry
+    Table third = cache.createTable(new StringArrayVector("Adam", "Bertil", "Cesar"));
+    assertNotSame(first, third, "A different SEXP should not give the cached table");
+    assertEquals(2, cache.size(), "Number of cached tables");
+    assertEquals("Bertil", third.getValue(1, 0));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEviction() {
+    TableCache cache = new TableCache(2);
+    DoubleArrayVector a = new DoubleArrayVector(1.0, 2.0);
+    DoubleArrayVector b = new DoubleArrayVector(3.0, 4.0);
+    DoubleArrayVector c = new DoubleArrayVector(5.0, 6.0);
+    Table tableA = cache.createTable(a);
+    cache.createTable(b);
+    // touch a so that b becomes the least recently used
+    assertSame(tableA, cache.createTable(a));
+    cache.createTable(c);
+    assertEquals(2, cache.size(), "Number of cached tables");
+    assertEquals(1, cache.getEvictionCount(), "evictions");
+    assertNotNull(cache.get(a), "a should still be cached");
+    assertNull(cache.get(b), "b should have been evicted");
+    assertNotNull(cache.get(c), "c should be cached");
+  }
+
+  @Test
+  public void testMemoryBudget() {
+    TableCache cache = TableCache.withMemoryBudget(1_000);
+    DoubleArrayVector small = new DoubleArrayVector(1.0);
+    double[] values = new double[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i * 1.5;
+    }
+    DoubleArrayVector big = new DoubleArrayVector(values);
+    cache.createTable(small);
+    cache.createTable(big);
+    assertNotNull(cache.get(small), "Small table should be cached");
+    assertNull(cache.get(big), "Table larger than the budget should not be cached");
+    assertTrue(cache.getWeight() <= 1_000, "Weight should be within budget but was " + cache.getWeight());
+  }
+}
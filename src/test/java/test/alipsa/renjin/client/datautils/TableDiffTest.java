@@ -0,0 +1,105 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.Table;
+import se.alipsa.renjin.client.datautils.TableDiff;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TableDiffTest {
+
+  private static List<List<Object>> createRows(int numRows) {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < numRows; i++) {
+      rows.add(new ArrayList<>(Arrays.asList(i, i / 100 * 2.5, LocalDate.of(2020, 1, 1).plusDays(i),
+          "status " + i % 3, i % 7 == 0 ? null : "name " + i)));
+    }
+    return rows;
+  }
+
+  private static final List<String> HEADER = Arrays.asList("id", "amount", "date", "status", "name");
+
+  @Test
+  public void testFingerprintAndEquals() {
+    Table inferred = Table.withInferredTypes(HEADER, createRows(500));
+    Table copy = new Table(HEADER, inferred.getRowList(), inferred.getColumnTypes());
+    assertEquals(inferred.fingerprint(), copy.fingerprint(), "The fingerprint should not depend on the storage");
+    assertEquals(inferred, copy);
+    assertEquals(inferred.hashCode(), copy.hashCode());
+
+    List<List<Object>> rows = createRows(500);
+    rows.get(321).set(4, "changed");
+    Table changed = Table.withInferredTypes(HEADER, rows);
+    assertNotEquals(inferred.fingerprint(), changed.fingerprint());
+    assertNotEquals(inferred, changed);
+
+    Table renamed = Table.withInferredTypes(Arrays.asList("id", "amount", "date", "status", "other"), createRows(500));
+    assertNotEquals(inferred.fingerprint(), renamed.fingerprint(), "The header is part of the fingerprint");
+
+    Table ints = new Table(Arrays.asList("x"), Arrays.asList(Arrays.asList(1)), Arrays.asList(DataType.INTEGER));
+    Table doubles = new Table(Arrays.asList("x"), Arrays.asList(Arrays.asList(1.0)), Arrays.asList(DataType.INTEGER));
+    assertNotEquals(ints.fingerprint(), doubles.fingerprint(), "1 and 1.0 are different values");
+    assertNotEquals(ints, doubles);
+  }
+
+  @Test
+  public void testEqualsIgnoresValuesOfNullRows() {
+    List<List<Object>> rows = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      rows.add(Arrays.asList(i % 7 == 0 ? null : i, i % 5 == 0 ? null : i * 0.5));
+    }
+    List<String> header = Arrays.asList("id", "amount");
+    // type inference stores 0 in the null rows, the row list constructor stores NA
+    Table inferred = Table.withInferredTypes(header, rows);
+    Table typed = new Table(header, rows, Arrays.asList(DataType.INTEGER, DataType.DOUBLE));
+    assertEquals(inferred.fingerprint(), typed.fingerprint());
+    assertEquals(inferred, typed);
+    assertEquals(inferred.hashCode(), typed.hashCode());
+  }
+
+  @Test
+  public void testDiffByKey() {
+    Table before = Table.withInferredTypes(HEADER, createRows(200));
+    List<List<Object>> rows = createRows(205);
+    rows.remove(10);
+    rows.get(50).set(1, 99.0);
+    rows.get(60).set(3, null);
+    Collections.reverse(rows);
+    Table after = Table.withInferredTypes(HEADER, rows);
+
+    TableDiff diff = before.diff(after, "id");
+    assertEquals(Arrays.asList(10), diff.getDeletedRows());
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4), diff.getInsertedRows(), "Rows 200 to 204 are first after reversing");
+    assertEquals(2, diff.getChangedCells().size(), diff.toString());
+    TableDiff.CellChange change = diff.getChangedCells().get(1);
+    assertEquals("amount", change.getColumn());
+    assertEquals(51, change.getBeforeRow());
+    assertEquals(0.0, change.getOldValue());
+    assertEquals(99.0, change.getNewValue());
+    assertTrue(before.diff(before, "id").isEmpty());
+  }
+
+  @Test
+  public void testDiffByPosition() {
+    Table before = Table.withInferredTypes(HEADER, createRows(10));
+    List<List<Object>> rows = createRows(8);
+    rows.get(2).set(0, 42);
+    Table after = Table.withInferredTypes(HEADER, rows).withColumn("extra", DataType.STRING,
+        Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h"));
+
+    TableDiff diff = TableDiff.compare(before, after);
+    assertEquals(Arrays.asList("extra"), diff.getAddedColumns());
+    assertTrue(diff.getRemovedColumns().isEmpty());
+    assertEquals(Arrays.asList(8, 9), diff.getDeletedRows());
+    assertTrue(diff.getInsertedRows().isEmpty());
+    assertEquals(1, diff.getChangedCells().size());
+    assertEquals("id[2]: 2 -> 42", diff.getChangedCells().get(0).toString());
+  }
+}
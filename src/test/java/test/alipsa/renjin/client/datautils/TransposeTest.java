@@ -0,0 +1,74 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import se.alipsa.renjin.client.datautils.ColumnEncoding;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransposeTest {
+
+  private static Table createTable(int numRows, int numCols, Object... extra) {
+    List<String> header = new ArrayList<>();
+    for (int c = 0; c < numCols; c++) {
+      header.add("c" + c);
+    }
+    List<List<Object>> rows = new ArrayList<>();
+    for (int r = 0; r < numRows; r++) {
+      List<Object> row = new ArrayList<>();
+      for (int c = 0; c < numCols; c++) {
+        row.add(extra.length > 0 ? extra[(r + c) % extra.length] : (r % 10 == 0 ? null : r * 1000.0 + c));
+      }
+      rows.add(row);
+    }
+    return new Table(header, rows, Collections.nCopies(numCols, DataType.DOUBLE));
+  }
+
+  private static void assertTransposed(Table table, Table transposed) {
+    assertEquals(table.getHeaderSize(), transposed.getRowSize(), "Number of rows");
+    for (int r = 0; r < table.getRowSize(); r++) {
+      for (int c = 0; c < table.getHeaderSize(); c++) {
+        assertEquals(table.getValue(r, c), transposed.getValue(c, r), "Value at " + r + ", " + c);
+      }
+    }
+  }
+
+  @Test
+  public void testTransposedView() {
+    Table table = createTable(30, 5);
+    Table view = table.asTransposed();
+    assertEquals(ColumnEncoding.TRANSPOSED, view.getColumnEncoding(0));
+    assertTransposed(table, view);
+    assertEquals(table.getColumn(3), view.getRow(3));
+  }
+
+  @Test
+  public void testTransposedCopyOfDoubles() {
+    // large enough to be done in parallel and with tiles that are not full
+    Table table = createTable(1_000, 150);
+    Table copy = table.transposedCopy();
+    assertTransposed(table, copy);
+    assertNull(copy.getValue(7, 20), "null should be kept");
+  }
+
+  @Test
+  public void testTransposedCopyOfInts() {
+    Table table = createTable(200, 70, 1, 2, null, 4);
+    Table copy = table.transposedCopy();
+    assertTransposed(table, copy);
+    assertEquals(Integer.class, copy.getValue(0, 0).getClass());
+  }
+
+  @Test
+  public void testTransposedCopyOfMixedTypes() {
+    Table table = createTable(20, 3, "a", 1, 2.5, null, true);
+    assertTransposed(table, table.transposedCopy());
+    assertEquals(Arrays.asList("a", 1, 2.5), table.transposedCopy().getColumn(0).subList(0, 3));
+  }
+}
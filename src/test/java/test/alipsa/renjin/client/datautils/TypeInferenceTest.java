@@ -0,0 +1,111 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.ListVector;
+import org.renjin.sexp.LogicalVector;
+import org.renjin.sexp.StringVector;
+import se.alipsa.renjin.client.datautils.DataType;
+import se.alipsa.renjin.client.datautils.Table;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TypeInferenceTest {
+
+  @Test
+  public void testInferredTypes() {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList("1", "1.5", "TRUE", "2021-03-14", "Adam", 12));
+    rows.add(Arrays.asList("2", "NA", "false", "2022-01-01", "Bertil", null));
+    rows.add(Arrays.asList("", "-3e2", "FALSE", null, "Cesar", 14));
+    Table table = Table.withInferredTypes(Arrays.asList("id", "amount", "valid", "date", "name", "count"), rows);
+
+    assertEquals(Arrays.asList(DataType.INTEGER, DataType.DOUBLE, DataType.BOOLEAN, DataType.DATE, DataType.STRING,
+        DataType.INTEGER), table.getColumnTypes());
+    assertEquals(2, table.getValue(1, 0));
+    assertNull(table.getValue(2, 0));
+    assertEquals(-300.0, table.getValue(2, 1));
+    assertNull(table.getValue(1, 1));
+    assertEquals(Boolean.FALSE, table.getValue(1, 2));
+    assertEquals(LocalDate.of(2021, 3, 14), table.getValue(0, 3));
+    assertEquals(LocalDate.of(2022, 1, 1), table.getValueAsLocalDate(1, 3));
+    assertEquals("Cesar", table.getValue(2, 4));
+    assertEquals(14, table.getValue(2, 5));
+
+    ListVector df = table.asDataframe();
+    assertTrue(df.get(0) instanceof IntVector, "id should be an integer vector");
+    assertTrue(df.get(1) instanceof DoubleVector, "amount should be a double vector");
+    assertTrue(df.get(2) instanceof LogicalVector, "valid should be a logical vector");
+    assertTrue(df.get(3) instanceof DoubleVector, "date should be a double vector");
+    assertTrue(df.get(3).inherits("Date"), "date should have the Date class");
+    assertTrue(df.get(4) instanceof StringVector, "name should be a character vector");
+    assertEquals(LocalDate.of(2021, 3, 14).toEpochDay(), ((DoubleVector) df.get(3)).getElementAsDouble(0));
+  }
+
+  @Test
+  public void testWideningOutsideTheSample() {
+    int n = 200_000;
+    List<List<Object>> rows = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      // the only decimal value is not part of the sample
+      rows.add(Arrays.asList(i == 1234 ? "0.5" : String.valueOf(i), i % 2 == 0 ? "x" : "12"));
+    }
+    Table table = Table.withInferredTypes(Arrays.asList("value", "mixed"), rows);
+    assertEquals(DataType.DOUBLE, table.getColumnType(0));
+    assertEquals(0.5, table.getValue(1234, 0));
+    assertEquals(199_999.0, table.getValue(n - 1, 0));
+    assertEquals(DataType.STRING, table.getColumnType(1));
+    assertEquals("12", table.getValue(1, 1));
+  }
+
+  @Test
+  public void testDefaultConstructorKeepsValues() {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList("1", "TRUE"));
+    Table table = new Table(Arrays.asList("id", "valid"), rows);
+    assertEquals(Arrays.asList(DataType.UNKNOWN, DataType.UNKNOWN), table.getColumnTypes());
+    assertEquals("1", table.getValue(0, 0));
+  }
+
+  @Test
+  public void testDateAsNumber() {
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList("2021-03-14"));
+    rows.add(Arrays.asList("1969-12-31"));
+    rows.add(Arrays.asList((Object) null));
+    Table table = Table.withInferredTypes(Arrays.asList("date"), rows);
+    assertEquals(DataType.DATE, table.getColumnType(0));
+    long epochDay = LocalDate.of(2021, 3, 14).toEpochDay();
+    assertEquals((double) epochDay, table.getValueAsDouble(0, 0), "Date as double");
+    assertEquals((int) epochDay, table.getValueAsInteger(0, 0), "Date as integer");
+    assertEquals(epochDay, table.getValueAsLong(0, 0), "Date as long");
+    assertEquals(-1, table.getValueAsInteger(1, 0), "Date before 1970");
+    assertNull(table.getValueAsDouble(2, 0), "NA date");
+  }
+
+  @Test
+  public void testRowsMustMatchHeader() {
+    List<String> header = Arrays.asList("id", "name");
+    List<List<Object>> rows = new ArrayList<>();
+    rows.add(Arrays.asList("1", "a"));
+    rows.add(Arrays.asList((Object) "2"));
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> Table.withInferredTypes(header, rows));
+    assertEquals("Row 1 has 1 values but there are 2 columns", e.getMessage());
+
+    List<List<Object>> shortFirstRow = new ArrayList<>();
+    shortFirstRow.add(Arrays.asList((Object) "1"));
+    assertThrows(IllegalArgumentException.class, () -> Table.withInferredTypes(header, shortFirstRow),
+        "More names than values in the first row");
+    List<List<Object>> longFirstRow = new ArrayList<>();
+    longFirstRow.add(Arrays.asList("1", "a", "extra"));
+    assertThrows(IllegalArgumentException.class, () -> Table.withInferredTypes(header, longFirstRow),
+        "More values than names in the first row");
+  }
+}
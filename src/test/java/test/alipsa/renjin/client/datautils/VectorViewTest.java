@@ -0,0 +1,67 @@
+package test.alipsa.renjin.client.datautils;
+
+import org.junit.jupiter.api.Test;
+import org.renjin.sexp.DoubleArrayVector;
+import org.renjin.sexp.DoubleVector;
+import org.renjin.sexp.IntArrayVector;
+import org.renjin.sexp.IntVector;
+import org.renjin.sexp.StringArrayVector;
+import se.alipsa.renjin.client.datautils.DoubleList;
+import se.alipsa.renjin.client.datautils.IntList;
+import se.alipsa.renjin.client.datautils.RDataTransformer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorViewTest {
+
+  @Test
+  public void testVectorView() {
+    StringArrayVector vec = new StringArrayVector("a", "b", "c");
+    List<Object> view = RDataTransformer.vectorView(vec);
+    assertEquals(RDataTransformer.vectorToList(vec), view);
+    assertTrue(view instanceof RandomAccess);
+    assertThrows(UnsupportedOperationException.class, () -> view.add("d"));
+    List<String> strings = RDataTransformer.vectorView(vec, String.class);
+    assertEquals("b", strings.get(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> strings.get(3));
+  }
+
+  @Test
+  public void testIntList() {
+    IntArrayVector vec = new IntArrayVector(1, IntVector.NA, 3);
+    IntList nullForNa = RDataTransformer.toIntList(vec);
+    assertEquals(Arrays.asList(1, null, 3), nullForNa);
+    assertTrue(nullForNa.isNA(1));
+    assertEquals(IntVector.NA, nullForNa.getInt(1));
+
+    IntList zeroForNa = RDataTransformer.toIntList(vec, 0);
+    assertEquals(Arrays.asList(1, 0, 3), zeroForNa);
+    assertArrayEquals(new int[]{1, 0, 3}, zeroForNa.toIntArray());
+    assertEquals(4, zeroForNa.intStream().sum());
+    List<Integer> seen = new ArrayList<>();
+    zeroForNa.forEachInt(seen::add);
+    assertEquals(Arrays.asList(1, 0, 3), seen);
+  }
+
+  @Test
+  public void testDoubleList() {
+    DoubleArrayVector vec = new DoubleArrayVector(1.5, DoubleVector.NA, Double.NaN, 4.0);
+    DoubleList nullForNa = RDataTransformer.toDoubleList(vec);
+    assertEquals(4, nullForNa.size());
+    assertNull(nullForNa.get(1));
+    assertTrue(nullForNa.get(2).isNaN(), "NaN is not NA");
+    assertFalse(nullForNa.isNA(2));
+
+    DoubleList nanForNa = RDataTransformer.toDoubleList(vec, Double.NaN);
+    assertTrue(Double.isNaN(nanForNa.getDouble(1)));
+    assertEquals(5.5, nanForNa.doubleStream().filter(d -> !Double.isNaN(d)).sum());
+    double[] sum = new double[1];
+    RDataTransformer.toDoubleList(vec, 0).forEachDouble(d -> sum[0] += Double.isNaN(d) ? 0 : d);
+    assertEquals(5.5, sum[0]);
+  }
+}